@@ -33,6 +33,7 @@ public class Main extends Application {
     private SchemeDAO schemeDAO;
     private DeviceLocationDAO deviceLocationDAO;
     private SyncManager syncManager;
+    private DatabaseMaintenance databaseMaintenance;
     private static final Logger LOGGER = LogManager.getLogger(Main.class);
     private MainController mainController;
     private Stage primaryStage;
@@ -81,6 +82,7 @@ public class Main extends Application {
                 mainController.setSchemeDAO(schemeDAO);
                 mainController.setDeviceLocationDAO(deviceLocationDAO);
                 mainController.setSyncManager(syncManager);
+                mainController.setDatabaseMaintenance(databaseMaintenance);
                 LOGGER.info("Все сервисы переданы в MainController");
             } else {
                 LOGGER.warn("MainController не найден");
@@ -139,9 +141,13 @@ public class Main extends Application {
                     mainController.saveSchemeBeforeNavigation();
                 }
                 if (databaseService != null) {
+                    // Дописываем поставленные в очередь записи (сохранение схемы) до закрытия БД
+                    if (databaseMaintenance != null) databaseMaintenance.stop();
+                    AsyncDao.shutdown();
                     databaseService.closeConnection();
                     LOGGER.info("Соединение с БД закрыто");
                 }
+                TimeValidator.getInstance().shutdown();
             });
 
             primaryStage.show();
@@ -163,7 +169,7 @@ public class Main extends Application {
         try {
             LOGGER.info("🔄 Инициализация сервисов...");
             databaseService = new DatabaseService();
-            deviceDAO = new DeviceDAO(databaseService);
+            deviceDAO = new DeviceStore(databaseService);
             schemeDAO = new SchemeDAO(databaseService);
             deviceLocationDAO = new DeviceLocationDAO(databaseService);
             PhotoManager photoManager = PhotoManager.getInstance();
@@ -173,6 +179,8 @@ public class Main extends Application {
                     deviceLocationDAO,
                     photoManager.getBasePhotosPath()
             );
+            databaseMaintenance = new DatabaseMaintenance(databaseService);
+            databaseMaintenance.start();
             LOGGER.info("🎉 Все сервисы успешно инициализированы");
         } catch (Exception e) {
             LOGGER.error("❌ Ошибка инициализации сервисов: {}", e.getMessage(), e);
@@ -250,6 +258,11 @@ public class Main extends Application {
     @Override
     public void stop() {
         LOGGER.info("Приложение завершает работу");
-        if (databaseService != null) databaseService.closeConnection();
+        if (databaseService != null) {
+            if (databaseMaintenance != null) databaseMaintenance.stop();
+            AsyncDao.shutdown();
+            databaseService.closeConnection();
+        }
+        TimeValidator.getInstance().shutdown();
     }
 }
\ No newline at end of file
@@ -4,15 +4,16 @@ import com.kipia.management.kipia_management.controllers.cell.table_cell.Validat
 import com.kipia.management.kipia_management.controllers.cell.table_cell.ValidatingIntegerCell;
 import com.kipia.management.kipia_management.managers.PhotoManager;
 import com.kipia.management.kipia_management.models.Device;
+import com.kipia.management.kipia_management.services.AsyncDao;
 import com.kipia.management.kipia_management.services.DeviceDAO;
+import com.kipia.management.kipia_management.services.DeviceQuery;
+import com.kipia.management.kipia_management.services.DeviceStore;
+import com.kipia.management.kipia_management.services.PagedDeviceList;
 import com.kipia.management.kipia_management.utils.CustomAlertDialog;
 import com.kipia.management.kipia_management.utils.LoadingIndicator;
 import com.kipia.management.kipia_management.utils.StyleUtils;
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
-import javafx.collections.FXCollections;
-import javafx.collections.transformation.FilteredList;
-import javafx.collections.transformation.SortedList;
-import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.*;
@@ -26,8 +27,10 @@ import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -65,12 +68,28 @@ public class DevicesTableController implements SearchableController {
 
     // ---------- Сервисы ----------
     private DeviceDAO deviceDAO;
+    // Все обращения к БД — в фоне, результат применяется в потоке JavaFX
+    private AsyncDao asyncDao;
 
     // ---------- Контроллеры ----------
     private SchemeEditorController schemeEditorController;
 
-    // Списки, используемые для фильтрации/сортировки
-    private FilteredList<Device> filteredList;
+    // Постраничный источник строк: поиск и сортировка выполняются в SQL
+    private PagedDeviceList dataSource;
+
+    // Изменения приборов из любого экрана (ссылка держит подписку, пока жив контроллер)
+    private final DeviceStore.ChangeListener deviceChangeListener = this::onDevicesChanged;
+
+    // Поиск запускается после паузы в наборе и выполняется в фоновом потоке
+    private static final Duration SEARCH_DEBOUNCE = Duration.millis(200);
+    private PauseTransition searchDebounce;
+    private String pendingSearch = "";
+    // Последний запущенный поиск — при новом он отменяется, устаревшие результаты отбрасываются
+    private CompletableFuture<SearchResult> runningSearch;
+
+    // Результат фонового запроса: строки и счётчики по статусам
+    private record SearchResult(PagedDeviceList.Snapshot snapshot, Map<String, Integer> byStatus) {
+    }
 
     // Инвентарный номер — колонка, которой будем пользоваться как «default sort»
     private TableColumn<Device, String> inventoryCol;
@@ -102,6 +121,7 @@ public class DevicesTableController implements SearchableController {
             CustomAlertDialog.showError("Ошибка", "Сервис базы данных не инициализирован");
             return;
         }
+        asyncDao = new AsyncDao(deviceDAO, null, null);
 
         // Инициализация индикатора загрузки
         loadingIndicator = new LoadingIndicator("Загрузка данных...");
@@ -115,10 +135,12 @@ public class DevicesTableController implements SearchableController {
         createTableColumns();
         configureButtons();
         configureRowStyle();
+        configureSortPolicy();
         setupSmartColumnResizing();
 
         // Запускаем загрузку данных
         loadDataFromDaoAsync();
+        DeviceStore.subscribe(deviceDAO, deviceChangeListener);
 
         deviceTable.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_ALL_COLUMNS);
 
@@ -182,8 +204,12 @@ public class DevicesTableController implements SearchableController {
             Device dev = event.getRowValue();
             dev.setStatus(event.getNewValue());
             dev.updateTimestamp();
-            deviceDAO.updateDevice(dev);
-            updateStatistics();
+            AsyncDao.onFx(asyncDao.devices(dao -> dao.updateDevice(dev)), ok -> {
+                if (!ok) {
+                    LOGGER.error("Не удалось сохранить статус прибора: {}", dev.getName());
+                    CustomAlertDialog.showError("Ошибка", "Не удалось сохранить статус прибора");
+                }
+            });
         });
 
         // -----------------------------------------------------------------
@@ -295,60 +321,49 @@ public class DevicesTableController implements SearchableController {
         // Показываем индикатор сразу
         Platform.runLater(() -> loadingIndicator.show());
 
-        Task<List<Device>> loadTask = new Task<>() {
-            @Override
-            protected List<Device> call() throws Exception {
-                long startTime = System.currentTimeMillis();
+        CompletableFuture<SearchResult> load = asyncDao.devices(dao -> {
+            long startTime = System.currentTimeMillis();
 
-                // Загрузка данных
-                List<Device> devices = deviceDAO.getAllDevices();
+            // Читаются только число строк и первая страница, остальные подгружаются при прокрутке
+            DeviceQuery query = DeviceQuery.defaults();
+            SearchResult result = new SearchResult(PagedDeviceList.load(dao, query), dao.countDevicesByStatus(query));
 
-                // Умная задержка: показываем индикатор минимум 0.5 сек
-                long elapsedTime = System.currentTimeMillis() - startTime;
-                long minDisplayTime = 500; // минимальное время показа индикатора (мс)
-
-                if (elapsedTime < minDisplayTime) {
-                    Thread.sleep(minDisplayTime - elapsedTime);
-                }
+            // Умная задержка: показываем индикатор минимум 0.5 сек
+            long elapsedTime = System.currentTimeMillis() - startTime;
+            long minDisplayTime = 500; // минимальное время показа индикатора (мс)
 
-                return devices;
+            if (elapsedTime < minDisplayTime) {
+                Thread.sleep(minDisplayTime - elapsedTime);
             }
-        };
 
-        loadTask.setOnSucceeded(_ -> {
-            List<Device> devices = loadTask.getValue();
-            filteredList = new FilteredList<>(FXCollections.observableArrayList(devices), _ -> true);
-            SortedList<Device> sorted = createSortedList(filteredList, deviceTable);
-            deviceTable.setItems(sorted);
+            return result;
+        });
+
+        AsyncDao.onFx(load, result -> {
+            dataSource = new PagedDeviceList(deviceDAO, result.snapshot());
+            deviceTable.setItems(dataSource);
+            inventoryCol.setSortType(TableColumn.SortType.ASCENDING);
             deviceTable.getSortOrder().add(inventoryCol);
-            deviceTable.sort();
-            updateStatistics();
+            showStatistics(result.snapshot().size(), result.byStatus());
 
             // Показываем контент после загрузки
             showContentAfterLoad();
             loadingIndicator.hide();
-        });
-
-        loadTask.setOnFailed(_ -> {
-            LOGGER.error("Ошибка загрузки данных: {}", loadTask.getException().getMessage());
+        }, error -> {
+            LOGGER.error("Ошибка загрузки данных: {}", error.getMessage());
             CustomAlertDialog.showError("Ошибка", "Не удалось загрузить данные из базы");
             showContentAfterLoad(); // Показываем контент даже при ошибке
             loadingIndicator.hide();
         });
-
-        new Thread(loadTask).start();
     }
 
     /**
-     * Синхронная загрузка данных (для обновления после изменений)
+     * Применение изменений приборов (добавление, редактирование, удаление —
+     * здесь, в редакторе схем, галерее или при синхронизации)
      */
-    private void loadDataFromDao() {
-        List<Device> all = deviceDAO.getAllDevices();
-        filteredList = new FilteredList<>(FXCollections.observableArrayList(all), _ -> true);
-        SortedList<Device> sorted = createSortedList(filteredList, deviceTable);
-        deviceTable.setItems(sorted);
-        deviceTable.getSortOrder().add(inventoryCol);
-        deviceTable.sort();
+    private void onDevicesChanged(List<DeviceStore.DeviceChange> changes) {
+        if (dataSource == null) return;
+        dataSource.applyChanges(changes).thenRun(this::updateStatistics);
     }
 
     /**
@@ -376,10 +391,6 @@ public class DevicesTableController implements SearchableController {
             AddDeviceController ctrl = loader.getController();
             if (ctrl != null) {
                 ctrl.setDeviceDAO(deviceDAO);
-                ctrl.setOnDeviceAdded(() -> Platform.runLater(() -> {
-                    loadDataFromDao();
-                    updateStatistics();
-                }));
             }
 
             openStyledDialog(view, "Добавление нового прибора");
@@ -414,19 +425,20 @@ public class DevicesTableController implements SearchableController {
         boolean shouldDeletePhotos = result.get() == CustomAlertDialog.YES_BUTTON;
         LOGGER.info("Начато удаление прибора: {} (удалять фото: {})", selected.getName(), shouldDeletePhotos);
 
-        // Удаление фото (если выбрано)
-        if (shouldDeletePhotos) {
-            int deletedCount = PhotoManager.getInstance().deleteAllDevicePhotos(selected);
-            LOGGER.info("Удалено {} фото для прибора {}", deletedCount, selected.getId());
-        }
+        CompletableFuture<Boolean> delete = asyncDao.devices(dao -> {
+            // Удаление фото (если выбрано)
+            if (shouldDeletePhotos) {
+                int deletedCount = PhotoManager.getInstance().deleteAllDevicePhotos(selected);
+                LOGGER.info("Удалено {} фото для прибора {}", deletedCount, selected.getId());
+            }
 
-        // Удаление прибора из БД
-        boolean ok = deviceDAO.deleteDevice(selected.getId());
-        if (ok) {
-            Platform.runLater(() -> {
+            // Удаление прибора из БД
+            return dao.deleteDevice(selected.getId());
+        });
+
+        AsyncDao.onFx(delete, ok -> {
+            if (ok) {
                 try {
-                    filteredList.getSource().remove(selected);
-                    updateStatistics();
                     if (schemeEditorController != null) {
                         schemeEditorController.refreshSchemesAndDevices();
                     }
@@ -436,11 +448,14 @@ public class DevicesTableController implements SearchableController {
                     LOGGER.error("Ошибка при обновлении UI после удаления прибора: {}", e.getMessage(), e);
                     CustomAlertDialog.showError("Ошибка", "Не удалось обновить интерфейс после удаления");
                 }
-            });
-        } else {
+            } else {
+                CustomAlertDialog.showError("Удаление", "Не удалось удалить запись из БД");
+                LOGGER.error("Не удалось удалить прибор: {}", selected.getName());
+            }
+        }, error -> {
+            LOGGER.error("Ошибка удаления прибора {}: {}", selected.getName(), error.getMessage(), error);
             CustomAlertDialog.showError("Удаление", "Не удалось удалить запись из БД");
-            LOGGER.error("Не удалось удалить прибор: {}", selected.getName());
-        }
+        });
     }
 
     // -----------------------------------------------------------------
@@ -448,36 +463,62 @@ public class DevicesTableController implements SearchableController {
     // -----------------------------------------------------------------
 
     /**
-     * Метод для создания отсортированного списка
-     *
-     * @param filtered - отфильтрованный список
-     * @param table    - таблица
-     * @return - отсортированный список
+     * Сортировка по клику на заголовок выполняется в SQL: вместо сортировки
+     * элементов таблицы меняется запрос источника данных.
+     * Учитывается первая колонка порядка сортировки.
      */
-    private SortedList<Device> createSortedList(FilteredList<Device> filtered,
-                                                TableView<Device> table) {
-        SortedList<Device> sorted = new SortedList<>(filtered);
-        sorted.comparatorProperty().bind(table.comparatorProperty());
-        return sorted;
+    private void configureSortPolicy() {
+        deviceTable.setSortPolicy(table -> {
+            if (dataSource == null) {
+                return true;
+            }
+            // Без выбранной колонки результаты поиска идут по релевантности
+            DeviceQuery.SortColumn sort = DeviceQuery.SortColumn.RELEVANCE;
+            boolean ascending = true;
+            if (!table.getSortOrder().isEmpty()) {
+                TableColumn<Device, ?> column = table.getSortOrder().getFirst();
+                DeviceQuery.SortColumn mapped = sortColumnOf(column);
+                if (mapped != null) {
+                    sort = mapped;
+                    ascending = column.getSortType() == TableColumn.SortType.ASCENDING;
+                }
+            }
+            dataSource.setQuery(dataSource.getQuery().withSort(sort, ascending));
+            return true;
+        });
+    }
+
+    /**
+     * Колонка БД для колонки таблицы — по имени свойства в PropertyValueFactory.
+     */
+    private DeviceQuery.SortColumn sortColumnOf(TableColumn<Device, ?> column) {
+        Object cellValueFactory = column.getCellValueFactory();
+        if (cellValueFactory instanceof PropertyValueFactory<?, ?> factory) {
+            return DeviceQuery.SortColumn.byProperty(factory.getProperty());
+        }
+        return null;
     }
 
     /**
      * Вызывается после каждой фильтрации/добавления/удаления.
+     * Счётчики по статусам считаются в SQL (в фоне) с учётом текущего поиска.
      */
     private void updateStatistics() {
-        int total = filteredList.size();
-        long working = filteredList.stream()
-                .filter(d -> "В работе".equalsIgnoreCase(d.getStatus()))
-                .count();
-        long storage = filteredList.stream()
-                .filter(d -> "Хранение".equalsIgnoreCase(d.getStatus()))
-                .count();
-        long lost = filteredList.stream()
-                .filter(d -> "Утерян".equalsIgnoreCase(d.getStatus()))
-                .count();
-        long broken = filteredList.stream()
-                .filter(d -> "Испорчен".equalsIgnoreCase(d.getStatus()))
-                .count();
+        if (dataSource == null) return;
+        DeviceQuery query = dataSource.getQuery();
+        AsyncDao.onFx(asyncDao.devices(dao -> dao.countDevicesByStatus(query)), byStatus -> {
+            // Пока считали, запрос сменился — счётчики обновит следующий вызов
+            if (query.equals(dataSource.getQuery())) {
+                showStatistics(dataSource.size(), byStatus);
+            }
+        });
+    }
+
+    private void showStatistics(int total, Map<String, Integer> byStatus) {
+        long working = countStatus(byStatus, "В работе");
+        long storage = countStatus(byStatus, "Хранение");
+        long lost = countStatus(byStatus, "Утерян");
+        long broken = countStatus(byStatus, "Испорчен");
 
         totalDevicesLabel.setText(String.valueOf(total));
         workingDevicesLabel.setText(String.valueOf(working));
@@ -486,6 +527,13 @@ public class DevicesTableController implements SearchableController {
         brokenDevicesLabel.setText(String.valueOf(broken));
     }
 
+    private long countStatus(Map<String, Integer> byStatus, String status) {
+        return byStatus.entrySet().stream()
+                .filter(e -> status.equalsIgnoreCase(e.getKey()))
+                .mapToLong(Map.Entry::getValue)
+                .sum();
+    }
+
     /**
      * Чередующийся фон строк + двойной клик = редактирование
      * + контекстное меню (правая кнопка мыши)
@@ -508,7 +556,8 @@ public class DevicesTableController implements SearchableController {
 
             // Двойной клик — открыть форму редактирования
             row.setOnMouseClicked(event -> {
-                if (event.getClickCount() == 2 && !row.isEmpty()) {
+                // Строка ещё не прочитанной страницы — item == null
+                if (event.getClickCount() == 2 && !row.isEmpty() && row.getItem() != null) {
                     openEditForm(row.getItem());
                 }
             });
@@ -518,12 +567,12 @@ public class DevicesTableController implements SearchableController {
 
             MenuItem editItem = new MenuItem("Редактировать");
             editItem.setOnAction(_ -> {
-                if (!row.isEmpty()) openEditForm(row.getItem());
+                if (!row.isEmpty() && row.getItem() != null) openEditForm(row.getItem());
             });
 
             MenuItem deleteItem = new MenuItem("Удалить");
             deleteItem.setOnAction(_ -> {
-                if (!row.isEmpty()) deleteSelectedDevice(row.getItem());
+                if (!row.isEmpty() && row.getItem() != null) deleteSelectedDevice(row.getItem());
             });
 
             contextMenu.getItems().addAll(editItem, new SeparatorMenuItem(), deleteItem);
@@ -552,10 +601,6 @@ public class DevicesTableController implements SearchableController {
             if (ctrl != null) {
                 ctrl.setDeviceDAO(deviceDAO);
                 ctrl.setEditMode(device);
-                ctrl.setOnDeviceAdded(() -> Platform.runLater(() -> {
-                    loadDataFromDao();
-                    updateStatistics();
-                }));
             }
 
             openStyledDialog(view, "Редактирование: " + device.getName());
@@ -775,31 +820,85 @@ public class DevicesTableController implements SearchableController {
     public void bindSearchField(TextField externalSearchField) {
         if (externalSearchField == null) return;
 
+        searchDebounce = new PauseTransition(SEARCH_DEBOUNCE);
+        searchDebounce.setOnFinished(_ -> runSearch());
+
+        // На нажатие клавиши — только перезапуск таймера, запрос к индексу выполнится после паузы
         externalSearchField.textProperty().addListener((_, _, newV) -> {
-            String lower = newV.toLowerCase().trim();
-            filteredList.setPredicate(dev -> {
-                if (lower.isEmpty()) return true;
-                return (dev.getName() != null && dev.getName().toLowerCase().contains(lower))
-                        || (dev.getType() != null && dev.getType().toLowerCase().contains(lower))
-                        || (dev.getManufacturer() != null && dev.getManufacturer().toLowerCase().contains(lower))
-                        || (dev.getLocation() != null && dev.getLocation().toLowerCase().contains(lower))
-                        || (dev.getInventoryNumber() != null && dev.getInventoryNumber().toLowerCase().contains(lower))
-                        || (dev.getYear() != null && String.valueOf(dev.getYear()).contains(lower))
-                        || (dev.getMeasurementLimit() != null && dev.getMeasurementLimit().toLowerCase().contains(lower))
-                        || (dev.getAccuracyClass() != null && String.valueOf(dev.getAccuracyClass()).contains(lower))
-                        || (dev.getValveNumber() != null && dev.getValveNumber().toLowerCase().contains(lower))
-                        || (dev.getStatus() != null && dev.getStatus().toLowerCase().contains(lower))
-                        || (dev.getAdditionalInfo() != null && dev.getAdditionalInfo().toLowerCase().contains(lower));
-            });
-            updateStatistics();
+            pendingSearch = newV != null ? newV : "";
+            searchDebounce.playFromStart();
         });
     }
 
+    /**
+     * Выполняет поиск по полнотекстовому индексу в фоновом потоке
+     * и применяет результат, если за это время не был запущен новый поиск.
+     */
+    private void runSearch() {
+        if (dataSource == null) return;
+
+        if (!dataSource.getQuery().hasSearch() && !pendingSearch.isBlank()) {
+            // Начало поиска: сбрасываем сортировку колонки, результаты — по релевантности
+            deviceTable.getSortOrder().clear();
+        }
+        DeviceQuery base = dataSource.getQuery();
+        DeviceQuery query = base.withSearch(pendingSearch);
+        if (deviceTable.getSortOrder().isEmpty()) {
+            query = query.withSort(DeviceQuery.SortColumn.RELEVANCE, true);
+        }
+        if (query.equals(base)) {
+            return;
+        }
+
+        cancelSearch();
+        DeviceQuery searchQuery = query;
+        CompletableFuture<SearchResult> search = asyncDao.devices(dao ->
+                new SearchResult(PagedDeviceList.load(dao, searchQuery), dao.countDevicesByStatus(searchQuery)));
+        runningSearch = search;
+
+        AsyncDao.onFx(search, result -> {
+            if (search != runningSearch) return;
+            runningSearch = null;
+            if (!dataSource.getQuery().equals(base)) {
+                // Пока шёл поиск, сменили сортировку — повторяем с новой
+                runSearch();
+                return;
+            }
+            dataSource.apply(result.snapshot());
+            showStatistics(result.snapshot().size(), result.byStatus());
+            if (!searchQuery.hasSearch()) {
+                restoreDefaultSort();
+            }
+        }, error -> LOGGER.error("Ошибка поиска приборов: {}", error.getMessage()));
+    }
+
+    private void cancelSearch() {
+        if (runningSearch != null) {
+            runningSearch.cancel(true);
+            runningSearch = null;
+        }
+    }
+
+    /**
+     * Поиск очищен, а колонка сортировки не выбрана — возвращаем сортировку
+     * по инвентарному номеру (как при открытии таблицы).
+     */
+    private void restoreDefaultSort() {
+        if (deviceTable.getSortOrder().isEmpty()) {
+            inventoryCol.setSortType(TableColumn.SortType.ASCENDING);
+            deviceTable.getSortOrder().add(inventoryCol);
+        }
+    }
+
     @Override
     public void clearFilters() {
-        if (filteredList != null) {
-            filteredList.setPredicate(_ -> true);
-            updateStatistics();
+        if (dataSource != null) {
+            pendingSearch = "";
+            cancelSearch();
+            dataSource.setQuery(dataSource.getQuery().withSearch("")).thenRun(() -> {
+                restoreDefaultSort();
+                updateStatistics();
+            });
         }
     }
 
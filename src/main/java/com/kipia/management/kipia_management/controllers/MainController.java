@@ -95,6 +95,7 @@ public class MainController {
     private SchemeDAO schemeDAO;
     private DeviceLocationDAO deviceLocationDAO;
     private SyncManager syncManager;
+    private DatabaseMaintenance databaseMaintenance;
 
     private SchemeEditorController schemeEditorController;
     private Parent schemeEditorView;
@@ -144,6 +145,10 @@ public class MainController {
         LOGGER.info("✅ SyncManager сохранён");
     }
 
+    public void setDatabaseMaintenance(DatabaseMaintenance databaseMaintenance) {
+        this.databaseMaintenance = databaseMaintenance;
+    }
+
     public Scene getScene() {
         return scene;
     }
@@ -794,6 +799,7 @@ public class MainController {
                 SettingsController ctrl = loader.getController();
                 if (ctrl != null) {
                     ctrl.setSyncManager(syncManager);
+                    ctrl.setDatabaseMaintenance(databaseMaintenance);
                     ctrl.setDeviceDAO(deviceDAO);
                     ctrl.setMainController(this);
                     ctrl.setOnDataChanged(this::refreshCurrentView);
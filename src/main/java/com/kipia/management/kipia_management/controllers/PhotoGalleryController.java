@@ -3,14 +3,16 @@ package com.kipia.management.kipia_management.controllers;
 import com.kipia.management.kipia_management.managers.PhotoManager;
 import com.kipia.management.kipia_management.managers.PhotoViewer;
 import com.kipia.management.kipia_management.models.Device;
+import com.kipia.management.kipia_management.models.DeviceSummary;
+import com.kipia.management.kipia_management.services.AsyncDao;
 import com.kipia.management.kipia_management.services.DeviceDAO;
+import com.kipia.management.kipia_management.services.DeviceStore;
 import com.kipia.management.kipia_management.utils.CustomAlertDialog;
 import com.kipia.management.kipia_management.utils.LoadingIndicator;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
-import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -20,6 +22,7 @@ import javafx.stage.Stage;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -37,32 +40,33 @@ public class PhotoGalleryController implements SearchableController {
     private final PhotoManager photoManager;
 
     // Данные
-    private List<Device> allDevices;
-    private Map<String, List<Device>> devicesByLocation;
+    private List<DeviceSummary> allDevices;
+    private Map<String, List<DeviceSummary>> devicesByLocation;
     private ObservableList<LocationCardData> locationCardsData;
     private FilteredList<LocationCardData> filteredCards;
     private final Map<String, Boolean> cardExpansionState = new HashMap<>();
+    // Подписка на изменения приборов (держится, пока жив контроллер)
+    private final DeviceStore.ChangeListener deviceChangeListener = this::onDevicesChanged;
 
     // Класс для хранения данных карточки
     public static class LocationCardData {
         private final String location;
-        private final List<Device> devices;
+        private final List<DeviceSummary> devices;
         private final int deviceCount;
         private final int photoCount;
         private final int devicesWithPhotos;
 
-        public LocationCardData(String location, List<Device> devices) {
+        public LocationCardData(String location, List<DeviceSummary> devices) {
             this.location = location;
             this.devices = devices;
             this.deviceCount = devices.size();
 
             int photos = 0;
             int withPhotos = 0;
-            for (Device device : devices) {
-                List<String> devicePhotos = device.getPhotos();
-                if (devicePhotos != null && !devicePhotos.isEmpty()) {
+            for (DeviceSummary device : devices) {
+                if (device.photoCount() > 0) {
                     withPhotos++;
-                    photos += devicePhotos.size();
+                    photos += device.photoCount();
                 }
             }
             this.photoCount = photos;
@@ -70,7 +74,7 @@ public class PhotoGalleryController implements SearchableController {
         }
 
         public String getLocation() { return location; }
-        public List<Device> getDevices() { return devices; }
+        public List<DeviceSummary> getDevices() { return devices; }
         public int getDeviceCount() { return deviceCount; }
         public int getPhotoCount() { return photoCount; }
         public int getDevicesWithPhotos() { return devicesWithPhotos; }
@@ -98,12 +102,16 @@ public class PhotoGalleryController implements SearchableController {
     private ComboBox<String> externalLocationFilter;
     private CheckBox externalPhotosOnlyCheck;
 
+    // Обращения к БД — в фоне
+    private AsyncDao asyncDao;
+
     public PhotoGalleryController() {
         photoManager = PhotoManager.getInstance();
     }
 
     public void setDeviceDAO(DeviceDAO deviceDAO) {
         this.deviceDAO = deviceDAO;
+        this.asyncDao = new AsyncDao(deviceDAO, null, null);
     }
 
     @FXML
@@ -259,7 +267,7 @@ public class PhotoGalleryController implements SearchableController {
 
                 // Список приборов
                 devicesList.getChildren().clear();
-                for (Device device : data.getDevices()) {
+                for (DeviceSummary device : data.getDevices()) {
                     devicesList.getChildren().add(createDeviceRow(device));
                 }
 
@@ -299,18 +307,18 @@ public class PhotoGalleryController implements SearchableController {
                 return box;
             }
 
-            private HBox createDeviceRow(Device device) {
+            private HBox createDeviceRow(DeviceSummary summary) {
                 HBox row = new HBox(8);
                 row.getStyleClass().add("device-row");
                 row.setAlignment(Pos.CENTER_LEFT);
                 row.setPadding(new Insets(6, 4, 6, 4));
 
-                Label nameLabel = getNameLabel(device);
+                Label nameLabel = getNameLabel(summary);
                 nameLabel.getStyleClass().add("device-name");
                 nameLabel.setMaxWidth(150);
                 nameLabel.setWrapText(true);
 
-                int photoCount = device.getPhotos() != null ? device.getPhotos().size() : 0;
+                int photoCount = summary.photoCount();
                 Label photoLabel = new Label(photoCount + "/" + PhotoManager.MAX_PHOTOS_PER_DEVICE + " фото");
                 photoLabel.getStyleClass().add("device-photo-count");
                 photoLabel.setStyle(photoCount > 0 ?
@@ -341,6 +349,8 @@ public class PhotoGalleryController implements SearchableController {
 
                 // Обработчики событий с улучшенным обновлением
                 viewBtn.setOnAction(_ -> {
+                    Device device = loadDevice(summary);
+                    if (device == null) return;
                     Stage stage = (Stage) viewBtn.getScene().getWindow();
                     PhotoViewer.OnPhotoDeletedCallback onDevicePhotoDeleted = (deletedDevice, deletedPhotoName) ->
                             Platform.runLater(() -> {
@@ -367,13 +377,16 @@ public class PhotoGalleryController implements SearchableController {
                 });
 
                 addPhotoBtn.setOnAction(_ -> {
+                    Device device = loadDevice(summary);
+                    if (device == null) return;
                     Stage stage = (Stage) addPhotoBtn.getScene().getWindow();
                     // Добавляем обработчик завершения добавления фото
                     addPhotosWithCallback(device, stage);
                 });
 
                 deletePhotoBtn.setOnAction(_ -> {
-                    Stage stage = (Stage) deletePhotoBtn.getScene().getWindow();
+                    Device device = loadDevice(summary);
+                    if (device == null) return;
                     showDeletePhotoDialog(device);
                 });
 
@@ -391,12 +404,12 @@ public class PhotoGalleryController implements SearchableController {
              * @param device - передаваемое устройство
              * @return - текстовая метка с инв. номером и номером крана
              */
-            private static Label getNameLabel(Device device) {
-                String inventoryNumber = device.getInventoryNumber() != null && !device.getInventoryNumber().trim().isEmpty()
-                        ? device.getInventoryNumber()
+            private static Label getNameLabel(DeviceSummary device) {
+                String inventoryNumber = device.inventoryNumber() != null && !device.inventoryNumber().trim().isEmpty()
+                        ? device.inventoryNumber()
                         : "Без инв. №";
-                String valveNumber = device.getValveNumber() != null && !device.getValveNumber().trim().isEmpty()
-                        ? device.getValveNumber()
+                String valveNumber = device.valveNumber() != null && !device.valveNumber().trim().isEmpty()
+                        ? device.valveNumber()
                         : "";
 
                 String displayName = valveNumber.isEmpty() ? inventoryNumber : inventoryNumber + " | " + valveNumber;
@@ -424,6 +437,7 @@ public class PhotoGalleryController implements SearchableController {
 
         // Запускаем загрузку
         loadDataAsync();
+        DeviceStore.subscribe(deviceDAO, deviceChangeListener);
     }
 
     private void hideContentBeforeLoad() {
@@ -443,74 +457,46 @@ public class PhotoGalleryController implements SearchableController {
     private void loadDataAsync() {
         Platform.runLater(() -> loadingIndicator.show());
 
-        Task<Void> loadTask = new Task<>() {
-            @Override
-            protected Void call() throws Exception {
-                long startTime = System.currentTimeMillis();
-
-                // Загрузка данных
-                loadData();
+        LOGGER.info("🔄 Загрузка данных для галереи фото...");
+        CompletableFuture<List<DeviceSummary>> load = asyncDao.devices(dao -> {
+            long startTime = System.currentTimeMillis();
 
-                // Умная задержка
-                long elapsedTime = System.currentTimeMillis() - startTime;
-                long minDisplayTime = 500;
+            // Загрузка приборов: только колонки, нужные карточкам галереи
+            List<DeviceSummary> devices = dao.getDeviceSummaries(EnumSet.of(
+                    DeviceSummary.Column.TYPE, DeviceSummary.Column.NAME, DeviceSummary.Column.INVENTORY_NUMBER,
+                    DeviceSummary.Column.LOCATION, DeviceSummary.Column.VALVE_NUMBER, DeviceSummary.Column.PHOTOS));
 
-                if (elapsedTime < minDisplayTime) {
-                    Thread.sleep(minDisplayTime - elapsedTime);
-                }
+            // Умная задержка
+            long elapsedTime = System.currentTimeMillis() - startTime;
+            long minDisplayTime = 500;
 
-                return null;
+            if (elapsedTime < minDisplayTime) {
+                Thread.sleep(minDisplayTime - elapsedTime);
             }
-        };
 
-        loadTask.setOnSucceeded(_ -> {
-            showContentAfterLoad();
-            loadingIndicator.hide();
+            return devices;
         });
 
-        loadTask.setOnFailed(_ -> {
-            LOGGER.error("Ошибка загрузки данных: {}", loadTask.getException().getMessage());
+        AsyncDao.onFx(load, devices -> {
+            showData(devices);
+            showContentAfterLoad();
+            loadingIndicator.hide();
+        }, error -> {
+            LOGGER.error("Ошибка загрузки данных: {}", error.getMessage(), error);
             CustomAlertDialog.showError("Ошибка", "Не удалось загрузить данные");
             showContentAfterLoad();
             loadingIndicator.hide();
         });
-
-        new Thread(loadTask).start();
     }
 
-    private void loadData() {
+    /**
+     * Построение галереи по прочитанным приборам (в потоке JavaFX)
+     */
+    private void showData(List<DeviceSummary> devices) {
         try {
-            LOGGER.info("🔄 Загрузка данных для галереи фото...");
-
-            // Загрузка всех приборов
-            allDevices = deviceDAO.getAllDevices();
-
-            // Группировка по местам установки с сортировкой по номеру крана внутри каждой локации
-            devicesByLocation = allDevices.stream()
-                    .filter(device -> device.getLocation() != null && !device.getLocation().trim().isEmpty())
-                    .collect(Collectors.groupingBy(
-                            Device::getLocation,
-                            TreeMap::new,
-                            Collectors.collectingAndThen(
-                                    Collectors.toList(),
-                                    list -> list.stream()
-                                            .sorted(Comparator.comparing(
-                                                    Device::getValveNumberInt,
-                                                    Comparator.nullsLast(Comparator.naturalOrder())
-                                            ))
-                                            .collect(Collectors.toList())
-                            )
-                    ));
+            allDevices = new ArrayList<>(devices);
 
-            // Создание данных для карточек
-            locationCardsData = FXCollections.observableArrayList();
-            for (Map.Entry<String, List<Device>> entry : devicesByLocation.entrySet()) {
-                locationCardsData.add(new LocationCardData(entry.getKey(), entry.getValue()));
-            }
-
-            // Настройка фильтрованного списка
-            filteredCards = new FilteredList<>(locationCardsData, _ -> true);
-            cardsListView.setItems(filteredCards);
+            buildLocationCards();
 
             // Заполнение фильтра мест
             updateLocationFilter();
@@ -527,6 +513,88 @@ public class PhotoGalleryController implements SearchableController {
         }
     }
 
+    /**
+     * Группировка загруженных приборов по местам установки и создание карточек
+     */
+    private void buildLocationCards() {
+        // Группировка по местам установки с сортировкой по номеру крана внутри каждой локации
+        devicesByLocation = allDevices.stream()
+                .filter(device -> device.location() != null && !device.location().trim().isEmpty())
+                .collect(Collectors.groupingBy(
+                        DeviceSummary::location,
+                        TreeMap::new,
+                        Collectors.collectingAndThen(
+                                Collectors.toList(),
+                                list -> list.stream()
+                                        .sorted(Comparator.comparing(
+                                                DeviceSummary::valveNumberInt,
+                                                Comparator.nullsLast(Comparator.naturalOrder())
+                                        ))
+                                        .collect(Collectors.toList())
+                        )
+                ));
+
+        // Создание данных для карточек
+        locationCardsData = FXCollections.observableArrayList();
+        for (Map.Entry<String, List<DeviceSummary>> entry : devicesByLocation.entrySet()) {
+            locationCardsData.add(new LocationCardData(entry.getKey(), entry.getValue()));
+        }
+
+        // Настройка фильтрованного списка
+        filteredCards = new FilteredList<>(locationCardsData, _ -> true);
+        cardsListView.setItems(filteredCards);
+    }
+
+    /**
+     * Применение изменений приборов без повторной загрузки галереи.
+     * Изменение прибора на месте обновляет только его карточку; добавление,
+     * удаление или перенос на другое место перестраивает группировку из памяти.
+     */
+    private void onDevicesChanged(List<DeviceStore.DeviceChange> changes) {
+        if (allDevices == null || devicesByLocation == null) return;
+
+        boolean regroup = false;
+        Set<String> changedLocations = new HashSet<>();
+        for (DeviceStore.DeviceChange change : changes) {
+            DeviceSummary summary = DeviceSummary.of(change.device());
+            DeviceSummary previous = allDevices.stream()
+                    .filter(d -> d.id() == summary.id())
+                    .findFirst()
+                    .orElse(null);
+            switch (change.type()) {
+                case ADDED -> {
+                    allDevices.add(summary);
+                    regroup = true;
+                }
+                case REMOVED -> {
+                    allDevices.removeIf(d -> d.id() == summary.id());
+                    regroup = true;
+                }
+                case UPDATED -> {
+                    if (previous == null
+                            || !Objects.equals(previous.location(), summary.location())
+                            || !Objects.equals(previous.valveNumber(), summary.valveNumber())) {
+                        allDevices.replaceAll(d -> d.id() == summary.id() ? summary : d);
+                        regroup = true;
+                    } else {
+                        updateDevicesByLocation(change.device());
+                        changedLocations.add(summary.location());
+                    }
+                }
+            }
+        }
+
+        if (regroup) {
+            buildLocationCards();
+            updateLocationFilter();
+            applyFilters();
+        } else {
+            changedLocations.forEach(this::updateLocationCardData);
+        }
+        updateStatistics();
+        cardsListView.refresh();
+    }
+
     /**
      * Добавление фото с callback для обновления данных
      */
@@ -575,27 +643,31 @@ public class PhotoGalleryController implements SearchableController {
     }
 
     /**
-     * Обновление данных в devicesByLocation
+     * Загружает полный прибор для строки галереи (при открытии или изменении фото)
+     */
+    private Device loadDevice(DeviceSummary summary) {
+        Device device = deviceDAO.getDeviceById(summary.id());
+        if (device == null) {
+            CustomAlertDialog.showError("Ошибка", "Прибор не найден — возможно, он был удалён");
+        }
+        return device;
+    }
+
+    /**
+     * Обновление данных в devicesByLocation и общем списке
      */
     private void updateDevicesByLocation(Device updatedDevice) {
         String location = updatedDevice.getLocation();
         if (location == null || location.trim().isEmpty()) return;
 
 
-        List<Device> devices = devicesByLocation.get(location);
+        List<DeviceSummary> devices = devicesByLocation.get(location);
         if (devices == null) return;
 
-
-        for (Device d : devices) {
-            if (d.getId() == updatedDevice.getId()) {
-                // Полное копирование данных
-                d.setPhotos(new ArrayList<>(updatedDevice.getPhotos()));
-                d.setName(updatedDevice.getName());
-                d.setInventoryNumber(updatedDevice.getInventoryNumber());
-                // ... другие поля при необходимости
-                break;
-            }
-        }
+        // Записи неизменяемые — заменяем строку прибора актуальной проекцией
+        DeviceSummary updated = DeviceSummary.of(updatedDevice);
+        devices.replaceAll(d -> d.id() == updated.id() ? updated : d);
+        allDevices.replaceAll(d -> d.id() == updated.id() ? updated : d);
     }
 
     private void updateLocationFilter() {
@@ -635,9 +707,9 @@ public class PhotoGalleryController implements SearchableController {
             if (!searchText.isEmpty()) {
                 boolean locationMatches = data.getLocation().toLowerCase().contains(searchText);
                 boolean deviceMatches = data.getDevices().stream().anyMatch(d ->
-                        (d.getName() != null && d.getName().toLowerCase().contains(searchText)) ||
-                                (d.getInventoryNumber() != null && d.getInventoryNumber().toLowerCase().contains(searchText)) ||
-                                (d.getType() != null && d.getType().toLowerCase().contains(searchText))
+                        (d.name() != null && d.name().toLowerCase().contains(searchText)) ||
+                                (d.inventoryNumber() != null && d.inventoryNumber().toLowerCase().contains(searchText)) ||
+                                (d.type() != null && d.type().toLowerCase().contains(searchText))
                 );
 
                 if (!locationMatches && !deviceMatches) {
@@ -676,15 +748,17 @@ public class PhotoGalleryController implements SearchableController {
         updateStatistics(); // Обновляем статистику после применения фильтров
     }
 
-    private void viewAllPhotosAtLocation(String location, List<Device> devices) {
+    private void viewAllPhotosAtLocation(String location, List<DeviceSummary> devices) {
         LOGGER.info("👁️ Просмотр всех фото в месте: {}", location);
 
         // Собираем PhotoEntry для каждого фото каждого прибора локации
+        // (полные приборы загружаются только для тех, у кого есть фото)
         List<PhotoViewer.PhotoEntry> entries = new ArrayList<>();
-        for (Device device : devices) {
-            List<String> devicePhotos = device.getPhotos();
-            if (devicePhotos == null || devicePhotos.isEmpty()) continue;
-            for (String photoName : devicePhotos) {
+        for (DeviceSummary summary : devices) {
+            if (summary.photoCount() == 0) continue;
+            Device device = deviceDAO.getDeviceById(summary.id());
+            if (device == null || device.getPhotos() == null) continue;
+            for (String photoName : device.getPhotos()) {
                 String fullPath = photoManager.getFullPhotoPath(device, photoName);
                 if (fullPath != null) {
                     entries.add(new PhotoViewer.PhotoEntry(device, photoName, fullPath));
@@ -742,7 +816,7 @@ public class PhotoGalleryController implements SearchableController {
 
 
             // Получаем актуальные устройства
-            List<Device> updatedDevices = devicesByLocation.get(location);
+            List<DeviceSummary> updatedDevices = devicesByLocation.get(location);
             if (updatedDevices == null) return;
 
 
@@ -888,31 +962,18 @@ public class PhotoGalleryController implements SearchableController {
 
         int totalLocations = devicesByLocation.size();
         int totalDevices = allDevices.size();
-        int totalPhotos = 0;
 
         // Общая статистика
-        for (Device device : allDevices) {
-            List<String> photos = device.getPhotos();
-            if (photos != null && !photos.isEmpty()) {
-                totalPhotos += photos.size();
-            }
+        if (locationsCountLabel != null) {
+            locationsCountLabel.setText(String.valueOf(totalLocations));
         }
-
-        // Создаем final копии для использования в лямбда-выражении
-        final int finalTotalLocations = totalLocations;
-        final int finalTotalDevices = totalDevices;
-        final int finalTotalPhotos = totalPhotos;
-
-        // Обновление общей статистики в UI потоке
-        Platform.runLater(() -> {
-            if (locationsCountLabel != null) {
-                locationsCountLabel.setText(String.valueOf(finalTotalLocations));
-            }
-            if (devicesCountLabel != null) {
-                devicesCountLabel.setText(String.valueOf(finalTotalDevices));
-            }
+        if (devicesCountLabel != null) {
+            devicesCountLabel.setText(String.valueOf(totalDevices));
+        }
+        // Количество фото — из сводки по приборам (счётчики device_stats)
+        AsyncDao.onFx(asyncDao.devices(DeviceDAO::getDeviceStats), stats -> {
             if (photosCountLabel != null) {
-                photosCountLabel.setText(String.valueOf(finalTotalPhotos));
+                photosCountLabel.setText(String.valueOf(stats.photoCount()));
             }
         });
 
@@ -1,14 +1,14 @@
 package com.kipia.management.kipia_management.controllers;
 
-import com.kipia.management.kipia_management.models.Device;
+import com.kipia.management.kipia_management.services.AsyncDao;
 import com.kipia.management.kipia_management.services.DeviceDAO;
 import com.kipia.management.kipia_management.services.DeviceReportService;
+import com.kipia.management.kipia_management.services.DeviceStore;
 import com.kipia.management.kipia_management.services.ExcelExportReportsService;
 import com.kipia.management.kipia_management.utils.CustomAlertDialog;
 import com.kipia.management.kipia_management.utils.LoadingIndicator;
 import com.kipia.management.kipia_management.utils.StyleUtils;
 import javafx.application.Platform;
-import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.layout.BorderPane;
@@ -23,6 +23,7 @@ import org.jfree.chart.fx.ChartViewer;
 import java.io.File;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class ReportsController {
 
@@ -43,7 +44,13 @@ public class ReportsController {
     private DeviceReportService reportService;
     private ExcelExportReportsService excelService;
     private Stage primaryStage;
-    private List<Device> allDevices;
+    private AsyncDao asyncDao;
+    // Данные текущего графика (значение → количество), они же экспортируются в Excel
+    private Map<String, Long> currentReportData = Map.of();
+    // Номер последнего запроса отчёта: ответы на устаревшие запросы отбрасываются
+    private int reportRequest;
+    // Подписка на изменения приборов (держится, пока жив контроллер)
+    private final DeviceStore.ChangeListener deviceChangeListener = this::onDevicesChanged;
     private ChartViewer currentChartViewer;
     
     // Индикатор загрузки
@@ -53,7 +60,8 @@ public class ReportsController {
         this.primaryStage = primaryStage;
         this.reportService = new DeviceReportService();
         this.excelService = new ExcelExportReportsService();
-        this.allDevices = deviceDAO.getAllDevices();
+        this.asyncDao = new AsyncDao(deviceDAO, null, null);
+        DeviceStore.subscribe(deviceDAO, deviceChangeListener);
         
         // Инициализация индикатора загрузки
         loadingIndicator = new LoadingIndicator("Генерация отчёта...");
@@ -94,43 +102,40 @@ public class ReportsController {
     private void loadDataAsync() {
         Platform.runLater(() -> loadingIndicator.show());
         
-        Task<Void> loadTask = new Task<>() {
-            @Override
-            protected Void call() throws Exception {
-                long startTime = System.currentTimeMillis();
-                
-                // Загрузка данных и генерация отчёта
-                Platform.runLater(() -> {
-                    setupRadioButtons();
-                    setupExportButton();
-                    generateReport();
-                });
-                
-                // Умная задержка (минимум 300 мс для отчётов)
-                long elapsedTime = System.currentTimeMillis() - startTime;
-                long minDisplayTime = 300;
-                
-                if (elapsedTime < minDisplayTime) {
-                    Thread.sleep(minDisplayTime - elapsedTime);
-                }
-                
-                return null;
+        String reportKey = getCurrentReportKey();
+        int request = ++reportRequest;
+        CompletableFuture<Map<String, Long>> load = asyncDao.devices(dao -> {
+            long startTime = System.currentTimeMillis();
+
+            // Подсчёт по выбранному критерию выполняется в SQL, приборы не загружаются
+            Map<String, Long> data = reportService.getReportData(dao, reportKey);
+
+            // Умная задержка (минимум 300 мс для отчётов)
+            long elapsedTime = System.currentTimeMillis() - startTime;
+            long minDisplayTime = 300;
+
+            if (elapsedTime < minDisplayTime) {
+                Thread.sleep(minDisplayTime - elapsedTime);
             }
-        };
-        
-        loadTask.setOnSucceeded(_ -> {
+
+            return data;
+        });
+
+        AsyncDao.onFx(load, data -> {
+            setupRadioButtons();
+            setupExportButton();
+            if (request == reportRequest) {
+                showReport(reportKey, data);
+            }
+
             showContentAfterLoad();
             loadingIndicator.hide();
-        });
-        
-        loadTask.setOnFailed(_ -> {
-            LOGGER.error("Ошибка генерации отчёта: {}", loadTask.getException().getMessage());
+        }, error -> {
+            LOGGER.error("Ошибка генерации отчёта: {}", error.getMessage(), error);
             CustomAlertDialog.showError("Ошибка", "Не удалось сгенерировать отчёт");
             showContentAfterLoad();
             loadingIndicator.hide();
         });
-        
-        new Thread(loadTask).start();
     }
     
     /**
@@ -160,7 +165,7 @@ public class ReportsController {
             File file = chooser.showSaveDialog(primaryStage);
             if (file == null) return;
 
-            boolean success = excelService.exportReport(allDevices, reportKey, file);
+            boolean success = excelService.exportReport(currentReportData, reportKey, file);
             if (success) {
                 CustomAlertDialog.showSuccess("Экспорт", "Отчёт " + reportKey + " экспортирован: " + file.getAbsolutePath());
             } else {
@@ -173,13 +178,6 @@ public class ReportsController {
         }
     }
     
-    /**
-     * Генерация отчёта
-     */
-    private void generateReport() {
-        updateReport();
-    }
-
     // Метод для обновления темы существующего графика
     public void refreshTheme() {
         boolean isDarkTheme = isDarkThemeActive();
@@ -188,12 +186,33 @@ public class ReportsController {
         }
     }
 
+    /**
+     * Изменения приборов — пересчёт текущего отчёта
+     */
+    private void onDevicesChanged(List<DeviceStore.DeviceChange> changes) {
+        updateReport();
+    }
+
+    /**
+     * Запрашивает подсчёт по выбранному критерию в фоне и перестраивает график
+     */
     private void updateReport() {
         String reportKey = getCurrentReportKey();
         if (reportKey.isEmpty()) return;
 
+        int request = ++reportRequest;
+        AsyncDao.onFx(asyncDao.devices(dao -> reportService.getReportData(dao, reportKey)), data -> {
+            if (request == reportRequest) {
+                showReport(reportKey, data);
+            }
+        }, error -> LOGGER.error("Ошибка генерации отчёта {}: {}", reportKey, error.getMessage(), error));
+    }
+
+    private void showReport(String reportKey, Map<String, Long> dataMap) {
+        if (!reportKey.equals(getCurrentReportKey())) return;
+        currentReportData = dataMap;
+
         titleLabel.setText("Отчёт по устройствам — " + getCurrentReportLabel());
-        Map<String, Long> dataMap = reportService.getReportData(allDevices, reportKey);
 
         boolean isDarkTheme = isDarkThemeActive();
 
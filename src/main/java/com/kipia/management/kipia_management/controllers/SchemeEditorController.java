@@ -13,7 +13,6 @@ import com.kipia.management.kipia_management.utils.StyleUtils;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.geometry.Point2D;
 import javafx.scene.control.*;
@@ -30,7 +29,8 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Контроллер редактора схем с оптимизированной архитектурой фигур.
@@ -74,7 +74,6 @@ public class SchemeEditorController implements SearchableController {
 
     private static final Logger LOGGER = LogManager.getLogger(SchemeEditorController.class);
     private static final Gson gson = new GsonBuilder()
-            .setPrettyPrinting()
             .create();
     private DeviceDAO deviceDAO;
     private SchemeDAO schemeDAO;
@@ -83,6 +82,12 @@ public class SchemeEditorController implements SearchableController {
     private ShapeService shapeService;
     private DeviceIconService deviceIconService;
     private SchemeSaver schemeSaver;
+    // Обращения к БД — в фоне, результат применяется в потоке JavaFX
+    private AsyncDao asyncDao;
+    // Чтение приборов открываемой схемы (отменяется при переключении на другую)
+    private CompletableFuture<List<PlacedDevice>> schemeDevicesLoad;
+    // Фоновое чтение данных открываемой схемы
+    private CompletableFuture<?> schemeDataLoad;
 
     // Индикатор загрузки
     private LoadingIndicator loadingIndicator;
@@ -92,11 +97,17 @@ public class SchemeEditorController implements SearchableController {
     // ============================================================
 
     private Scheme currentScheme;
-    private ObservableList<Device> deviceList;
+    private ObservableList<DeviceSummary> deviceList;
+    // Подписка на изменения приборов в других экранах (держится, пока жив контроллер)
+    private final DeviceStore.ChangeListener deviceChangeListener = this::onDevicesChanged;
     private ShapeManager.Tool currentTool = null;
     private ObservableList<Scheme> allSchemes; // Полный список схем для фильтрации
     private ComboBox<Scheme> externalSchemeFilter; // Ссылка на ComboBox из MainController
 
+    // Данные, читаемые при открытии редактора
+    private record EditorData(List<DeviceSummary> devices, List<Scheme> schemes) {
+    }
+
     // ============================================================
     // CANVAS STATE
     // ============================================================
@@ -165,6 +176,7 @@ public class SchemeEditorController implements SearchableController {
     public void init() {
         try {
             validateDAODependencies();
+            asyncDao = new AsyncDao(deviceDAO, schemeDAO, deviceLocationDAO);
 
             // Инициализация индикатора загрузки
             loadingIndicator = new LoadingIndicator("Загрузка схемы...");
@@ -207,45 +219,38 @@ public class SchemeEditorController implements SearchableController {
     private void loadDataAsync() {
         Platform.runLater(() -> loadingIndicator.show());
 
-        Task<Void> loadTask = new Task<>() {
-            @Override
-            protected Void call() throws Exception {
-                long startTime = System.currentTimeMillis();
-
-                // Инициализация сервисов и загрузка данных
-                Platform.runLater(() -> {
-                    initializeServices();
-                    loadInitialData();
-                    setupInitialScheme();
-                    statusLabel.setText("Готов - выберите инструмент или работайте с фигурами");
-                    refreshAvailableDevices();
-                });
+        CompletableFuture<EditorData> load = asyncDao.supply(() -> {
+            long startTime = System.currentTimeMillis();
 
-                // Умная задержка
-                long elapsedTime = System.currentTimeMillis() - startTime;
-                long minDisplayTime = 500;
+            // Загрузка приборов и схем (недостающие схемы создаются)
+            EditorData data = new EditorData(readDevices(), readSchemes());
 
-                if (elapsedTime < minDisplayTime) {
-                    Thread.sleep(minDisplayTime - elapsedTime);
-                }
+            // Умная задержка
+            long elapsedTime = System.currentTimeMillis() - startTime;
+            long minDisplayTime = 500;
 
-                return null;
+            if (elapsedTime < minDisplayTime) {
+                Thread.sleep(minDisplayTime - elapsedTime);
             }
-        };
 
-        loadTask.setOnSucceeded(_ -> {
-            showContentAfterLoad();
-            loadingIndicator.hide();
+            return data;
         });
 
-        loadTask.setOnFailed(_ -> {
-            LOGGER.error("Ошибка загрузки схемы: {}", loadTask.getException().getMessage());
+        AsyncDao.onFx(load, data -> {
+            initializeServices();
+            loadInitialData(data);
+            setupInitialScheme();
+            statusLabel.setText("Готов - выберите инструмент или работайте с фигурами");
+            refreshAvailableDevices();
+
+            showContentAfterLoad();
+            loadingIndicator.hide();
+        }, error -> {
+            LOGGER.error("Ошибка загрузки схемы: {}", error.getMessage(), error);
             CustomAlertDialog.showError("Ошибка", "Не удалось загрузить схему");
             showContentAfterLoad();
             loadingIndicator.hide();
         });
-
-        new Thread(loadTask).start();
     }
 
     /**
@@ -301,16 +306,17 @@ public class SchemeEditorController implements SearchableController {
 
         // Устанавливаем размеры канваса из схемы (если есть)
         if (currentScheme != null) {
-            loadCanvasStateFromScheme(currentScheme);
+            loadCanvasStateFromScheme(currentScheme.getData());
         }
     }
 
     /**
      * Загрузка начальных данных
      */
-    private void loadInitialData() {
-        loadDevices();
-        loadSchemes();
+    private void loadInitialData(EditorData data) {
+        showDevices(data.devices());
+        updateSchemeComboBox(data.schemes());
+        DeviceStore.subscribe(deviceDAO, deviceChangeListener);
     }
 
     // ============================================================
@@ -708,53 +714,63 @@ public class SchemeEditorController implements SearchableController {
     }
 
     /**
-     * Загрузка списка устройств
+     * Чтение списка устройств (только колонки для выбора прибора;
+     * полный прибор загружается при добавлении на схему). Выполняется в фоне.
      */
-    private void loadDevices() {
-        deviceList = FXCollections.observableArrayList(deviceDAO.getAllDevices());
+    private List<DeviceSummary> readDevices() {
+        return deviceDAO.getDeviceSummaries(EnumSet.of(
+                DeviceSummary.Column.NAME, DeviceSummary.Column.INVENTORY_NUMBER,
+                DeviceSummary.Column.VALVE_NUMBER, DeviceSummary.Column.LOCATION));
+    }
+
+    private void showDevices(List<DeviceSummary> devices) {
+        deviceList = FXCollections.observableArrayList(devices);
         LOGGER.info("Загружено {} устройств", deviceList.size());
     }
 
     /**
-     * Загрузка списка схем на основе уникальных расположений устройств
+     * Применение изменений приборов к списку выбора без повторного чтения всех приборов
      */
-    private void loadSchemes() {
+    private void onDevicesChanged(List<DeviceStore.DeviceChange> changes) {
+        if (deviceList == null) return;
+        for (DeviceStore.DeviceChange change : changes) {
+            DeviceSummary summary = DeviceSummary.of(change.device());
+            switch (change.type()) {
+                case ADDED -> deviceList.add(summary);
+                case UPDATED -> deviceList.replaceAll(d -> d.id() == summary.id() ? summary : d);
+                case REMOVED -> deviceList.removeIf(d -> d.id() == summary.id());
+            }
+        }
+        refreshAvailableDevices();
+    }
+
+    /**
+     * Чтение списка схем на основе уникальных расположений устройств.
+     * Схемы читаются без данных — данные загружаются при открытии схемы.
+     * Выполняется в фоне.
+     */
+    private List<Scheme> readSchemes() {
         List<String> locations = deviceDAO.getDistinctLocations();
-        createOrLoadSchemes(locations);
+        createMissingSchemes(locations);
 
         // ⭐⭐ НОВОЕ: Загружаем ВСЕ схемы из БД (включая без приборов) ⭐⭐
-        List<Scheme> allSchemes = schemeDAO.getAllSchemes();
-        updateSchemeComboBox(allSchemes);
+        return schemeDAO.getSchemeHeaders();
     }
 
     /**
-     * Создание или загрузка схем для указанных расположений
+     * Создание схем для расположений, у которых схемы ещё нет
      */
-    private void createOrLoadSchemes(List<String> locations) {
-        List<Scheme> schemes = new ArrayList<>();
+    private void createMissingSchemes(List<String> locations) {
         for (String location : locations) {
-            Scheme scheme = findOrCreateScheme(location);
-            if (scheme != null) {
-                schemes.add(scheme);
+            if (schemeDAO.hasScheme(location)) {
+                continue;
             }
-        }
-    }
-
-    /**
-     * Поиск или создание схемы для указанного расположения
-     */
-    private Scheme findOrCreateScheme(String location) {
-        Scheme scheme = schemeDAO.findSchemeByName(location);
-        if (scheme == null) {
-            scheme = createAutoScheme(location);
-            if (schemeDAO.addScheme(scheme)) {
+            if (schemeDAO.addScheme(createAutoScheme(location))) {
                 LOGGER.info("Создана автоматическая схема для: {}", location);
             } else {
                 LOGGER.warn("Не удалось создать схему для: {}", location);
-                return null;
             }
         }
-        return scheme;
     }
 
     /**
@@ -804,7 +820,7 @@ public class SchemeEditorController implements SearchableController {
         if (currentScheme == null || deviceList == null) return false;
         String schemeName = currentScheme.getName();
         return deviceList.stream()
-                .anyMatch(dev -> schemeName.equals(dev.getLocation()));
+                .anyMatch(dev -> schemeName.equals(dev.location()));
     }
 
     /**
@@ -938,11 +954,21 @@ public class SchemeEditorController implements SearchableController {
     }
 
     /**
-     * Загрузить состояние канваса из схемы
+     * Загрузить состояние канваса из JSON схемы
      */
-    private void loadCanvasStateFromScheme(Scheme scheme) {
+    private void loadCanvasStateFromScheme(String schemeJson) {
+        try {
+            loadCanvasStateFromScheme(schemeJson != null ? gson.fromJson(schemeJson, SchemeData.class) : null);
+        } catch (Exception e) {
+            LOGGER.warn("Не удалось загрузить настройки канваса из схемы: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Загрузить состояние канваса из разобранных данных схемы
+     */
+    private void loadCanvasStateFromScheme(SchemeData schemeData) {
         try {
-            SchemeData schemeData = gson.fromJson(scheme.getData(), SchemeData.class);
             if (schemeData != null) {
                 canvasState.setWidth(schemeData.getWidth());
                 canvasState.setHeight(schemeData.getHeight());
@@ -1116,15 +1142,58 @@ public class SchemeEditorController implements SearchableController {
         // СОХРАНЯЕМ текущую схему перед загрузкой новой
         if (currentScheme != null && !currentScheme.equals(scheme)) {
             boolean hadChanges = schemeSaver.isDirty();
-            if (!schemeSaver.saveBeforeSchemeChange(currentScheme)) {
-                CustomAlertDialog.showError("Ошибка сохранения", "Не удалось сохранить текущую схему. Смена схемы отменена.");
-                return;
-            }
-            if (hadChanges) {
-                CustomAlertDialog.showSaveNotification("Автосохранение", 1.5);
-            }
+            AsyncDao.onFx(schemeSaver.saveBeforeSchemeChange(currentScheme), saved -> {
+                if (!saved) {
+                    CustomAlertDialog.showError("Ошибка сохранения", "Не удалось сохранить текущую схему. Смена схемы отменена.");
+                    return;
+                }
+                if (hadChanges) {
+                    CustomAlertDialog.showSaveNotification("Автосохранение", 1.5);
+                }
+                openScheme(scheme);
+            });
+            return;
+        }
+        openScheme(scheme);
+    }
+
+    /**
+     * Читает данные схемы в фоне (из кэша разобранных схем, распаковкой или
+     * сборкой из scheme_shapes) и показывает её
+     */
+    private void openScheme(Scheme scheme) {
+        if (schemeDataLoad != null) {
+            schemeDataLoad.cancel(true);
         }
+        CompletableFuture<SchemeData> load = asyncDao.schemes(dao -> dao.getShapeDAO().loadSchemeData(scheme));
+        schemeDataLoad = load;
+        AsyncDao.onFx(load, data -> {
+                    if (data != null) {
+                        showScheme(scheme, data, null);
+                    } else {
+                        openLegacyScheme(scheme);
+                    }
+                },
+                error -> handleSchemeLoadError(scheme, error instanceof Exception e ? e : new RuntimeException(error)));
+    }
 
+    /**
+     * Данные схемы не в формате JSON (старый pipe-формат) — фигуры строятся из текста
+     */
+    private void openLegacyScheme(Scheme scheme) {
+        CompletableFuture<String> load = asyncDao.schemes(dao -> dao.getShapeDAO().loadSchemeJson(scheme));
+        schemeDataLoad = load;
+        AsyncDao.onFx(load, json -> showScheme(scheme, null, json),
+                error -> handleSchemeLoadError(scheme, error instanceof Exception e ? e : new RuntimeException(error)));
+    }
+
+    /**
+     * Отображение схемы: фигуры строятся сразу, приборы — после чтения из БД
+     *
+     * @param schemeData разобранные данные схемы
+     * @param legacyData данные старого формата, если schemeData нет
+     */
+    private void showScheme(Scheme scheme, SchemeData schemeData, String legacyData) {
         try {
             if (shapeManager != null) {
                 shapeManager.startLoading();
@@ -1134,22 +1203,25 @@ public class SchemeEditorController implements SearchableController {
             deviceIconService.setCurrentScheme(scheme);
 
             // Загружаем настройки канваса из схемы
-            loadCanvasStateFromScheme(scheme);
+            if (schemeData != null) {
+                loadCanvasStateFromScheme(schemeData);
+            } else {
+                loadCanvasStateFromScheme(legacyData);
+            }
 
             // Очищаем и обновляем отображение канваса
             clearSchemePane();
             updateCanvasDisplay();
 
-            // Загружаем фигуры и устройства
-            loadSchemeContent(scheme);
+            // Загружаем фигуры; приборы добавятся после чтения из БД
+            loadShapesFromScheme(schemeData, legacyData);
+            loadDevicesFromScheme(scheme);
 
             // Сбрасываем вид
             resetView();
 
-            refreshAvailableDevices();
             schemeSaver.resetDirty(); // свежезагруженная схема — изменений нет
-            statusLabel.setText("Загружена схема: " + scheme.getName() +
-                    " (" + (int) canvasState.getWidth() + "x" + (int) canvasState.getHeight() + ")");
+            statusLabel.setText("Загрузка приборов схемы: " + scheme.getName() + "...");
 
             updateSchemeTimestamp(currentScheme);
             updateDeleteButtonState();
@@ -1163,14 +1235,6 @@ public class SchemeEditorController implements SearchableController {
         }
     }
 
-    /**
-     * Загрузка содержимого схемы
-     */
-    private void loadSchemeContent(Scheme scheme) {
-        loadShapesFromScheme(scheme);
-        loadDevicesFromScheme(scheme);
-    }
-
     /**
      * Очистка панели схемы
      */
@@ -1179,6 +1243,8 @@ public class SchemeEditorController implements SearchableController {
         shapeManager.deselectShape();
         shapeManager.clearUndoRedo();
         shapeService.removeAllShapes();
+        // Удаление фигур старой схемы с панели — не правка
+        shapeService.clearChanges();
     }
 
     /**
@@ -1194,9 +1260,7 @@ public class SchemeEditorController implements SearchableController {
 
         try {
             if (currentScheme != null) {
-                if (deviceLocationDAO != null) {
-                    deviceLocationDAO.deleteAllLocationsForScheme(currentScheme.getId());
-                }
+                Scheme scheme = currentScheme;
 
                 // Сохраняем пустую JSON структуру с настройками канваса
                 SchemeData emptyData = new SchemeData();
@@ -1205,13 +1269,25 @@ public class SchemeEditorController implements SearchableController {
                 emptyData.setGridEnabled(canvasState.isShowGrid());
                 emptyData.setGridSize(canvasState.getGridSize());
 
-                currentScheme.setData(gson.toJson(emptyData));
-                currentScheme.updateTimestamp();
+                scheme.setData(gson.toJson(emptyData));
+                scheme.updateTimestamp();
 
-                if (schemeDAO != null) {
-                    schemeDAO.updateScheme(currentScheme);
-                    updateSchemeTimestamp(currentScheme);
-                }
+                CompletableFuture<Void> clear = AsyncDao.writeInOrder(() -> {
+                    if (deviceLocationDAO != null) {
+                        deviceLocationDAO.deleteAllLocationsForScheme(scheme.getId());
+                    }
+                    if (schemeDAO != null) {
+                        schemeDAO.updateScheme(scheme);
+                    }
+                    return null;
+                });
+                AsyncDao.onFx(clear, _ -> {
+                    updateSchemeTimestamp(scheme);
+                    refreshAvailableDevices();
+                }, error -> {
+                    LOGGER.error("Ошибка при очистке схемы: {}", error.getMessage(), error);
+                    CustomAlertDialog.showError("Ошибка", "Не удалось полностью очистить схему: " + error.getMessage());
+                });
             }
 
             // ✅ Включаем режим загрузки для очистки
@@ -1256,18 +1332,22 @@ public class SchemeEditorController implements SearchableController {
         if (!confirm) return;
 
         ClipboardManager.clearForNewScheme();
-        try {
-            int schemeId = currentScheme.getId();
-            String schemeName = currentScheme.getName();
+        int schemeId = currentScheme.getId();
+        String schemeName = currentScheme.getName();
+        CompletableFuture<List<Scheme>> delete = AsyncDao.writeInOrder(() -> {
             if (deviceLocationDAO != null) {
                 deviceLocationDAO.deleteAllLocationsForScheme(schemeId);
             }
-            boolean deleted = schemeDAO.deleteScheme(schemeId);
-            if (deleted) {
+            // null — схема не удалена
+            return schemeDAO.deleteScheme(schemeId) ? readSchemes() : null;
+        });
+
+        AsyncDao.onFx(delete, schemes -> {
+            if (schemes != null) {
                 LOGGER.info("✅ Схема удалена: {} (ID={})", schemeName, schemeId);
                 clearSchemePane();
                 currentScheme = null;
-                loadSchemes();
+                updateSchemeComboBox(schemes);
                 if (!schemeComboBox.getItems().isEmpty()) {
                     schemeComboBox.getSelectionModel().selectFirst();
                     // Синхронизируем внешний ComboBox
@@ -1279,10 +1359,10 @@ public class SchemeEditorController implements SearchableController {
             } else {
                 CustomAlertDialog.showError("Ошибка", "Не удалось удалить схему");
             }
-        } catch (Exception e) {
-            LOGGER.error("❌ Ошибка при удалении схемы: {}", e.getMessage(), e);
+        }, error -> {
+            LOGGER.error("❌ Ошибка при удалении схемы: {}", error.getMessage(), error);
             CustomAlertDialog.showError("Ошибка", "Произошла ошибка при удалении схемы");
-        }
+        });
     }
 
     /**
@@ -1304,9 +1384,9 @@ public class SchemeEditorController implements SearchableController {
     }
 
     /**
-     * Загрузка фигур из схемы (JSON формат)
+     * Загрузка фигур из данных схемы
      */
-    private void loadShapesFromScheme(Scheme scheme) {
+    private void loadShapesFromScheme(SchemeData schemeData, String legacyData) {
         statusLabel.setText("Очистка старых фигур...");
 
         // Очищаем существующие фигуры
@@ -1324,14 +1404,14 @@ public class SchemeEditorController implements SearchableController {
             }
         }
 
-        String schemeData = scheme.getData();
-        if (schemeData == null || schemeData.trim().isEmpty() || schemeData.equals("{}")) {
+        if (schemeData != null) {
+            shapeService.addAll(schemeData);
+        } else if (legacyData == null || legacyData.trim().isEmpty() || legacyData.equals("{}")) {
             LOGGER.info("Схема пуста");
             return;
+        } else {
+            shapeService.deserializeAndAddAll(legacyData);
         }
-
-        // Загружаем через новый JSON метод
-        shapeService.deserializeAndAddAll(schemeData);
         shapeService.applyCanvasBoundsToAll(canvasState.getWidth(), canvasState.getHeight()); // <- добавить
 
         LOGGER.info("Загружено фигур: {}", shapeService.getShapeCount());
@@ -1341,19 +1421,45 @@ public class SchemeEditorController implements SearchableController {
      * Загрузка устройств из схемы
      */
     private void loadDevicesFromScheme(Scheme scheme) {
-        List<DeviceLocation> locations = deviceLocationDAO.getLocationsBySchemeId(scheme.getId());
-        for (DeviceLocation location : locations) {
-            Device device = deviceDAO.getDeviceById(location.getDeviceId());
-            if (device != null) {
-                Node deviceNode = deviceIconService.createDeviceIcon(
-                        location.getX(), location.getY(), device, currentScheme
-                );
-                deviceNode.setRotate(location.getRotation());
-                schemePane.getChildren().add(deviceNode);
+        if (schemeDevicesLoad != null) {
+            schemeDevicesLoad.cancel(true);
+        }
+        CompletableFuture<List<PlacedDevice>> load =
+                asyncDao.devices(dao -> dao.getPlacedDevices(scheme.getId()));
+        schemeDevicesLoad = load;
+
+        AsyncDao.onFx(load, placed -> {
+            // Пока читали, переключились на другую схему
+            if (load != schemeDevicesLoad || currentScheme != scheme) return;
+            schemeDevicesLoad = null;
+            shapeManager.startLoading();
+            try {
+                // Узлы собираются в список и добавляются на панель одним вызовом —
+                // одно событие изменения списка детей вместо события на каждый прибор
+                List<Node> deviceNodes = new ArrayList<>(placed.size());
+                for (PlacedDevice entry : placed) {
+                    DeviceLocation location = entry.location();
+                    Node deviceNode = deviceIconService.createDeviceIcon(
+                            location.getX(), location.getY(), entry.device(), currentScheme
+                    );
+                    deviceNode.setRotate(location.getRotation());
+                    deviceNodes.add(deviceNode);
+                }
+                schemePane.getChildren().addAll(deviceNodes);
+                schemeSaver.resetDirty();
+            } finally {
+                shapeManager.finishLoading();
             }
-        }
 
-        LOGGER.info("Загружено {} устройств на схему", locations.size());
+            refreshAvailableDevices();
+            statusLabel.setText("Загружена схема: " + scheme.getName() +
+                    " (" + (int) canvasState.getWidth() + "x" + (int) canvasState.getHeight() + ")");
+            LOGGER.info("Загружено {} устройств на схему", placed.size());
+        }, error -> {
+            if (load == schemeDevicesLoad) {
+                handleSchemeLoadError(scheme, error instanceof Exception e ? e : new RuntimeException(error));
+            }
+        });
     }
 
     /**
@@ -1395,35 +1501,39 @@ public class SchemeEditorController implements SearchableController {
         }
 
         // Просто логируем информацию о доступных приборах
-        String selectedSchemeName = currentScheme.getName();
-        List<Integer> usedDeviceIds = getUsedDeviceIds();
-        List<Integer> currentSchemeDeviceIds = getCurrentSchemeDeviceIds();
-        deviceList.stream()
-                .filter(device -> selectedSchemeName.equals(device.getLocation()))
-                .filter(device -> !usedDeviceIds.contains(device.getId()))
-                .filter(device -> !currentSchemeDeviceIds.contains(device.getId()))
-                .count();
+        if (LOGGER.isDebugEnabled()) {
+            String schemeName = currentScheme.getName();
+            AsyncDao.onFx(loadAvailableDevices(), available ->
+                    LOGGER.debug("Доступно приборов для схемы '{}': {}", schemeName, available.size()));
+        }
 
         updateDeleteButtonState();
     }
 
     /**
-     * Получение ID устройств, используемых на других схемах
+     * Приборы с местом установки, равным имени текущей схемы, которые ещё
+     * не размещены ни на одной схеме. Привязки читаются в фоне.
      */
-    private List<Integer> getUsedDeviceIds() {
-        return deviceLocationDAO.getAllLocations().stream()
-                .filter(location -> location.getSchemeId() != currentScheme.getId())
-                .map(DeviceLocation::getDeviceId)
-                .collect(Collectors.toList());
-    }
+    private CompletableFuture<List<DeviceSummary>> loadAvailableDevices() {
+        if (deviceList == null || deviceList.isEmpty() || currentScheme == null) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
 
-    /**
-     * Получение ID устройств на текущей схеме
-     */
-    private List<Integer> getCurrentSchemeDeviceIds() {
-        return deviceLocationDAO.getLocationsBySchemeId(currentScheme.getId()).stream()
-                .map(DeviceLocation::getDeviceId)
-                .collect(Collectors.toList());
+        String selectedSchemeName = currentScheme.getName();
+        List<DeviceSummary> candidates = deviceList.stream()
+                .filter(device -> selectedSchemeName.equals(device.location()))
+                .toList();
+
+        return asyncDao.locations(dao -> {
+            // Прибор может стоять только на одной схеме — текущей или другой
+            Set<Integer> placedDeviceIds = new HashSet<>();
+            for (DeviceLocation location : dao.getAllLocations()) {
+                placedDeviceIds.add(location.getDeviceId());
+            }
+            return candidates.stream()
+                    .filter(device -> !placedDeviceIds.contains(device.id()))
+                    .toList();
+        });
     }
 
     /**
@@ -1599,9 +1709,9 @@ public class SchemeEditorController implements SearchableController {
         // Делаем пункты активными/неактивными в зависимости от условий
         pasteItem.setDisable(!ClipboardManager.hasShapeData());
 
-        // Проверяем есть ли доступные приборы для текущей схемы
-        List<Device> availableDevices = getAvailableDevicesForCurrentScheme();
-        addDeviceItem.setDisable(availableDevices.isEmpty());
+        // Проверяем есть ли доступные приборы для текущей схемы (пункт включится после проверки)
+        addDeviceItem.setDisable(true);
+        AsyncDao.onFx(loadAvailableDevices(), available -> addDeviceItem.setDisable(available.isEmpty()));
 
         contextMenu.getItems().addAll(pasteItem, addDeviceItem);
 
@@ -1706,11 +1816,17 @@ public class SchemeEditorController implements SearchableController {
         }
 
         // Показываем красивый диалог выбора прибора
-        Device selectedDevice = showDeviceSelectionDialog();
-        if (selectedDevice == null) {
-            return; // Пользователь отменил выбор
-        }
+        AsyncDao.onFx(loadAvailableDevices(), available -> showDeviceSelectionDialog(available, selectedDevice -> {
+            if (selectedDevice != null) {
+                placeDeviceAt(selectedDevice, x, y);
+            }
+        }));
+    }
 
+    /**
+     * Размещение выбранного прибора на схеме
+     */
+    private void placeDeviceAt(Device selectedDevice, double x, double y) {
         try {
             if (deviceIconService != null) {
                 // Проверяем, что точка внутри канваса
@@ -1735,20 +1851,27 @@ public class SchemeEditorController implements SearchableController {
                         DeviceLocation location = new DeviceLocation(
                                 selectedDevice.getId(), currentScheme.getId(), x, y
                         );
-                        boolean added = deviceLocationDAO.addDeviceLocation(location);
-                        if (added) {
-                            selectedDevice.updateTimestamp();
-                            deviceDAO.updateDevice(selectedDevice);
-                            if (schemeSaver != null) {
-                                schemeSaver.markDirty();
-                                // Обновляем индикатор в UI
-                                updateSchemeTimestamp(currentScheme);
-                                statusLabel.setText("Прибор добавлен: " + selectedDevice.getName());
+                        selectedDevice.updateTimestamp();
+                        Device snapshot = new Device(selectedDevice);
+                        CompletableFuture<Boolean> save = AsyncDao.writeInOrder(() -> {
+                            boolean added = deviceLocationDAO.addDeviceLocation(location);
+                            if (added) {
+                                deviceDAO.updateDevice(snapshot);
                             }
-                        }
-                        if (!added) {
-                            CustomAlertDialog.showError("Ошибка", "Не удалось сохранить прибор в базу данных");
-                        }
+                            return added;
+                        });
+                        AsyncDao.onFx(save, added -> {
+                            if (added) {
+                                if (schemeSaver != null) {
+                                    schemeSaver.markDirty();
+                                    // Обновляем индикатор в UI
+                                    updateSchemeTimestamp(currentScheme);
+                                    statusLabel.setText("Прибор добавлен: " + selectedDevice.getName());
+                                }
+                            } else {
+                                CustomAlertDialog.showError("Ошибка", "Не удалось сохранить прибор в базу данных");
+                            }
+                        });
                     }
 
                     refreshAvailableDevices();
@@ -1765,35 +1888,28 @@ public class SchemeEditorController implements SearchableController {
     }
 
     /**
-     * Кастомный диалог выбора прибора с красивым отображением
+     * Кастомный диалог выбора прибора с красивым отображением.
+     * Полный прибор загружается из БД (в фоне) только для выбранной строки.
+     *
+     * @param available доступные приборы для текущей схемы
+     * @param onSelected получает выбранный прибор; не вызывается, если выбор отменён
      */
-    private Device showDeviceSelectionDialog() {
-        // Получаем доступные приборы для текущей схемы
-        List<Device> available = getAvailableDevicesForCurrentScheme();
+    private void showDeviceSelectionDialog(List<DeviceSummary> available, Consumer<Device> onSelected) {
         if (available.isEmpty()) {
             CustomAlertDialog.showWarning("Выбор прибора", "Нет доступных приборов для текущей схемы!");
-            return null;
+            return;
         }
-        return CustomAlertDialog.showDeviceSelection(available);
-    }
-
-    /**
-     * Получение доступных приборов для текущей схемы
-     */
-    private List<Device> getAvailableDevicesForCurrentScheme() {
-        if (deviceList == null || deviceList.isEmpty() || currentScheme == null) {
-            return new ArrayList<>();
+        DeviceSummary selected = CustomAlertDialog.showDeviceSelection(available);
+        if (selected == null) {
+            return; // Пользователь отменил выбор
         }
-
-        String selectedSchemeName = currentScheme.getName();
-        List<Integer> usedDeviceIds = getUsedDeviceIds();
-        List<Integer> currentSchemeDeviceIds = getCurrentSchemeDeviceIds();
-
-        return deviceList.stream()
-                .filter(device -> selectedSchemeName.equals(device.getLocation()))
-                .filter(device -> !usedDeviceIds.contains(device.getId()))
-                .filter(device -> !currentSchemeDeviceIds.contains(device.getId()))
-                .collect(Collectors.toList());
+        AsyncDao.onFx(asyncDao.devices(dao -> dao.getDeviceById(selected.id())), device -> {
+            if (device == null) {
+                CustomAlertDialog.showWarning("Выбор прибора", "Прибор не найден — возможно, он был удалён");
+                return;
+            }
+            onSelected.accept(device);
+        });
     }
 
     /**
@@ -1882,10 +1998,13 @@ public class SchemeEditorController implements SearchableController {
      * Обновление списков схем и устройств
      */
     public void refreshSchemesAndDevices() {
-        loadSchemes();
-        loadDevices();
-        refreshAvailableDevices();
-        LOGGER.info("Списки схем и устройств обновлены");
+        if (asyncDao == null) return;
+        AsyncDao.onFx(asyncDao.supply(() -> new EditorData(readDevices(), readSchemes())), data -> {
+            updateSchemeComboBox(data.schemes());
+            showDevices(data.devices());
+            refreshAvailableDevices();
+            LOGGER.info("Списки схем и устройств обновлены");
+        });
     }
 
     // ============================================================
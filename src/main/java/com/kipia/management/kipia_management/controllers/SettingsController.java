@@ -2,25 +2,34 @@ package com.kipia.management.kipia_management.controllers;
 
 import com.kipia.management.kipia_management.managers.SyncManager;
 import com.kipia.management.kipia_management.models.Device;
+import com.kipia.management.kipia_management.services.DatabaseMaintenance;
 import com.kipia.management.kipia_management.services.DeviceDAO;
+import com.kipia.management.kipia_management.services.QueryStats;
 import com.kipia.management.kipia_management.utils.CustomAlertDialog;
 import com.kipia.management.kipia_management.utils.ExcelImportExportUtil;
 import com.kipia.management.kipia_management.utils.LoadingIndicator;
 import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.*;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.function.Function;
 
 /**
  * Контроллер экрана настроек
@@ -40,8 +49,16 @@ public class SettingsController {
     @FXML private Button    importExcelBtn;
     @FXML private Label     lastExportTimeLabel;
     @FXML private Label     lastImportTimeLabel;
+    @FXML private Button    maintenanceBtn;
+    @FXML private Label     maintenanceInfoLabel;
+    @FXML private Label     queryStatsLabel;
+    @FXML private VBox      queryStatsBox;
+    @FXML private TableView<QueryStats.Entry> methodStatsTable;
+    @FXML private TableView<QueryStats.Entry> statementStatsTable;
+    @FXML private Button    dumpQueryStatsBtn;
 
     private SyncManager    syncManager;
+    private DatabaseMaintenance databaseMaintenance;
     private DeviceDAO      deviceDAO;
     private Runnable       onDataChanged;
     private MainController mainController;
@@ -66,6 +83,10 @@ public class SettingsController {
         LOGGER.info("✅ DeviceDAO установлен в SettingsController");
     }
 
+    public void setDatabaseMaintenance(DatabaseMaintenance databaseMaintenance) {
+        this.databaseMaintenance = databaseMaintenance;
+    }
+
     public void setOnDataChanged(Runnable onDataChanged) {
         this.onDataChanged = onDataChanged;
     }
@@ -87,6 +108,10 @@ public class SettingsController {
         hideContentBeforeLoad();
         loadDataAsync();
         loadTimestamps();
+        loadMaintenanceInfo();
+        setupQueryStatsTable(methodStatsTable, "Операция DAO");
+        setupQueryStatsTable(statementStatsTable, "Запрос");
+        refreshQueryStats();
     }
 
     private void hideContentBeforeLoad() {
@@ -482,7 +507,204 @@ public class SettingsController {
             importDbBtn.setDisable(disabled);
             exportExcelBtn.setDisable(disabled);
             importExcelBtn.setDisable(disabled);
+            maintenanceBtn.setDisable(disabled);
+            dumpQueryStatsBtn.setDisable(disabled);
+        });
+    }
+
+    // ---------------------------------------------------------
+    //  Обслуживание БД
+    // ---------------------------------------------------------
+
+    /**
+     * Обслуживание БД по кнопке: проход выполняется в фоновом потоке,
+     * затем сведения о БД обновляются.
+     */
+    @FXML
+    private void runMaintenance() {
+        if (databaseMaintenance == null) {
+            CustomAlertDialog.showError("Ошибка", "Обслуживание БД не инициализировано");
+            return;
+        }
+        setButtonsDisabled(true);
+        operationInProgress = true;
+        maintenanceInfoLabel.setText("Выполняется обслуживание базы данных...");
+
+        Task<DatabaseMaintenance.Report> task = new Task<>() {
+            @Override
+            protected DatabaseMaintenance.Report call() {
+                return databaseMaintenance.runNow();
+            }
+        };
+
+        task.setOnSucceeded(_ -> {
+            setButtonsDisabled(false);
+            operationInProgress = false;
+            DatabaseMaintenance.Report report = task.getValue();
+            if (!report.errors().isEmpty()) {
+                CustomAlertDialog.showError("Обслуживание БД", String.join("\n", report.errors()));
+            }
+            loadMaintenanceInfo();
+        });
+
+        task.setOnFailed(_ -> {
+            setButtonsDisabled(false);
+            operationInProgress = false;
+            Throwable e = task.getException();
+            LOGGER.error("Ошибка обслуживания БД: {}", e.getMessage(), e);
+            CustomAlertDialog.showError("Ошибка обслуживания БД", e.getMessage());
+            loadMaintenanceInfo();
+        });
+
+        new Thread(task).start();
+    }
+
+    private void loadMaintenanceInfo() {
+        if (databaseMaintenance == null || maintenanceInfoLabel == null) {
+            return;
+        }
+        Task<DatabaseMaintenance.Diagnostics> task = new Task<>() {
+            @Override
+            protected DatabaseMaintenance.Diagnostics call() {
+                return databaseMaintenance.getDiagnostics();
+            }
+        };
+        task.setOnSucceeded(_ -> {
+            DatabaseMaintenance.Diagnostics diagnostics = task.getValue();
+            maintenanceInfoLabel.setText(diagnostics != null
+                    ? formatDiagnostics(diagnostics)
+                    : "Не удалось получить сведения о базе данных");
+        });
+        task.setOnFailed(_ -> maintenanceInfoLabel.setText("Не удалось получить сведения о базе данных"));
+        new Thread(task).start();
+    }
+
+    private String formatDiagnostics(DatabaseMaintenance.Diagnostics d) {
+        Map<String, Integer> tombstones = d.tombstones();
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("Размер БД: %.1f МБ, из них свободно %.1f МБ (auto_vacuum: %s)%n",
+                d.fileSize() / 1048576.0, d.freeSize() / 1048576.0, d.autoVacuum()));
+        text.append("Статистика планировщика: ").append(d.statistics() ? "собрана" : "не собиралась").append('\n');
+        text.append(String.format("В корзине: приборов %d, схем %d, расстановок %d, фото %d, фигур %d%n",
+                tombstones.getOrDefault("devices", 0), tombstones.getOrDefault("schemes", 0),
+                tombstones.getOrDefault("device_locations", 0), tombstones.getOrDefault("device_photos", 0),
+                tombstones.getOrDefault("scheme_shapes", 0)));
+        text.append("Журнал изменений: ").append(d.changeLogRows()).append(" записей\n");
+        text.append("Синхронизация с мобильным приложением: ").append(d.peers().isEmpty()
+                ? "ещё не выполнялась"
+                : formatTimestamp(Collections.min(d.peers().values()))).append('\n');
+
+        DatabaseMaintenance.Report report = d.lastReport();
+        if (report == null) {
+            text.append("Обслуживание в этом сеансе ещё не выполнялось");
+        } else {
+            text.append("Последнее обслуживание: ").append(formatTimestamp(report.finishedAt()))
+                    .append(" (").append(report.durationMs()).append(" мс)");
+            for (String action : report.actions()) {
+                text.append("\n• ").append(action);
+            }
+            for (String error : report.errors()) {
+                text.append("\n⚠ ").append(error);
+            }
+        }
+        return text.toString();
+    }
+
+    // ---------------------------------------------------------
+    //  Статистика запросов
+    // ---------------------------------------------------------
+
+    private void setupQueryStatsTable(TableView<QueryStats.Entry> table, String keyTitle) {
+        if (table == null) {
+            return;
+        }
+        table.getColumns().setAll(List.of(
+                statsColumn(keyTitle, 360, QueryStats.Entry::key),
+                statsColumn("Вызовов", 80, e -> String.valueOf(e.count())),
+                statsColumn("Всего, мс", 90, e -> formatMillis(e.totalNs())),
+                statsColumn("Среднее, мс", 90, e -> String.format("%.2f", e.averageMs())),
+                statsColumn("p50, мс", 80, e -> formatMillis(e.p50Ns())),
+                statsColumn("p95, мс", 80, e -> formatMillis(e.p95Ns())),
+                statsColumn("Макс, мс", 80, e -> formatMillis(e.maxNs())),
+                statsColumn("Строк", 80, e -> String.valueOf(e.rows()))));
+    }
+
+    private static TableColumn<QueryStats.Entry, String> statsColumn(String title, double width,
+                                                                    Function<QueryStats.Entry, String> value) {
+        TableColumn<QueryStats.Entry, String> column = new TableColumn<>(title);
+        column.setPrefWidth(width);
+        // Строки уже упорядочены по суммарному времени
+        column.setSortable(false);
+        column.setCellValueFactory(cell -> new ReadOnlyStringWrapper(value.apply(cell.getValue())));
+        return column;
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format("%.2f", nanos / 1_000_000.0);
+    }
+
+    /**
+     * Показывает статистику по методам DAO и запросам на текущий момент.
+     * Счётчики хранятся в памяти — к БД обращения нет.
+     */
+    @FXML
+    private void refreshQueryStats() {
+        if (databaseMaintenance == null || queryStatsLabel == null) {
+            return;
+        }
+        QueryStats stats = databaseMaintenance.getQueryStats();
+        queryStatsBox.setVisible(stats.isEnabled());
+        queryStatsBox.setManaged(stats.isEnabled());
+        if (!stats.isEnabled()) {
+            queryStatsLabel.setText("Статистика выключена. Для замеров запустите программу с параметром -Ddb.stats.enabled=true");
+            return;
+        }
+        List<QueryStats.Entry> methods = stats.getMethodStats();
+        List<QueryStats.Entry> statements = stats.getStatementStats();
+        methodStatsTable.getItems().setAll(methods);
+        statementStatsTable.getItems().setAll(statements);
+        queryStatsLabel.setText(String.format(
+                "Операций DAO: %d, запросов: %d. Вызовы дольше %d мс записываются в лог как медленные",
+                methods.size(), statements.size(), stats.getSlowThresholdMs()));
+    }
+
+    /**
+     * Записывает статистику запросов в файл в папке логов, не дожидаясь закрытия программы.
+     */
+    @FXML
+    private void dumpQueryStats() {
+        if (databaseMaintenance == null) {
+            CustomAlertDialog.showError("Ошибка", "Обслуживание БД не инициализировано");
+            return;
+        }
+        refreshQueryStats();
+        dumpQueryStatsBtn.setDisable(true);
+
+        Task<Path> task = new Task<>() {
+            @Override
+            protected Path call() {
+                return databaseMaintenance.dumpQueryStats();
+            }
+        };
+
+        task.setOnSucceeded(_ -> {
+            dumpQueryStatsBtn.setDisable(false);
+            Path file = task.getValue();
+            if (file != null) {
+                CustomAlertDialog.showSuccess("Статистика запросов", "Статистика записана в файл:\n" + file);
+            } else {
+                CustomAlertDialog.showError("Статистика запросов", "Не удалось записать статистику (подробности в логе)");
+            }
         });
+
+        task.setOnFailed(_ -> {
+            dumpQueryStatsBtn.setDisable(false);
+            Throwable e = task.getException();
+            LOGGER.error("Ошибка записи статистики запросов: {}", e.getMessage(), e);
+            CustomAlertDialog.showError("Статистика запросов", e.getMessage());
+        });
+
+        new Thread(task).start();
     }
 
     // ---------------------------------------------------------
@@ -23,6 +23,7 @@ public class CommandManager {
     private final Stack<Command> redoStack = new Stack<>();
     private final Consumer<Boolean> onUndoStateChange;  // Колбэк для обновления UI (активация кнопок)
     private final Consumer<Boolean> onRedoStateChange;
+    private Consumer<Command> onCommandApplied;         // Колбэк после execute/undo/redo команды
 
     public CommandManager(Consumer<Boolean> onUndoStateChange, Consumer<Boolean> onRedoStateChange) {
         this.onUndoStateChange = onUndoStateChange;
@@ -30,6 +31,13 @@ public class CommandManager {
         updateUIState();
     }
 
+    /**
+     * Устанавливает колбэк, вызываемый после выполнения, отмены или повтора команды
+     */
+    public void setOnCommandApplied(Consumer<Command> onCommandApplied) {
+        this.onCommandApplied = onCommandApplied;
+    }
+
     /**
      * Выполнение команды с добавлением в историю
      */
@@ -37,6 +45,7 @@ public class CommandManager {
         command.execute();
         undoStack.push(command);
         redoStack.clear();
+        commandApplied(command);
         updateUIState();
     }
 
@@ -48,6 +57,7 @@ public class CommandManager {
             Command command = undoStack.pop();
             command.undo();
             redoStack.push(command);
+            commandApplied(command);
             updateUIState();
         }
     }
@@ -60,6 +70,7 @@ public class CommandManager {
             Command command = redoStack.pop();
             command.execute();
             undoStack.push(command);
+            commandApplied(command);
             updateUIState();
         }
     }
@@ -87,6 +98,12 @@ public class CommandManager {
         return !redoStack.isEmpty();
     }
 
+    private void commandApplied(Command command) {
+        if (onCommandApplied != null) {
+            onCommandApplied.accept(command);
+        }
+    }
+
     /**
      * Обновление состояния UI (активация/деактивация кнопок)
      */
@@ -1,6 +1,7 @@
 package com.kipia.management.kipia_management.managers;
 
 import com.kipia.management.kipia_management.models.Device;
+import com.kipia.management.kipia_management.models.DevicePhoto;
 import com.kipia.management.kipia_management.services.DeviceDAO;
 import com.kipia.management.kipia_management.utils.CustomAlertDialog;
 import javafx.scene.control.*;
@@ -86,6 +87,8 @@ public class PhotoManager {
         int addedCount = 0;
         int duplicateCount = 0;
         int errorCount = 0;
+        // Хэши и размеры добавленных файлов — записываются в device_photos после сохранения прибора
+        List<DevicePhoto> addedFiles = new ArrayList<>();
 
         List<String> existingPhotos = device.getPhotos();
         if (existingPhotos == null) {
@@ -102,7 +105,8 @@ public class PhotoManager {
                 }
 
                 // Проверка на дубликат по содержимому
-                if (isFileDuplicate(file, device)) {
+                String sha256 = calculateSha256(file);
+                if (isFileDuplicate(file, sha256, device)) {
                     LOGGER.info("⚠️ Пропущен дубликат: {}", file.getName());
                     duplicateCount++;
                     continue;
@@ -134,6 +138,7 @@ public class PhotoManager {
                 }
 
                 device.addPhoto(storedFileName);
+                addedFiles.add(new DevicePhoto(device.getId(), storedFileName, sha256, savedFile.length(), 0, 0));
                 addedCount++;
                 LOGGER.info("✅ Фото добавлено: {} -> {}", file.getName(), storedFileName);
 
@@ -146,7 +151,9 @@ public class PhotoManager {
         // Сохранение в БД только при успешном добавлении
         if (addedCount > 0 && deviceDAO != null) {
             try {
-                deviceDAO.updateDevice(device);
+                if (deviceDAO.updateDevice(device)) {
+                    deviceDAO.getPhotoDAO().updateFileInfo(device.getId(), addedFiles);
+                }
                 LOGGER.info("✅ Устройство обновлено в БД (+{} фото)", addedCount);
             } catch (Exception e) {
                 LOGGER.error("❌ Ошибка сохранения в БД: {}", e.getMessage(), e);
@@ -626,18 +633,32 @@ public class PhotoManager {
      *
      * @return true если файл уже существует в фото устройства
      */
-    private boolean isFileDuplicate(File newFile, Device device) {
+    private boolean isFileDuplicate(File newFile, String newFileHash, Device device) {
         try {
             List<String> existingPhotos = device.getPhotos();
             if (existingPhotos == null || existingPhotos.isEmpty()) {
                 return false;
             }
 
-            // Вычисляем хэш нового файла
-            byte[] newFileHash = calculateMD5Hash(newFile);
+            // Фото с известным хэшем проверяются запросом к device_photos, без чтения файлов
+            Set<String> hashedPhotos = new HashSet<>();
+            if (deviceDAO != null) {
+                String duplicate = deviceDAO.getPhotoDAO().findPhotoByHash(device.getId(), newFileHash);
+                if (duplicate != null) {
+                    LOGGER.info("⚠️ Фото уже существует: {} (дубликат {})", newFile.getName(), duplicate);
+                    return true;
+                }
+                for (DevicePhoto photo : deviceDAO.getPhotoDAO().getPhotos(device.getId())) {
+                    if (photo.sha256() != null) {
+                        hashedPhotos.add(photo.fileName());
+                    }
+                }
+            }
 
-            // Сравниваем с существующими фото
+            // Фото, добавленные до появления device_photos, сравниваем по файлам
             for (String existingPhoto : existingPhotos) {
+                if (hashedPhotos.contains(existingPhoto)) continue;
+
                 String fullPath = getFullPhotoPath(device, existingPhoto);
                 File existingFile = new File(fullPath);
 
@@ -647,8 +668,8 @@ public class PhotoManager {
                 if (existingFile.length() != newFile.length()) continue;
 
                 // Проверка по хэшу
-                byte[] existingHash = calculateMD5Hash(existingFile);
-                if (Arrays.equals(newFileHash, existingHash)) {
+                String existingHash = calculateSha256(existingFile);
+                if (newFileHash.equals(existingHash)) {
                     LOGGER.info("⚠️ Фото уже существует: {} (дубликат {})",
                             newFile.getName(), existingPhoto);
                     return true;
@@ -663,17 +684,17 @@ public class PhotoManager {
     }
 
     /**
-     * Вычисляет MD5 хэш файла (компактная версия)
+     * Вычисляет SHA-256 файла (hex), тот же, что хранится в device_photos
      */
-    private byte[] calculateMD5Hash(File file) throws Exception {
-        MessageDigest md = MessageDigest.getInstance("MD5");
+    private String calculateSha256(File file) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
         try (FileInputStream fis = new FileInputStream(file)) {
             byte[] buffer = new byte[8192];
             int bytesRead;
             while ((bytesRead = fis.read(buffer)) != -1) {
                 md.update(buffer, 0, bytesRead);
             }
-            return md.digest();
+            return HexFormat.of().formatHex(md.digest());
         }
     }
 }
\ No newline at end of file
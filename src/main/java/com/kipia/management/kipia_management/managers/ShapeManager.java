@@ -1,5 +1,6 @@
 package com.kipia.management.kipia_management.managers;
 
+import com.kipia.management.kipia_management.services.AsyncDao;
 import com.kipia.management.kipia_management.services.ShapeService;
 import com.kipia.management.kipia_management.shapes.*;
 import javafx.geometry.Point2D;
@@ -59,6 +60,14 @@ public class ShapeManager {
 
     private boolean isLoading = false;  // Флаг загрузки схемы
 
+    /**
+     * Команда, изменяющая свойства одной фигуры: после выполнения или отмены
+     * фигура помечается изменённой для сохранения
+     */
+    public interface ShapeCommand extends CommandManager.Command {
+        ShapeBase shape();
+    }
+
     // Команда добавления
     public class AddShapeCommand implements CommandManager.Command {
         private final Node shape;
@@ -88,7 +97,7 @@ public class ShapeManager {
     }
 
     // Команда для изменения текста
-    public static class ChangeTextCommand implements CommandManager.Command {
+    public static class ChangeTextCommand implements ShapeCommand {
         private final TextShape textShape;
         private final String oldText, newText;
 
@@ -98,6 +107,11 @@ public class ShapeManager {
             this.newText = newText;
         }
 
+        @Override
+        public ShapeBase shape() {
+            return textShape;
+        }
+
         @Override
         public void execute() {
             textShape.setTextSilent(newText);
@@ -138,7 +152,7 @@ public class ShapeManager {
     }
 
     // Команда для перемещения фигур
-    public static class MoveShapeCommand implements CommandManager.Command {
+    public static class MoveShapeCommand implements ShapeCommand {
         private final ShapeBase shape;
         private final double oldX, oldY, newX, newY;
 
@@ -150,6 +164,11 @@ public class ShapeManager {
             this.newY = newY;
         }
 
+        @Override
+        public ShapeBase shape() {
+            return shape;
+        }
+
         @Override
         public void execute() {
             shape.setPosition(newX, newY);
@@ -162,7 +181,7 @@ public class ShapeManager {
     }
 
     // Команда для изменения цвета
-    public static class ChangeColorCommand implements CommandManager.Command {
+    public static class ChangeColorCommand implements ShapeCommand {
         private final ShapeBase shape;
         private final Color oldStroke, oldFill, newStroke, newFill;
 
@@ -172,6 +191,11 @@ public class ShapeManager {
             this.newStroke = newStroke; this.newFill = newFill;
         }
 
+        @Override
+        public ShapeBase shape() {
+            return shape;
+        }
+
         @Override
         public void execute() {
             shape.setColorsSilent(newStroke, newFill);
@@ -184,7 +208,7 @@ public class ShapeManager {
     }
 
     // Команда для изменения размера
-    public static class ResizeShapeCommand implements CommandManager.Command {
+    public static class ResizeShapeCommand implements ShapeCommand {
         private final ShapeBase shape;
         private final double oldX, oldY, oldWidth, oldHeight, newX, newY, newWidth, newHeight;
 
@@ -201,6 +225,11 @@ public class ShapeManager {
             this.newHeight = newHeight;
         }
 
+        @Override
+        public ShapeBase shape() {
+            return shape;
+        }
+
         @Override
         public void execute() {
             shape.setPosition(newX, newY);
@@ -215,7 +244,7 @@ public class ShapeManager {
     }
 
     // Команда для изменения шрифта текста
-    public static class ChangeFontCommand implements CommandManager.Command {
+    public static class ChangeFontCommand implements ShapeCommand {
         private final TextShape textShape;
         private final Font oldFont, newFont;
 
@@ -225,6 +254,11 @@ public class ShapeManager {
             this.newFont = newFont;
         }
 
+        @Override
+        public ShapeBase shape() {
+            return textShape;
+        }
+
         @Override
         public void execute() {
             textShape.setFont(newFont);
@@ -239,7 +273,7 @@ public class ShapeManager {
     }
 
     // Команда для изменения конечных точек линии
-    public static class ChangeLinePointsCommand implements CommandManager.Command {
+    public static class ChangeLinePointsCommand implements ShapeCommand {
         private final LineShape lineShape;
         private final double oldStartX, oldStartY, oldEndX, oldEndY;
         private final double newStartX, newStartY, newEndX, newEndY;
@@ -258,6 +292,11 @@ public class ShapeManager {
             this.newEndY = newEndY;
         }
 
+        @Override
+        public ShapeBase shape() {
+            return lineShape;
+        }
+
         @Override
         public void execute() {
             lineShape.setLinePoints(newStartX, newStartY, newEndX, newEndY);
@@ -270,7 +309,7 @@ public class ShapeManager {
     }
 
     // Команда для поворота фигур
-    public static class RotateShapeCommand implements CommandManager.Command {
+    public static class RotateShapeCommand implements ShapeCommand {
         private final ShapeBase shape;
         private final double oldAngle, newAngle;
 
@@ -280,6 +319,11 @@ public class ShapeManager {
             this.newAngle = newAngle;
         }
 
+        @Override
+        public ShapeBase shape() {
+            return shape;
+        }
+
         @Override
         public void execute() {
             shape.setRotation(newAngle);
@@ -331,7 +375,12 @@ public class ShapeManager {
             pane.getChildren().remove(deviceNode);
             // Удаляем позицию из БД
             if (scheme != null && deviceLocationDAO != null) {
-                deviceLocationDAO.deleteDeviceLocation(device.getId(), scheme.getId());
+                int deviceId = device.getId();
+                int schemeId = scheme.getId();
+                AsyncDao.writeInOrder(() -> {
+                    deviceLocationDAO.deleteDeviceLocation(deviceId, schemeId);
+                    return null;
+                });
             }
             if (onDeviceDeletedCallback != null) {
                 onDeviceDeletedCallback.run();
@@ -354,7 +403,7 @@ public class ShapeManager {
             com.kipia.management.kipia_management.models.DeviceLocation location =
                     new com.kipia.management.kipia_management.models.DeviceLocation(
                             device.getId(), scheme.getId(), x, y, rotation);
-            deviceLocationDAO.addDeviceLocation(location);
+            AsyncDao.writeInOrder(() -> deviceLocationDAO.addDeviceLocation(location));
         }
     }
 
@@ -390,7 +439,12 @@ public class ShapeManager {
             pane.getChildren().remove(deviceNode);
             // Удаляем позицию из БД
             if (scheme != null && deviceLocationDAO != null) {
-                deviceLocationDAO.deleteDeviceLocation(device.getId(), scheme.getId());
+                int deviceId = device.getId();
+                int schemeId = scheme.getId();
+                AsyncDao.writeInOrder(() -> {
+                    deviceLocationDAO.deleteDeviceLocation(deviceId, schemeId);
+                    return null;
+                });
             }
             if (onDeviceDeletedCallback != null) {
                 onDeviceDeletedCallback.run();
@@ -425,7 +479,7 @@ public class ShapeManager {
             com.kipia.management.kipia_management.models.DeviceLocation location =
                     new com.kipia.management.kipia_management.models.DeviceLocation(
                             device.getId(), scheme.getId(), x, y, savedRotation);
-            deviceLocationDAO.addDeviceLocation(location);
+            AsyncDao.writeInOrder(() -> deviceLocationDAO.addDeviceLocation(location));
         }
     }
 
@@ -487,7 +541,7 @@ public class ShapeManager {
             com.kipia.management.kipia_management.models.DeviceLocation location =
                     new com.kipia.management.kipia_management.models.DeviceLocation(
                             device.getId(), scheme.getId(), correctedX, correctedY, rotation);
-            deviceLocationDAO.addDeviceLocation(location);
+            AsyncDao.writeInOrder(() -> deviceLocationDAO.addDeviceLocation(location));
         }
     }
 
@@ -502,6 +556,11 @@ public class ShapeManager {
         this.pane = pane;
         this.shapeService = shapeService;
         this.commandManager = new CommandManager(onUndoStateChange, onRedoStateChange);
+        this.commandManager.setOnCommandApplied(command -> {
+            if (command instanceof ShapeCommand shapeCommand && this.shapeService != null) {
+                this.shapeService.markShapeChanged(shapeCommand.shape());
+            }
+        });
     }
 
     // -----------------------------------------------------------------
@@ -634,6 +693,7 @@ public class ShapeManager {
     public void undo() {
         commandManager.undo();
         updateSelectionAfterUndoRedo();
+        notifyChange();
         // ДОБАВЬТЕ ЭТО:
         if (statusSetter != null) {
             statusSetter.accept("Отмена изменений");
@@ -646,6 +706,7 @@ public class ShapeManager {
     public void redo() {
         commandManager.redo();
         updateSelectionAfterUndoRedo();
+        notifyChange();
         // ДОБАВЬТЕ ЭТО:
         if (statusSetter != null) {
             statusSetter.accept("Повтор изменений");
@@ -4,10 +4,15 @@ import com.kipia.management.kipia_management.controllers.ConflictResolutionDialo
 import com.kipia.management.kipia_management.models.Device;
 import com.kipia.management.kipia_management.models.DeviceLocation;
 import com.kipia.management.kipia_management.models.Scheme;
+import com.kipia.management.kipia_management.services.ChangeLogDAO;
 import com.kipia.management.kipia_management.services.DatabaseService;
 import com.kipia.management.kipia_management.services.DeviceDAO;
 import com.kipia.management.kipia_management.services.DeviceLocationDAO;
+import com.kipia.management.kipia_management.services.DeviceLocationRepository;
+import com.kipia.management.kipia_management.services.DeviceRepository;
 import com.kipia.management.kipia_management.services.SchemeDAO;
+import com.kipia.management.kipia_management.services.SchemeRepository;
+import com.kipia.management.kipia_management.services.SyncPeerDAO;
 import com.kipia.management.kipia_management.utils.LoadingIndicator;
 import com.kipia.management.kipia_management.utils.TimeValidator;
 import javafx.concurrent.Task;
@@ -34,6 +39,9 @@ import java.util.zip.*;
  * {@link #importFromZip(Window, LoadingIndicator)}, чтобы индикатор
  * отображался во время длительных операций.
  * Используйте перегрузки без индикатора для обратной совместимости.
+ * <p>
+ * Слияние работает через интерфейсы хранилищ ({@link DeviceRepository} и др.):
+ * {@link #merge} можно вызвать с хранилищами в памяти — без БД и архива.
  *
  * @author vladimir_shi
  * @since 09.03.2026
@@ -47,9 +55,9 @@ public class SyncManager {
     private static final String ZIP_PHOTOS_DIR = "device_photos/";
 
     private final DatabaseService     databaseService;
-    private final DeviceDAO           deviceDAO;
-    private final SchemeDAO           schemeDAO;
-    private final DeviceLocationDAO   deviceLocationDAO;
+    private final DeviceRepository         deviceDAO;
+    private final SchemeRepository         schemeDAO;
+    private final DeviceLocationRepository deviceLocationDAO;
     private final String              photosBasePath; // путь к папке device_photos
 
     /**
@@ -71,10 +79,14 @@ public class SyncManager {
         }
     }
 
+    /**
+     * @param databaseService БД приложения (снимок для экспорта, отметки синхронизации);
+     *                        null, если хранилища не связаны с БД
+     */
     public SyncManager(DatabaseService databaseService,
-                       DeviceDAO deviceDAO,
-                       SchemeDAO schemeDAO,
-                       DeviceLocationDAO deviceLocationDAO,
+                       DeviceRepository deviceDAO,
+                       SchemeRepository schemeDAO,
+                       DeviceLocationRepository deviceLocationDAO,
                        String photosBasePath) {
         this.databaseService   = databaseService;
         this.deviceDAO         = deviceDAO;
@@ -153,8 +165,12 @@ public class SyncManager {
      */
     public String exportToZipFile(File file) {
         try {
-            String dbPath = getDatabaseFilePath();
-            createZip(file.getAbsolutePath(), dbPath, photosBasePath);
+            Path exportDb = prepareExportDatabase();
+            try {
+                createZip(file.getAbsolutePath(), exportDb.toString(), photosBasePath);
+            } finally {
+                Files.deleteIfExists(exportDb);
+            }
             LOGGER.info("✅ Экспорт завершён: {}", file.getAbsolutePath());
             return file.getAbsolutePath();
         } catch (Exception e) {
@@ -222,7 +238,7 @@ public class SyncManager {
                         case "scheme" -> {
                             Scheme local = (Scheme) conflict.local;
                             local.setLastSyncedAt(System.currentTimeMillis());
-                            schemeDAO.updateScheme(local, false);
+                            schemeDAO.markSchemesSynced(List.of(local));
                             resolvedSchemes.add(local);
                         }
                         case "device_location" -> {
@@ -266,8 +282,12 @@ public class SyncManager {
 
         showLoading(loadingIndicator, "Создание архива...");
         try {
-            String dbPath = getDatabaseFilePath();
-            createZip(file.getAbsolutePath(), dbPath, photosBasePath);
+            Path exportDb = prepareExportDatabase();
+            try {
+                createZip(file.getAbsolutePath(), exportDb.toString(), photosBasePath);
+            } finally {
+                Files.deleteIfExists(exportDb);
+            }
             LOGGER.info("✅ Экспорт завершён: {}", file.getAbsolutePath());
             return file.getAbsolutePath();
         } catch (Exception e) {
@@ -497,7 +517,7 @@ public class SyncManager {
                             } else if ("scheme".equals(conflict.type)) {
                                 Scheme localScheme = (Scheme) conflict.local;
                                 localScheme.setLastSyncedAt(System.currentTimeMillis());
-                                schemeDAO.updateScheme(localScheme, false);
+                                schemeDAO.markSchemesSynced(List.of(localScheme));
                                 changedSchemes.add(localScheme);
                             } else if ("device_location".equals(conflict.type)) {
                                 DeviceLocation localLoc = (DeviceLocation) conflict.local;
@@ -657,14 +677,31 @@ public class SyncManager {
 
         // Подключаемся к импортированной БД
         DatabaseService importedService = new DatabaseService(importedDbPath);
+        try {
+            // Проверяем совместимость схемы импортированной БД
+            validateImportedSchema(importedService);
 
-        // Проверяем совместимость схемы импортированной БД
-        validateImportedSchema(importedService);
-
-        DeviceDAO importedDeviceDAO = new DeviceDAO(importedService);
-        SchemeDAO importedSchemeDAO = new SchemeDAO(importedService);
-        DeviceLocationDAO importedLocationDAO = new DeviceLocationDAO(importedService);
+            return merge(new DeviceDAO(importedService), new SchemeDAO(importedService),
+                    new DeviceLocationDAO(importedService), importedPhotosPath, tempDirectory);
+        } finally {
+            importedService.closeConnection();
+        }
+    }
 
+    /**
+     * Трёхсторонний merge данных другого хранилища с текущими.
+     * НЕ вызывает UI, возвращает MergeResult с конфликтами для последующего разрешения.
+     * Безопасно вызывать из фонового потока.
+     *
+     * @param importedDevices    приборы импортируемой стороны
+     * @param importedSchemes    схемы импортируемой стороны
+     * @param importedLocations  позиции приборов импортируемой стороны
+     * @param importedPhotosPath путь к импортированным фото (null если нет)
+     * @param tempDirectory      временная директория (сохраняется в результате для удаления позже, может быть null)
+     * @return MergeResult со статистикой и списком конфликтов
+     */
+    public MergeResult merge(DeviceRepository importedDevices, SchemeRepository importedSchemes,
+                             DeviceLocationRepository importedLocations, Path importedPhotosPath, Path tempDirectory) {
         int[] result = {0, 0, 0, 0};
         List<ConflictInfo> conflicts = new ArrayList<>();
         int photosCount = 0;
@@ -674,43 +711,65 @@ public class SyncManager {
         List<Scheme> changedSchemes = new ArrayList<>();
         List<DeviceLocation> changedLocations = new ArrayList<>();
 
-        try {
-            // Загружаем данные из импортированной БД для логирования
-            List<Device> importedDevices = importedDeviceDAO.getAllDevicesForExport();
-            List<Scheme> importedSchemes = importedSchemeDAO.getAllSchemesForExport();
-            List<DeviceLocation> importedLocations = importedLocationDAO.getAllLocations();
-            LOGGER.info("Из импортированной БД загружено: {} устройств, {} схем, {} локаций",
-                    importedDevices.size(), importedSchemes.size(), importedLocations.size());
+        // Загружаем данные из импортированной БД для логирования
+        List<Device> devices = importedDevices.getAllDevicesForExport();
+        List<Scheme> schemes = importedSchemes.getAllSchemesForExport();
+        List<DeviceLocation> locations = importedLocations.getAllLocations();
+        LOGGER.info("Из импортированной БД загружено: {} устройств, {} схем, {} локаций",
+                devices.size(), schemes.size(), locations.size());
 
-            // Two-way merge для устройств
-            mergeDevices(importedDeviceDAO, conflicts, result, changedDevices);
+        // Two-way merge для устройств
+        mergeDevices(importedDevices, conflicts, result, changedDevices);
 
-            // Two-way merge для схем
-            mergeSchemes(importedSchemeDAO, conflicts, result, changedSchemes);
+        // Two-way merge для схем
+        mergeSchemes(importedSchemes, conflicts, result, changedSchemes);
 
-            // Two-way merge для локаций
-            mergeDeviceLocations(importedLocationDAO, importedDeviceDAO, importedSchemeDAO, conflicts, changedLocations);
+        // Two-way merge для локаций
+        mergeDeviceLocations(importedLocations, importedDevices, importedSchemes, conflicts, changedLocations);
 
-            // Merge фотографий — только аддитивно (после успешного merge БД)
-            if (importedPhotosPath != null && Files.exists(importedPhotosPath)) {
-                // Подсчитываем файлы для логирования
-                int filesInImportedPhotos = countFilesInDirectory(importedPhotosPath);
-                LOGGER.info("Найдена папка фото: {}, файлов в ней: {}", importedPhotosPath, filesInImportedPhotos);
+        recordPeerSync(devices, schemes, locations);
 
-                photosCount = mergePhotosCount(importedPhotosPath.toString());
+        // Merge фотографий — только аддитивно (после успешного merge БД)
+        if (importedPhotosPath != null && Files.exists(importedPhotosPath)) {
+            // Подсчитываем файлы для логирования
+            int filesInImportedPhotos = countFilesInDirectory(importedPhotosPath);
+            LOGGER.info("Найдена папка фото: {}, файлов в ней: {}", importedPhotosPath, filesInImportedPhotos);
 
-                // Обновляем поля photos в устройствах после копирования файлов
-                updateDevicePhotosAfterImport(importedPhotosPath, importedDevices);
-            } else {
-                LOGGER.warn("Папка фото не найдена или путь null: {}", importedPhotosPath);
-            }
+            photosCount = mergePhotosCount(importedPhotosPath.toString());
 
-            // НЕ обрабатываем конфликты здесь — возвращаем их для разрешения в UI-потоке
-            // НЕ обновляем timestamps — это делается после разрешения конфликтов
+            // Обновляем поля photos в устройствах после копирования файлов
+            updateDevicePhotosAfterImport(importedPhotosPath, devices);
+        } else {
+            LOGGER.warn("Папка фото не найдена или путь null: {}", importedPhotosPath);
+        }
 
-            return new MergeResult(result, photosCount, conflicts, tempDirectory, changedDevices, changedSchemes, changedLocations);
-        } finally {
-            importedService.closeConnection();
+        // НЕ обрабатываем конфликты здесь — возвращаем их для разрешения в UI-потоке
+        // НЕ обновляем timestamps — это делается после разрешения конфликтов
+
+        return new MergeResult(result, photosCount, conflicts, tempDirectory, changedDevices, changedSchemes, changedLocations);
+    }
+
+    /**
+     * Запоминает, до какого момента мобильное приложение получило наши данные:
+     * наибольшее last_synced_at в его БД — время, когда оно последний раз
+     * принимало экспорт. Будущие значения (расхождение часов) ограничиваются текущим
+     * временем. По этой отметке обслуживание БД решает, какие записи корзины удалить.
+     */
+    private void recordPeerSync(List<Device> devices, List<Scheme> schemes, List<DeviceLocation> locations) {
+        long syncedAt = 0;
+        for (Device device : devices) {
+            syncedAt = Math.max(syncedAt, device.getLastSyncedAt());
+        }
+        for (Scheme scheme : schemes) {
+            syncedAt = Math.max(syncedAt, scheme.getLastSyncedAt());
+        }
+        for (DeviceLocation location : locations) {
+            syncedAt = Math.max(syncedAt, location.getLastSyncedAt());
+        }
+        if (syncedAt > 0 && databaseService != null) {
+            syncedAt = Math.min(syncedAt, System.currentTimeMillis());
+            new SyncPeerDAO(databaseService).recordSync(SyncPeerDAO.PEER_MOBILE, syncedAt);
+            LOGGER.info("📌 Отметка синхронизации мобильного приложения: {}", new Date(syncedAt));
         }
     }
 
@@ -888,7 +947,7 @@ public class SyncManager {
     /**
      * Two-way merge для устройств
      */
-    private void mergeDevices(DeviceDAO importedDeviceDAO, List<ConflictInfo> conflicts, int[] result, List<Device> changedDevices) {
+    private void mergeDevices(DeviceRepository importedDeviceDAO, List<ConflictInfo> conflicts, int[] result, List<Device> changedDevices) {
         List<Device> importedDevices = importedDeviceDAO.getAllDevicesForExport();
         List<Device> currentDevices = deviceDAO.getAllDevicesForExport();
 
@@ -970,9 +1029,24 @@ public class SyncManager {
     }
 
     /**
-     * Two-way merge для схем
+     * Готовит remote-версию схемы к записи поверх локальной. JSON remote-стороны
+     * собран из её строк фигур, но для локальной БД это новый документ. Если же
+     * он совпадает с локальными фигурами, схема остаётся на построчном хранении.
      */
-    private void mergeSchemes(SchemeDAO importedSchemeDAO, List<ConflictInfo> conflicts, int[] result, List<Scheme> changedSchemes) {
+    private static void adoptRemoteSchemeData(Scheme local, Scheme remote) {
+        String data = remote.getData();
+        if (local.isShapesData() && Objects.equals(local.getData(), data)) {
+            remote.setShapesData(data);
+        } else {
+            remote.setData(data);
+        }
+    }
+
+    /**
+     * Two-way merge для схем. Схемы без изменений данных получают только
+     * новый last_synced_at ({@link SchemeRepository#markSchemesSynced}).
+     */
+    private void mergeSchemes(SchemeRepository importedSchemeDAO, List<ConflictInfo> conflicts, int[] result, List<Scheme> changedSchemes) {
         List<Scheme> importedSchemes = importedSchemeDAO.getAllSchemesForExport();
         List<Scheme> currentSchemes = schemeDAO.getAllSchemesForExport();
 
@@ -1007,8 +1081,8 @@ public class SyncManager {
                         LOGGER.debug("Схема {}: идентичные данные, пропускаем", imported.getName());
                         // Данные одинаковые, но обновляем last_synced_at
                         current.setLastSyncedAt(System.currentTimeMillis());
-                        // ВАЖНО: НЕ обновляем updated_at!
-                        schemeDAO.updateScheme(current, false);
+                        // ВАЖНО: НЕ обновляем updated_at и данные схемы!
+                        schemeDAO.markSchemesSynced(List.of(current));
                         changedSchemes.add(current);
                         continue;
                     }
@@ -1019,6 +1093,7 @@ public class SyncManager {
                     // Только remote изменился
                     imported.setId(current.getId());
                     imported.setLastSyncedAt(System.currentTimeMillis());
+                    adoptRemoteSchemeData(current, imported);
                     // ВАЖНО: НЕ обновляем updated_at!
                     schemeDAO.updateScheme(imported, false);
                     result[3]++;
@@ -1028,15 +1103,15 @@ public class SyncManager {
                 } else if (!remoteChanged && localChanged) {
                     // Только local изменился - сохраняем local, но обновляем last_synced_at
                     current.setLastSyncedAt(System.currentTimeMillis());
-                    // ВАЖНО: НЕ обновляем updated_at!
-                    schemeDAO.updateScheme(current, false);
+                    // ВАЖНО: НЕ обновляем updated_at и данные схемы!
+                    schemeDAO.markSchemesSynced(List.of(current));
                     changedSchemes.add(current);
                     LOGGER.debug("Схема {} оставлена local, обновлён last_synced_at", imported.getName());
                 } else {
                     // Ничего не менялось с обеих сторон - просто обновляем last_synced_at
                     current.setLastSyncedAt(System.currentTimeMillis());
-                    // ВАЖНО: НЕ обновляем updated_at!
-                    schemeDAO.updateScheme(current, false);
+                    // ВАЖНО: НЕ обновляем updated_at и данные схемы!
+                    schemeDAO.markSchemesSynced(List.of(current));
                     changedSchemes.add(current);
                     LOGGER.debug("Схема {} не менялась, обновлён last_synced_at", imported.getName());
                 }
@@ -1049,7 +1124,8 @@ public class SyncManager {
      * Использует stable keys (inventory_number + scheme_name) вместо сырых ID,
      * так как автоинкрементные ID различаются между базами данных.
      */
-    private void mergeDeviceLocations(DeviceLocationDAO importedLocationDAO, DeviceDAO importedDeviceDAO, SchemeDAO importedSchemeDAO,
+    private void mergeDeviceLocations(DeviceLocationRepository importedLocationDAO, DeviceRepository importedDeviceDAO,
+                                      SchemeRepository importedSchemeDAO,
                                       List<ConflictInfo> conflicts, List<DeviceLocation> changedLocations) {
         List<DeviceLocation> importedLocations = importedLocationDAO.getAllLocations();
         List<DeviceLocation> currentLocations = deviceLocationDAO.getAllLocations();
@@ -1074,19 +1150,21 @@ public class SyncManager {
                 .filter(s -> s.getName() != null)
                 .collect(Collectors.toMap(Scheme::getName, Scheme::getId));
 
+        // Локальная сторона: ID -> stable key (поиск по карте, а не проход по спискам для каждой локации)
+        Map<Integer, String> localDeviceIdToInv = new HashMap<>();
+        for (Device d : localDevices) {
+            localDeviceIdToInv.putIfAbsent(d.getId(), d.getInventoryNumber());
+        }
+        Map<Integer, String> localSchemeIdToName = new HashMap<>();
+        for (Scheme s : localSchemes) {
+            localSchemeIdToName.putIfAbsent(s.getId(), s.getName());
+        }
+
         // Build local location map by stable key
         Map<String, DeviceLocation> currentLocMap = new HashMap<>();
         for (DeviceLocation loc : currentLocations) {
-            String deviceInv = localDevices.stream()
-                    .filter(d -> d.getId() == loc.getDeviceId())
-                    .findFirst()
-                    .map(Device::getInventoryNumber)
-                    .orElse(null);
-            String schemeName = localSchemes.stream()
-                    .filter(s -> s.getId() == loc.getSchemeId())
-                    .findFirst()
-                    .map(Scheme::getName)
-                    .orElse(null);
+            String deviceInv = localDeviceIdToInv.get(loc.getDeviceId());
+            String schemeName = localSchemeIdToName.get(loc.getSchemeId());
             if (deviceInv != null && schemeName != null) {
                 String stableKey = deviceInv + "|" + schemeName;
                 currentLocMap.put(stableKey, loc);
@@ -1201,6 +1279,7 @@ public class SyncManager {
                 resolved.setId(local.getId());
                 resolved.setUpdatedAt(local.getUpdatedAt());
                 resolved.setLastSyncedAt(now);
+                adoptRemoteSchemeData(local, resolved);
                 // ВАЖНО: НЕ обновляем updated_at!
                 schemeDAO.updateScheme(resolved, false);
             }
@@ -1227,24 +1306,18 @@ public class SyncManager {
 
         // Обновляем все устройства
         List<Device> devices = deviceDAO.getAllDevicesForExport();
-        for (Device device : devices) {
-            device.setLastSyncedAt(now);
-            deviceDAO.updateDevice(device);
-        }
+        devices.forEach(device -> device.setLastSyncedAt(now));
+        deviceDAO.updateDevices(devices, true);
 
         // Обновляем все схемы
         List<Scheme> schemes = schemeDAO.getAllSchemesForExport();
-        for (Scheme scheme : schemes) {
-            scheme.setLastSyncedAt(now);
-            schemeDAO.updateScheme(scheme);
-        }
+        schemes.forEach(scheme -> scheme.setLastSyncedAt(now));
+        schemeDAO.markSchemesSynced(schemes);
 
         // Обновляем все локации
         List<DeviceLocation> locations = deviceLocationDAO.getAllLocations();
-        for (DeviceLocation location : locations) {
-            location.setLastSyncedAt(now);
-            deviceLocationDAO.addDeviceLocation(location);
-        }
+        locations.forEach(location -> location.setLastSyncedAt(now));
+        deviceLocationDAO.upsertLocations(locations, true);
 
         LOGGER.info("Обновлены временные метки синхронизации для {} устройств, {} схем, {} локаций",
                 devices.size(), schemes.size(), locations.size());
@@ -1257,31 +1330,15 @@ public class SyncManager {
     private void updateLastSyncedTimestamps(List<Device> changedDevices, List<Scheme> changedSchemes,
                                             List<DeviceLocation> changedLocations) {
         long now = System.currentTimeMillis();
-        int updatedCount = 0;
-
-        // Обновляем только изменённые устройства
-        for (Device device : changedDevices) {
-            device.setLastSyncedAt(now);
-            // ВАЖНО: НЕ обновляем updated_at!
-            deviceDAO.updateDevice(device, false);
-            updatedCount++;
-        }
-
-        // Обновляем только изменённые схемы
-        for (Scheme scheme : changedSchemes) {
-            scheme.setLastSyncedAt(now);
-            // ВАЖНО: НЕ обновляем updated_at!
-            schemeDAO.updateScheme(scheme, false);
-            updatedCount++;
-        }
+        changedDevices.forEach(device -> device.setLastSyncedAt(now));
+        changedSchemes.forEach(scheme -> scheme.setLastSyncedAt(now));
+        changedLocations.forEach(location -> location.setLastSyncedAt(now));
 
-        // Обновляем только изменённые локации
-        for (DeviceLocation location : changedLocations) {
-            location.setLastSyncedAt(now);
-            // ВАЖНО: НЕ обновляем updated_at!
-            deviceLocationDAO.addDeviceLocation(location, false);
-            updatedCount++;
-        }
+        // Каждая таблица — одним пакетом в одной транзакции.
+        // ВАЖНО: НЕ обновляем updated_at!
+        int updatedCount = deviceDAO.updateDevices(changedDevices, false).successCount()
+                + schemeDAO.markSchemesSynced(changedSchemes).successCount()
+                + deviceLocationDAO.upsertLocations(changedLocations, false).successCount();
 
         LOGGER.info("Обновлены временные метки синхронизации для {} изменённых записей", updatedCount);
     }
@@ -1442,6 +1499,9 @@ public class SyncManager {
     /**
      * Обновляет поля photos в устройствах после импорта фотографий.
      * Использует списки фото из импортированных устройств (каждое устройство имеет свои фото).
+     * Локальные приборы читаются только по импортированным инвентарным номерам,
+     * их текущие фото — одним запросом к device_photos; изменённые приборы
+     * записываются одним пакетом.
      */
     private void updateDevicePhotosAfterImport(Path importedPhotosPath, List<Device> importedDevices) {
         try {
@@ -1454,18 +1514,21 @@ public class SyncManager {
                     .filter(d -> d.getInventoryNumber() != null)
                     .collect(Collectors.toMap(Device::getInventoryNumber, d -> d, (a, _) -> a));
 
-            // Получаем все локальные устройства и обновляем фото
-            List<Device> localDevices = deviceDAO.getAllDevices();
+            // Локальные приборы, которые были импортированы с фото
+            Set<String> withPhotos = importedByInvNum.entrySet().stream()
+                    .filter(entry -> entry.getValue().getPhotos() != null && !entry.getValue().getPhotos().isEmpty())
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toSet());
+            Collection<Device> localDevices = deviceDAO.findDevicesByInventoryNumbers(withPhotos).values();
+
+            // Текущие фото этих приборов — из device_photos, без разбора строк photos
+            Map<Integer, Set<String>> localPhotos = deviceDAO.getPhotoNames(
+                    localDevices.stream().map(Device::getId).toList());
 
+            List<Device> changed = new ArrayList<>();
             for (Device localDevice : localDevices) {
                 String invNum = localDevice.getInventoryNumber();
-                if (invNum == null) continue;
-
-                Device importedDevice = importedByInvNum.get(invNum);
-                if (importedDevice == null) continue; // Устройство не было импортировано
-
-                List<String> importedPhotos = importedDevice.getPhotos();
-                if (importedPhotos == null || importedPhotos.isEmpty()) continue;
+                List<String> importedPhotos = importedByInvNum.get(invNum).getPhotos();
 
                 devicesWithPhotos++;
 
@@ -1476,17 +1539,20 @@ public class SyncManager {
 
                 if (existingPhotos.isEmpty()) continue;
 
-                // Обновляем если список изменился
-                if (!Objects.equals(localDevice.getPhotos(), existingPhotos)) {
+                // Обновляем если набор фото изменился
+                if (!new HashSet<>(existingPhotos).equals(localPhotos.getOrDefault(localDevice.getId(), Set.of()))) {
                     localDevice.setPhotos(existingPhotos);
-                    // ВАЖНО: НЕ обновляем updated_at — это техническая синхронизация файлов
-                    deviceDAO.updateDevice(localDevice, false);
-                    updatedCount++;
+                    changed.add(localDevice);
                     LOGGER.debug("📷 Обновлено поле photos для устройства {}: {} фото",
                             invNum, existingPhotos.size());
                 }
             }
 
+            // ВАЖНО: НЕ обновляем updated_at — это техническая синхронизация файлов
+            if (!changed.isEmpty()) {
+                updatedCount = deviceDAO.updateDevices(changed, false).successCount();
+            }
+
             LOGGER.info("Найдены фото для {} устройств, обновлено {} записей в БД",
                     devicesWithPhotos, updatedCount);
             if (updatedCount > 0) {
@@ -1597,6 +1663,48 @@ public class SyncManager {
     // ZIP УТИЛИТЫ
     // ============================================================
 
+    /**
+     * Готовит копию БД для архива: согласованный снимок работающей БД
+     * ({@link DatabaseService#snapshotTo}) — редактирование во время экспорта
+     * не останавливается, а в архив не попадают свободные страницы. Из снимка
+     * удаляются локальный журнал изменений, сводка device_stats и поисковый индекс
+     * devices_fts (FTS5 на Android недоступен), сжатые данные схем переписываются
+     * обратно в JSON-текст, который читает мобильное приложение.
+     *
+     * @return путь к временной копии (удаляется вызывающим после упаковки)
+     */
+    private Path prepareExportDatabase() throws IOException {
+        Path copy = Files.createTempFile("kipia_export_", ".db");
+        try {
+            // VACUUM INTO пишет только в несуществующий (или пустой) файл
+            Files.delete(copy);
+            databaseService.snapshotTo(copy.toFile());
+            DatabaseService exportService = new DatabaseService(copy.toString());
+            try {
+                DeviceDAO exportDeviceDAO = new DeviceDAO(exportService);
+                if (!new ChangeLogDAO(exportService).dropChangeLog()
+                        || !exportDeviceDAO.dropDeviceStats()
+                        || !exportDeviceDAO.dropSearchIndex()) {
+                    throw new IOException("Не удалось подготовить копию БД для экспорта");
+                }
+                int unpacked = new SchemeDAO(exportService).unpackAllSchemeData();
+                if (unpacked < 0) {
+                    throw new IOException("Не удалось подготовить данные схем для экспорта");
+                }
+                LOGGER.info("📦 Данные схем для экспорта распакованы: {}", unpacked);
+            } finally {
+                exportService.closeConnection();
+            }
+            return copy;
+        } catch (java.sql.SQLException e) {
+            Files.deleteIfExists(copy);
+            throw new IOException("Не удалось создать снимок БД: " + e.getMessage(), e);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(copy);
+            throw e;
+        }
+    }
+
     /**
      * Создаёт ZIP из файла БД и папки фото.
      */
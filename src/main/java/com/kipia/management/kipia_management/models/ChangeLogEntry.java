@@ -0,0 +1,43 @@
+package com.kipia.management.kipia_management.models;
+
+/**
+ * Запись журнала изменений — строка таблицы {@code change_log}.
+ *
+ * @param seq       порядковый номер записи (возрастает, не переиспользуется)
+ * @param tableName таблица: devices, schemes или device_locations
+ * @param rowKey    ключ строки: id, для device_locations — "device_id:scheme_id"
+ * @param op        вид изменения
+ * @param changedAt время изменения (мс)
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public record ChangeLogEntry(long seq, String tableName, String rowKey, Op op, long changedAt) {
+
+    /**
+     * Вид изменения строки. Мягкое удаление (deleted_at) записывается как DELETE.
+     */
+    public enum Op {
+        INSERT("I"),
+        UPDATE("U"),
+        DELETE("D");
+
+        private final String code;
+
+        Op(String code) {
+            this.code = code;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public static Op fromCode(String code) {
+            for (Op op : values()) {
+                if (op.code.equals(code)) {
+                    return op;
+                }
+            }
+            throw new IllegalArgumentException("Неизвестный вид изменения: " + code);
+        }
+    }
+}
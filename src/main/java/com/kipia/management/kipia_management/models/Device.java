@@ -103,6 +103,24 @@ public class Device {
         this.updatedAt = System.currentTimeMillis();
     }
 
+    /**
+     * Конструктор копирования.
+     * Создает независимую копию прибора, включая список фото и служебные поля синхронизации.
+     *
+     * @param other копируемый прибор
+     */
+    public Device(Device other) {
+        this(other.id, other.type, other.name, other.manufacturer, other.inventoryNumber, other.year,
+                other.measurementLimit, other.accuracyClass, other.location, other.valveNumber,
+                other.status, other.additionalInfo);
+        if (other.photos != null) {
+            this.photos.addAll(other.photos);
+        }
+        this.updatedAt = other.updatedAt;
+        this.deletedAt = other.deletedAt;
+        this.lastSyncedAt = other.lastSyncedAt;
+    }
+
     // Геттеры и сеттеры для доступа к приватным полям класса
 
     /**
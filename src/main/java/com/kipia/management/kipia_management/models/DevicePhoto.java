@@ -0,0 +1,23 @@
+package com.kipia.management.kipia_management.models;
+
+/**
+ * Фото прибора — строка таблицы {@code device_photos}.
+ * <p>
+ * Хэш и размер файла известны только для фото, добавленных после появления
+ * таблицы; для перенесённых из колонки {@code devices.photos} они равны null.
+ *
+ * @param deviceId  идентификатор прибора
+ * @param fileName  имя файла в папке места установки прибора
+ * @param sha256    SHA-256 содержимого файла (hex) или null
+ * @param size      размер файла в байтах или null
+ * @param addedAt   время добавления (мс)
+ * @param deletedAt время удаления (мс), 0 — фото активно
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public record DevicePhoto(int deviceId, String fileName, String sha256, Long size, long addedAt, long deletedAt) {
+
+    public boolean isDeleted() {
+        return deletedAt > 0;
+    }
+}
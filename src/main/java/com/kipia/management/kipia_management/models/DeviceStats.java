@@ -0,0 +1,49 @@
+package com.kipia.management.kipia_management.models;
+
+import java.util.Map;
+
+/**
+ * Сводка по активным приборам для строки статистики — строки таблицы
+ * {@code device_stats} или её копия в памяти репозитория приборов.
+ * Пустой статус или место установки учитываются под ключом "".
+ *
+ * @param total             всего приборов
+ * @param byStatus          статус → количество приборов
+ * @param byLocation        место установки → количество приборов
+ * @param devicesWithPhotos приборов хотя бы с одним фото
+ * @param photoCount        фото у всех приборов
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public record DeviceStats(int total, Map<String, Integer> byStatus, Map<String, Integer> byLocation,
+                          int devicesWithPhotos, int photoCount) {
+
+    public DeviceStats {
+        byStatus = Map.copyOf(byStatus);
+        byLocation = Map.copyOf(byLocation);
+    }
+
+    public static DeviceStats empty() {
+        return new DeviceStats(0, Map.of(), Map.of(), 0, 0);
+    }
+
+    /**
+     * Количество приборов со статусом (без учёта регистра).
+     */
+    public int countStatus(String status) {
+        int count = 0;
+        for (Map.Entry<String, Integer> entry : byStatus.entrySet()) {
+            if (status.equalsIgnoreCase(entry.getKey())) {
+                count += entry.getValue();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Количество непустых мест установки.
+     */
+    public int locationCount() {
+        return byLocation.containsKey("") ? byLocation.size() - 1 : byLocation.size();
+    }
+}
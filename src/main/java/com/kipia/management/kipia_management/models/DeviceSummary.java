@@ -0,0 +1,108 @@
+package com.kipia.management.kipia_management.models;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Облегчённое представление прибора для списков, отчётов и диалогов выбора.
+ * <p>
+ * Заполняются только колонки, запрошенные через
+ * {@code DeviceDAO.getDeviceSummaries(Set<Column>)}; незапрошенные поля равны null
+ * (для {@code photos} — пустой список). Идентификатор загружается всегда, полный
+ * {@link Device} подгружается по нему, когда пользователь открывает прибор.
+ *
+ * @param id              идентификатор прибора
+ * @param type            тип прибора
+ * @param name            модель (наименование)
+ * @param manufacturer    производитель
+ * @param inventoryNumber инвентарный номер
+ * @param year            год выпуска
+ * @param location        место установки
+ * @param valveNumber     номер крана
+ * @param status          статус
+ * @param photos          имена файлов фото
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public record DeviceSummary(int id, String type, String name, String manufacturer, String inventoryNumber,
+                            Integer year, String location, String valveNumber, String status,
+                            List<String> photos) {
+
+    /**
+     * Колонки таблицы devices, которые можно запросить в проекции.
+     */
+    public enum Column {
+        TYPE("type"),
+        NAME("name"),
+        MANUFACTURER("manufacturer"),
+        INVENTORY_NUMBER("inventory_number"),
+        YEAR("year"),
+        LOCATION("location"),
+        VALVE_NUMBER("valve_number"),
+        STATUS("status"),
+        PHOTOS("photos");
+
+        private final String sqlName;
+
+        Column(String sqlName) {
+            this.sqlName = sqlName;
+        }
+
+        public String sqlName() {
+            return sqlName;
+        }
+    }
+
+    public DeviceSummary {
+        photos = photos != null ? photos : Collections.emptyList();
+    }
+
+    /**
+     * Строит облегчённое представление из полного прибора (все поля заполнены).
+     */
+    public static DeviceSummary of(Device device) {
+        return new DeviceSummary(device.getId(), device.getType(), device.getName(), device.getManufacturer(),
+                device.getInventoryNumber(), device.getYear(), device.getLocation(), device.getValveNumber(),
+                device.getStatus(), device.getPhotos() != null ? List.copyOf(device.getPhotos()) : null);
+    }
+
+    /**
+     * Строит облегчённое представление из полного прибора с заполнением только
+     * указанных колонок — так же, как проекция {@code DeviceDAO.getDeviceSummaries}.
+     */
+    public static DeviceSummary of(Device device, Set<Column> columns) {
+        return new DeviceSummary(device.getId(),
+                columns.contains(Column.TYPE) ? device.getType() : null,
+                columns.contains(Column.NAME) ? device.getName() : null,
+                columns.contains(Column.MANUFACTURER) ? device.getManufacturer() : null,
+                columns.contains(Column.INVENTORY_NUMBER) ? device.getInventoryNumber() : null,
+                columns.contains(Column.YEAR) ? device.getYear() : null,
+                columns.contains(Column.LOCATION) ? device.getLocation() : null,
+                columns.contains(Column.VALVE_NUMBER) ? device.getValveNumber() : null,
+                columns.contains(Column.STATUS) ? device.getStatus() : null,
+                columns.contains(Column.PHOTOS) && device.getPhotos() != null ? List.copyOf(device.getPhotos()) : null);
+    }
+
+    public int photoCount() {
+        return photos.size();
+    }
+
+    /**
+     * Числовая часть номера крана (после дефиса), как в {@link Device#getValveNumberInt()}.
+     */
+    public Integer valveNumberInt() {
+        if (valveNumber == null || valveNumber.trim().isEmpty()) {
+            return null;
+        }
+        String[] parts = valveNumber.split("-");
+        if (parts.length >= 2) {
+            try {
+                return Integer.parseInt(parts[1].trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,13 @@
+package com.kipia.management.kipia_management.models;
+
+/**
+ * Прибор на схеме: сохранённая позиция и сам прибор, прочитанные одним запросом
+ * ({@code DeviceDAO.getPlacedDevices}).
+ *
+ * @param location позиция прибора на схеме
+ * @param device   прибор
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public record PlacedDevice(DeviceLocation location, Device device) {
+}
@@ -1,5 +1,7 @@
 package com.kipia.management.kipia_management.models;
 
+import com.kipia.management.kipia_management.utils.SchemeDataCodec;
+
 /**
  * Класс Scheme представляет модель данных схемы/карты в системе.
  * Содержит информацию о схеме и методы для работы с этими данными.
@@ -16,6 +18,16 @@ public class Scheme {
     private String description;
     // Данные схемы (JSON-строка с объектами: линии, фигуры и т.д.)
     private String data;
+    // Те же данные в сжатом виде (см. SchemeDataCodec); JSON распаковывается при первом getData()
+    private byte[] packedData;
+    // Схема прочитана из списка без данных (SchemeDAO#getSchemeHeaders): есть ли данные в колонке data
+    // и сколько у схемы фигур, известно из заголовка; сами данные читаются при открытии схемы
+    private boolean headerOnly;
+    private boolean headerHasData;
+    private int headerShapeCount;
+    // JSON собран из строк scheme_shapes (SchemeDAO#getAllSchemesForExport): при записи схемы
+    // он не заменяет фигуры — колонка data и строки фигур остаются как есть
+    private boolean shapesData;
 
     // Время обновления
     private long updatedAt;
@@ -109,10 +121,15 @@ public class Scheme {
 
     /**
      * Получить данные схемы (JSON).
+     * Если схема прочитана из БД в сжатом виде, JSON распаковывается при первом вызове.
+     * У схемы, прочитанной заголовком ({@link #isHeaderOnly()}), данные не загружены — возвращается null.
      *
      * @return данные схемы
      */
-    public String getData() {
+    public synchronized String getData() {
+        if (data == null && packedData != null) {
+            data = SchemeDataCodec.decode(packedData);
+        }
         return data;
     }
 
@@ -121,8 +138,108 @@ public class Scheme {
      *
      * @param data новые данные схемы
      */
-    public void setData(String data) {
+    public synchronized void setData(String data) {
         this.data = data;
+        this.packedData = null;
+        this.headerOnly = false;
+        this.shapesData = false;
+    }
+
+    /**
+     * Установить JSON, собранный из строк фигур схемы (scheme_shapes).
+     * Такие данные только читаются: запись схемы не переводит её
+     * обратно на хранение документом.
+     *
+     * @param data JSON фигур схемы
+     */
+    public synchronized void setShapesData(String data) {
+        setData(data);
+        this.shapesData = true;
+    }
+
+    /**
+     * Проверить, собраны ли данные схемы из строк scheme_shapes.
+     *
+     * @return true, если данные получены через {@link #setShapesData}
+     */
+    public synchronized boolean isShapesData() {
+        return shapesData;
+    }
+
+    /**
+     * Проверить, есть ли у схемы данные в колонке data (JSON или сжатые).
+     * Схема без данных хранит фигуры построчно в таблице scheme_shapes.
+     *
+     * @return true, если данные есть
+     */
+    public synchronized boolean hasData() {
+        return data != null || packedData != null || (headerOnly && headerHasData);
+    }
+
+    /**
+     * Отметить схему как прочитанную без данных: известны только наличие данных
+     * в колонке data и количество фигур. Данные для открытия схемы читаются
+     * отдельно ({@code SchemeShapeDAO#loadSchemeData}).
+     *
+     * @param hasData    есть ли данные в колонке data
+     * @param shapeCount количество фигур схемы
+     */
+    public synchronized void setHeaderOnly(boolean hasData, int shapeCount) {
+        this.data = null;
+        this.packedData = null;
+        this.headerOnly = true;
+        this.headerHasData = hasData;
+        this.headerShapeCount = shapeCount;
+        this.shapesData = false;
+    }
+
+    /**
+     * Проверить, прочитана ли схема без данных (только заголовок).
+     *
+     * @return true, если данные схемы не загружены
+     */
+    public synchronized boolean isHeaderOnly() {
+        return headerOnly;
+    }
+
+    /**
+     * Получить данные схемы в сжатом виде для записи в БД.
+     * Сжатие выполняется один раз и запоминается до следующего {@link #setData}.
+     *
+     * @return сжатые данные или null, если данных нет
+     */
+    public synchronized byte[] getPackedData() {
+        if (packedData == null && data != null) {
+            packedData = SchemeDataCodec.encode(data);
+        }
+        return packedData;
+    }
+
+    /**
+     * Установить сжатые данные схемы (при чтении из БД) без распаковки.
+     *
+     * @param packedData данные в формате {@link SchemeDataCodec}
+     */
+    public synchronized void setPackedData(byte[] packedData) {
+        this.packedData = packedData;
+        this.data = null;
+        this.headerOnly = false;
+        this.shapesData = false;
+    }
+
+    /**
+     * Получить количество фигур схемы. Для сжатых данных читается из заголовка без распаковки.
+     *
+     * @return количество фигур
+     */
+    public synchronized int getShapeCount() {
+        if (headerOnly) {
+            return headerShapeCount;
+        }
+        if (data == null && packedData != null) {
+            return Math.max(0, SchemeDataCodec.shapeCount(packedData));
+        }
+        return data != null ? SchemeDataCodec.countShapes(data) : 0;
     }
 
     /**
@@ -205,7 +322,7 @@ public class Scheme {
                 "id=" + id +
                 ", name='" + name + '\'' +
                 ", description='" + description + '\'' +
-                ", data='" + data + '\'' +
+                ", shapes=" + getShapeCount() +
                 ", updatedAt=" + updatedAt +
                 ", deletedAt=" + deletedAt +
                 ", lastSyncedAt=" + lastSyncedAt +
@@ -11,6 +11,7 @@ import javafx.scene.paint.Color;
  */
 
 public class ShapeData {
+    private String uid;   // постоянный идентификатор фигуры (строка scheme_shapes)
     private ShapeType type;
     private double x;
     private double y;
@@ -33,6 +34,9 @@ public class ShapeData {
     public ShapeData() {}
 
     // Геттеры и сеттеры
+    public String getUid() { return uid; }
+    public void setUid(String uid) { this.uid = uid; }
+
     public ShapeType getType() { return type; }
     public void setType(ShapeType type) { this.type = type; }
 
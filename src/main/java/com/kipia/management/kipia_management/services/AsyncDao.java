@@ -0,0 +1,224 @@
+package com.kipia.management.kipia_management.services;
+
+import javafx.application.Platform;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Асинхронный фасад над {@link DeviceDAO}, {@link SchemeDAO} и {@link DeviceLocationDAO}.
+ * <p>
+ * Каждый вызов выполняется в отдельном виртуальном потоке и возвращает
+ * {@link CompletableFuture}; результат передаётся в поток JavaFX через
+ * {@link #onFx}. Контроллеры не должны обращаться к БД из потока JavaFX —
+ * в режиме разработки такие обращения отмечаются в логе {@link DatabaseService}.
+ * <p>
+ * Записи, результат которых экрану не нужен сразу (перемещение прибора, undo/redo,
+ * сохранение схемы), ставятся в общую очередь {@link #writeInOrder}: они выполняются
+ * строго в порядке постановки. Любой вызов начинается только после записей,
+ * поставленных в очередь до него, поэтому чтение видит уже сделанные изменения.
+ * <p>
+ * Незавершённые вызовы можно отменить ({@code cancel} у future или
+ * {@link #cancelAll()} при закрытии экрана): ещё не начатая операция
+ * не выполняется, у начатой прерывается поток, а продолжение в потоке
+ * JavaFX не вызывается. Уже начатая запись при этом не откатывается —
+ * она выполняется потоком-писателем БД до конца.
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public final class AsyncDao {
+    private static final Logger LOGGER = LogManager.getLogger(AsyncDao.class);
+
+    // Поток на каждую операцию: виртуальные потоки дёшевы, а блокировка на JDBC
+    // не занимает платформенный поток
+    private static final ExecutorService EXECUTOR =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("kipia-dao-", 0).factory());
+
+    /**
+     * Исполнитель продолжений в потоке JavaFX.
+     */
+    public static final Executor FX = Platform::runLater;
+
+    // Последняя запись очереди writeInOrder (завершается вместе с ней)
+    private static volatile CompletableFuture<?> writeTail = CompletableFuture.completedFuture(null);
+
+    /**
+     * Операция над DAO, выполняемая в фоновом потоке.
+     */
+    @FunctionalInterface
+    public interface DaoCall<D, T> {
+        T call(D dao) throws Exception;
+    }
+
+    private final DeviceDAO deviceDAO;
+    private final SchemeDAO schemeDAO;
+    private final DeviceLocationDAO deviceLocationDAO;
+
+    // Незавершённые операции этого экземпляра (для cancelAll)
+    private final Set<CompletableFuture<?>> pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param deviceDAO         DAO приборов (может быть null, если экрану не нужен)
+     * @param schemeDAO         DAO схем (может быть null)
+     * @param deviceLocationDAO DAO привязок приборов к схемам (может быть null)
+     */
+    public AsyncDao(DeviceDAO deviceDAO, SchemeDAO schemeDAO, DeviceLocationDAO deviceLocationDAO) {
+        this.deviceDAO = deviceDAO;
+        this.schemeDAO = schemeDAO;
+        this.deviceLocationDAO = deviceLocationDAO;
+    }
+
+    public <T> CompletableFuture<T> devices(DaoCall<DeviceDAO, T> call) {
+        DeviceDAO dao = require(deviceDAO, "DeviceDAO");
+        return supply(() -> call.call(dao));
+    }
+
+    public <T> CompletableFuture<T> schemes(DaoCall<SchemeDAO, T> call) {
+        SchemeDAO dao = require(schemeDAO, "SchemeDAO");
+        return supply(() -> call.call(dao));
+    }
+
+    public <T> CompletableFuture<T> locations(DaoCall<DeviceLocationDAO, T> call) {
+        DeviceLocationDAO dao = require(deviceLocationDAO, "DeviceLocationDAO");
+        return supply(() -> call.call(dao));
+    }
+
+    /**
+     * Выполняет произвольную фоновую работу (например, несколько вызовов DAO подряд).
+     */
+    public <T> CompletableFuture<T> supply(Callable<T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicReference<Future<?>> task = new AtomicReference<>();
+        pending.add(result);
+        result.whenComplete((_, _) -> {
+            pending.remove(result);
+            Future<?> started = task.get();
+            if (result.isCancelled() && started != null) {
+                started.cancel(true);
+            }
+        });
+        // Начинаем после записей, уже поставленных в очередь
+        writeTail.whenComplete((_, _) -> task.set(start(result, work)));
+        return result;
+    }
+
+    /**
+     * Ставит запись в общую очередь: записи очереди выполняются по одной
+     * в порядке вызова этого метода, независимо от экземпляра и экрана.
+     * Отмена на уже поставленную запись не влияет.
+     */
+    public static <T> CompletableFuture<T> writeInOrder(Callable<T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CompletableFuture<?> previous;
+        synchronized (AsyncDao.class) {
+            previous = writeTail;
+            writeTail = result;
+        }
+        previous.whenComplete((_, _) -> start(result, work));
+        return result;
+    }
+
+    private static <T> Future<?> start(CompletableFuture<T> result, Callable<T> work) {
+        try {
+            return EXECUTOR.submit(() -> {
+                if (result.isDone()) {
+                    return; // отменена до начала выполнения
+                }
+                try {
+                    result.complete(work.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            return null;
+        }
+    }
+
+    /**
+     * Отменяет все незавершённые операции этого экземпляра.
+     */
+    public void cancelAll() {
+        pending.forEach(future -> future.cancel(true));
+    }
+
+    /**
+     * Передаёт результат в поток JavaFX. Для отменённой операции ничего не вызывается.
+     *
+     * @param onSuccess вызывается с результатом
+     * @param onError   вызывается с исходной ошибкой (без обёртки CompletionException)
+     */
+    public static <T> CompletableFuture<Void> onFx(CompletableFuture<T> future,
+                                                   Consumer<? super T> onSuccess,
+                                                   Consumer<? super Throwable> onError) {
+        return future.handleAsync((value, error) -> {
+            if (future.isCancelled()) {
+                return null;
+            }
+            if (error != null) {
+                onError.accept(unwrap(error));
+            } else {
+                onSuccess.accept(value);
+            }
+            return null;
+        }, FX);
+    }
+
+    /**
+     * Передаёт результат в поток JavaFX; ошибка только записывается в лог.
+     */
+    public static <T> CompletableFuture<Void> onFx(CompletableFuture<T> future, Consumer<? super T> onSuccess) {
+        return onFx(future, onSuccess,
+                error -> LOGGER.error("Ошибка фоновой операции с БД: {}", error.getMessage(), error));
+    }
+
+    /**
+     * Исходная причина ошибки future.
+     */
+    public static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException)
+                && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    /**
+     * Останавливает приём новых операций и ждёт завершения начатых
+     * (вызывается перед закрытием соединения с БД).
+     */
+    public static void shutdown() {
+        try {
+            // Сначала дописываем очередь записей — её задачи запускаются по цепочке
+            writeTail.handle((_, _) -> null).get(10, TimeUnit.SECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            LOGGER.warn("Очередь записей в БД не завершилась за отведённое время");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        EXECUTOR.shutdown();
+        try {
+            if (!EXECUTOR.awaitTermination(5, TimeUnit.SECONDS)) {
+                LOGGER.warn("Фоновые операции с БД не завершились за отведённое время");
+                EXECUTOR.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            EXECUTOR.shutdownNow();
+        }
+    }
+
+    private static <D> D require(D dao, String name) {
+        if (dao == null) {
+            throw new IllegalStateException(name + " не передан в AsyncDao");
+        }
+        return dao;
+    }
+}
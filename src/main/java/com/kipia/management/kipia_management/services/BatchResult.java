@@ -0,0 +1,54 @@
+package com.kipia.management.kipia_management.services;
+
+import java.util.Arrays;
+
+/**
+ * Результат пакетной операции DAO.
+ * Для каждой записи входного списка (в том же порядке) хранит количество
+ * затронутых строк либо {@link #FAILED}, если запись не была применена.
+ *
+ * @param rowCounts количество затронутых строк по каждой записи
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public record BatchResult(int[] rowCounts) {
+
+    /** Признак записи, которая не была применена */
+    public static final int FAILED = -1;
+
+    /**
+     * Результат, в котором ни одна из {@code size} записей не применена
+     * (например, запись заблокирована из-за проблемы с системным временем).
+     */
+    public static BatchResult failed(int size) {
+        int[] counts = new int[size];
+        Arrays.fill(counts, FAILED);
+        return new BatchResult(counts);
+    }
+
+    public int size() {
+        return rowCounts.length;
+    }
+
+    public boolean isSuccess(int index) {
+        return rowCounts[index] > 0;
+    }
+
+    public int successCount() {
+        int count = 0;
+        for (int rows : rowCounts) {
+            if (rows > 0) count++;
+        }
+        return count;
+    }
+
+    public int failedCount() {
+        return size() - successCount();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchResult[всего: %d, успешно: %d, ошибок: %d]",
+                size(), successCount(), failedCount());
+    }
+}
@@ -0,0 +1,183 @@
+package com.kipia.management.kipia_management.services;
+
+import com.kipia.management.kipia_management.models.ChangeLogEntry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Класс ChangeLogDAO предоставляет чтение журнала изменений change_log.
+ * <p>
+ * Журнал пишут триггеры SQLite на devices, schemes и device_locations
+ * (миграция 7) — любая запись в эти таблицы попадает в него в той же транзакции,
+ * независимо от того, какой код её выполнил. Потребитель запоминает последний
+ * обработанный {@code seq} и в следующий раз читает только записи после него,
+ * вместо сравнения updated_at и last_synced_at по всей таблице.
+ * <p>
+ * Журнал только дополняется; старые записи удаляет {@link #purgeUpTo(long)}.
+ * Если запомненный seq меньше {@link #getFirstSeq()}, часть изменений уже
+ * очищена — потребителю нужна полная выборка.
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public class ChangeLogDAO {
+    private final DatabaseService databaseService;
+    private static final Logger LOGGER = LogManager.getLogger(ChangeLogDAO.class);
+
+    public static final String TABLE_DEVICES = "devices";
+    public static final String TABLE_SCHEMES = "schemes";
+    public static final String TABLE_DEVICE_LOCATIONS = "device_locations";
+
+    private static final String CHANGES_SINCE_SQL =
+            "SELECT seq, table_name, row_key, op, changed_at FROM change_log WHERE seq > ? ORDER BY seq LIMIT ?";
+    private static final String TABLE_KEYS_SINCE_SQL =
+            "SELECT row_key FROM change_log WHERE seq > ? AND table_name = ? ORDER BY seq";
+
+    public ChangeLogDAO(DatabaseService databaseService) {
+        this.databaseService = databaseService;
+    }
+
+    /**
+     * Номер последней записи журнала (0, если журнал пуст — новые записи
+     * всё равно получат номера больше прежних). Запоминается потребителем
+     * как точка отсчёта после полной выборки.
+     */
+    public long getLastSeq() {
+        String sql = "SELECT MAX(seq) FROM change_log";
+        try {
+            return databaseService.executeRead(conn -> {
+                try (ResultSet rs = databaseService.prepareCached(conn, sql).executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : 0L;
+                }
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка чтения номера журнала изменений: {}", e.getMessage(), e);
+            return 0;
+        }
+    }
+
+    /**
+     * Номер самой старой хранимой записи (0, если журнал пуст).
+     */
+    public long getFirstSeq() {
+        String sql = "SELECT MIN(seq) FROM change_log";
+        try {
+            return databaseService.executeRead(conn -> {
+                try (ResultSet rs = databaseService.prepareCached(conn, sql).executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : 0L;
+                }
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка чтения журнала изменений: {}", e.getMessage(), e);
+            return 0;
+        }
+    }
+
+    /**
+     * Записи журнала после указанного номера в порядке возрастания seq.
+     *
+     * @param afterSeq последний обработанный номер (0 — с начала журнала)
+     * @param limit    максимальное количество записей
+     */
+    public List<ChangeLogEntry> getChangesSince(long afterSeq, int limit) {
+        try {
+            return databaseService.executeRead(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, CHANGES_SINCE_SQL);
+                stmt.setLong(1, afterSeq);
+                stmt.setInt(2, limit);
+                List<ChangeLogEntry> entries = new ArrayList<>();
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        entries.add(new ChangeLogEntry(
+                                rs.getLong("seq"),
+                                rs.getString("table_name"),
+                                rs.getString("row_key"),
+                                ChangeLogEntry.Op.fromCode(rs.getString("op")),
+                                rs.getLong("changed_at")));
+                    }
+                }
+                return entries;
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка чтения журнала изменений после {}: {}", afterSeq, e.getMessage(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Ключи строк таблицы, изменённых после указанного номера (без повторов,
+     * в порядке первого изменения). Строку по ключу потребитель читает сам —
+     * так удалённые и снова изменённые строки обрабатываются по текущему состоянию.
+     *
+     * @param table одна из констант TABLE_*
+     */
+    public Set<String> getChangedKeysSince(long afterSeq, String table) {
+        try {
+            return databaseService.executeRead(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, TABLE_KEYS_SINCE_SQL);
+                stmt.setLong(1, afterSeq);
+                stmt.setString(2, table);
+                Set<String> keys = new LinkedHashSet<>();
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        keys.add(rs.getString(1));
+                    }
+                }
+                return keys;
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка чтения изменений {} после {}: {}", table, afterSeq, e.getMessage(), e);
+            return new LinkedHashSet<>();
+        }
+    }
+
+    /**
+     * Удаляет записи журнала с номером не больше указанного
+     * (уже обработанные всеми потребителями).
+     *
+     * @return количество удалённых записей или -1 при ошибке
+     */
+    public int purgeUpTo(long seq) {
+        String sql = "DELETE FROM change_log WHERE seq <= ?";
+        try {
+            return databaseService.executeWrite(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, sql);
+                stmt.setLong(1, seq);
+                return stmt.executeUpdate();
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка очистки журнала изменений: {}", e.getMessage(), e);
+            return -1;
+        }
+    }
+
+    /**
+     * Удаляет журнал и его триггеры из копии БД, которая уходит на другое
+     * устройство: журнал ведётся только локально, мобильному приложению он не нужен.
+     * Вызывается до изменения данных в копии, чтобы триггеры их не записывали.
+     */
+    public boolean dropChangeLog() {
+        try {
+            return databaseService.executeInTransaction(conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    for (String table : List.of(TABLE_DEVICES, TABLE_SCHEMES, TABLE_DEVICE_LOCATIONS)) {
+                        for (String op : List.of("insert", "update", "delete")) {
+                            stmt.executeUpdate("DROP TRIGGER IF EXISTS " + table + "_changes_" + op);
+                        }
+                    }
+                    stmt.executeUpdate("DROP TABLE IF EXISTS change_log");
+                }
+                return true;
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка удаления журнала изменений: {}", e.getMessage(), e);
+            return false;
+        }
+    }
+}
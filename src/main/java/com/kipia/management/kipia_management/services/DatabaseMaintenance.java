@@ -0,0 +1,490 @@
+package com.kipia.management.kipia_management.services;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фоновое обслуживание БД, выполняемое в простое.
+ * <p>
+ * Раз в {@link Policy#interval()} (и после запуска приложения), если запись
+ * в БД не выполнялась хотя бы {@link Policy#idle()}, выполняется проход:
+ * <ol>
+ *   <li>физическое удаление записей корзины (deleted_at) старше
+ *       {@link Policy#tombstoneDays()} дней. Для синхронизируемых таблиц
+ *       (devices, schemes, device_locations) — только если удаление старше
+ *       отметки синхронизации всех известных устройств ({@link SyncPeerDAO}),
+ *       иначе запись вернулась бы при следующем импорте; фото и фигуры схем
+ *       удалённых записей удаляются вместе с ними. Удалённые фото и фигуры
+ *       (таблицы только этой БД) удаляются по одному сроку;</li>
+ *   <li>очистка журнала изменений до последних {@link Policy#changeLogKeep()} записей;</li>
+ *   <li>обновление статистики планировщика запросов (ANALYZE с ограничением
+ *       analysis_limit);</li>
+ *   <li>возврат свободных страниц файлу: в режиме auto_vacuum=INCREMENTAL —
+ *       порциями по {@link Policy#vacuumPagesPerRun()} страниц; БД без auto_vacuum
+ *       переводится в этот режим одним полным VACUUM, когда свободные страницы
+ *       превышают {@link Policy#vacuumFreePercent()}% файла.</li>
+ * </ol>
+ * Итоги прохода пишутся в лог и доступны экрану настроек через {@link #getDiagnostics()};
+ * там же показывается статистика запросов ({@link #getQueryStats()}).
+ * Параметры задаются системными свойствами {@code maintenance.*} (см. {@link Policy#fromSystemProperties()}).
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public class DatabaseMaintenance {
+    private static final Logger LOGGER = LogManager.getLogger(DatabaseMaintenance.class);
+
+    // Как часто планировщик проверяет, пора ли выполнить проход
+    private static final long CHECK_PERIOD_SECONDS = 60;
+
+    // Сколько строк индекса ANALYZE просматривает на индекс (приблизительная статистика)
+    private static final int ANALYSIS_LIMIT = 1000;
+
+    // Таблицы с мягким удалением, которые показываются в диагностике
+    private static final List<String> TOMBSTONE_TABLES =
+            List.of("devices", "schemes", "device_locations", "device_photos", "scheme_shapes");
+
+    /**
+     * Параметры обслуживания.
+     *
+     * @param enabled           запускать ли обслуживание по расписанию
+     * @param interval          период между проходами
+     * @param idle              сколько времени без записи в БД считается простоем
+     * @param tombstoneDays     через сколько дней удалять записи корзины
+     * @param purgeWithoutPeers удалять ли синхронизируемые записи, если ни одно устройство ещё не синхронизировалось
+     * @param changeLogKeep     сколько последних записей журнала изменений хранить
+     * @param vacuumFreePercent доля свободных страниц (%), при которой БД переводится в инкрементальный режим
+     * @param vacuumPagesPerRun сколько свободных страниц возвращать за проход
+     */
+    public record Policy(boolean enabled, Duration interval, Duration idle, int tombstoneDays,
+                         boolean purgeWithoutPeers, int changeLogKeep, int vacuumFreePercent,
+                         int vacuumPagesPerRun) {
+
+        public static Policy defaults() {
+            return new Policy(true, Duration.ofHours(24), Duration.ofMinutes(2), 180,
+                    false, 100_000, 20, 2_000);
+        }
+
+        /**
+         * Параметры из системных свойств, например {@code -Dmaintenance.tombstoneDays=90}:
+         * maintenance.enabled, maintenance.intervalHours, maintenance.idleSeconds,
+         * maintenance.tombstoneDays, maintenance.purgeWithoutPeers, maintenance.changeLogKeep,
+         * maintenance.vacuumFreePercent, maintenance.vacuumPagesPerRun.
+         * Незаданные и некорректные значения берутся из {@link #defaults()}.
+         */
+        public static Policy fromSystemProperties() {
+            Policy d = defaults();
+            return new Policy(
+                    !"false".equals(System.getProperty("maintenance.enabled")),
+                    Duration.ofHours(longProperty("maintenance.intervalHours", d.interval().toHours())),
+                    Duration.ofSeconds(longProperty("maintenance.idleSeconds", d.idle().toSeconds())),
+                    (int) longProperty("maintenance.tombstoneDays", d.tombstoneDays()),
+                    "true".equals(System.getProperty("maintenance.purgeWithoutPeers")),
+                    (int) longProperty("maintenance.changeLogKeep", d.changeLogKeep()),
+                    (int) longProperty("maintenance.vacuumFreePercent", d.vacuumFreePercent()),
+                    (int) longProperty("maintenance.vacuumPagesPerRun", d.vacuumPagesPerRun()));
+        }
+
+        private static long longProperty(String name, long defaultValue) {
+            String value = System.getProperty(name);
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                long parsed = Long.parseLong(value.trim());
+                return parsed > 0 ? parsed : defaultValue;
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Некорректное значение {}={}, используется {}", name, value, defaultValue);
+                return defaultValue;
+            }
+        }
+    }
+
+    /**
+     * Итоги прохода обслуживания.
+     *
+     * @param finishedAt       время окончания (мс)
+     * @param durationMs       длительность прохода
+     * @param tombstonesPurged удалено записей корзины (все таблицы)
+     * @param changeLogPurged  удалено записей журнала изменений
+     * @param pagesReclaimed   возвращено файлу свободных страниц
+     * @param actions          выполненные действия (для лога и экрана настроек)
+     * @param errors           ошибки отдельных шагов; остальные шаги при этом выполняются
+     */
+    public record Report(long finishedAt, long durationMs, int tombstonesPurged, int changeLogPurged,
+                         long pagesReclaimed, List<String> actions, List<String> errors) {
+    }
+
+    /**
+     * Состояние файла БД для экрана диагностики.
+     *
+     * @param pageSize      размер страницы (байт)
+     * @param pageCount     всего страниц
+     * @param freePages     свободных страниц
+     * @param autoVacuum    режим auto_vacuum: NONE, FULL или INCREMENTAL
+     * @param statistics    собрана ли статистика планировщика (sqlite_stat1)
+     * @param tombstones    записей корзины по таблицам
+     * @param changeLogRows записей в журнале изменений
+     * @param peers         отметки синхронизации устройств
+     * @param lastReport    итоги последнего прохода или null
+     */
+    public record Diagnostics(long pageSize, long pageCount, long freePages, String autoVacuum,
+                              boolean statistics, Map<String, Integer> tombstones, long changeLogRows,
+                              Map<String, Long> peers, Report lastReport) {
+
+        public long fileSize() {
+            return pageSize * pageCount;
+        }
+
+        public long freeSize() {
+            return pageSize * freePages;
+        }
+    }
+
+    private record PageStats(long pageSize, long pageCount, long freePages, int autoVacuum) {
+    }
+
+    private final DatabaseService databaseService;
+    private final ChangeLogDAO changeLogDAO;
+    private final SyncPeerDAO syncPeerDAO;
+    private final Policy policy;
+    private final Object runLock = new Object();
+
+    private ScheduledExecutorService scheduler;
+    private volatile long lastRunNanos;
+    private volatile boolean hasRun;
+    private volatile Report lastReport;
+
+    public DatabaseMaintenance(DatabaseService databaseService) {
+        this(databaseService, Policy.fromSystemProperties());
+    }
+
+    public DatabaseMaintenance(DatabaseService databaseService, Policy policy) {
+        this.databaseService = databaseService;
+        this.changeLogDAO = new ChangeLogDAO(databaseService);
+        this.syncPeerDAO = new SyncPeerDAO(databaseService);
+        this.policy = policy;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Запускает проверку расписания в фоновом потоке (если обслуживание включено).
+     */
+    public synchronized void start() {
+        if (!policy.enabled() || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kipia-db-maintenance");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runIfDue, CHECK_PERIOD_SECONDS, CHECK_PERIOD_SECONDS, TimeUnit.SECONDS);
+        LOGGER.info("Обслуживание БД: раз в {} ч в простое от {} с, корзина старше {} дн.",
+                policy.interval().toHours(), policy.idle().toSeconds(), policy.tombstoneDays());
+    }
+
+    /**
+     * Останавливает планировщик. Вызывается до закрытия соединения с БД.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Итоги последнего прохода или null, если проходов ещё не было.
+     */
+    public Report getLastReport() {
+        return lastReport;
+    }
+
+    /**
+     * Статистика времени запросов и операций DAO для экрана диагностики
+     * (пустая, если не включена свойством {@code db.stats.enabled}).
+     */
+    public QueryStats getQueryStats() {
+        return databaseService.getQueryStats();
+    }
+
+    /**
+     * Записывает статистику запросов в файл в папке логов, не дожидаясь закрытия БД.
+     * Пишет файл — вызывать из фонового потока.
+     *
+     * @return путь к файлу или null, если статистика выключена или запись не удалась
+     */
+    public Path dumpQueryStats() {
+        return databaseService.dumpQueryStats();
+    }
+
+    private void runIfDue() {
+        try {
+            if (hasRun && System.nanoTime() - lastRunNanos < policy.interval().toNanos()) {
+                return;
+            }
+            if (databaseService.getMillisSinceLastWrite() < policy.idle().toMillis()) {
+                LOGGER.debug("Обслуживание БД отложено: идёт работа с данными");
+                return;
+            }
+            runNow();
+        } catch (RuntimeException e) {
+            // Исключение остановило бы периодическую задачу
+            LOGGER.error("Ошибка обслуживания БД: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Выполняет проход обслуживания сразу, не дожидаясь простоя.
+     * Обращается к БД — вызывать из фонового потока.
+     */
+    public Report runNow() {
+        synchronized (runLock) {
+            long start = System.nanoTime();
+            List<String> actions = new ArrayList<>();
+            List<String> errors = new ArrayList<>();
+            LOGGER.info("🧹 Обслуживание БД: начало");
+
+            int tombstones = 0;
+            try {
+                tombstones = purgeTombstones(actions);
+            } catch (SQLException e) {
+                errors.add("Очистка корзины: " + e.getMessage());
+                LOGGER.error("Ошибка очистки корзины: {}", e.getMessage(), e);
+            }
+
+            int changeLog = purgeChangeLog(actions);
+
+            try {
+                updateStatistics(actions);
+            } catch (SQLException e) {
+                errors.add("Статистика: " + e.getMessage());
+                LOGGER.error("Ошибка обновления статистики БД: {}", e.getMessage(), e);
+            }
+
+            long pages = 0;
+            try {
+                pages = reclaimPages(actions);
+            } catch (SQLException e) {
+                errors.add("Освобождение места: " + e.getMessage());
+                LOGGER.error("Ошибка освобождения места в БД: {}", e.getMessage(), e);
+            }
+
+            Report report = new Report(System.currentTimeMillis(), (System.nanoTime() - start) / 1_000_000,
+                    tombstones, changeLog, pages, List.copyOf(actions), List.copyOf(errors));
+            lastReport = report;
+            lastRunNanos = System.nanoTime();
+            hasRun = true;
+            actions.forEach(action -> LOGGER.info("🧹 {}", action));
+            LOGGER.info("🧹 Обслуживание БД завершено за {} мс (ошибок: {})", report.durationMs(), errors.size());
+            return report;
+        }
+    }
+
+    /**
+     * Состояние файла БД, корзины и журнала изменений.
+     * Обращается к БД — вызывать из фонового потока.
+     */
+    public Diagnostics getDiagnostics() {
+        try {
+            PageStats stats = readPageStats();
+            Map<String, Integer> tombstones = new LinkedHashMap<>();
+            boolean[] statistics = new boolean[1];
+            long[] changeLogRows = new long[1];
+            databaseService.executeRead(conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    for (String table : TOMBSTONE_TABLES) {
+                        tombstones.put(table, (int) queryLong(stmt, "SELECT COUNT(*) FROM " + table + " WHERE deleted_at > 0"));
+                    }
+                    changeLogRows[0] = queryLong(stmt, "SELECT COUNT(*) FROM change_log");
+                    statistics[0] = queryLong(stmt,
+                            "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = 'sqlite_stat1'") > 0;
+                }
+                return null;
+            });
+            return new Diagnostics(stats.pageSize(), stats.pageCount(), stats.freePages(), autoVacuumName(stats.autoVacuum()),
+                    statistics[0], tombstones, changeLogRows[0], syncPeerDAO.getPeers(), lastReport);
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка чтения диагностики БД: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    // ─────────────────────────────────────────────
+    // ШАГИ ОБСЛУЖИВАНИЯ
+    // ─────────────────────────────────────────────
+
+    private int purgeTombstones(List<String> actions) throws SQLException {
+        long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(policy.tombstoneDays());
+        long watermark = syncPeerDAO.getWatermark();
+        long syncedBefore;
+        if (watermark > 0) {
+            syncedBefore = Math.min(cutoff, watermark);
+        } else if (policy.purgeWithoutPeers()) {
+            syncedBefore = cutoff;
+        } else {
+            syncedBefore = 0;
+            actions.add("Корзина приборов и схем не очищается: мобильное приложение ещё не синхронизировалось");
+        }
+
+        Map<String, Integer> purged = databaseService.executeInTransaction(conn -> {
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            if (syncedBefore > 0) {
+                String devices = "SELECT id FROM devices WHERE deleted_at > 0 AND deleted_at < ?";
+                String schemes = "SELECT id FROM schemes WHERE deleted_at > 0 AND deleted_at < ?";
+                counts.merge("device_locations", delete(conn, "DELETE FROM device_locations WHERE (deleted_at > 0 AND deleted_at < ?)"
+                        + " OR device_id IN (" + devices + ") OR scheme_id IN (" + schemes + ")", syncedBefore), Integer::sum);
+                counts.merge("device_photos", delete(conn, "DELETE FROM device_photos WHERE device_id IN (" + devices + ")",
+                        syncedBefore), Integer::sum);
+                counts.merge("scheme_shapes", delete(conn, "DELETE FROM scheme_shapes WHERE scheme_id IN (" + schemes + ")",
+                        syncedBefore), Integer::sum);
+                counts.merge("devices", delete(conn, "DELETE FROM devices WHERE deleted_at > 0 AND deleted_at < ?",
+                        syncedBefore), Integer::sum);
+                counts.merge("schemes", delete(conn, "DELETE FROM schemes WHERE deleted_at > 0 AND deleted_at < ?",
+                        syncedBefore), Integer::sum);
+            }
+            counts.merge("device_photos", delete(conn, "DELETE FROM device_photos WHERE deleted_at > 0 AND deleted_at < ?",
+                    cutoff), Integer::sum);
+            counts.merge("scheme_shapes", delete(conn, "DELETE FROM scheme_shapes WHERE deleted_at > 0 AND deleted_at < ?",
+                    cutoff), Integer::sum);
+            return counts;
+        });
+
+        int total = purged.values().stream().mapToInt(Integer::intValue).sum();
+        if (total > 0) {
+            StringJoiner details = new StringJoiner(", ");
+            purged.forEach((table, count) -> {
+                if (count > 0) {
+                    details.add(table + " " + count);
+                }
+            });
+            actions.add("Из корзины удалено записей: " + total + " (" + details + ")");
+        }
+        return total;
+    }
+
+    private int purgeChangeLog(List<String> actions) {
+        long keepFrom = changeLogDAO.getLastSeq() - policy.changeLogKeep();
+        if (keepFrom <= 0) {
+            return 0;
+        }
+        int purged = Math.max(changeLogDAO.purgeUpTo(keepFrom), 0);
+        if (purged > 0) {
+            actions.add("Из журнала изменений удалено записей: " + purged);
+        }
+        return purged;
+    }
+
+    private void updateStatistics(List<String> actions) throws SQLException {
+        long start = System.nanoTime();
+        databaseService.executeWrite(conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA analysis_limit = " + ANALYSIS_LIMIT);
+                stmt.execute("ANALYZE");
+            }
+            return null;
+        });
+        actions.add("Статистика планировщика обновлена за " + (System.nanoTime() - start) / 1_000_000 + " мс");
+    }
+
+    private long reclaimPages(List<String> actions) throws SQLException {
+        PageStats stats = readPageStats();
+        if (stats.freePages() == 0) {
+            return 0;
+        }
+        if (stats.autoVacuum() == 2) {
+            long pages = Math.min(stats.freePages(), policy.vacuumPagesPerRun());
+            // Прагма освобождает по странице на шаг выполнения и возвращает строку без колонок,
+            // а драйвер выполняет один шаг — поэтому запрос повторяется постранично в одной транзакции
+            databaseService.executeInTransaction(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement("PRAGMA incremental_vacuum(1)")) {
+                    for (long i = 0; i < pages; i++) {
+                        stmt.execute();
+                    }
+                }
+                return null;
+            });
+            long reclaimed = stats.freePages() - readPageStats().freePages();
+            databaseService.checkpoint();
+            actions.add("Возвращено свободных страниц: " + reclaimed + " (" + stats.pageSize() * reclaimed / 1024 + " КБ)");
+            return reclaimed;
+        }
+        if (stats.autoVacuum() != 0 || stats.freePages() * 100 < stats.pageCount() * policy.vacuumFreePercent()) {
+            return 0;
+        }
+
+        // Режим auto_vacuum меняется только полным VACUUM; дальше место возвращается порциями
+        long start = System.nanoTime();
+        databaseService.executeWrite(conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                stmt.execute("VACUUM");
+            }
+            return null;
+        });
+        databaseService.checkpoint();
+        PageStats after = readPageStats();
+        long reclaimed = stats.pageCount() - after.pageCount();
+        actions.add("БД переведена в режим auto_vacuum=INCREMENTAL (VACUUM за "
+                + (System.nanoTime() - start) / 1_000_000 + " мс), освобождено страниц: " + reclaimed);
+        return reclaimed;
+    }
+
+    // ─────────────────────────────────────────────
+    // ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ
+    // ─────────────────────────────────────────────
+
+    /**
+     * Выполняет DELETE, подставляя границу времени во все параметры запроса.
+     * Запросы обслуживания просматривают таблицы целиком, поэтому идут мимо кэша
+     * подготовленных запросов (и его проверки планов).
+     */
+    private static int delete(Connection conn, String sql, long before) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int params = (int) sql.chars().filter(c -> c == '?').count();
+            for (int i = 1; i <= params; i++) {
+                stmt.setLong(i, before);
+            }
+            return stmt.executeUpdate();
+        }
+    }
+
+    private PageStats readPageStats() throws SQLException {
+        return databaseService.executeRead(conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                return new PageStats(
+                        queryLong(stmt, "PRAGMA page_size"),
+                        queryLong(stmt, "PRAGMA page_count"),
+                        queryLong(stmt, "PRAGMA freelist_count"),
+                        (int) queryLong(stmt, "PRAGMA auto_vacuum"));
+            }
+        });
+    }
+
+    private static long queryLong(Statement stmt, String sql) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static String autoVacuumName(int mode) {
+        return switch (mode) {
+            case 1 -> "FULL";
+            case 2 -> "INCREMENTAL";
+            default -> "NONE";
+        };
+    }
+}
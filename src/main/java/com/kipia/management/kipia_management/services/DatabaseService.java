@@ -1,15 +1,29 @@
 package com.kipia.management.kipia_management.services;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.*;
 
+import com.kipia.management.kipia_management.utils.LoggingConfig;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.sqlite.SQLiteConfig;
 
 /**
  * Класс DatabaseService предоставляет функционал для подключения к SQLite базе данных,
  * создания необходимых таблиц и управления соединением.
+ * <p>
+ * Основная БД открывается в режиме WAL. Все операции записи выполняются
+ * последовательно в одном потоке-писателе ({@link #executeWrite}), чтения —
+ * через пул соединений только для чтения ({@link #executeRead}), поэтому длительный
+ * импорт не блокирует обновление таблиц в UI, а фоновые выборки идут параллельно.
  *
  * @author vladimir_shi
  * @since 29.08.2025
@@ -18,12 +32,80 @@ public class DatabaseService {
     // логгер для сообщений
     private static final Logger LOGGER = LogManager.getLogger(DatabaseService.class);
 
-    // Объект подключения к базе данных
-    private Connection connection;
+    // Таймаут ожидания блокировки БД (мс)
+    private static final int BUSY_TIMEOUT_MS = 5000;
+
+    // Размер пакета для executeBatch
+    private static final int BATCH_CHUNK_SIZE = 500;
+
+    // Максимум подготовленных запросов в кэше одного соединения
+    private static final int STATEMENT_CACHE_SIZE = 48;
+
+    // Размер пула соединений для чтения
+    private static final int READER_POOL_SIZE = Math.clamp(Runtime.getRuntime().availableProcessors(), 2, 4);
+
+    // Имя потока-писателя (видно в логах и дампах потоков)
+    private static final String WRITER_THREAD_NAME = "kipia-db-writer";
+
+    // Имя потока JavaFX (проверка по имени не требует запущенного Toolkit)
+    private static final String FX_THREAD_NAME = "JavaFX Application Thread";
+
+    // Файл со статистикой запросов в папке логов (перезаписывается при закрытии БД)
+    private static final String QUERY_STATS_FILE = "query_stats.txt";
+
+    // Места вызова, о которых уже предупредили (обращение к БД из потока JavaFX)
+    private static final Set<String> FX_THREAD_CALLERS = ConcurrentHashMap.newKeySet();
+
+    // Соединение для записи — используется только потоком-писателем
+    private volatile Connection connection;
+
+    // Пул соединений только для чтения (в WAL читатели не ждут писателя)
+    private volatile ReaderPool readerPool;
+    // Соединение пула, выданное текущему потоку (вложенные чтения используют его же)
+    private final ThreadLocal<ReaderPool.Reader> currentReader = new ThreadLocal<>();
+
+    // Чтение внешней БД (импорт) идёт через основное соединение под этой блокировкой
+    private final Object readLock = new Object();
+
+    // Время выполнения запросов и операций DAO (см. getQueryStats)
+    private final QueryStats queryStats = QueryStats.fromSystemProperties();
+
+    // Кэши подготовленных запросов соединения записи и чтения внешней БД
+    // (в режиме разработки новые запросы дополнительно проверяются через EXPLAIN QUERY PLAN)
+    private final StatementCache writeStatements =
+            new StatementCache("запись", STATEMENT_CACHE_SIZE, LoggingConfig.isDevelopmentMode(), queryStats);
+    private final StatementCache readStatements =
+            new StatementCache("чтение", STATEMENT_CACHE_SIZE, LoggingConfig.isDevelopmentMode(), queryStats);
+
+    // Однопоточный исполнитель, сериализующий все операции записи
+    private final ExecutorService writeExecutor;
+    private volatile Thread writerThread;
 
     // Путь к внешней БД (если используется конструктор с путём для импорта)
     private String externalDbPath;
 
+    // Путь к основной БД (запоминается при подключении)
+    private volatile String databasePath;
+
+    // Время (System.nanoTime) последней операции записи — по нему обслуживание БД определяет простой
+    private volatile long lastWriteNanos = System.nanoTime();
+
+    /**
+     * Единица работы с БД, выполняемая на переданном соединении.
+     */
+    @FunctionalInterface
+    public interface SqlWork<T> {
+        T execute(Connection conn) throws SQLException;
+    }
+
+    /**
+     * Установка параметров подготовленного запроса для одной записи пакета.
+     */
+    @FunctionalInterface
+    public interface StatementBinder<T> {
+        void bind(PreparedStatement stmt, T item) throws SQLException;
+    }
+
     // Статический блок для регистрации драйвера SQLite
     static {
         try {
@@ -37,6 +119,7 @@ public class DatabaseService {
 
     // Конструктор класса: устанавливает соединение
     public DatabaseService() {
+        this.writeExecutor = createWriteExecutor();
         connect();
     }
 
@@ -45,6 +128,7 @@ public class DatabaseService {
      */
     public DatabaseService(String dbPath) {
         this.externalDbPath = dbPath;
+        this.writeExecutor = createWriteExecutor();
         try {
             String dbUrl = "jdbc:sqlite:" + dbPath;
             connection = DriverManager.getConnection(dbUrl);
@@ -64,14 +148,16 @@ public class DatabaseService {
         try {
             String dbPath = getDatabasePath();
             String dbUrl = "jdbc:sqlite:" + dbPath;
+            databasePath = dbPath;
 
             LOGGER.info("Подключение к базе данных: {}", dbPath);
-            connection = DriverManager.getConnection(dbUrl);
+            connection = DriverManager.getConnection(dbUrl, writerProperties());
 
             // Проверяем что соединение установлено и драйвер работает
             if (connection != null && !connection.isClosed()) {
                 DatabaseMetaData meta = connection.getMetaData();
                 LOGGER.info("Подключение к SQLite установлено! Драйвер: {} версия: {}", meta.getDriverName(), meta.getDriverVersion());
+                logJournalMode(connection);
 
                 // Создаем таблицы после успешного подключения
                 createTables();
@@ -82,6 +168,42 @@ public class DatabaseService {
         }
     }
 
+    /**
+     * Параметры соединения-писателя: WAL, synchronous=NORMAL (в WAL это безопасно
+     * и избавляет от fsync на каждую транзакцию) и таймаут ожидания блокировки.
+     */
+    private static Properties writerProperties() {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        config.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        config.setBusyTimeout(BUSY_TIMEOUT_MS);
+        return config.toProperties();
+    }
+
+    private void logJournalMode(Connection conn) {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA journal_mode")) {
+            if (rs.next()) {
+                LOGGER.info("Режим журнала БД: {}", rs.getString(1));
+            }
+        } catch (SQLException e) {
+            LOGGER.warn("Не удалось определить режим журнала БД: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Создаёт однопоточный исполнитель для операций записи.
+     * Поток — демон, чтобы не удерживать JVM при аварийном завершении.
+     */
+    private ExecutorService createWriteExecutor() {
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, WRITER_THREAD_NAME);
+            thread.setDaemon(true);
+            writerThread = thread;
+            return thread;
+        });
+    }
+
     /**
      * Определяет путь к базе данных в зависимости от режима запуска.
      * Публичный — используется в SyncManager чтобы не дублировать логику.
@@ -155,166 +277,358 @@ public class DatabaseService {
     }
 
     /**
-     * Метод для создания трех таблиц в базе данных.
-     * Используется SQL-запрос с конструкцией CREATE TABLE IF NOT EXISTS.
+     * Создаёт таблицы и применяет недостающие миграции схемы.
+     * Для актуальной БД сводится к чтению {@code PRAGMA user_version}.
+     *
+     * @see SchemaMigrations
      */
     public void createTables() {
-        String sqlDevices = """
-                CREATE TABLE IF NOT EXISTS devices (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    type TEXT NOT NULL,
-                    name TEXT,
-                    manufacturer TEXT,
-                    inventory_number TEXT UNIQUE NOT NULL,
-                    year INTEGER,
-                    measurement_limit TEXT,
-                    accuracy_class REAL,
-                    location TEXT NOT NULL,
-                    valve_number TEXT,
-                    status TEXT DEFAULT 'В работе',
-                    additional_info TEXT,
-                    photos TEXT,
-                    updated_at INTEGER DEFAULT (strftime('%%s','now') * 1000),
-                    deleted_at INTEGER DEFAULT 0,
-                    last_synced_at INTEGER DEFAULT 0
-                );""";
-
-        String sqlSchemes = """
-                CREATE TABLE IF NOT EXISTS schemes (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    name TEXT UNIQUE NOT NULL,
-                    description TEXT,
-                    data TEXT,
-                    updated_at INTEGER DEFAULT (strftime('%%s','now') * 1000),
-                    deleted_at INTEGER DEFAULT 0,
-                    last_synced_at INTEGER DEFAULT 0
-                );""";
-
-        String sqlDeviceLocations = """
-                CREATE TABLE IF NOT EXISTS device_locations (
-                    device_id INTEGER NOT NULL,
-                    scheme_id INTEGER NOT NULL,
-                    x REAL NOT NULL,
-                    y REAL NOT NULL,
-                    rotation REAL DEFAULT 0.0,
-                    updated_at INTEGER DEFAULT (strftime('%%s','now') * 1000),
-                    deleted_at INTEGER DEFAULT 0,
-                    last_synced_at INTEGER DEFAULT 0,
-                    PRIMARY KEY (device_id, scheme_id),
-                    FOREIGN KEY (device_id) REFERENCES devices(id) ON DELETE CASCADE,
-                    FOREIGN KEY (scheme_id) REFERENCES schemes(id) ON DELETE CASCADE
-                );""";
-
-        // Выполнение SQL-запросов для создания таблиц
-        try (Statement stmt = getConnection().createStatement()) {
-            stmt.executeUpdate(sqlDevices);
-            stmt.executeUpdate(sqlSchemes);
-            stmt.executeUpdate(sqlDeviceLocations);
-            LOGGER.info("Таблицы созданы успешно!");
+        try {
+            SchemaMigrations.migrate(getConnection());
         } catch (SQLException e) {
             LOGGER.error("Ошибка создания таблиц: {}", e.getMessage(), e);
             throw new RuntimeException("Ошибка создания таблиц базы данных", e);
         }
-
-        // Запуск миграции для существующих БД
-        migrateToSoftDelete();
     }
 
     /**
-     * Запускает миграции схемы БД (soft delete и two-way merge).
+     * Запускает миграции схемы БД.
      * Публичный метод для использования при импорте внешней БД.
      */
     public void runMigrations() {
-        migrateToSoftDelete();
+        try {
+            SchemaMigrations.migrate(getConnection());
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка миграции схемы БД: {}", e.getMessage(), e);
+            // Не выбрасываем исключение, чтобы приложение могло продолжить работу
+        }
+    }
+
+    // ─────────────────────────────────────────────
+    // ВЫПОЛНЕНИЕ ОПЕРАЦИЙ ЧТЕНИЯ / ЗАПИСИ
+    // ─────────────────────────────────────────────
+
+    /**
+     * Выполняет операцию записи в потоке-писателе и ждёт её завершения.
+     * Все записи в БД сериализуются через этот метод. Повторный вызов
+     * из самого потока-писателя выполняется сразу, без постановки в очередь.
+     *
+     * @param work операция над соединением-писателем
+     * @return результат операции
+     * @throws SQLException ошибка SQL или прерывание ожидания
+     */
+    public <T> T executeWrite(SqlWork<T> work) throws SQLException {
+        if (Thread.currentThread() == writerThread) {
+            return work.execute(getConnection());
+        }
+        warnIfFxThread();
+        lastWriteNanos = System.nanoTime();
+        String caller = queryStats.callerOf();
+
+        Future<T> future;
+        try {
+            future = writeExecutor.submit(() -> queryStats.measure(caller, work, getConnection()));
+        } catch (RejectedExecutionException e) {
+            throw new SQLException("Запись невозможна: соединение с БД закрыто", e);
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Ожидание записи в БД прервано", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new SQLException("Ошибка выполнения записи: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Сколько миллисекунд назад была поставлена последняя операция записи.
+     */
+    public long getMillisSinceLastWrite() {
+        return (System.nanoTime() - lastWriteNanos) / 1_000_000;
+    }
+
+    /**
+     * Выполняет несколько операций записи одной транзакцией в потоке-писателе.
+     * При ошибке транзакция откатывается.
+     */
+    public <T> T executeInTransaction(SqlWork<T> work) throws SQLException {
+        return executeWrite(conn -> {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                T result = work.execute(conn);
+                conn.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        });
     }
 
     /**
-     * Миграция существующей БД для поддержки soft delete и two-way merge.
-     * Добавляет поля deleted_at, updated_at и last_synced_at если они отсутствуют.
-     * Безопасен для повторного запуска.
+     * Выполняет запрос для каждой записи через addBatch/executeBatch пакетами
+     * по {@value #BATCH_CHUNK_SIZE} строк. Вызывать внутри транзакции.
+     * Если пакет завершился ошибкой, он повторяется построчно, чтобы
+     * определить, какие именно записи не применились (запросы пакета — UPDATE
+     * и UPSERT, поэтому повторное выполнение уже применённых строк безопасно).
+     *
+     * @return количество затронутых строк по каждой записи или {@link BatchResult#FAILED}
      */
-    private void migrateToSoftDelete() {
+    public static <T> int[] executeBatch(PreparedStatement stmt, List<T> items,
+                                         StatementBinder<T> binder) throws SQLException {
+        int[] counts = new int[items.size()];
+        for (int from = 0; from < items.size(); from += BATCH_CHUNK_SIZE) {
+            int to = Math.min(from + BATCH_CHUNK_SIZE, items.size());
+            for (int i = from; i < to; i++) {
+                binder.bind(stmt, items.get(i));
+                stmt.addBatch();
+            }
+            try {
+                int[] chunk = stmt.executeBatch();
+                System.arraycopy(chunk, 0, counts, from, chunk.length);
+            } catch (SQLException e) {
+                // sqlite-jdbc сообщает о нарушении ограничения в пакете обычным SQLiteException,
+                // а не BatchUpdateException
+                stmt.clearBatch();
+                LOGGER.warn("Ошибка пакетной записи ({}), повторяем пакет построчно", e.getMessage());
+                for (int i = from; i < to; i++) {
+                    try {
+                        binder.bind(stmt, items.get(i));
+                        counts[i] = stmt.executeUpdate();
+                    } catch (SQLException rowError) {
+                        counts[i] = BatchResult.FAILED;
+                        LOGGER.warn("Запись #{} пакета не применена: {}", i, rowError.getMessage());
+                    }
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Выполняет операцию чтения на соединении из пула только для чтения.
+     * В режиме WAL чтение не ждёт завершения записи; несколько потоков читают
+     * параллельно. Вложенный вызов в том же потоке использует то же соединение.
+     * Для внешней БД (импорт) чтение идёт через основное соединение.
+     */
+    public <T> T executeRead(SqlWork<T> work) throws SQLException {
+        warnIfFxThread();
+        if (externalDbPath != null) {
+            String caller = queryStats.callerOf();
+            synchronized (readLock) {
+                return queryStats.measure(caller, work, getConnection());
+            }
+        }
+
+        ReaderPool.Reader reader = currentReader.get();
+        if (reader != null) {
+            return work.execute(reader.connection());
+        }
+
+        String caller = queryStats.callerOf();
+        ReaderPool pool = getReaderPool();
+        reader = pool.checkout();
+        currentReader.set(reader);
         try {
-            // Проверяем и добавляем deleted_at для devices
-            addColumnIfNotExists("devices", "deleted_at", "INTEGER DEFAULT 0");
+            return queryStats.measure(caller, work, reader.connection());
+        } finally {
+            currentReader.remove();
+            pool.release(reader);
+        }
+    }
 
-            // Проверяем и добавляем deleted_at для schemes
-            addColumnIfNotExists("schemes", "deleted_at", "INTEGER DEFAULT 0");
+    /**
+     * В режиме разработки предупреждает (один раз на место вызова) об обращении
+     * к БД из потока JavaFX: такие вызовы следует выполнять через {@link AsyncDao}.
+     */
+    private static void warnIfFxThread() {
+        if (!LoggingConfig.isDevelopmentMode() || !FX_THREAD_NAME.equals(Thread.currentThread().getName())) {
+            return;
+        }
+        String caller = StackWalker.getInstance().walk(frames -> frames
+                .filter(frame -> !frame.getClassName().startsWith(DatabaseService.class.getPackageName()))
+                .findFirst()
+                .map(frame -> frame.getClassName() + "." + frame.getMethodName() + ":" + frame.getLineNumber())
+                .orElse("?"));
+        if (FX_THREAD_CALLERS.add(caller)) {
+            LOGGER.warn("⚠️ Обращение к БД из потока JavaFX: {} (используйте AsyncDao)", caller);
+        }
+    }
 
-            // Проверяем и добавляем deleted_at для device_locations
-            addColumnIfNotExists("device_locations", "deleted_at", "INTEGER DEFAULT 0");
+    /**
+     * Возвращает подготовленный запрос из кэша соединения, на котором выполняется
+     * текущая операция {@link #executeWrite} или {@link #executeRead}.
+     * Запрос переиспользуется между вызовами, поэтому закрывать его не нужно
+     * (закрывать следует только полученный ResultSet).
+     *
+     * @param conn соединение, переданное в {@link SqlWork}
+     * @param sql  текст запроса (только постоянный — без подстановки значений)
+     */
+    public PreparedStatement prepareCached(Connection conn, String sql) throws SQLException {
+        return statementCacheFor(conn).prepare(conn, sql, false);
+    }
 
-            // Проверяем и добавляем updated_at для device_locations (если старая БД)
-            // SQLite не позволяет добавить колонку с неконстантным дефолтом через ALTER TABLE
-            // Поэтому добавляем с дефолтом 0, затем обновляем существующие записи
-            addColumnIfNotExists("device_locations", "updated_at", "INTEGER DEFAULT 0");
-            updateColumnIfZero("device_locations", "updated_at");
+    /**
+     * То же, что {@link #prepareCached(Connection, String)}, но запрос возвращает
+     * сгенерированные ключи (для INSERT).
+     */
+    public PreparedStatement prepareCachedWithKeys(Connection conn, String sql) throws SQLException {
+        return statementCacheFor(conn).prepare(conn, sql, true);
+    }
 
-            // Проверяем и добавляем last_synced_at для трёхстороннего merge
-            addColumnIfNotExists("devices", "last_synced_at", "INTEGER DEFAULT 0");
-            addColumnIfNotExists("schemes", "last_synced_at", "INTEGER DEFAULT 0");
-            addColumnIfNotExists("device_locations", "last_synced_at", "INTEGER DEFAULT 0");
+    private StatementCache statementCacheFor(Connection conn) {
+        ReaderPool.Reader reader = currentReader.get();
+        if (reader != null && reader.connection() == conn) {
+            return reader.statements();
+        }
+        if (Thread.currentThread() == writerThread) {
+            return writeStatements;
+        }
+        if (Thread.holdsLock(readLock)) {
+            return readStatements;
+        }
+        throw new IllegalStateException("Кэш запросов доступен только внутри executeWrite/executeRead");
+    }
 
-            LOGGER.info("Миграция soft delete и two-way merge завершена успешно");
-        } catch (SQLException e) {
-            LOGGER.error("Ошибка миграции soft delete: {}", e.getMessage(), e);
-            // Не выбрасываем исключение, чтобы приложение могло продолжить работу
+    /**
+     * Счётчики кэшей подготовленных запросов (запись и соединения чтения).
+     */
+    public List<StatementCache.Stats> getStatementCacheStats() {
+        List<StatementCache.Stats> stats = new ArrayList<>();
+        stats.add(writeStatements.stats());
+        if (externalDbPath != null) {
+            stats.add(readStatements.stats());
+        } else if (readerPool != null) {
+            stats.addAll(readerPool.statementCacheStats());
         }
+        return stats;
+    }
+
+    /**
+     * Счётчики пула соединений для чтения (выдачи, ожидания свободного соединения).
+     * Для внешней БД пул не используется — возвращает null.
+     */
+    public ReaderPool.Stats getReaderPoolStats() {
+        return readerPool != null ? readerPool.stats() : null;
+    }
+
+    /**
+     * Статистика времени выполнения запросов и операций DAO с момента запуска.
+     */
+    public QueryStats getQueryStats() {
+        return queryStats;
     }
 
     /**
-     * Добавляет колонку в таблицу, если она ещё не существует.
-     * SQLite не поддерживает IF NOT EXISTS для ALTER TABLE, поэтому проверяем вручную.
+     * Записывает статистику запросов в файл {@value #QUERY_STATS_FILE} в папке логов.
+     *
+     * @return путь к файлу или null, если статистика выключена или запись не удалась
      */
-    private void addColumnIfNotExists(String tableName, String columnName, String columnDefinition) throws SQLException {
-        // Проверяем существование колонки
-        String checkSql = "PRAGMA table_info(" + tableName + ")";
-        boolean columnExists = false;
-
-        try (Statement stmt = getConnection().createStatement();
-             ResultSet rs = stmt.executeQuery(checkSql)) {
-            while (rs.next()) {
-                if (columnName.equals(rs.getString("name"))) {
-                    columnExists = true;
-                    break;
+    public Path dumpQueryStats() {
+        if (!queryStats.isEnabled()) {
+            return null;
+        }
+        Path file = Path.of(LoggingConfig.getLogDirectoryPath(), QUERY_STATS_FILE);
+        try {
+            queryStats.dumpTo(file);
+            return file;
+        } catch (IOException e) {
+            LOGGER.error("Ошибка записи статистики запросов в {}: {}", file, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private ReaderPool getReaderPool() {
+        ReaderPool pool = readerPool;
+        if (pool == null) {
+            synchronized (readLock) {
+                pool = readerPool;
+                if (pool == null) {
+                    pool = new ReaderPool(databasePath, READER_POOL_SIZE, STATEMENT_CACHE_SIZE,
+                            LoggingConfig.isDevelopmentMode(), queryStats, BUSY_TIMEOUT_MS);
+                    readerPool = pool;
+                    LOGGER.info("Пул соединений для чтения: до {} соединений", READER_POOL_SIZE);
                 }
             }
         }
+        return pool;
+    }
 
-        // Если колонки нет - добавляем
-        if (!columnExists) {
-            String alterSql = "ALTER TABLE " + tableName + " ADD COLUMN " + columnName + " " + columnDefinition;
-            try (Statement stmt = getConnection().createStatement()) {
-                stmt.executeUpdate(alterSql);
-                LOGGER.info("Добавлена колонка {}.{}", tableName, columnName);
+    /**
+     * Записывает согласованный снимок БД в новый файл ({@code VACUUM INTO}).
+     * <p>
+     * Снимок читается одной транзакцией чтения на отдельном соединении: в режиме
+     * WAL запись в это время не блокируется, а изменения, зафиксированные после
+     * начала снимка, в него не попадают. Соединения пула для чтения не подходят —
+     * открытые только для чтения, они не могут создать файл снимка. Файл получается
+     * уплотнённым — без свободных страниц, вместе с ещё не перенесённым содержимым WAL.
+     *
+     * @param target путь нового файла; файла не должно существовать
+     */
+    public void snapshotTo(File target) throws SQLException {
+        warnIfFxThread();
+        long start = System.nanoTime();
+        if (externalDbPath != null) {
+            synchronized (readLock) {
+                vacuumInto(getConnection(), target);
             }
         } else {
-            LOGGER.debug("Колонка {}.{} уже существует", tableName, columnName);
+            SQLiteConfig config = new SQLiteConfig();
+            config.setBusyTimeout(BUSY_TIMEOUT_MS);
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + databasePath, config.toProperties())) {
+                vacuumInto(conn, target);
+            }
+        }
+        LOGGER.info("Снимок БД записан в {} ({} байт) за {} мс", target, target.length(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void vacuumInto(Connection conn, File target) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("VACUUM INTO ?")) {
+            stmt.setString(1, target.getAbsolutePath());
+            stmt.execute();
         }
     }
 
     /**
-     * Обновляет значения колонки, которые равны 0, на текущее время в миллисекундах.
-     * Используется для миграции updated_at после добавления колонки с дефолтом 0.
+     * Переносит содержимое WAL-журнала в основной файл БД.
      */
-    private void updateColumnIfZero(String tableName, String columnName) throws SQLException {
-        String updateSql = "UPDATE " + tableName + " SET " + columnName + " = (strftime('%s','now') * 1000) WHERE " + columnName + " = 0";
-        try (Statement stmt = getConnection().createStatement()) {
-            int rowsUpdated = stmt.executeUpdate(updateSql);
-            if (rowsUpdated > 0) {
-                LOGGER.info("Обновлено {} записей в {}.{}", rowsUpdated, tableName, columnName);
-            }
+    public void checkpoint() {
+        try {
+            executeWrite(conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+                }
+                return null;
+            });
+            LOGGER.info("WAL checkpoint выполнен");
+        } catch (SQLException e) {
+            LOGGER.warn("Не удалось выполнить WAL checkpoint: {}", e.getMessage(), e);
         }
     }
 
     /**
      * Геттер для получения активного соединения с базой данных.
-     * Может использоваться для выполнения других запросов вне класса.
+     * Это соединение-писатель: выполнять на нём запись следует
+     * через {@link #executeWrite}, чтобы не нарушать сериализацию.
      */
     public Connection getConnection() {
         try {
             if (connection == null || connection.isClosed()) {
                 LOGGER.warn("Соединение с БД закрыто, пересоздаем...");
+                writeStatements.invalidate();
                 if (externalDbPath != null) {
                     // Для внешней БД используем сохранённый путь
                     String dbUrl = "jdbc:sqlite:" + externalDbPath;
@@ -329,6 +643,7 @@ public class DatabaseService {
         } catch (SQLException e) {
             LOGGER.error("Ошибка при проверке соединения: {}", e.getMessage(), e);
             // Пытаемся пересоздать соединение
+            writeStatements.invalidate();
             if (externalDbPath != null) {
                 throw new RuntimeException("Не удалось переподключиться к внешней БД: " + externalDbPath, e);
             }
@@ -343,6 +658,31 @@ public class DatabaseService {
      * В случае ошибки выводит сообщение.
      */
     public void closeConnection() {
+        // Дожидаемся завершения уже поставленных в очередь записей
+        writeExecutor.shutdown();
+        try {
+            if (!writeExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOGGER.warn("Поток записи в БД не завершился за отведённое время");
+                writeExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writeExecutor.shutdownNow();
+        }
+
+        getStatementCacheStats().forEach(stats -> LOGGER.info("Кэш запросов {}", stats));
+        if (externalDbPath == null) {
+            queryStats.getMethodStats().stream().limit(5).forEach(stats -> LOGGER.info("Операция с БД: {}", stats));
+            dumpQueryStats();
+        }
+        writeStatements.invalidate();
+        readStatements.invalidate();
+
+        if (readerPool != null) {
+            LOGGER.info("Пул чтения: {}", readerPool.stats());
+            readerPool.close();
+        }
+
         try {
             if (connection != null && !connection.isClosed()) {
                 connection.close();
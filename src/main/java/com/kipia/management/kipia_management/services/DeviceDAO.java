@@ -1,15 +1,18 @@
 package com.kipia.management.kipia_management.services;
 
 import com.kipia.management.kipia_management.models.Device;
+import com.kipia.management.kipia_management.models.DeviceLocation;
+import com.kipia.management.kipia_management.models.DeviceStats;
+import com.kipia.management.kipia_management.models.DeviceSummary;
+import com.kipia.management.kipia_management.models.PlacedDevice;
 import com.kipia.management.kipia_management.utils.TimeValidator;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.File;
 import java.sql.*;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
+import java.util.regex.Pattern;
 
 /**
  * Класс DeviceDAO (Data Access Object) предоставляет методы для работы с данными приборов
@@ -18,24 +21,57 @@ import java.util.List;
  * @author vladimir_shi
  * @since 29.08.2025
  */
-public class DeviceDAO {
+public class DeviceDAO implements DeviceRepository {
     private final DatabaseService databaseService;
+    private final DevicePhotoDAO photoDAO;
     private static final Logger LOGGER = LogManager.getLogger(DeviceDAO.class);
 
+    private static final String INSERT_SQL = "INSERT INTO devices (type, name, manufacturer, inventory_number, year, measurement_limit, " +
+            "accuracy_class, location, valve_number, status, additional_info, photos, updated_at, deleted_at, last_synced_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?);";
+
+    private static final String UPDATE_SQL = "UPDATE devices SET type = ?, name = ?, manufacturer = ?, inventory_number = ?, " +
+            "year = ?, measurement_limit = ?, accuracy_class = ?, location = ?, valve_number = ?, " +
+            "status = ?, additional_info = ?, photos = ?, updated_at = ?, deleted_at = ?, last_synced_at = ? WHERE id = ?";
+
+    // Максимум параметров в одном IN (...) — с запасом ниже лимита SQLite
+    private static final int IN_CLAUSE_CHUNK_SIZE = 500;
+
     public DeviceDAO(DatabaseService databaseService) {
         this.databaseService = databaseService;
+        this.photoDAO = new DevicePhotoDAO(databaseService);
+    }
+
+    /**
+     * Фото приборов в нормализованной таблице device_photos
+     * (поддерживается при каждой записи прибора).
+     */
+    public DevicePhotoDAO getPhotoDAO() {
+        return photoDAO;
+    }
+
+    @Override
+    public Map<Integer, Set<String>> getPhotoNames(Collection<Integer> deviceIds) {
+        return photoDAO.getPhotoNames(deviceIds);
     }
 
     private String photosToString(List<String> photos) {
-        if (photos == null || photos.isEmpty()) return "";
+        return String.join(";", photoFileNames(photos));
+    }
+
+    /**
+     * Имена файлов фото в том виде, в каком они хранятся в БД (без пути, без пустых).
+     */
+    static List<String> photoFileNames(List<String> photos) {
         List<String> fileNames = new ArrayList<>();
+        if (photos == null) return fileNames;
         for (String photo : photos) {
             if (photo != null && !photo.trim().isEmpty()) {
                 File file = new File(photo);
                 fileNames.add(file.getName());
             }
         }
-        return String.join(";", fileNames);
+        return fileNames;
     }
 
     private List<String> stringToPhotos(String photosStr) {
@@ -55,6 +91,7 @@ public class DeviceDAO {
      * @param device прибор для добавления
      * @param updateTimestamp если true - обновляет updated_at, если false - оставляет как есть
      */
+    @Override
     public boolean addDevice(Device device, boolean updateTimestamp) {
         if (!TimeValidator.getInstance().validateTimeForWrite()) {
             LOGGER.error("Добавление прибора заблокировано: проблема с системным временем");
@@ -65,29 +102,87 @@ public class DeviceDAO {
             device.updateTimestamp();
         }
 
-        String sql = "INSERT INTO devices (type, name, manufacturer, inventory_number, year, measurement_limit, " +
-                "accuracy_class, location, valve_number, status, additional_info, photos, updated_at, deleted_at, last_synced_at) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?);";
-        try (PreparedStatement stmt = databaseService.getConnection().prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            installParameters(device, stmt);
-            stmt.setLong(13, device.getUpdatedAt());
-            stmt.setLong(14, device.getDeletedAt());
-            stmt.setLong(15, device.getLastSyncedAt());
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected > 0) {
-                try (ResultSet keys = stmt.getGeneratedKeys()) {
-                    if (keys.next()) {
-                        device.setId(keys.getInt(1));
-                    }
+        try {
+            return databaseService.executeInTransaction(conn -> {
+                PreparedStatement stmt = databaseService.prepareCachedWithKeys(conn, INSERT_SQL);
+                boolean inserted = insertDevice(stmt, device) > 0;
+                if (inserted) {
+                    photoDAO.syncPhotos(conn, device);
                 }
-            }
-            return rowsAffected > 0;
+                return inserted;
+            });
         } catch (SQLException e) {
             LOGGER.error("Ошибка добавления прибора: {}", e.getMessage(), e);
             return false;
         }
     }
 
+    /**
+     * Пакетное добавление приборов одной транзакцией.
+     * Время проверяется один раз на весь пакет. Запись, которую не удалось
+     * вставить (например, дубликат инвентарного номера), помечается как
+     * {@link BatchResult#FAILED}, остальные записи пакета применяются.
+     *
+     * @param devices         приборы для добавления (id заполняется после вставки)
+     * @param updateTimestamp если true - обновляет updated_at, если false - оставляет как есть
+     * @return результат по каждой записи в порядке списка
+     */
+    @Override
+    public BatchResult addDevices(List<Device> devices, boolean updateTimestamp) {
+        if (devices.isEmpty()) {
+            return new BatchResult(new int[0]);
+        }
+        if (!TimeValidator.getInstance().validateTimeForWrite()) {
+            LOGGER.error("Пакетное добавление приборов заблокировано: проблема с системным временем");
+            return BatchResult.failed(devices.size());
+        }
+
+        if (updateTimestamp) {
+            devices.forEach(Device::updateTimestamp);
+        }
+
+        try {
+            // Вставляем построчно через один подготовленный запрос: executeBatch
+            // в SQLite не возвращает сгенерированные ключи, а id нужен вызывающему коду
+            BatchResult result = databaseService.executeInTransaction(conn -> {
+                int[] counts = new int[devices.size()];
+                PreparedStatement stmt = databaseService.prepareCachedWithKeys(conn, INSERT_SQL);
+                for (int i = 0; i < devices.size(); i++) {
+                    try {
+                        counts[i] = insertDevice(stmt, devices.get(i));
+                    } catch (SQLException rowError) {
+                        counts[i] = BatchResult.FAILED;
+                        LOGGER.warn("Прибор {} не добавлен: {}",
+                                devices.get(i).getInventoryNumber(), rowError.getMessage());
+                    }
+                }
+                syncPhotos(conn, devices, counts);
+                return new BatchResult(counts);
+            });
+            LOGGER.info("Пакетное добавление приборов: {}", result);
+            return result;
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка пакетного добавления приборов: {}", e.getMessage(), e);
+            return BatchResult.failed(devices.size());
+        }
+    }
+
+    private int insertDevice(PreparedStatement stmt, Device device) throws SQLException {
+        installParameters(device, stmt);
+        stmt.setLong(13, device.getUpdatedAt());
+        stmt.setLong(14, device.getDeletedAt());
+        stmt.setLong(15, device.getLastSyncedAt());
+        int rowsAffected = stmt.executeUpdate();
+        if (rowsAffected > 0) {
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                if (keys.next()) {
+                    device.setId(keys.getInt(1));
+                }
+            }
+        }
+        return rowsAffected;
+    }
+
     /**
      * Обновление данных прибора (автоматически обновляет updated_at)
      */
@@ -100,6 +195,7 @@ public class DeviceDAO {
      * @param device прибор для обновления
      * @param updateTimestamp если true - обновляет updated_at, если false - оставляет как есть
      */
+    @Override
     public boolean updateDevice(Device device, boolean updateTimestamp) {
         if (!TimeValidator.getInstance().validateTimeForWrite()) {
             LOGGER.error("Обновление прибора заблокировано: проблема с системным временем");
@@ -110,26 +206,95 @@ public class DeviceDAO {
             device.updateTimestamp();
         }
 
-        String sql = "UPDATE devices SET type = ?, name = ?, manufacturer = ?, inventory_number = ?, " +
-                "year = ?, measurement_limit = ?, accuracy_class = ?, location = ?, valve_number = ?, " +
-                "status = ?, additional_info = ?, photos = ?, updated_at = ?, deleted_at = ?, last_synced_at = ? WHERE id = ?";
-        try (PreparedStatement stmt = databaseService.getConnection().prepareStatement(sql)) {
-            installParameters(device, stmt);
-            stmt.setLong(13, device.getUpdatedAt());
-            stmt.setLong(14, device.getDeletedAt());
-            stmt.setLong(15, device.getLastSyncedAt());
-            stmt.setInt(16, device.getId());
-            stmt.executeUpdate();
-            return true;
+        try {
+            return databaseService.executeInTransaction(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, UPDATE_SQL);
+                bindUpdateParameters(stmt, device);
+                if (stmt.executeUpdate() > 0) {
+                    photoDAO.syncPhotos(conn, device);
+                }
+                return true;
+            });
         } catch (SQLException e) {
             LOGGER.error("Ошибка обновления прибора: {}", e.getMessage(), e);
             return false;
         }
     }
 
+    /**
+     * Сообщает, что у приборов изменился только updated_at — записью другого DAO
+     * (например, при сохранении позиций на схеме). DAO без кэша ничего не делает.
+     *
+     * @param ids       идентификаторы приборов
+     * @param updatedAt записанное время изменения
+     */
+    public void devicesTouched(Collection<Integer> ids, long updatedAt) {
+    }
+
+    /**
+     * Пакетное обновление приборов одной транзакцией через executeBatch.
+     * Время проверяется один раз на весь пакет.
+     *
+     * @param devices         приборы для обновления
+     * @param updateTimestamp если true - обновляет updated_at, если false - оставляет как есть
+     * @return результат по каждой записи в порядке списка
+     */
+    @Override
+    public BatchResult updateDevices(List<Device> devices, boolean updateTimestamp) {
+        if (devices.isEmpty()) {
+            return new BatchResult(new int[0]);
+        }
+        if (!TimeValidator.getInstance().validateTimeForWrite()) {
+            LOGGER.error("Пакетное обновление приборов заблокировано: проблема с системным временем");
+            return BatchResult.failed(devices.size());
+        }
+
+        if (updateTimestamp) {
+            devices.forEach(Device::updateTimestamp);
+        }
+
+        try {
+            BatchResult result = databaseService.executeInTransaction(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, UPDATE_SQL);
+                int[] counts = DatabaseService.executeBatch(stmt, devices, this::bindUpdateParameters);
+                syncPhotos(conn, devices, counts);
+                return new BatchResult(counts);
+            });
+            LOGGER.info("Пакетное обновление приборов: {}", result);
+            return result;
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка пакетного обновления приборов: {}", e.getMessage(), e);
+            return BatchResult.failed(devices.size());
+        }
+    }
+
+    /**
+     * Сверяет фото успешно записанных приборов пакета с таблицей device_photos.
+     */
+    private void syncPhotos(Connection conn, List<Device> devices, int[] counts) throws SQLException {
+        int changed = 0;
+        for (int i = 0; i < devices.size(); i++) {
+            if (counts[i] > 0 && photoDAO.syncPhotos(conn, devices.get(i))) {
+                changed++;
+            }
+        }
+        if (changed > 0) {
+            LOGGER.debug("Фото обновлены в device_photos для {} приборов", changed);
+        }
+    }
+
+    private void bindUpdateParameters(PreparedStatement stmt, Device device) throws SQLException {
+        installParameters(device, stmt);
+        stmt.setLong(13, device.getUpdatedAt());
+        stmt.setLong(14, device.getDeletedAt());
+        stmt.setLong(15, device.getLastSyncedAt());
+        stmt.setInt(16, device.getId());
+    }
+
     /**
      * Удаление прибора (soft delete)
      */
+    @Override
     public boolean deleteDevice(int id) {
         if (!TimeValidator.getInstance().validateTimeForWrite()) {
             LOGGER.error("Удаление прибора заблокировано: проблема с системным временем");
@@ -137,47 +302,478 @@ public class DeviceDAO {
         }
         
         String sql = "UPDATE devices SET deleted_at = ?, updated_at = ? WHERE id = ?";
-        try (PreparedStatement stmt = databaseService.getConnection().prepareStatement(sql)) {
-            long now = System.currentTimeMillis();
-            stmt.setLong(1, now);
-            stmt.setLong(2, now);
-            stmt.setInt(3, id);
-            stmt.executeUpdate();
-            return true;
+        try {
+            return databaseService.executeWrite(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, sql);
+                long now = System.currentTimeMillis();
+                stmt.setLong(1, now);
+                stmt.setLong(2, now);
+                stmt.setInt(3, id);
+                stmt.executeUpdate();
+                return true;
+            });
         } catch (SQLException e) {
             LOGGER.error("Ошибка удаления прибора: {}", e.getMessage(), e);
             return false;
         }
     }
 
+    @Override
     public List<Device> getAllDevices() {
-        List<Device> devices = new ArrayList<>();
         String sql = "SELECT * FROM devices WHERE deleted_at = 0 ORDER BY name";
-        try (Statement stmt = databaseService.getConnection().createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                devices.add(createDeviceSQL(rs));
-            }
+        try {
+            return databaseService.executeRead(conn -> queryDevices(conn, sql));
         } catch (SQLException e) {
             LOGGER.error("Ошибка получения приборов: {}", e.getMessage(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Проекция активных приборов: читаются только id и указанные колонки.
+     * Для списков, отчётов и диалогов выбора, где не нужны доп. информация,
+     * пределы измерений и прочие поля полного {@link Device}.
+     *
+     * @param columns нужные колонки (id загружается всегда)
+     * @return приборы, отсортированные по имени
+     */
+    public List<DeviceSummary> getDeviceSummaries(Set<DeviceSummary.Column> columns) {
+        // EnumSet даёт стабильный порядок колонок, поэтому текст запроса попадает в кэш
+        Set<DeviceSummary.Column> selected = columns.isEmpty()
+                ? EnumSet.noneOf(DeviceSummary.Column.class)
+                : EnumSet.copyOf(columns);
+        StringBuilder sql = new StringBuilder("SELECT id");
+        for (DeviceSummary.Column column : selected) {
+            sql.append(", ").append(column.sqlName());
+        }
+        sql.append(" FROM devices WHERE deleted_at = 0 ORDER BY name");
+
+        try {
+            return databaseService.executeRead(conn -> {
+                List<DeviceSummary> summaries = new ArrayList<>();
+                try (ResultSet rs = databaseService.prepareCached(conn, sql.toString()).executeQuery()) {
+                    while (rs.next()) {
+                        summaries.add(createSummary(rs, selected));
+                    }
+                }
+                return summaries;
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка получения списка приборов: {}", e.getMessage(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    private DeviceSummary createSummary(ResultSet rs, Set<DeviceSummary.Column> columns) throws SQLException {
+        Object yearObj = columns.contains(DeviceSummary.Column.YEAR) ? rs.getObject("year") : null;
+        return new DeviceSummary(
+                rs.getInt("id"),
+                columns.contains(DeviceSummary.Column.TYPE) ? rs.getString("type") : null,
+                columns.contains(DeviceSummary.Column.NAME) ? rs.getString("name") : null,
+                columns.contains(DeviceSummary.Column.MANUFACTURER) ? rs.getString("manufacturer") : null,
+                columns.contains(DeviceSummary.Column.INVENTORY_NUMBER) ? rs.getString("inventory_number") : null,
+                yearObj != null ? ((Number) yearObj).intValue() : null,
+                columns.contains(DeviceSummary.Column.LOCATION) ? rs.getString("location") : null,
+                columns.contains(DeviceSummary.Column.VALVE_NUMBER) ? rs.getString("valve_number") : null,
+                columns.contains(DeviceSummary.Column.STATUS) ? rs.getString("status") : null,
+                columns.contains(DeviceSummary.Column.PHOTOS) ? stringToPhotos(rs.getString("photos")) : null
+        );
+    }
+
+    // ─────────────────────────────────────────────
+    // СВОДКА (device_stats)
+    // ─────────────────────────────────────────────
+
+    /**
+     * Сводка по активным приборам из таблицы device_stats, которую поддерживают
+     * триггеры (миграция 10). Читается несколько десятков строк — стоимость
+     * не зависит от количества приборов.
+     */
+    public DeviceStats getDeviceStats() {
+        String sql = "SELECT dimension, value, count FROM device_stats";
+        try {
+            return databaseService.executeRead(conn -> {
+                int total = 0;
+                int withPhotos = 0;
+                int photos = 0;
+                Map<String, Integer> byStatus = new HashMap<>();
+                Map<String, Integer> byLocation = new HashMap<>();
+                try (ResultSet rs = databaseService.prepareCached(conn, sql).executeQuery()) {
+                    while (rs.next()) {
+                        int count = rs.getInt(3);
+                        switch (rs.getString(1)) {
+                            case "total" -> total = count;
+                            case "with_photos" -> withPhotos = count;
+                            case "photos" -> photos = count;
+                            case "status" -> {
+                                if (count > 0) byStatus.put(rs.getString(2), count);
+                            }
+                            case "location" -> {
+                                if (count > 0) byLocation.put(rs.getString(2), count);
+                            }
+                            default -> {
+                            }
+                        }
+                    }
+                }
+                return new DeviceStats(total, byStatus, byLocation, withPhotos, photos);
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка чтения сводки по приборам: {}", e.getMessage(), e);
+            return DeviceStats.empty();
         }
-        return devices;
     }
 
+    /**
+     * Удаляет device_stats и её триггеры из копии БД, которая уходит на другое
+     * устройство: сводка нужна только этому приложению, а UPSERT в триггерах
+     * поддерживают не все версии SQLite на Android.
+     */
+    public boolean dropDeviceStats() {
+        try {
+            return databaseService.executeInTransaction(conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    for (String table : List.of("devices", "device_photos")) {
+                        for (String op : List.of("insert", "update", "delete")) {
+                            stmt.executeUpdate("DROP TRIGGER IF EXISTS " + table + "_stats_" + op);
+                        }
+                    }
+                    stmt.executeUpdate("DROP TABLE IF EXISTS device_stats");
+                }
+                return true;
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка удаления сводки по приборам: {}", e.getMessage(), e);
+            return false;
+        }
+    }
+
+    // ─────────────────────────────────────────────
+    // АГРЕГАЦИЯ (отчёты)
+    // ─────────────────────────────────────────────
+
+    /**
+     * Количество активных приборов по значениям колонки. Группировка выполняется
+     * в SQLite (GROUP BY по частичному индексу колонки), объекты приборов не создаются.
+     * Пустые и NULL значения не учитываются.
+     *
+     * @param column  колонка группировки (кроме {@link DeviceSummary.Column#PHOTOS})
+     * @param filters условия равенства по другим колонкам (пустая карта — все приборы)
+     * @return значение колонки → количество, в порядке значений
+     */
+    @Override
+    public Map<String, Long> countBy(DeviceSummary.Column column, Map<DeviceSummary.Column, ?> filters) {
+        if (column == DeviceSummary.Column.PHOTOS || filters.containsKey(DeviceSummary.Column.PHOTOS)) {
+            throw new IllegalArgumentException("Группировка по фото не поддерживается");
+        }
+        // EnumMap даёт стабильный порядок условий, поэтому текст запроса попадает в кэш
+        Map<DeviceSummary.Column, Object> conditions = filters.isEmpty()
+                ? new EnumMap<>(DeviceSummary.Column.class)
+                : new EnumMap<>(filters);
+        String name = column.sqlName();
+        StringBuilder sql = new StringBuilder("SELECT ").append(name).append(", COUNT(*) FROM devices WHERE deleted_at = 0 AND ")
+                .append(name).append(" IS NOT NULL");
+        if (column != DeviceSummary.Column.YEAR) {
+            sql.append(" AND ").append(name).append(" <> ''");
+        }
+        for (DeviceSummary.Column filter : conditions.keySet()) {
+            sql.append(" AND ").append(filter.sqlName()).append(" = ?");
+        }
+        sql.append(" GROUP BY ").append(name);
+
+        try {
+            return databaseService.executeRead(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, sql.toString());
+                int index = 1;
+                for (Object value : conditions.values()) {
+                    stmt.setObject(index++, value);
+                }
+                Map<String, Long> counts = new LinkedHashMap<>();
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        counts.put(rs.getString(1), rs.getLong(2));
+                    }
+                }
+                return counts;
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка подсчёта приборов по {}: {}", name, e.getMessage(), e);
+            return new LinkedHashMap<>();
+        }
+    }
+
+    // ─────────────────────────────────────────────
+    // ПОСТРАНИЧНАЯ ВЫБОРКА (таблица приборов)
+    // ─────────────────────────────────────────────
+
+    // Разбиение строки поиска на слова — так же, как токенизатор unicode61 индекса devices_fts
+    private static final Pattern SEARCH_TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // Поиск по индексу: id активных приборов отбираются подзапросом к devices_fts
+    private static final String FTS_FILTER = " AND id IN (SELECT rowid FROM devices_fts WHERE devices_fts MATCH ?)";
+
+    /**
+     * Количество активных приборов, удовлетворяющих поиску.
+     * Без поиска берётся из сводки {@link #getDeviceStats()}.
+     */
+    public int countDevices(DeviceQuery query) {
+        if (!query.hasSearch()) {
+            return getDeviceStats().total();
+        }
+        List<Object> params = new ArrayList<>();
+        String sql = "SELECT COUNT(*) FROM devices WHERE deleted_at = 0" + searchCondition(query, params);
+        try {
+            return databaseService.executeRead(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    bindAll(stmt, params);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        return rs.next() ? rs.getInt(1) : 0;
+                    }
+                }
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка подсчёта приборов: {}", e.getMessage(), e);
+            return 0;
+        }
+    }
+
+    /**
+     * Количество активных приборов по статусам с учётом поиска.
+     * Без поиска берётся из сводки {@link #getDeviceStats()}.
+     */
+    public Map<String, Integer> countDevicesByStatus(DeviceQuery query) {
+        if (!query.hasSearch()) {
+            return new HashMap<>(getDeviceStats().byStatus());
+        }
+        List<Object> params = new ArrayList<>();
+        String sql = "SELECT status, COUNT(*) FROM devices WHERE deleted_at = 0" + searchCondition(query, params)
+                + " GROUP BY status";
+        try {
+            return databaseService.executeRead(conn -> {
+                Map<String, Integer> counts = new HashMap<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    bindAll(stmt, params);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            counts.put(rs.getString(1), rs.getInt(2));
+                        }
+                    }
+                }
+                return counts;
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка подсчёта приборов по статусам: {}", e.getMessage(), e);
+            return new HashMap<>();
+        }
+    }
+
+    /**
+     * Страница приборов с keyset-пагинацией: строки, идущие в порядке сортировки
+     * после {@code after}. Стоимость запроса не зависит от номера страницы.
+     *
+     * @param query параметры поиска и сортировки
+     * @param after позиция последней строки предыдущей страницы (null — первая страница)
+     * @param limit размер страницы
+     */
+    public List<Device> getDevicePage(DeviceQuery query, DeviceQuery.Cursor after, int limit) {
+        if (!query.sort().supportsKeyset()) {
+            if (after != null) {
+                throw new IllegalArgumentException("Keyset-пагинация не поддерживается для сортировки " + query.sort());
+            }
+            return getDevicePageAt(query, 0, limit);
+        }
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT * FROM devices WHERE deleted_at = 0")
+                .append(searchCondition(query, params));
+        if (after != null) {
+            sql.append(" AND ").append(keysetCondition(query, after, params));
+        }
+        sql.append(orderBy(query)).append(" LIMIT ?");
+        params.add(limit);
+        return queryDevicePage(sql.toString(), params);
+    }
+
+    /**
+     * Страница приборов по смещению. Используется только при переходе
+     * к произвольному месту таблицы, для которого ещё нет позиции keyset.
+     */
+    public List<Device> getDevicePageAt(DeviceQuery query, int offset, int limit) {
+        List<Object> params = new ArrayList<>();
+        String sql;
+        if (query.sort() == DeviceQuery.SortColumn.RELEVANCE) {
+            // Ранжирование: соединение с индексом, чтобы получить rank (bm25) найденных строк
+            sql = "SELECT devices.* FROM devices JOIN devices_fts ON devices_fts.rowid = devices.id"
+                    + " WHERE devices.deleted_at = 0 AND devices_fts MATCH ?"
+                    + " ORDER BY devices_fts.rank, devices.id LIMIT ? OFFSET ?";
+            params.add(toFtsQuery(query.search()));
+        } else {
+            sql = "SELECT * FROM devices WHERE deleted_at = 0" + searchCondition(query, params)
+                    + orderBy(query) + " LIMIT ? OFFSET ?";
+        }
+        params.add(limit);
+        params.add(offset);
+        return queryDevicePage(sql, params);
+    }
+
+    private List<Device> queryDevicePage(String sql, List<Object> params) {
+        try {
+            return databaseService.executeRead(conn -> {
+                List<Device> devices = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    bindAll(stmt, params);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            devices.add(createDeviceSQL(rs));
+                        }
+                    }
+                }
+                return devices;
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка загрузки страницы приборов: {}", e.getMessage(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    private String searchCondition(DeviceQuery query, List<Object> params) {
+        if (!query.hasSearch()) {
+            return "";
+        }
+        params.add(toFtsQuery(query.search()));
+        return FTS_FILTER;
+    }
+
+    /**
+     * Строка поиска → запрос FTS5: каждое слово в кавычках ищется как префикс,
+     * все слова должны встретиться в приборе (в любых колонках).
+     * Например, {@code "мп-100 цех"} → {@code "мп"* "100"* "цех"*}.
+     * Если в строке нет ни одного слова, запрос ничего не находит.
+     */
+    static String toFtsQuery(String search) {
+        StringJoiner fts = new StringJoiner(" ");
+        for (String token : SEARCH_TOKEN_SEPARATOR.split(search)) {
+            if (!token.isEmpty()) {
+                fts.add("\"" + token + "\"*");
+            }
+        }
+        // Пустая фраза "" не совпадает ни с одним документом
+        return fts.length() > 0 ? fts.toString() : "\"\"";
+    }
+
+    /**
+     * Удаляет индекс devices_fts и его триггеры из копии БД, которая уходит на другое
+     * устройство: встроенный SQLite на Android обычно собран без FTS5, и с триггерами
+     * любая запись в devices там завершится ошибкой «no such module: fts5».
+     */
+    public boolean dropSearchIndex() {
+        try {
+            return databaseService.executeInTransaction(conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    for (String op : List.of("insert", "update", "delete")) {
+                        stmt.executeUpdate("DROP TRIGGER IF EXISTS devices_fts_" + op);
+                    }
+                    stmt.executeUpdate("DROP TABLE IF EXISTS devices_fts");
+                }
+                return true;
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка удаления поискового индекса: {}", e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Условие «строка после курсора» с учётом NULL: в SQLite NULL идут первыми
+     * при сортировке по возрастанию и последними — по убыванию.
+     */
+    private String keysetCondition(DeviceQuery query, DeviceQuery.Cursor after, List<Object> params) {
+        String col = query.sort().sqlName();
+        if (query.ascending()) {
+            if (after.key() == null) {
+                params.add(after.id());
+                return "((" + col + " IS NULL AND id > ?) OR " + col + " IS NOT NULL)";
+            }
+            params.add(after.key());
+            params.add(after.key());
+            params.add(after.id());
+            return "(" + col + " > ? OR (" + col + " = ? AND id > ?))";
+        }
+        if (after.key() == null) {
+            params.add(after.id());
+            return "(" + col + " IS NULL AND id < ?)";
+        }
+        params.add(after.key());
+        params.add(after.key());
+        params.add(after.id());
+        return "(" + col + " < ? OR (" + col + " = ? AND id < ?) OR " + col + " IS NULL)";
+    }
+
+    private String orderBy(DeviceQuery query) {
+        String direction = query.ascending() ? "ASC" : "DESC";
+        return " ORDER BY " + query.sort().sqlName() + " " + direction + ", id " + direction;
+    }
+
+    private void bindAll(PreparedStatement stmt, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            stmt.setObject(i + 1, params.get(i));
+        }
+    }
+
+    @Override
     public Device findDeviceByInventoryNumber(String inventoryNumber) {
         String sql = "SELECT * FROM devices WHERE inventory_number = ? AND deleted_at = 0";
-        try (PreparedStatement stmt = databaseService.getConnection().prepareStatement(sql)) {
-            stmt.setString(1, inventoryNumber);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return createDeviceSQL(rs);
-            }
+        try {
+            return databaseService.executeRead(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, sql);
+                stmt.setString(1, inventoryNumber);
+                return querySingleDevice(stmt);
+            });
         } catch (SQLException e) {
             LOGGER.error("Ошибка поиска прибора: {}", e.getMessage(), e);
         }
         return null;
     }
 
+    /**
+     * Поиск активных приборов по набору инвентарных номеров.
+     * Выполняет несколько запросов с IN (...) вместо отдельного запроса на каждый номер.
+     *
+     * @param inventoryNumbers инвентарные номера
+     * @return карта инвентарный номер → прибор (только найденные)
+     */
+    @Override
+    public Map<String, Device> findDevicesByInventoryNumbers(Collection<String> inventoryNumbers) {
+        List<String> numbers = new ArrayList<>(new LinkedHashSet<>(inventoryNumbers));
+        Map<String, Device> found = new HashMap<>();
+        if (numbers.isEmpty()) {
+            return found;
+        }
+        try {
+            databaseService.executeRead(conn -> {
+                for (int from = 0; from < numbers.size(); from += IN_CLAUSE_CHUNK_SIZE) {
+                    List<String> chunk = numbers.subList(from, Math.min(from + IN_CLAUSE_CHUNK_SIZE, numbers.size()));
+                    String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+                    String sql = "SELECT * FROM devices WHERE deleted_at = 0 AND inventory_number IN (" + placeholders + ")";
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        for (int i = 0; i < chunk.size(); i++) {
+                            stmt.setString(i + 1, chunk.get(i));
+                        }
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            while (rs.next()) {
+                                Device device = createDeviceSQL(rs);
+                                found.put(device.getInventoryNumber(), device);
+                            }
+                        }
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка поиска приборов по инвентарным номерам: {}", e.getMessage(), e);
+        }
+        return found;
+    }
+
     /**
      * Поиск прибора по инвентарному номеру среди всех записей (включая мягко-удаленные)
      * @param inventoryNumber инвентарный номер
@@ -185,60 +781,116 @@ public class DeviceDAO {
      */
     public Device findDeviceByInventoryNumberIncludingDeleted(String inventoryNumber) {
         String sql = "SELECT * FROM devices WHERE inventory_number = ?";
-        try (PreparedStatement stmt = databaseService.getConnection().prepareStatement(sql)) {
-            stmt.setString(1, inventoryNumber);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return createDeviceSQL(rs);
-            }
+        try {
+            return databaseService.executeRead(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, sql);
+                stmt.setString(1, inventoryNumber);
+                return querySingleDevice(stmt);
+            });
         } catch (SQLException e) {
             LOGGER.error("Ошибка поиска прибора (включая удаленные): {}", e.getMessage(), e);
         }
         return null;
     }
 
+    @Override
     public Device getDeviceById(int id) {
         String sql = "SELECT * FROM devices WHERE id = ? AND deleted_at = 0";
-        try (PreparedStatement stmt = databaseService.getConnection().prepareStatement(sql)) {
-            stmt.setInt(1, id);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return createDeviceSQL(rs);
-            }
+        try {
+            return databaseService.executeRead(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, sql);
+                stmt.setInt(1, id);
+                return querySingleDevice(stmt);
+            });
         } catch (SQLException e) {
             LOGGER.error("Ошибка получения прибора по ID: {}", e.getMessage(), e);
         }
         return null;
     }
 
+    /**
+     * Активные приборы, размещённые на схеме, вместе с их позициями — одним запросом
+     * (JOIN device_locations → devices по первичному ключу) вместо чтения каждого
+     * прибора по id. Позиции удалённых приборов пропускаются.
+     */
+    public List<PlacedDevice> getPlacedDevices(int schemeId) {
+        String sql = "SELECT d.*, l.x, l.y, l.rotation, " +
+                "l.updated_at AS location_updated_at, l.last_synced_at AS location_last_synced_at " +
+                "FROM device_locations l JOIN devices d ON d.id = l.device_id " +
+                "WHERE l.scheme_id = ? AND l.deleted_at = 0 AND d.deleted_at = 0";
+        try {
+            return databaseService.executeRead(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, sql);
+                stmt.setInt(1, schemeId);
+                List<PlacedDevice> placed = new ArrayList<>();
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        Device device = createDeviceSQL(rs);
+                        DeviceLocation location = new DeviceLocation();
+                        location.setDeviceId(device.getId());
+                        location.setSchemeId(schemeId);
+                        location.setX(rs.getDouble("x"));
+                        location.setY(rs.getDouble("y"));
+                        location.setRotation(rs.getDouble("rotation"));
+                        location.setUpdatedAt(rs.getLong("location_updated_at"));
+                        location.setLastSyncedAt(rs.getLong("location_last_synced_at"));
+                        placed.add(new PlacedDevice(location, device));
+                    }
+                }
+                return placed;
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка загрузки приборов схемы {}: {}", schemeId, e.getMessage(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    @Override
     public List<String> getDistinctLocations() {
-        List<String> locations = new ArrayList<>();
         String sql = "SELECT DISTINCT location FROM devices WHERE location IS NOT NULL AND location <> '' AND deleted_at = 0 ORDER BY location";
-        try (Statement stmt = databaseService.getConnection().createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                locations.add(rs.getString("location"));
-            }
+        try {
+            return databaseService.executeRead(conn -> {
+                List<String> locations = new ArrayList<>();
+                try (ResultSet rs = databaseService.prepareCached(conn, sql).executeQuery()) {
+                    while (rs.next()) {
+                        locations.add(rs.getString("location"));
+                    }
+                }
+                return locations;
+            });
         } catch (SQLException e) {
             LOGGER.error("Ошибка получения уникальных локаций: {}", e.getMessage(), e);
+            return new ArrayList<>();
         }
-        return locations;
     }
 
+    @Override
     public List<Device> getAllDevicesForExport() {
-        List<Device> devices = new ArrayList<>();
         String sql = "SELECT * FROM devices ORDER BY id";
-        try (Statement stmt = databaseService.getConnection().createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        try {
+            return databaseService.executeRead(conn -> queryDevices(conn, sql));
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка получения приборов для экспорта: {}", e.getMessage(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    private List<Device> queryDevices(Connection conn, String sql) throws SQLException {
+        List<Device> devices = new ArrayList<>();
+        try (ResultSet rs = databaseService.prepareCached(conn, sql).executeQuery()) {
             while (rs.next()) {
                 devices.add(createDeviceSQL(rs));
             }
-        } catch (SQLException e) {
-            LOGGER.error("Ошибка получения приборов для экспорта: {}", e.getMessage(), e);
         }
         return devices;
     }
 
+    private Device querySingleDevice(PreparedStatement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? createDeviceSQL(rs) : null;
+        }
+    }
+
     private Device createDeviceSQL(ResultSet rs) throws SQLException {
         Device device = new Device();
         device.setId(rs.getInt("id"));
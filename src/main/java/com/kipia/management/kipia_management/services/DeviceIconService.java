@@ -183,17 +183,31 @@ public class DeviceIconService {
         }
 
         DeviceLocation location = new DeviceLocation(device.getId(), currentScheme.getId(), x, y, rotation);
-        boolean saved = deviceLocationDAO.addDeviceLocation(location);
-
-        if (saved) {
-            // Обновляем timestamp устройства
-            device.updateTimestamp();
-            if (deviceDAO != null) {
-                deviceDAO.updateDevice(device);
+        // Обновляем timestamp устройства; в фон уходит копия прибора
+        device.updateTimestamp();
+        Device snapshot = new Device(device);
+        AsyncDao.writeInOrder(() -> {
+            boolean saved = deviceLocationDAO.addDeviceLocation(location);
+            if (saved) {
+                if (deviceDAO != null) {
+                    deviceDAO.updateDevice(snapshot);
+                }
+                LOGGER.info("Позиция и поворот прибора '{}' сохранены в БД", snapshot.getName());
+            } else {
+                LOGGER.warn("Не удалось сохранить позицию и поворот прибора '{}'", snapshot.getName());
             }
-            LOGGER.info("Позиция и поворот прибора '{}' сохранены в БД", device.getName());
-        } else {
-            LOGGER.warn("Не удалось сохранить позицию и поворот прибора '{}'", device.getName());
+            return saved;
+        });
+    }
+
+    /**
+     * Фоновое обновление прибора (время изменения) в общей очереди записей.
+     */
+    static void touchDevice(DeviceDAO deviceDAO, Device device) {
+        device.updateTimestamp();
+        if (deviceDAO != null) {
+            Device snapshot = new Device(device);
+            AsyncDao.writeInOrder(() -> deviceDAO.updateDevice(snapshot));
         }
     }
 
@@ -217,10 +231,7 @@ public class DeviceIconService {
                     oldX, oldY, oldRotation, newX, newY, newRotation);
 
             // Обновляем timestamp устройства
-            device.updateTimestamp();
-            if (deviceDAO != null) {
-                deviceDAO.updateDevice(device);
-            }
+            touchDevice(deviceDAO, device);
         }
     }
 
@@ -371,10 +382,7 @@ public class DeviceIconService {
 
         if (confirmed) {
             // Обновляем timestamp устройства перед удалением
-            deviceToDelete.updateTimestamp();
-            if (deviceDAO != null) {
-                deviceDAO.updateDevice(deviceToDelete);
-            }
+            touchDevice(deviceDAO, deviceToDelete);
 
             // Используем команду удаления с undo/redo если есть ShapeManager
             if (shapeManager != null && currentScheme != null) {
@@ -405,7 +413,11 @@ public class DeviceIconService {
     private void deleteDeviceFromScheme(Node node, Device device, Scheme currentScheme) {
         try {
             if (currentScheme != null && deviceLocationDAO != null) {
-                deviceLocationDAO.deleteDeviceLocation(device.getId(), currentScheme.getId());
+                int schemeId = currentScheme.getId();
+                AsyncDao.writeInOrder(() -> {
+                    deviceLocationDAO.deleteDeviceLocation(device.getId(), schemeId);
+                    return null;
+                });
             }
 
             schemePane.getChildren().remove(node);
@@ -626,10 +638,7 @@ public class DeviceIconService {
                                 initialLayoutX, initialLayoutY, initialRotation, newX, newY, newRotation);
 
                         // Обновляем timestamp устройства
-                        device.updateTimestamp();
-                        if (deviceDAO != null) {
-                            deviceDAO.updateDevice(device);
-                        }
+                        touchDevice(deviceDAO, device);
                     }
                 }
 
@@ -7,7 +7,9 @@ import org.apache.logging.log4j.Logger;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Класс DeviceLocationDAO (Data Access Object) предоставляет методы для работы с данными
@@ -17,10 +19,22 @@ import java.util.List;
  * @author vladimir_shi
  * @since 30.09.2025
  */
-public class DeviceLocationDAO {
+public class DeviceLocationDAO implements DeviceLocationRepository {
     private final DatabaseService databaseService;
     private static final Logger LOGGER = LogManager.getLogger(DeviceLocationDAO.class);
 
+    private static final String UPSERT_SQL =
+            "INSERT INTO device_locations (device_id, scheme_id, x, y, rotation, updated_at, deleted_at, last_synced_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT(device_id, scheme_id) DO UPDATE SET " +
+            "x = excluded.x, y = excluded.y, rotation = excluded.rotation, " +
+            "updated_at = excluded.updated_at, deleted_at = excluded.deleted_at, last_synced_at = excluded.last_synced_at";
+
+    private static final String SCHEME_POSITIONS_SQL =
+            "SELECT device_id, x, y, rotation, deleted_at, last_synced_at FROM device_locations WHERE scheme_id = ?";
+    private static final String TOUCH_DEVICE_SQL =
+            "UPDATE devices SET updated_at = ? WHERE id = ?";
+
     public DeviceLocationDAO(DatabaseService databaseService) {
         this.databaseService = databaseService;
     }
@@ -38,6 +52,7 @@ public class DeviceLocationDAO {
      * @param location        координаты для добавления/обновления
      * @param updateTimestamp если true — обновляет updated_at, иначе оставляет как есть
      */
+    @Override
     public boolean addDeviceLocation(DeviceLocation location, boolean updateTimestamp) {
         if (!TimeValidator.getInstance().validateTimeForWrite()) {
             LOGGER.error("Добавление приборов заблокировано: проблема с системным временем");
@@ -48,23 +63,12 @@ public class DeviceLocationDAO {
             location.updateTimestamp();
         }
 
-        String sql = "INSERT INTO device_locations (device_id, scheme_id, x, y, rotation, updated_at, deleted_at, last_synced_at) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
-                "ON CONFLICT(device_id, scheme_id) DO UPDATE SET " +
-                "x = excluded.x, y = excluded.y, rotation = excluded.rotation, " +
-                "updated_at = excluded.updated_at, deleted_at = excluded.deleted_at, last_synced_at = excluded.last_synced_at";
-
-        try (PreparedStatement stmt = databaseService.getConnection().prepareStatement(sql)) {
-            stmt.setInt(1, location.getDeviceId());
-            stmt.setInt(2, location.getSchemeId());
-            stmt.setDouble(3, location.getX());
-            stmt.setDouble(4, location.getY());
-            stmt.setDouble(5, location.getRotation());
-            stmt.setLong(6, location.getUpdatedAt());
-            stmt.setLong(7, location.getDeletedAt());
-            stmt.setLong(8, location.getLastSyncedAt());
-
-            int rowsAffected = stmt.executeUpdate();
+        try {
+            int rowsAffected = databaseService.executeWrite(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, UPSERT_SQL);
+                bindLocation(stmt, location);
+                return stmt.executeUpdate();
+            });
             if (rowsAffected > 0) {
                 LOGGER.debug("Успешно добавлены/обновлены координаты: device_id={}, scheme_id={}",
                         location.getDeviceId(), location.getSchemeId());
@@ -76,9 +80,142 @@ public class DeviceLocationDAO {
         }
     }
 
+    /**
+     * Пакетное добавление/обновление координат одной транзакцией через executeBatch.
+     * Время проверяется один раз на весь пакет.
+     *
+     * @param locations       координаты для добавления/обновления
+     * @param updateTimestamp если true — обновляет updated_at, иначе оставляет как есть
+     * @return результат по каждой записи в порядке списка
+     */
+    @Override
+    public BatchResult upsertLocations(List<DeviceLocation> locations, boolean updateTimestamp) {
+        if (locations.isEmpty()) {
+            return new BatchResult(new int[0]);
+        }
+        if (!TimeValidator.getInstance().validateTimeForWrite()) {
+            LOGGER.error("Пакетное сохранение координат заблокировано: проблема с системным временем");
+            return BatchResult.failed(locations.size());
+        }
+
+        if (updateTimestamp) {
+            locations.forEach(DeviceLocation::updateTimestamp);
+        }
+
+        try {
+            BatchResult result = databaseService.executeInTransaction(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, UPSERT_SQL);
+                return new BatchResult(DatabaseService.executeBatch(stmt, locations, this::bindLocation));
+            });
+            LOGGER.debug("Пакетное сохранение координат: {}", result);
+            return result;
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка пакетного сохранения координат: {}", e.getMessage(), e);
+            return BatchResult.failed(locations.size());
+        }
+    }
+
+    /**
+     * Сохраняет позиции приборов на схеме одной транзакцией. Записываются только
+     * новые и изменённые (координаты, поворот, восстановление после удаления)
+     * привязки; у их приборов обновляется только devices.updated_at.
+     * Время проверяется один раз на весь пакет.
+     *
+     * @param schemeId  схема
+     * @param positions текущие позиции приборов на схеме
+     * @param now       время изменения для привязок и приборов
+     * @return идентификаторы приборов, размещение которых изменилось и записано, или null при ошибке
+     */
+    @Override
+    public List<Integer> savePositions(int schemeId, List<DeviceLocation> positions, long now) {
+        if (positions.isEmpty()) {
+            return List.of();
+        }
+        if (!TimeValidator.getInstance().validateTimeForWrite()) {
+            LOGGER.error("Сохранение позиций приборов заблокировано: проблема с системным временем");
+            return null;
+        }
+
+        try {
+            return databaseService.executeInTransaction(conn -> {
+                Map<Integer, DeviceLocation> stored = new HashMap<>();
+                PreparedStatement select = databaseService.prepareCached(conn, SCHEME_POSITIONS_SQL);
+                select.setInt(1, schemeId);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        DeviceLocation location = new DeviceLocation(rs.getInt("device_id"), schemeId,
+                                rs.getDouble("x"), rs.getDouble("y"), rs.getDouble("rotation"));
+                        location.setDeletedAt(rs.getLong("deleted_at"));
+                        location.setLastSyncedAt(rs.getLong("last_synced_at"));
+                        stored.put(location.getDeviceId(), location);
+                    }
+                }
+
+                List<DeviceLocation> changed = new ArrayList<>();
+                for (DeviceLocation position : positions) {
+                    DeviceLocation previous = stored.get(position.getDeviceId());
+                    if (previous == null || previous.isDeleted()
+                            || Double.compare(previous.getX(), position.getX()) != 0
+                            || Double.compare(previous.getY(), position.getY()) != 0
+                            || Double.compare(previous.getRotation(), position.getRotation()) != 0) {
+                        position.setUpdatedAt(now);
+                        position.setDeletedAt(0);
+                        position.setLastSyncedAt(previous != null ? previous.getLastSyncedAt() : 0);
+                        changed.add(position);
+                    }
+                }
+                if (changed.isEmpty()) {
+                    return List.<Integer>of();
+                }
+
+                // Приборы, чья привязка не записалась или которых уже нет, в результат не попадают
+                PreparedStatement upsert = databaseService.prepareCached(conn, UPSERT_SQL);
+                int[] upserted = DatabaseService.executeBatch(upsert, changed, this::bindLocation);
+                List<Integer> written = new ArrayList<>(changed.size());
+                for (int i = 0; i < changed.size(); i++) {
+                    if (upserted[i] > 0) {
+                        written.add(changed.get(i).getDeviceId());
+                    }
+                }
+                PreparedStatement touch = databaseService.prepareCached(conn, TOUCH_DEVICE_SQL);
+                int[] touched = DatabaseService.executeBatch(touch, written, (stmt, deviceId) -> {
+                    stmt.setLong(1, now);
+                    stmt.setInt(2, deviceId);
+                });
+                List<Integer> deviceIds = new ArrayList<>(written.size());
+                for (int i = 0; i < written.size(); i++) {
+                    if (touched[i] > 0) {
+                        deviceIds.add(written.get(i));
+                    }
+                }
+                if (deviceIds.size() < changed.size()) {
+                    LOGGER.warn("Позиции на схеме {}: не записано {} из {} изменённых",
+                            schemeId, changed.size() - deviceIds.size(), changed.size());
+                }
+                LOGGER.debug("Позиции на схеме {}: изменено {} из {}", schemeId, deviceIds.size(), positions.size());
+                return deviceIds;
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка сохранения позиций приборов на схеме {}: {}", schemeId, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private void bindLocation(PreparedStatement stmt, DeviceLocation location) throws SQLException {
+        stmt.setInt(1, location.getDeviceId());
+        stmt.setInt(2, location.getSchemeId());
+        stmt.setDouble(3, location.getX());
+        stmt.setDouble(4, location.getY());
+        stmt.setDouble(5, location.getRotation());
+        stmt.setLong(6, location.getUpdatedAt());
+        stmt.setLong(7, location.getDeletedAt());
+        stmt.setLong(8, location.getLastSyncedAt());
+    }
+
     /**
      * Мягкое удаление координат прибора (soft delete).
      */
+    @Override
     public void deleteDeviceLocation(int deviceId, int schemeId) {
         if (!TimeValidator.getInstance().validateTimeForWrite()) {
             LOGGER.error("Удаление приборов заблокировано: проблема с системным временем");
@@ -86,13 +223,16 @@ public class DeviceLocationDAO {
         }
 
         String sql = "UPDATE device_locations SET deleted_at = ?, updated_at = ? WHERE device_id = ? AND scheme_id = ?";
-        try (PreparedStatement stmt = databaseService.getConnection().prepareStatement(sql)) {
-            long now = System.currentTimeMillis();
-            stmt.setLong(1, now);
-            stmt.setLong(2, now);
-            stmt.setInt(3, deviceId);
-            stmt.setInt(4, schemeId);
-            int rowsAffected = stmt.executeUpdate();
+        try {
+            int rowsAffected = databaseService.executeWrite(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, sql);
+                long now = System.currentTimeMillis();
+                stmt.setLong(1, now);
+                stmt.setLong(2, now);
+                stmt.setInt(3, deviceId);
+                stmt.setInt(4, schemeId);
+                return stmt.executeUpdate();
+            });
             if (rowsAffected > 0) {
                 LOGGER.info("Успешно удален прибор (soft delete): device_id={}, scheme_id={}", deviceId, schemeId);
             }
@@ -105,6 +245,7 @@ public class DeviceLocationDAO {
      * Полное физическое удаление всех локаций схемы.
      * Защищено валидацией времени.
      */
+    @Override
     public void deleteAllLocationsForScheme(int schemeId) {
         if (!TimeValidator.getInstance().validateTimeForWrite()) {
             LOGGER.error("Удаление всех приборов из схемы {} заблокировано: проблема с системным временем", schemeId);
@@ -113,49 +254,56 @@ public class DeviceLocationDAO {
 
         String sql = "DELETE FROM device_locations WHERE scheme_id = ?";
         try {
-            Connection conn = databaseService.getConnection();
-            if (conn == null || conn.isClosed()) {
-                LOGGER.error("Нет соединения с БД для удаления приборов схемы {}", schemeId);
-                return;
-            }
-
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int deletedCount = databaseService.executeWrite(conn -> {
+                PreparedStatement pstmt = databaseService.prepareCached(conn, sql);
                 pstmt.setInt(1, schemeId);
-                int deletedCount = pstmt.executeUpdate();
-                LOGGER.info("Удалено приборов для схемы {}: {}", schemeId, deletedCount);
-            }
+                return pstmt.executeUpdate();
+            });
+            LOGGER.info("Удалено приборов для схемы {}: {}", schemeId, deletedCount);
         } catch (SQLException e) {
             LOGGER.error("Ошибка удаления приборов для схемы {}: {}", schemeId, e.getMessage());
         }
     }
 
+    @Override
     public List<DeviceLocation> getLocationsBySchemeId(int schemeId) {
-        List<DeviceLocation> locations = new ArrayList<>();
         String sql = "SELECT * FROM device_locations WHERE scheme_id = ? AND deleted_at = 0";
-        try (PreparedStatement stmt = databaseService.getConnection().prepareStatement(sql)) {
-            stmt.setInt(1, schemeId);
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                locations.add(createDeviceLocationFromResultSet(rs));
-            }
+        try {
+            List<DeviceLocation> locations = databaseService.executeRead(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, sql);
+                stmt.setInt(1, schemeId);
+                return queryLocations(stmt);
+            });
             LOGGER.debug("Загружено приборов для схемы {}: {}", schemeId, locations.size());
+            return locations;
         } catch (SQLException e) {
             LOGGER.error("Ошибка получения приборов: {}", e.getMessage());
+            return new ArrayList<>();
         }
-        return locations;
     }
 
+    @Override
     public List<DeviceLocation> getAllLocations() {
-        List<DeviceLocation> locations = new ArrayList<>();
         String sql = "SELECT * FROM device_locations WHERE deleted_at = 0";
-        try (Statement stmt = databaseService.getConnection().createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                locations.add(createDeviceLocationFromResultSet(rs));
-            }
+        try {
+            List<DeviceLocation> locations = databaseService.executeRead(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, sql);
+                return queryLocations(stmt);
+            });
             LOGGER.debug("Загружено всех приборов: {}", locations.size());
+            return locations;
         } catch (SQLException e) {
             LOGGER.error("Ошибка получения всех приборов: {}", e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private List<DeviceLocation> queryLocations(PreparedStatement stmt) throws SQLException {
+        List<DeviceLocation> locations = new ArrayList<>();
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                locations.add(createDeviceLocationFromResultSet(rs));
+            }
         }
         return locations;
     }
@@ -0,0 +1,52 @@
+package com.kipia.management.kipia_management.services;
+
+import com.kipia.management.kipia_management.models.DeviceLocation;
+
+import java.util.List;
+
+/**
+ * Хранилище позиций приборов на схемах (ключ — прибор и схема).
+ * Реализации: {@link DeviceLocationDAO} (SQLite) и {@link InMemoryDeviceLocationRepository}.
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public interface DeviceLocationRepository {
+
+    /**
+     * Добавление/обновление координат прибора на схеме.
+     *
+     * @param updateTimestamp если true — обновляет updated_at, иначе оставляет как есть
+     */
+    boolean addDeviceLocation(DeviceLocation location, boolean updateTimestamp);
+
+    BatchResult upsertLocations(List<DeviceLocation> locations, boolean updateTimestamp);
+
+    /**
+     * Сохранение позиций приборов на схеме: записываются только новые
+     * и изменённые привязки, их updated_at становится равным {@code now}.
+     *
+     * @return идентификаторы приборов, размещение которых изменилось и записано, или null при ошибке
+     */
+    List<Integer> savePositions(int schemeId, List<DeviceLocation> positions, long now);
+
+    /**
+     * Мягкое удаление координат прибора (soft delete).
+     */
+    void deleteDeviceLocation(int deviceId, int schemeId);
+
+    /**
+     * Полное удаление всех позиций схемы.
+     */
+    void deleteAllLocationsForScheme(int schemeId);
+
+    /**
+     * Активные позиции на схеме.
+     */
+    List<DeviceLocation> getLocationsBySchemeId(int schemeId);
+
+    /**
+     * Все активные позиции.
+     */
+    List<DeviceLocation> getAllLocations();
+}
@@ -0,0 +1,219 @@
+package com.kipia.management.kipia_management.services;
+
+import com.kipia.management.kipia_management.models.Device;
+import com.kipia.management.kipia_management.models.DevicePhoto;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Класс DevicePhotoDAO предоставляет методы для работы с таблицей device_photos —
+ * нормализованным списком фото приборов (одна строка на файл).
+ * <p>
+ * Колонка {@code devices.photos} остаётся (её читает мобильное приложение
+ * при синхронизации); таблица поддерживается {@link DeviceDAO}: при каждой записи
+ * прибора его список фото сверяется с таблицей в той же транзакции. Удалённые
+ * фото помечаются deleted_at, чтобы синхронизация видела удаление.
+ * <p>
+ * Сверка фото при импорте и поиск дубликата по хэшу выполняются запросами
+ * по этой таблице, без чтения и разбора строки photos у всех приборов.
+ * Количество фото и приборов с фото берётся из сводки device_stats.
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public class DevicePhotoDAO {
+    private final DatabaseService databaseService;
+    private static final Logger LOGGER = LogManager.getLogger(DevicePhotoDAO.class);
+
+    private static final int IN_CLAUSE_CHUNK_SIZE = 500;
+
+    private static final String ACTIVE_NAMES_SQL =
+            "SELECT file_name FROM device_photos WHERE device_id = ? AND deleted_at = 0";
+    private static final String MARK_DELETED_SQL =
+            "UPDATE device_photos SET deleted_at = ? WHERE device_id = ? AND file_name = ? AND deleted_at = 0";
+    private static final String UPSERT_SQL =
+            "INSERT INTO device_photos (device_id, file_name, added_at, deleted_at) VALUES (?, ?, ?, 0) " +
+            "ON CONFLICT(device_id, file_name) DO UPDATE SET added_at = excluded.added_at, deleted_at = 0";
+
+    public DevicePhotoDAO(DatabaseService databaseService) {
+        this.databaseService = databaseService;
+    }
+
+    /**
+     * Приводит фото прибора в таблице к его списку {@code device.getPhotos()}:
+     * новые файлы добавляются (или восстанавливаются), отсутствующие в списке
+     * помечаются удалёнными. Вызывается из {@link DeviceDAO} внутри записи прибора.
+     *
+     * @param conn соединение-писатель текущей операции
+     * @return true, если таблица изменилась
+     */
+    boolean syncPhotos(Connection conn, Device device) throws SQLException {
+        if (device.getId() <= 0) {
+            return false;
+        }
+        Set<String> wanted = new LinkedHashSet<>(DeviceDAO.photoFileNames(device.getPhotos()));
+
+        Set<String> active = new HashSet<>();
+        PreparedStatement select = databaseService.prepareCached(conn, ACTIVE_NAMES_SQL);
+        select.setInt(1, device.getId());
+        try (ResultSet rs = select.executeQuery()) {
+            while (rs.next()) {
+                active.add(rs.getString(1));
+            }
+        }
+        if (active.equals(wanted)) {
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+        for (String fileName : active) {
+            if (!wanted.contains(fileName)) {
+                PreparedStatement stmt = databaseService.prepareCached(conn, MARK_DELETED_SQL);
+                stmt.setLong(1, now);
+                stmt.setInt(2, device.getId());
+                stmt.setString(3, fileName);
+                stmt.executeUpdate();
+            }
+        }
+        for (String fileName : wanted) {
+            if (!active.contains(fileName)) {
+                PreparedStatement stmt = databaseService.prepareCached(conn, UPSERT_SQL);
+                stmt.setInt(1, device.getId());
+                stmt.setString(2, fileName);
+                stmt.setLong(3, now);
+                stmt.executeUpdate();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Активные фото прибора в порядке добавления.
+     */
+    public List<DevicePhoto> getPhotos(int deviceId) {
+        String sql = "SELECT * FROM device_photos WHERE device_id = ? AND deleted_at = 0";
+        try {
+            return databaseService.executeRead(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, sql);
+                stmt.setInt(1, deviceId);
+                List<DevicePhoto> photos = new ArrayList<>();
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        photos.add(createPhoto(rs));
+                    }
+                }
+                // Фото у прибора немного — порядок добавления восстанавливаем в памяти
+                photos.sort(Comparator.comparingLong(DevicePhoto::addedAt).thenComparing(DevicePhoto::fileName));
+                return photos;
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка чтения фото прибора {}: {}", deviceId, e.getMessage(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Имена активных фото для набора приборов (несколько запросов с IN (...)).
+     *
+     * @return карта id прибора → имена файлов; приборы без фото в карту не попадают
+     */
+    public Map<Integer, Set<String>> getPhotoNames(Collection<Integer> deviceIds) {
+        List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(deviceIds));
+        Map<Integer, Set<String>> names = new HashMap<>();
+        if (ids.isEmpty()) {
+            return names;
+        }
+        try {
+            databaseService.executeRead(conn -> {
+                for (int from = 0; from < ids.size(); from += IN_CLAUSE_CHUNK_SIZE) {
+                    List<Integer> chunk = ids.subList(from, Math.min(from + IN_CLAUSE_CHUNK_SIZE, ids.size()));
+                    String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+                    String sql = "SELECT device_id, file_name FROM device_photos " +
+                            "WHERE deleted_at = 0 AND device_id IN (" + placeholders + ")";
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        for (int i = 0; i < chunk.size(); i++) {
+                            stmt.setInt(i + 1, chunk.get(i));
+                        }
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            while (rs.next()) {
+                                names.computeIfAbsent(rs.getInt(1), _ -> new HashSet<>()).add(rs.getString(2));
+                            }
+                        }
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка чтения фото приборов: {}", e.getMessage(), e);
+        }
+        return names;
+    }
+
+    /**
+     * Активное фото прибора с указанным хэшем содержимого (проверка дубликата при добавлении).
+     *
+     * @return имя файла или null, если такого фото нет (или его хэш не записан)
+     */
+    public String findPhotoByHash(int deviceId, String sha256) {
+        String sql = "SELECT file_name FROM device_photos WHERE device_id = ? AND sha256 = ? AND deleted_at = 0";
+        try {
+            return databaseService.executeRead(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, sql);
+                stmt.setInt(1, deviceId);
+                stmt.setString(2, sha256);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next() ? rs.getString(1) : null;
+                }
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка поиска фото по хэшу: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Записывает хэш и размер файлов уже добавленных фото прибора (одной транзакцией).
+     *
+     * @param photos фото с заполненными sha256 и size; остальные поля, кроме имени, не используются
+     */
+    public boolean updateFileInfo(int deviceId, List<DevicePhoto> photos) {
+        if (photos.isEmpty()) {
+            return true;
+        }
+        String sql = "UPDATE device_photos SET sha256 = ?, size = ? WHERE device_id = ? AND file_name = ?";
+        try {
+            return databaseService.executeInTransaction(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, sql);
+                DatabaseService.executeBatch(stmt, photos, (s, photo) -> {
+                    s.setString(1, photo.sha256());
+                    if (photo.size() != null) {
+                        s.setLong(2, photo.size());
+                    } else {
+                        s.setNull(2, Types.INTEGER);
+                    }
+                    s.setInt(3, deviceId);
+                    s.setString(4, photo.fileName());
+                });
+                return true;
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка записи хэшей фото прибора {}: {}", deviceId, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    private DevicePhoto createPhoto(ResultSet rs) throws SQLException {
+        long size = rs.getLong("size");
+        Long knownSize = rs.wasNull() ? null : size;
+        return new DevicePhoto(
+                rs.getInt("device_id"),
+                rs.getString("file_name"),
+                rs.getString("sha256"),
+                knownSize,
+                rs.getLong("added_at"),
+                rs.getLong("deleted_at"));
+    }
+}
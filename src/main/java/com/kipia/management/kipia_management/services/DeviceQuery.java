@@ -0,0 +1,112 @@
+package com.kipia.management.kipia_management.services;
+
+import com.kipia.management.kipia_management.models.Device;
+
+import java.util.function.Function;
+
+/**
+ * Параметры постраничной выборки приборов: строка поиска и сортировка.
+ * Фильтрация и сортировка выполняются в SQL (см. {@link DeviceDAO#getDevicePage}).
+ * Поиск идёт по полнотекстовому индексу devices_fts: каждое слово строки
+ * ищется как префикс слов в текстовых колонках прибора.
+ *
+ * @param search    строка поиска (пустая — без фильтра)
+ * @param sort      колонка сортировки
+ * @param ascending направление сортировки
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public record DeviceQuery(String search, SortColumn sort, boolean ascending) {
+
+    /**
+     * Колонки, по которым таблица приборов может сортироваться.
+     * Для каждой задано имя в БД и способ получить значение ключа из прибора.
+     */
+    public enum SortColumn {
+        TYPE("type", "type", Device::getType),
+        NAME("name", "name", Device::getName),
+        MANUFACTURER("manufacturer", "manufacturer", Device::getManufacturer),
+        INVENTORY_NUMBER("inventoryNumber", "inventory_number", Device::getInventoryNumber),
+        YEAR("year", "year", Device::getYear),
+        MEASUREMENT_LIMIT("measurementLimit", "measurement_limit", Device::getMeasurementLimit),
+        ACCURACY_CLASS("accuracyClass", "accuracy_class", Device::getAccuracyClass),
+        LOCATION("location", "location", Device::getLocation),
+        VALVE_NUMBER("valveNumber", "valve_number", Device::getValveNumber),
+        STATUS("status", "status", Device::getStatus),
+        ADDITIONAL_INFO("additionalInfo", "additional_info", Device::getAdditionalInfo),
+        // Ранжирование результатов поиска (bm25), имеет смысл только при непустом поиске
+        RELEVANCE("relevance", null, null);
+
+        private final String propertyName;
+        private final String sqlName;
+        private final Function<Device, Object> key;
+
+        SortColumn(String propertyName, String sqlName, Function<Device, Object> key) {
+            this.propertyName = propertyName;
+            this.sqlName = sqlName;
+            this.key = key;
+        }
+
+        public String sqlName() {
+            return sqlName;
+        }
+
+        /**
+         * Можно ли читать страницы keyset-запросом. Для ранжирования — нет:
+         * ранг вычисляется при каждом поиске и в приборе не хранится.
+         */
+        public boolean supportsKeyset() {
+            return key != null;
+        }
+
+        /**
+         * Колонка по имени свойства модели {@link Device} (как в PropertyValueFactory).
+         */
+        public static SortColumn byProperty(String propertyName) {
+            for (SortColumn column : values()) {
+                if (column.propertyName.equals(propertyName)) {
+                    return column;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Позиция в выборке для keyset-пагинации: значение колонки сортировки
+     * и id последней строки предыдущей страницы.
+     */
+    public record Cursor(Object key, int id) {
+        public static Cursor after(Device device, SortColumn sort) {
+            return new Cursor(sort.key.apply(device), device.getId());
+        }
+    }
+
+    public DeviceQuery {
+        search = search != null ? search.trim() : "";
+        sort = sort != null ? sort : SortColumn.INVENTORY_NUMBER;
+        if (sort == SortColumn.RELEVANCE && search.isEmpty()) {
+            sort = SortColumn.INVENTORY_NUMBER;
+            ascending = true;
+        }
+    }
+
+    /**
+     * Запрос по умолчанию: без поиска, по инвентарному номеру.
+     */
+    public static DeviceQuery defaults() {
+        return new DeviceQuery("", SortColumn.INVENTORY_NUMBER, true);
+    }
+
+    public boolean hasSearch() {
+        return !search.isEmpty();
+    }
+
+    public DeviceQuery withSearch(String newSearch) {
+        return new DeviceQuery(newSearch, sort, ascending);
+    }
+
+    public DeviceQuery withSort(SortColumn newSort, boolean newAscending) {
+        return new DeviceQuery(search, newSort, newAscending);
+    }
+}
@@ -1,6 +1,6 @@
 package com.kipia.management.kipia_management.services;
 
-import com.kipia.management.kipia_management.models.Device;
+import com.kipia.management.kipia_management.models.DeviceSummary;
 import javafx.application.Platform;
 import javafx.scene.layout.BorderPane;
 import org.apache.logging.log4j.LogManager;
@@ -14,10 +14,7 @@ import org.jfree.chart.title.LegendTitle;
 
 import java.awt.*;
 import java.util.Collections;
-import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
 /**
  * Класс-сервис для работы с отчетами
@@ -30,26 +27,24 @@ public class DeviceReportService {
     // логгер для сообщений
     private static final Logger LOGGER = LogManager.getLogger(DeviceReportService.class);
 
-    // Возвращает map подсчёта по выбранному критерию
-    public Map<String, Long> getReportData(List<Device> devices, String reportKey) {
-        Map<String, Long> result = switch (reportKey) {
-            case "Status" -> groupBy(devices, Device::getStatus);
-            case "Type" -> groupBy(devices, Device::getType);
-            case "Manufacturer" -> groupBy(devices, Device::getManufacturer);
-            case "Location" -> groupBy(devices, Device::getLocation);
-            case "Year" -> devices.stream()
-                    .filter(d -> d.getYear() != null)
-                    .collect(Collectors.groupingBy(d -> d.getYear().toString(), Collectors.counting()));
-            default -> Collections.emptyMap();
-        };
+    // Возвращает map подсчёта по выбранному критерию (в DeviceDAO группировка выполняется в SQLite)
+    public Map<String, Long> getReportData(DeviceRepository deviceDAO, String reportKey) {
+        DeviceSummary.Column column = reportColumn(reportKey);
+        Map<String, Long> result = column != null ? deviceDAO.countBy(column, Map.of()) : Collections.emptyMap();
         LOGGER.info("Сгенерированы данные отчета для '{}': {} записей", reportKey, result.size());  // Logger для success
         return result;
     }
 
-    private Map<String, Long> groupBy(List<Device> devices, Function<Device, String> classifier) {
-        return devices.stream()
-                .filter(d -> classifier.apply(d) != null && !classifier.apply(d).isEmpty())
-                .collect(Collectors.groupingBy(classifier, Collectors.counting()));
+    // Колонка приборов, по которой строится отчёт
+    private DeviceSummary.Column reportColumn(String reportKey) {
+        return switch (reportKey) {
+            case "Status" -> DeviceSummary.Column.STATUS;
+            case "Type" -> DeviceSummary.Column.TYPE;
+            case "Manufacturer" -> DeviceSummary.Column.MANUFACTURER;
+            case "Location" -> DeviceSummary.Column.LOCATION;
+            case "Year" -> DeviceSummary.Column.YEAR;
+            default -> null;
+        };
     }
 
     // Метод построения JFreeChart диаграммы
@@ -0,0 +1,104 @@
+package com.kipia.management.kipia_management.services;
+
+import com.kipia.management.kipia_management.models.Device;
+import com.kipia.management.kipia_management.models.DeviceSummary;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Хранилище приборов — операции, на которых построены синхронизация,
+ * импорт из Excel и отчёты.
+ * <p>
+ * Основная реализация — {@link DeviceDAO} (таблица devices в SQLite) и его
+ * кэширующий наследник {@link DeviceStore}. {@link InMemoryDeviceRepository}
+ * хранит приборы только в памяти: для пробного импорта и для прогона
+ * слияния и отчётов на больших объёмах без диска.
+ * <p>
+ * Удаление мягкое: удалённые приборы остаются в хранилище с deleted_at &gt; 0,
+ * их видят только методы «ForExport». Объекты, возвращаемые методами чтения,
+ * принадлежат вызывающему коду — изменения попадают в хранилище только через
+ * {@code updateDevice}.
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public interface DeviceRepository {
+
+    /**
+     * Добавление прибора. Заполняет id прибора.
+     *
+     * @param updateTimestamp если true - обновляет updated_at, если false - оставляет как есть
+     */
+    boolean addDevice(Device device, boolean updateTimestamp);
+
+    /**
+     * Пакетное добавление приборов. Запись, которую не удалось добавить
+     * (например, дубликат инвентарного номера), помечается как {@link BatchResult#FAILED}.
+     */
+    BatchResult addDevices(List<Device> devices, boolean updateTimestamp);
+
+    /**
+     * Обновление прибора по id.
+     *
+     * @param updateTimestamp если true - обновляет updated_at, если false - оставляет как есть
+     */
+    boolean updateDevice(Device device, boolean updateTimestamp);
+
+    BatchResult updateDevices(List<Device> devices, boolean updateTimestamp);
+
+    /**
+     * Удаление прибора (soft delete)
+     */
+    boolean deleteDevice(int id);
+
+    /**
+     * Активный прибор по id или null.
+     */
+    Device getDeviceById(int id);
+
+    /**
+     * Активные приборы, отсортированные по имени.
+     */
+    List<Device> getAllDevices();
+
+    /**
+     * Все приборы, включая удалённые, в порядке id.
+     */
+    List<Device> getAllDevicesForExport();
+
+    /**
+     * Активный прибор по инвентарному номеру или null.
+     */
+    Device findDeviceByInventoryNumber(String inventoryNumber);
+
+    /**
+     * Активные приборы по набору инвентарных номеров.
+     *
+     * @return карта инвентарный номер → прибор (только найденные)
+     */
+    Map<String, Device> findDevicesByInventoryNumbers(Collection<String> inventoryNumbers);
+
+    /**
+     * Непустые места установки активных приборов по алфавиту.
+     */
+    List<String> getDistinctLocations();
+
+    /**
+     * Количество активных приборов по значениям колонки (пустые значения не учитываются).
+     *
+     * @param column  колонка группировки (кроме {@link DeviceSummary.Column#PHOTOS})
+     * @param filters условия равенства по другим колонкам (пустая карта — все приборы)
+     * @return значение колонки → количество, в порядке значений
+     */
+    Map<String, Long> countBy(DeviceSummary.Column column, Map<DeviceSummary.Column, ?> filters);
+
+    /**
+     * Имена активных фото для набора приборов.
+     *
+     * @return карта id прибора → имена файлов; приборы без фото в карту не попадают
+     */
+    Map<Integer, Set<String>> getPhotoNames(Collection<Integer> deviceIds);
+}
@@ -0,0 +1,556 @@
+package com.kipia.management.kipia_management.services;
+
+import com.kipia.management.kipia_management.models.Device;
+import com.kipia.management.kipia_management.models.DeviceStats;
+import com.kipia.management.kipia_management.models.DeviceSummary;
+import javafx.application.Platform;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.ref.WeakReference;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Общий для всего приложения репозиторий приборов поверх {@link DeviceDAO}.
+ * <p>
+ * Держит в памяти активные приборы (deleted_at = 0) с индексами по id,
+ * инвентарному номеру и месту установки. Копия загружается из БД один раз
+ * при первом чтении; все записи идут сначала в SQLite (write-through) и только
+ * после успешной записи применяются к копии в памяти.
+ * <p>
+ * Запись в БД и её применение к копии выполняются одной операцией в потоке-писателе
+ * ({@link DatabaseService#executeWrite}), там же загружается и перечитывается копия.
+ * Поэтому изменения применяются в порядке фиксации в БД, а запись, зафиксированная
+ * во время загрузки, не теряется: она либо попала в прочитанные данные, либо
+ * применяется уже к загруженной копии.
+ * <p>
+ * Чтения по id, инвентарному номеру, списки приборов и локаций обслуживаются
+ * из памяти — переключение экранов больше не читает таблицу заново.
+ * Постраничные выборки, поиск и экспорт (в том числе удалённых записей) по-прежнему
+ * выполняются в SQL через {@link DeviceDAO}.
+ * <p>
+ * Вместе с индексами в памяти ведутся счётчики сводки (по статусам, местам
+ * установки, фото) — та же {@link DeviceStats}, что триггеры поддерживают
+ * в таблице device_stats; они меняются при каждом добавлении и удалении прибора
+ * из индексов, поэтому сводка не пересчитывается по всем приборам.
+ * <p>
+ * Наружу отдаются только копии приборов: изменение полученного объекта
+ * не затрагивает данные репозитория до вызова {@code updateDevice}.
+ * <p>
+ * Об изменениях подписчики узнают через {@link ChangeListener}: события
+ * нескольких записей подряд (например, при синхронизации) собираются в один
+ * вызов в потоке JavaFX. Подписчики хранятся по слабым ссылкам — контроллер
+ * держит ссылку на свой слушатель в поле и отписывается автоматически,
+ * когда его представление закрыто и собрано сборщиком мусора.
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public class DeviceStore extends DeviceDAO {
+    private static final Logger LOGGER = LogManager.getLogger(DeviceStore.class);
+
+    /**
+     * Вид изменения прибора.
+     */
+    public enum ChangeType {
+        ADDED, UPDATED, REMOVED
+    }
+
+    /**
+     * Изменение одного прибора. Для {@link ChangeType#REMOVED} — последнее известное состояние.
+     */
+    public record DeviceChange(ChangeType type, Device device) {
+    }
+
+    /**
+     * Подписчик на изменения приборов. Вызывается в потоке JavaFX.
+     */
+    @FunctionalInterface
+    public interface ChangeListener {
+        void onDevicesChanged(List<DeviceChange> changes);
+    }
+
+    private static final Comparator<Device> BY_NAME =
+            Comparator.comparing(Device::getName, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final DatabaseService databaseService;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Device> byId = new HashMap<>();
+    private final Map<String, Device> byInventoryNumber = new HashMap<>();
+    private final Map<String, Set<Integer>> idsByLocation = new TreeMap<>();
+    private final Map<String, Integer> statusCounts = new HashMap<>();
+    private int devicesWithPhotos;
+    private int photoCount;
+    private volatile boolean loaded;
+
+    private final List<WeakReference<ChangeListener>> listeners = new CopyOnWriteArrayList<>();
+    private final List<DeviceChange> pendingChanges = new ArrayList<>();
+    private boolean deliveryScheduled;
+
+    public DeviceStore(DatabaseService databaseService) {
+        super(databaseService);
+        this.databaseService = databaseService;
+    }
+
+    /**
+     * Подписывает слушателя, если DAO — это общий репозиторий приборов.
+     * Для DAO внешней БД (импорт при синхронизации) ничего не делает.
+     *
+     * @param listener слушатель; вызывающий код должен хранить на него ссылку
+     */
+    public static void subscribe(DeviceDAO deviceDAO, ChangeListener listener) {
+        if (deviceDAO instanceof DeviceStore store) {
+            store.addListener(listener);
+        }
+    }
+
+    public void addListener(ChangeListener listener) {
+        listeners.add(new WeakReference<>(listener));
+    }
+
+    public void removeListener(ChangeListener listener) {
+        listeners.removeIf(ref -> ref.get() == null || ref.get() == listener);
+    }
+
+    // ─────────────────────────────────────────────
+    // ЗАПИСЬ (сначала БД, затем память)
+    // ─────────────────────────────────────────────
+
+    @Override
+    public boolean addDevice(Device device, boolean updateTimestamp) {
+        return writeThrough(() -> super.addDevice(device, updateTimestamp),
+                ok -> ok ? applyWritten(List.of(device)) : List.of(), false);
+    }
+
+    @Override
+    public BatchResult addDevices(List<Device> devices, boolean updateTimestamp) {
+        return writeThrough(() -> super.addDevices(devices, updateTimestamp),
+                result -> applyWritten(succeeded(devices, result)), BatchResult.failed(devices.size()));
+    }
+
+    @Override
+    public boolean updateDevice(Device device, boolean updateTimestamp) {
+        return writeThrough(() -> super.updateDevice(device, updateTimestamp),
+                ok -> ok ? applyWritten(List.of(device)) : List.of(), false);
+    }
+
+    @Override
+    public BatchResult updateDevices(List<Device> devices, boolean updateTimestamp) {
+        return writeThrough(() -> super.updateDevices(devices, updateTimestamp),
+                result -> applyWritten(succeeded(devices, result)), BatchResult.failed(devices.size()));
+    }
+
+    /**
+     * Вызывается после фиксации записи другого DAO, поэтому более поздняя запись
+     * прибора могла успеть примениться: updated_at только увеличивается.
+     */
+    @Override
+    public void devicesTouched(Collection<Integer> ids, long updatedAt) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        List<DeviceChange> changes = new ArrayList<>(ids.size());
+        lock.writeLock().lock();
+        try {
+            // Копия, загруженная после фиксации, уже содержит это время
+            if (!loaded) {
+                return;
+            }
+            for (int id : ids) {
+                Device device = byId.get(id);
+                if (device != null && device.getUpdatedAt() < updatedAt) {
+                    device.setUpdatedAt(updatedAt);
+                    changes.add(new DeviceChange(ChangeType.UPDATED, new Device(device)));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        publish(changes);
+    }
+
+    @Override
+    public boolean deleteDevice(int id) {
+        return writeThrough(() -> super.deleteDevice(id), ok -> {
+            if (!ok) {
+                return List.of();
+            }
+            lock.writeLock().lock();
+            try {
+                Device removed = loaded ? unindex(id) : null;
+                return removed != null
+                        ? List.of(new DeviceChange(ChangeType.REMOVED, new Device(removed)))
+                        : List.of();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }, false);
+    }
+
+    // ─────────────────────────────────────────────
+    // ЧТЕНИЕ ИЗ ПАМЯТИ
+    // ─────────────────────────────────────────────
+
+    @Override
+    public List<Device> getAllDevices() {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            List<Device> devices = new ArrayList<>(byId.size());
+            for (Device device : byId.values()) {
+                devices.add(new Device(device));
+            }
+            devices.sort(BY_NAME);
+            return devices;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<DeviceSummary> getDeviceSummaries(Set<DeviceSummary.Column> columns) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            // Проекция из памяти заполняет только запрошенные колонки, как запрос DeviceDAO
+            Set<DeviceSummary.Column> selected = columns.isEmpty()
+                    ? EnumSet.noneOf(DeviceSummary.Column.class)
+                    : EnumSet.copyOf(columns);
+            List<Device> devices = new ArrayList<>(byId.values());
+            devices.sort(BY_NAME);
+            List<DeviceSummary> summaries = new ArrayList<>(devices.size());
+            for (Device device : devices) {
+                summaries.add(DeviceSummary.of(device, selected));
+            }
+            return summaries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Device getDeviceById(int id) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return copyOf(byId.get(id));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Device findDeviceByInventoryNumber(String inventoryNumber) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return copyOf(byInventoryNumber.get(inventoryNumber));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, Device> findDevicesByInventoryNumbers(Collection<String> inventoryNumbers) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            Map<String, Device> found = new HashMap<>();
+            for (String number : inventoryNumbers) {
+                Device device = byInventoryNumber.get(number);
+                if (device != null) {
+                    found.put(number, new Device(device));
+                }
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> getDistinctLocations() {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            List<String> locations = new ArrayList<>();
+            for (String location : idsByLocation.keySet()) {
+                if (!location.isEmpty()) {
+                    locations.add(location);
+                }
+            }
+            return locations;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Активные приборы на месте установки (копии, по id).
+     */
+    public List<Device> getDevicesByLocation(String location) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            List<Device> devices = new ArrayList<>();
+            for (int id : idsByLocation.getOrDefault(location, Set.of())) {
+                devices.add(new Device(byId.get(id)));
+            }
+            return devices;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Сводка по приборам из счётчиков в памяти. Пока копия не загружена —
+     * из таблицы device_stats (без загрузки всех приборов).
+     */
+    @Override
+    public DeviceStats getDeviceStats() {
+        if (!loaded) {
+            return super.getDeviceStats();
+        }
+        lock.readLock().lock();
+        try {
+            Map<String, Integer> byLocation = new HashMap<>();
+            idsByLocation.forEach((location, ids) -> byLocation.put(location, ids.size()));
+            return new DeviceStats(byId.size(), statusCounts, byLocation, devicesWithPhotos, photoCount);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Перечитывает копию из БД (если данные меняли в обход репозитория).
+     * Подписчики получают изменения относительно прежнего состояния.
+     */
+    public void reload() {
+        int[] count = new int[1];
+        writeThrough(() -> {
+            List<Device> fresh = super.getAllDevices();
+            count[0] = fresh.size();
+            return fresh;
+        }, fresh -> {
+            List<DeviceChange> changes = new ArrayList<>();
+            lock.writeLock().lock();
+            try {
+                Set<Integer> stale = new HashSet<>(byId.keySet());
+                for (Device device : fresh) {
+                    stale.remove(device.getId());
+                    changes.add(new DeviceChange(index(device) == null ? ChangeType.ADDED : ChangeType.UPDATED,
+                            new Device(device)));
+                }
+                for (int id : stale) {
+                    changes.add(new DeviceChange(ChangeType.REMOVED, new Device(unindex(id))));
+                }
+                loaded = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return changes;
+        }, List.<Device>of());
+        LOGGER.info("Репозиторий приборов перечитан из БД: {} приборов", count[0]);
+    }
+
+    // ─────────────────────────────────────────────
+    // ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ
+    // ─────────────────────────────────────────────
+
+    /**
+     * Загружает копию в потоке-писателе: пока приборы читаются из БД,
+     * ни одна запись не фиксируется, а следующие записи применяются
+     * уже к загруженной копии.
+     */
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        long start = System.nanoTime();
+        writeThrough(() -> loaded ? List.<Device>of() : super.getAllDevices(), devices -> {
+            lock.writeLock().lock();
+            try {
+                if (!loaded) {
+                    devices.forEach(this::index);
+                    loaded = true;
+                    LOGGER.info("Репозиторий приборов загружен: {} приборов за {} мс",
+                            devices.size(), (System.nanoTime() - start) / 1_000_000);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return List.of();
+        }, List.<Device>of());
+    }
+
+    /**
+     * Выполняет запись DAO и применяет её результат к копии в памяти одной
+     * операцией в потоке-писателе, затем ставит изменения в очередь подписчикам.
+     *
+     * @param write  запись через {@link DeviceDAO}
+     * @param apply  применение результата записи к копии
+     * @param failed результат, если операцию не удалось поставить в очередь записи
+     */
+    private <T> T writeThrough(Supplier<T> write, Function<T, List<DeviceChange>> apply, T failed) {
+        try {
+            return databaseService.executeWrite(_ -> {
+                T result = write.get();
+                publish(apply.apply(result));
+                return result;
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка записи через репозиторий приборов: {}", e.getMessage(), e);
+            return failed;
+        }
+    }
+
+    /**
+     * Применяет успешно записанные в БД приборы к копии в памяти (в потоке-писателе).
+     * Пока копия не загружена, менять нечего — она прочитается из БД целиком.
+     */
+    private List<DeviceChange> applyWritten(List<Device> written) {
+        if (written.isEmpty()) {
+            return List.of();
+        }
+        List<DeviceChange> changes = new ArrayList<>(written.size());
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                return List.of();
+            }
+            for (Device device : written) {
+                if (device.getId() <= 0) {
+                    continue;
+                }
+                if (device.isDeleted()) {
+                    Device removed = unindex(device.getId());
+                    if (removed != null) {
+                        changes.add(new DeviceChange(ChangeType.REMOVED, new Device(removed)));
+                    }
+                } else {
+                    Device previous = index(new Device(device));
+                    changes.add(new DeviceChange(previous == null ? ChangeType.ADDED : ChangeType.UPDATED,
+                            new Device(device)));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return changes;
+    }
+
+    /**
+     * Добавляет или заменяет прибор во всех индексах (под блокировкой записи).
+     *
+     * @return прежняя версия прибора или null
+     */
+    private Device index(Device device) {
+        Device previous = unindex(device.getId());
+        byId.put(device.getId(), device);
+        if (device.getInventoryNumber() != null) {
+            byInventoryNumber.put(device.getInventoryNumber(), device);
+        }
+        idsByLocation.computeIfAbsent(locationKey(device), _ -> new TreeSet<>()).add(device.getId());
+        countStats(device, 1);
+        return previous;
+    }
+
+    private Device unindex(int id) {
+        Device previous = byId.remove(id);
+        if (previous == null) {
+            return null;
+        }
+        if (previous.getInventoryNumber() != null) {
+            byInventoryNumber.remove(previous.getInventoryNumber(), previous);
+        }
+        String location = locationKey(previous);
+        Set<Integer> ids = idsByLocation.get(location);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                idsByLocation.remove(location);
+            }
+        }
+        countStats(previous, -1);
+        return previous;
+    }
+
+    /**
+     * Добавляет (+1) или вычитает (-1) вклад прибора в счётчики сводки.
+     * Фото считаются по уникальным именам файлов — как в таблице device_photos.
+     */
+    private void countStats(Device device, int delta) {
+        String status = device.getStatus() != null ? device.getStatus() : "";
+        statusCounts.merge(status, delta, (a, b) -> a + b == 0 ? null : a + b);
+        List<String> photos = device.getPhotos();
+        if (photos != null && !photos.isEmpty()) {
+            int count = new HashSet<>(photoFileNames(photos)).size();
+            photoCount += delta * count;
+            if (count > 0) {
+                devicesWithPhotos += delta;
+            }
+        }
+    }
+
+    private static String locationKey(Device device) {
+        return device.getLocation() != null ? device.getLocation() : "";
+    }
+
+    private static Device copyOf(Device device) {
+        return device != null ? new Device(device) : null;
+    }
+
+    private static List<Device> succeeded(List<Device> devices, BatchResult result) {
+        List<Device> written = new ArrayList<>(devices.size());
+        for (int i = 0; i < devices.size() && i < result.size(); i++) {
+            if (result.isSuccess(i)) {
+                written.add(devices.get(i));
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Ставит изменения в очередь на доставку подписчикам. Изменения, пришедшие
+     * до того как поток JavaFX их забрал, доставляются одним вызовом.
+     */
+    private void publish(List<DeviceChange> changes) {
+        listeners.removeIf(ref -> ref.get() == null);
+        if (changes.isEmpty() || listeners.isEmpty()) {
+            return;
+        }
+        synchronized (pendingChanges) {
+            pendingChanges.addAll(changes);
+            if (deliveryScheduled) {
+                return;
+            }
+            deliveryScheduled = true;
+        }
+        Platform.runLater(this::deliver);
+    }
+
+    private void deliver() {
+        List<DeviceChange> changes;
+        synchronized (pendingChanges) {
+            changes = List.copyOf(pendingChanges);
+            pendingChanges.clear();
+            deliveryScheduled = false;
+        }
+        for (WeakReference<ChangeListener> ref : listeners) {
+            ChangeListener listener = ref.get();
+            if (listener == null) {
+                continue;
+            }
+            try {
+                listener.onDevicesChanged(changes);
+            } catch (RuntimeException e) {
+                LOGGER.error("Ошибка обработки изменений приборов: {}", e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -1,15 +1,12 @@
 package com.kipia.management.kipia_management.services;
 
-import com.kipia.management.kipia_management.models.Device;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * Класс для работы с экспортом данных
@@ -22,8 +19,8 @@ public class ExcelExportReportsService {
     // логгер для сообщений
     private static final Logger LOGGER = LogManager.getLogger(ExcelExportReportsService.class);
 
-    // Обновлено: принимает File, возвращает boolean
-    public boolean exportReport(List<Device> devices, String reportKey, File file) {
+    // Принимает уже подсчитанные данные отчёта (см. DeviceReportService.getReportData)
+    public boolean exportReport(Map<String, Long> countMap, String reportKey, File file) {
         if (file == null) {
             LOGGER.warn("Файл для экспорта не указан");
             return false;
@@ -35,7 +32,6 @@ public class ExcelExportReportsService {
             headerRow.createCell(0).setCellValue(getHeaderForType(reportKey));
             headerRow.createCell(1).setCellValue("Количество");
 
-            Map<String, Long> countMap = getCountMap(devices, reportKey);
             int rowNum = 1;
             for (Map.Entry<String, Long> entry : countMap.entrySet()) {
                 if (entry.getKey() == null || entry.getKey().isEmpty()) continue;
@@ -66,17 +62,4 @@ public class ExcelExportReportsService {
             default -> "Категория";
         };
     }
-
-    private Map<String, Long> getCountMap(List<Device> devices, String reportKey) {
-        return switch (reportKey) {
-            case "Status" -> devices.stream().collect(Collectors.groupingBy(Device::getStatus, Collectors.counting()));
-            case "Type" -> devices.stream().collect(Collectors.groupingBy(Device::getType, Collectors.counting()));
-            case "Manufacturer" -> devices.stream().collect(Collectors.groupingBy(Device::getManufacturer, Collectors.counting()));
-            case "Location" -> devices.stream().collect(Collectors.groupingBy(Device::getLocation, Collectors.counting()));
-            case "Year" -> devices.stream()
-                    .filter(d -> d.getYear() != null)
-                    .collect(Collectors.groupingBy(d -> d.getYear().toString(), Collectors.counting()));
-            default -> throw new IllegalArgumentException("Не поддерживаемый тип отчёта");
-        };
-    }
 }
\ No newline at end of file
@@ -0,0 +1,122 @@
+package com.kipia.management.kipia_management.services;
+
+import com.kipia.management.kipia_management.models.DeviceLocation;
+import com.kipia.management.kipia_management.utils.LongObjectMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Хранилище позиций приборов в памяти, без БД. Позиции лежат в {@link LongObjectMap}
+ * по составному ключу (прибор, схема) — как первичный ключ таблицы device_locations.
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public class InMemoryDeviceLocationRepository implements DeviceLocationRepository {
+    private final LongObjectMap<DeviceLocation> locations = new LongObjectMap<>();
+
+    /**
+     * Копия всех активных позиций другого хранилища.
+     */
+    public static InMemoryDeviceLocationRepository copyOf(DeviceLocationRepository source) {
+        InMemoryDeviceLocationRepository copy = new InMemoryDeviceLocationRepository();
+        copy.upsertLocations(source.getAllLocations(), false);
+        return copy;
+    }
+
+    @Override
+    public synchronized boolean addDeviceLocation(DeviceLocation location, boolean updateTimestamp) {
+        if (updateTimestamp) {
+            location.updateTimestamp();
+        }
+        locations.put(LongObjectMap.key(location.getDeviceId(), location.getSchemeId()), copy(location));
+        return true;
+    }
+
+    @Override
+    public synchronized BatchResult upsertLocations(List<DeviceLocation> locations, boolean updateTimestamp) {
+        int[] counts = new int[locations.size()];
+        for (int i = 0; i < locations.size(); i++) {
+            counts[i] = addDeviceLocation(locations.get(i), updateTimestamp) ? 1 : BatchResult.FAILED;
+        }
+        return new BatchResult(counts);
+    }
+
+    /**
+     * Как {@link DeviceLocationDAO#savePositions}, но без отметки updated_at
+     * у приборов — приборов в этом хранилище нет.
+     */
+    @Override
+    public synchronized List<Integer> savePositions(int schemeId, List<DeviceLocation> positions, long now) {
+        List<Integer> moved = new ArrayList<>();
+        for (DeviceLocation position : positions) {
+            DeviceLocation previous = locations.get(LongObjectMap.key(position.getDeviceId(), schemeId));
+            if (previous == null || previous.isDeleted()
+                    || Double.compare(previous.getX(), position.getX()) != 0
+                    || Double.compare(previous.getY(), position.getY()) != 0
+                    || Double.compare(previous.getRotation(), position.getRotation()) != 0) {
+                position.setUpdatedAt(now);
+                position.setDeletedAt(0);
+                position.setLastSyncedAt(previous != null ? previous.getLastSyncedAt() : 0);
+                addDeviceLocation(position, false);
+                moved.add(position.getDeviceId());
+            }
+        }
+        return moved;
+    }
+
+    @Override
+    public synchronized void deleteDeviceLocation(int deviceId, int schemeId) {
+        DeviceLocation stored = locations.get(LongObjectMap.key(deviceId, schemeId));
+        if (stored != null) {
+            long now = System.currentTimeMillis();
+            stored.setDeletedAt(now);
+            stored.setUpdatedAt(now);
+        }
+    }
+
+    @Override
+    public synchronized void deleteAllLocationsForScheme(int schemeId) {
+        List<DeviceLocation> removed = new ArrayList<>();
+        locations.forEachValue(location -> {
+            if (location.getSchemeId() == schemeId) {
+                removed.add(location);
+            }
+        });
+        for (DeviceLocation location : removed) {
+            locations.remove(LongObjectMap.key(location.getDeviceId(), schemeId));
+        }
+    }
+
+    @Override
+    public synchronized List<DeviceLocation> getLocationsBySchemeId(int schemeId) {
+        List<DeviceLocation> result = new ArrayList<>();
+        locations.forEachValue(location -> {
+            if (location.getSchemeId() == schemeId && !location.isDeleted()) {
+                result.add(copy(location));
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public synchronized List<DeviceLocation> getAllLocations() {
+        List<DeviceLocation> result = new ArrayList<>(locations.size());
+        locations.forEachValue(location -> {
+            if (!location.isDeleted()) {
+                result.add(copy(location));
+            }
+        });
+        return result;
+    }
+
+    private static DeviceLocation copy(DeviceLocation location) {
+        DeviceLocation copy = new DeviceLocation(location.getDeviceId(), location.getSchemeId(),
+                location.getX(), location.getY(), location.getRotation());
+        copy.setUpdatedAt(location.getUpdatedAt());
+        copy.setDeletedAt(location.getDeletedAt());
+        copy.setLastSyncedAt(location.getLastSyncedAt());
+        return copy;
+    }
+}
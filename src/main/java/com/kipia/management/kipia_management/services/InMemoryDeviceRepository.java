@@ -0,0 +1,271 @@
+package com.kipia.management.kipia_management.services;
+
+import com.kipia.management.kipia_management.models.Device;
+import com.kipia.management.kipia_management.models.DeviceSummary;
+import com.kipia.management.kipia_management.utils.LongObjectMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.*;
+
+/**
+ * Хранилище приборов в памяти, без БД.
+ * <p>
+ * Приборы лежат в {@link LongObjectMap} по id, инвентарный номер уникален среди
+ * всех записей, включая удалённые (как ограничение UNIQUE таблицы devices).
+ * Хранилище держит собственные копии: прибор, переданный на запись, и прибор,
+ * возвращённый чтением, с хранимым не связаны. Фото хранятся так же, как в БД, —
+ * только имена файлов.
+ * <p>
+ * Проверка системного времени ({@code TimeValidator}) не выполняется: данные
+ * никуда не записываются. Копия рабочего хранилища ({@link #copyOf}) подходит
+ * для пробного импорта — изменения видны только в копии.
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public class InMemoryDeviceRepository implements DeviceRepository {
+    private static final Logger LOGGER = LogManager.getLogger(InMemoryDeviceRepository.class);
+
+    private static final Comparator<Device> BY_NAME =
+            Comparator.comparing(Device::getName, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final LongObjectMap<Device> devices;
+    private final Map<String, Device> byInventoryNumber;
+    private int nextId = 1;
+
+    public InMemoryDeviceRepository() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize ожидаемое количество приборов
+     */
+    public InMemoryDeviceRepository(int expectedSize) {
+        devices = new LongObjectMap<>(expectedSize);
+        byInventoryNumber = new HashMap<>(Math.max(16, expectedSize * 4 / 3 + 1));
+    }
+
+    /**
+     * Копия всех приборов другого хранилища (включая удалённые) с теми же id.
+     */
+    public static InMemoryDeviceRepository copyOf(DeviceRepository source) {
+        List<Device> all = source.getAllDevicesForExport();
+        InMemoryDeviceRepository copy = new InMemoryDeviceRepository(all.size());
+        for (Device device : all) {
+            copy.store(device, device.getId());
+        }
+        return copy;
+    }
+
+    /**
+     * Количество приборов, включая удалённые.
+     */
+    public synchronized int size() {
+        return devices.size();
+    }
+
+    @Override
+    public synchronized boolean addDevice(Device device, boolean updateTimestamp) {
+        if (updateTimestamp) {
+            device.updateTimestamp();
+        }
+        return insert(device);
+    }
+
+    @Override
+    public synchronized BatchResult addDevices(List<Device> devices, boolean updateTimestamp) {
+        int[] counts = new int[devices.size()];
+        for (int i = 0; i < devices.size(); i++) {
+            Device device = devices.get(i);
+            if (updateTimestamp) {
+                device.updateTimestamp();
+            }
+            counts[i] = insert(device) ? 1 : BatchResult.FAILED;
+        }
+        return new BatchResult(counts);
+    }
+
+    @Override
+    public synchronized boolean updateDevice(Device device, boolean updateTimestamp) {
+        if (updateTimestamp) {
+            device.updateTimestamp();
+        }
+        return update(device) > 0;
+    }
+
+    @Override
+    public synchronized BatchResult updateDevices(List<Device> devices, boolean updateTimestamp) {
+        int[] counts = new int[devices.size()];
+        for (int i = 0; i < devices.size(); i++) {
+            Device device = devices.get(i);
+            if (updateTimestamp) {
+                device.updateTimestamp();
+            }
+            counts[i] = update(device);
+        }
+        return new BatchResult(counts);
+    }
+
+    @Override
+    public synchronized boolean deleteDevice(int id) {
+        Device stored = devices.get(id);
+        if (stored != null) {
+            long now = System.currentTimeMillis();
+            stored.setDeletedAt(now);
+            stored.setUpdatedAt(now);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized Device getDeviceById(int id) {
+        Device stored = devices.get(id);
+        return stored != null && !stored.isDeleted() ? new Device(stored) : null;
+    }
+
+    @Override
+    public synchronized List<Device> getAllDevices() {
+        List<Device> active = new ArrayList<>(devices.size());
+        devices.forEachValue(device -> {
+            if (!device.isDeleted()) {
+                active.add(new Device(device));
+            }
+        });
+        active.sort(BY_NAME);
+        return active;
+    }
+
+    @Override
+    public synchronized List<Device> getAllDevicesForExport() {
+        List<Device> all = new ArrayList<>(devices.size());
+        devices.forEachValue(device -> all.add(new Device(device)));
+        all.sort(Comparator.comparingInt(Device::getId));
+        return all;
+    }
+
+    @Override
+    public synchronized Device findDeviceByInventoryNumber(String inventoryNumber) {
+        Device stored = byInventoryNumber.get(inventoryNumber);
+        return stored != null && !stored.isDeleted() ? new Device(stored) : null;
+    }
+
+    @Override
+    public synchronized Map<String, Device> findDevicesByInventoryNumbers(Collection<String> inventoryNumbers) {
+        Map<String, Device> found = new HashMap<>();
+        for (String number : inventoryNumbers) {
+            Device stored = byInventoryNumber.get(number);
+            if (stored != null && !stored.isDeleted()) {
+                found.put(number, new Device(stored));
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public synchronized List<String> getDistinctLocations() {
+        Set<String> locations = new TreeSet<>();
+        devices.forEachValue(device -> {
+            if (!device.isDeleted() && device.getLocation() != null && !device.getLocation().isEmpty()) {
+                locations.add(device.getLocation());
+            }
+        });
+        return new ArrayList<>(locations);
+    }
+
+    @Override
+    public synchronized Map<String, Long> countBy(DeviceSummary.Column column, Map<DeviceSummary.Column, ?> filters) {
+        if (column == DeviceSummary.Column.PHOTOS || filters.containsKey(DeviceSummary.Column.PHOTOS)) {
+            throw new IllegalArgumentException("Группировка по фото не поддерживается");
+        }
+        // Годы упорядочиваются как числа, остальные колонки — как строки (так же, как в SQLite)
+        Map<Object, Long> counts = new TreeMap<>();
+        devices.forEachValue(device -> {
+            if (device.isDeleted() || !matches(device, filters)) {
+                return;
+            }
+            Object value = columnValue(device, column);
+            if (value != null && !"".equals(value)) {
+                counts.merge(value, 1L, Long::sum);
+            }
+        });
+        Map<String, Long> result = new LinkedHashMap<>();
+        counts.forEach((value, count) -> result.put(String.valueOf(value), count));
+        return result;
+    }
+
+    @Override
+    public synchronized Map<Integer, Set<String>> getPhotoNames(Collection<Integer> deviceIds) {
+        Map<Integer, Set<String>> names = new HashMap<>();
+        for (int id : deviceIds) {
+            Device stored = devices.get(id);
+            if (stored != null && !stored.isDeleted() && !stored.getPhotos().isEmpty()) {
+                names.put(id, new LinkedHashSet<>(stored.getPhotos()));
+            }
+        }
+        return names;
+    }
+
+    private boolean insert(Device device) {
+        String number = device.getInventoryNumber();
+        if (number == null || byInventoryNumber.containsKey(number)) {
+            LOGGER.warn("Прибор {} не добавлен: инвентарный номер пуст или уже занят", number);
+            return false;
+        }
+        device.setId(nextId);
+        store(device, nextId);
+        return true;
+    }
+
+    // 1 — прибор обновлён, 0 — прибора с таким id нет, FAILED — инвентарный номер занят другим прибором
+    private int update(Device device) {
+        Device stored = devices.get(device.getId());
+        if (stored == null) {
+            return 0;
+        }
+        String number = device.getInventoryNumber();
+        Device owner = number != null ? byInventoryNumber.get(number) : null;
+        if (number == null || (owner != null && owner != stored)) {
+            LOGGER.warn("Прибор {} не обновлён: инвентарный номер пуст или уже занят", number);
+            return BatchResult.FAILED;
+        }
+        byInventoryNumber.remove(stored.getInventoryNumber());
+        store(device, device.getId());
+        return 1;
+    }
+
+    private void store(Device device, int id) {
+        Device copy = new Device(device);
+        copy.setId(id);
+        copy.setPhotos(DeviceDAO.photoFileNames(device.getPhotos()));
+        devices.put(id, copy);
+        byInventoryNumber.put(copy.getInventoryNumber(), copy);
+        nextId = Math.max(nextId, id + 1);
+    }
+
+    private static boolean matches(Device device, Map<DeviceSummary.Column, ?> filters) {
+        for (Map.Entry<DeviceSummary.Column, ?> filter : filters.entrySet()) {
+            Object value = columnValue(device, filter.getKey());
+            // Сравнение "= NULL" в SQL ложно
+            if (value == null || filter.getValue() == null
+                    || !String.valueOf(value).equals(String.valueOf(filter.getValue()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Object columnValue(Device device, DeviceSummary.Column column) {
+        return switch (column) {
+            case TYPE -> device.getType();
+            case NAME -> device.getName();
+            case MANUFACTURER -> device.getManufacturer();
+            case INVENTORY_NUMBER -> device.getInventoryNumber();
+            case YEAR -> device.getYear();
+            case LOCATION -> device.getLocation();
+            case VALVE_NUMBER -> device.getValveNumber();
+            case STATUS -> device.getStatus();
+            case PHOTOS -> device.getPhotos();
+        };
+    }
+}
@@ -0,0 +1,173 @@
+package com.kipia.management.kipia_management.services;
+
+import com.kipia.management.kipia_management.models.Scheme;
+import com.kipia.management.kipia_management.utils.LongObjectMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.*;
+
+/**
+ * Хранилище схем в памяти, без БД. Схемы лежат в {@link LongObjectMap} по id,
+ * название уникально (как ограничение UNIQUE таблицы schemes). Данные схемы
+ * хранятся JSON-строкой; запись схемы без данных оставляет прежние данные,
+ * как {@code COALESCE(?, data)} в {@link SchemeDAO}.
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public class InMemorySchemeRepository implements SchemeRepository {
+    private static final Logger LOGGER = LogManager.getLogger(InMemorySchemeRepository.class);
+
+    private final LongObjectMap<Scheme> schemes = new LongObjectMap<>();
+    private final Map<String, Scheme> byName = new HashMap<>();
+    private int nextId = 1;
+
+    /**
+     * Копия всех схем другого хранилища (включая удалённые) с теми же id.
+     */
+    public static InMemorySchemeRepository copyOf(SchemeRepository source) {
+        InMemorySchemeRepository copy = new InMemorySchemeRepository();
+        for (Scheme scheme : source.getAllSchemesForExport()) {
+            copy.store(scheme, scheme.getId(), null);
+        }
+        return copy;
+    }
+
+    @Override
+    public synchronized boolean addScheme(Scheme scheme, boolean updateTimestamp) {
+        if (scheme.getName() == null || byName.containsKey(scheme.getName())) {
+            LOGGER.warn("Схема '{}' не добавлена: название пусто или уже занято", scheme.getName());
+            return false;
+        }
+        if (updateTimestamp) {
+            scheme.updateTimestamp();
+        }
+        scheme.setId(nextId);
+        store(scheme, nextId, null);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean updateScheme(Scheme scheme, boolean updateTimestamp) {
+        if (scheme == null || scheme.getId() <= 0) {
+            return false;
+        }
+        if (updateTimestamp) {
+            scheme.updateTimestamp();
+        }
+        return update(scheme) > 0;
+    }
+
+    @Override
+    public synchronized BatchResult updateSchemes(List<Scheme> schemes, boolean updateTimestamp) {
+        int[] counts = new int[schemes.size()];
+        for (int i = 0; i < schemes.size(); i++) {
+            Scheme scheme = schemes.get(i);
+            if (updateTimestamp) {
+                scheme.updateTimestamp();
+            }
+            counts[i] = update(scheme);
+        }
+        return new BatchResult(counts);
+    }
+
+    @Override
+    public synchronized BatchResult markSchemesSynced(List<Scheme> schemes) {
+        int[] counts = new int[schemes.size()];
+        for (int i = 0; i < schemes.size(); i++) {
+            Scheme stored = this.schemes.get(schemes.get(i).getId());
+            if (stored != null) {
+                stored.setLastSyncedAt(schemes.get(i).getLastSyncedAt());
+                counts[i] = 1;
+            }
+        }
+        return new BatchResult(counts);
+    }
+
+    @Override
+    public synchronized boolean deleteScheme(int schemeId) {
+        Scheme stored = schemes.get(schemeId);
+        if (stored == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        stored.setDeletedAt(now);
+        stored.setUpdatedAt(now);
+        return true;
+    }
+
+    @Override
+    public synchronized Scheme getSchemeById(int id) {
+        Scheme stored = schemes.get(id);
+        return stored != null ? copy(stored) : null;
+    }
+
+    @Override
+    public synchronized Scheme findSchemeByName(String name) {
+        Scheme stored = byName.get(name);
+        return stored != null ? copy(stored) : null;
+    }
+
+    @Override
+    public synchronized List<Scheme> getAllSchemes() {
+        List<Scheme> active = new ArrayList<>();
+        schemes.forEachValue(scheme -> {
+            if (!scheme.isDeleted()) {
+                active.add(copy(scheme));
+            }
+        });
+        active.sort(Comparator.comparing(Scheme::getName));
+        return active;
+    }
+
+    @Override
+    public synchronized List<Scheme> getAllSchemesForExport() {
+        List<Scheme> all = new ArrayList<>(schemes.size());
+        schemes.forEachValue(scheme -> all.add(copy(scheme)));
+        all.sort(Comparator.comparingInt(Scheme::getId));
+        return all;
+    }
+
+    // 1 — схема обновлена, 0 — схемы с таким id нет, FAILED — название занято другой схемой
+    private int update(Scheme scheme) {
+        Scheme stored = schemes.get(scheme.getId());
+        if (stored == null) {
+            return 0;
+        }
+        String name = scheme.getName() != null ? scheme.getName() : "";
+        Scheme owner = byName.get(name);
+        if (owner != null && owner != stored) {
+            LOGGER.warn("Схема '{}' не обновлена: название уже занято", name);
+            return BatchResult.FAILED;
+        }
+        byName.remove(stored.getName());
+        store(scheme, scheme.getId(), stored.getData());
+        return 1;
+    }
+
+    private void store(Scheme scheme, int id, String previousData) {
+        Scheme copy = copy(scheme);
+        copy.setId(id);
+        if (copy.getName() == null) {
+            copy.setName("");
+        }
+        if (copy.getDescription() == null) {
+            copy.setDescription("");
+        }
+        if (copy.getData() == null) {
+            copy.setData(previousData);
+        }
+        schemes.put(id, copy);
+        byName.put(copy.getName(), copy);
+        nextId = Math.max(nextId, id + 1);
+    }
+
+    private static Scheme copy(Scheme scheme) {
+        Scheme copy = new Scheme(scheme.getId(), scheme.getName(), scheme.getDescription(), scheme.getData());
+        copy.setUpdatedAt(scheme.getUpdatedAt());
+        copy.setDeletedAt(scheme.getDeletedAt());
+        copy.setLastSyncedAt(scheme.getLastSyncedAt());
+        return copy;
+    }
+}
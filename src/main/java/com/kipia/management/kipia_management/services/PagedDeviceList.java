@@ -0,0 +1,281 @@
+package com.kipia.management.kipia_management.services;
+
+import com.kipia.management.kipia_management.models.Device;
+import javafx.collections.ObservableListBase;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Постраничный источник данных для таблицы приборов.
+ * <p>
+ * Хранит только число строк и несколько последних прочитанных страниц;
+ * строки подгружаются из БД, когда {@link javafx.scene.control.TableView}
+ * запрашивает их при прокрутке. Поиск и сортировка задаются {@link DeviceQuery}
+ * и выполняются в SQL.
+ * <p>
+ * Следующая страница читается keyset-запросом от последней строки предыдущей
+ * (см. {@link DeviceDAO#getDevicePage}). Если к странице перешли скачком
+ * (перетаскивание ползунка) и её начало ещё неизвестно, она читается
+ * по смещению, а позиция запоминается для последующих страниц.
+ * <p>
+ * Используется только из потока JavaFX, но к БД из него не обращается: ещё не
+ * прочитанные строки возвращаются как {@code null} (пустые строки таблицы),
+ * страница читается через {@link AsyncDao} и подставляется событием замены строк.
+ * Смена запроса ({@link #setQuery}, {@link #refresh}) также выполняется в фоне;
+ * новый запрос можно подготовить и самостоятельно через {@link #load(DeviceQuery)}
+ * и затем применить в потоке JavaFX через {@link #apply(Snapshot)}.
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public class PagedDeviceList extends ObservableListBase<Device> {
+    private static final Logger LOGGER = LogManager.getLogger(PagedDeviceList.class);
+
+    static final int PAGE_SIZE = 200;
+    private static final int MAX_CACHED_PAGES = 10;
+
+    private final DeviceDAO deviceDAO;
+    private final AsyncDao asyncDao;
+    // Запрос, строки которого сейчас в списке
+    private DeviceQuery query;
+    // Последний запрошенный запрос (может ещё выполняться в фоне)
+    private DeviceQuery requestedQuery;
+    private int size;
+
+    // Страницы, читаемые сейчас в фоне (самые старые запросы отменяются при быстрой прокрутке)
+    private final LinkedHashMap<Integer, CompletableFuture<List<Device>>> loading = new LinkedHashMap<>();
+    // Меняется при смене содержимого: результаты чтения страниц старого запроса отбрасываются
+    private long pageGeneration;
+    // Номер последней смены запроса: устаревшие результаты refresh/setQuery отбрасываются
+    private long queryGeneration;
+
+    // Прочитанные страницы в порядке использования, самая старая вытесняется
+    private final LinkedHashMap<Integer, List<Device>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Device>> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+
+    // Номер страницы → позиция последней строки предыдущей страницы
+    private final Map<Integer, DeviceQuery.Cursor> anchors = new HashMap<>();
+
+    /**
+     * Результат выполнения запроса: число строк и первая страница.
+     */
+    public record Snapshot(DeviceQuery query, int size, List<Device> firstPage) {
+    }
+
+    /**
+     * Создаёт список по уже выполненному запросу (см. {@link #load(DeviceDAO, DeviceQuery)}).
+     */
+    public PagedDeviceList(DeviceDAO deviceDAO, Snapshot initial) {
+        this.deviceDAO = deviceDAO;
+        this.asyncDao = new AsyncDao(deviceDAO, null, null);
+        this.query = initial.query();
+        this.requestedQuery = initial.query();
+        this.size = initial.size();
+        remember(0, initial.firstPage());
+    }
+
+    /**
+     * Выполняет запрос: число строк и первая страница. Обращается к БД —
+     * вызывать из фонового потока.
+     */
+    public static Snapshot load(DeviceDAO deviceDAO, DeviceQuery newQuery) {
+        return new Snapshot(newQuery, deviceDAO.countDevices(newQuery),
+                deviceDAO.getDevicePage(newQuery, null, PAGE_SIZE));
+    }
+
+    /**
+     * Выполняет запрос без изменения списка. Можно вызывать из любого потока, кроме JavaFX.
+     */
+    public Snapshot load(DeviceQuery newQuery) {
+        return load(deviceDAO, newQuery);
+    }
+
+    /**
+     * Последний заданный запрос (его результат может ещё не быть применён).
+     */
+    public DeviceQuery getQuery() {
+        return requestedQuery;
+    }
+
+    /**
+     * Меняет поиск или сортировку. Если запрос не изменился, ничего не делает.
+     * Запрос выполняется в фоне; future завершается в потоке JavaFX после применения.
+     */
+    public CompletableFuture<Void> setQuery(DeviceQuery newQuery) {
+        if (Objects.equals(requestedQuery, newQuery)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return reload(newQuery);
+    }
+
+    /**
+     * Перечитывает число строк и сбрасывает прочитанные страницы
+     * (после добавления, изменения или удаления приборов).
+     * Выполняется в фоне; future завершается в потоке JavaFX после применения.
+     */
+    public CompletableFuture<Void> refresh() {
+        return reload(requestedQuery);
+    }
+
+    private CompletableFuture<Void> reload(DeviceQuery newQuery) {
+        long generation = ++queryGeneration;
+        requestedQuery = newQuery;
+        return AsyncDao.onFx(asyncDao.supply(() -> load(newQuery)), snapshot -> {
+            if (generation == queryGeneration) {
+                apply(snapshot);
+            }
+        });
+    }
+
+    /**
+     * Подменяет содержимое списка результатом {@link #load(DeviceQuery)}.
+     */
+    public void apply(Snapshot snapshot) {
+        int oldSize = size;
+        ++queryGeneration;
+        ++pageGeneration;
+        loading.values().forEach(future -> future.cancel(true));
+        loading.clear();
+        pages.clear();
+        anchors.clear();
+        query = snapshot.query();
+        requestedQuery = snapshot.query();
+        size = snapshot.size();
+        remember(0, snapshot.firstPage());
+
+        beginChange();
+        if (oldSize > 0) {
+            nextRemove(0, Collections.nCopies(oldSize, (Device) null));
+        }
+        if (size > 0) {
+            nextAdd(0, size);
+        }
+        endChange();
+    }
+
+    /**
+     * Применяет изменения из {@link DeviceStore}. Изменённые приборы заменяются
+     * на месте в уже загруженных страницах (строка не прыгает по таблице, пока
+     * её редактируют); при добавлении или удалении список перечитывается,
+     * так как позиция строки в SQL-сортировке заранее неизвестна.
+     *
+     * @return future, завершающийся в потоке JavaFX, когда изменения применены
+     */
+    public CompletableFuture<Void> applyChanges(List<DeviceStore.DeviceChange> changes) {
+        boolean structural = changes.stream()
+                .anyMatch(change -> change.type() != DeviceStore.ChangeType.UPDATED);
+        if (structural) {
+            return refresh();
+        }
+
+        Map<Integer, Device> updated = new HashMap<>();
+        changes.forEach(change -> updated.put(change.device().getId(), change.device()));
+
+        beginChange();
+        for (Map.Entry<Integer, List<Device>> entry : pages.entrySet()) {
+            List<Device> page = entry.getValue();
+            for (int i = 0; i < page.size(); i++) {
+                Device replacement = updated.get(page.get(i).getId());
+                if (replacement != null) {
+                    Device old = page.set(i, replacement);
+                    nextSet(entry.getKey() * PAGE_SIZE + i, old);
+                }
+            }
+        }
+        endChange();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public Device get(int index) {
+        Objects.checkIndex(index, size);
+        int pageIndex = index / PAGE_SIZE;
+        List<Device> page = pages.get(pageIndex);
+        if (page == null) {
+            // Строка появится, когда страница будет прочитана
+            requestPage(pageIndex);
+            return null;
+        }
+        int offset = index % PAGE_SIZE;
+        // Строки могли удалить в другом окне/при синхронизации — пустая строка до refresh()
+        return offset < page.size() ? page.get(offset) : null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Запускает фоновое чтение страницы; по готовности строки страницы
+     * заменяются в списке (таблица перерисует их).
+     */
+    private void requestPage(int pageIndex) {
+        if (loading.containsKey(pageIndex)) {
+            return;
+        }
+        DeviceQuery pageQuery = query;
+        DeviceQuery.Cursor anchor = anchors.get(pageIndex);
+        long generation = pageGeneration;
+
+        CompletableFuture<List<Device>> future =
+                asyncDao.supply(() -> loadPage(pageQuery, pageIndex, anchor));
+        loading.put(pageIndex, future);
+        if (loading.size() > MAX_CACHED_PAGES) {
+            // Прокрутили дальше, чем успели прочитать — старые запросы уже не нужны
+            Iterator<CompletableFuture<List<Device>>> eldest = loading.values().iterator();
+            eldest.next().cancel(true);
+            eldest.remove();
+        }
+
+        AsyncDao.onFx(future, page -> {
+            loading.remove(pageIndex, future);
+            if (generation != pageGeneration) {
+                return;
+            }
+            remember(pageIndex, page);
+            int from = pageIndex * PAGE_SIZE;
+            int to = Math.min(size, from + page.size());
+            if (from < to) {
+                beginChange();
+                for (int i = from; i < to; i++) {
+                    nextSet(i, null);
+                }
+                endChange();
+            }
+        }, error -> {
+            loading.remove(pageIndex, future);
+            LOGGER.error("Ошибка загрузки страницы {} приборов: {}", pageIndex, error.getMessage(), error);
+        });
+    }
+
+    private List<Device> loadPage(DeviceQuery pageQuery, int pageIndex, DeviceQuery.Cursor anchor) {
+        long start = System.nanoTime();
+        List<Device> page;
+        if (pageIndex == 0) {
+            page = deviceDAO.getDevicePage(pageQuery, null, PAGE_SIZE);
+        } else if (pageQuery.sort().supportsKeyset() && anchor != null) {
+            page = deviceDAO.getDevicePage(pageQuery, anchor, PAGE_SIZE);
+        } else {
+            page = deviceDAO.getDevicePageAt(pageQuery, pageIndex * PAGE_SIZE, PAGE_SIZE);
+        }
+
+        LOGGER.debug("Страница {} приборов ({} строк) загружена за {} мс",
+                pageIndex, page.size(), (System.nanoTime() - start) / 1_000_000);
+        return page;
+    }
+
+    private void remember(int pageIndex, List<Device> page) {
+        if (!page.isEmpty() && query.sort().supportsKeyset()) {
+            anchors.put(pageIndex + 1, DeviceQuery.Cursor.after(page.getLast(), query.sort()));
+        }
+        pages.put(pageIndex, page);
+    }
+}
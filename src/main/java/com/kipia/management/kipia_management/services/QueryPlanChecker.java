@@ -0,0 +1,164 @@
+package com.kipia.management.kipia_management.services;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Проверка планов выполнения запросов через {@code EXPLAIN QUERY PLAN}.
+ * <p>
+ * Планы всех запросов DAO на актуальной схеме проверяет тест {@code QueryPlanTest};
+ * в режиме разработки запрос, подготовленный через {@link StatementCache},
+ * дополнительно проверяется при первой подготовке. Регрессией считается:
+ * <ul>
+ *   <li>полный просмотр таблицы без индекса ({@code SCAN table}) у запроса с фильтром;</li>
+ *   <li>сортировка через временное B-дерево ({@code USE TEMP B-TREE}).</li>
+ * </ul>
+ * Полный просмотр допустим для запросов, читающих всю таблицу целиком
+ * (без условия или только с {@code deleted_at = 0}) — экспорт и выборка всех записей.
+ * Сортировка во временном B-дереве допустима для результатов полнотекстового
+ * поиска: сортируются только найденные строки, а порядок по рангу индексом не получить.
+ * Не считается регрессией и план по маленьким таблицам, если для них собрана
+ * статистика (ANALYZE при обслуживании БД): на нескольких сотнях строк
+ * планировщик обоснованно выбирает просмотр и сортировку вместо индекса.
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public final class QueryPlanChecker {
+    private static final Logger LOGGER = LogManager.getLogger(QueryPlanChecker.class);
+
+    // "SCAN devices" без "USING ... INDEX" — полный просмотр таблицы
+    private static final Pattern BARE_SCAN = Pattern.compile("^SCAN (?:TABLE )?(\\w+)(?: AS \\w+)?$");
+    // Таблица шага плана: "SCAN devices", "SEARCH d USING ..." (для псевдонима статистики нет)
+    private static final Pattern PLAN_TABLE = Pattern.compile("^(?:SCAN|SEARCH) (?:TABLE )?(\\w+)");
+    // Шаг поиска по виртуальной таблице FTS5: "SCAN devices_fts VIRTUAL TABLE INDEX 0:M11"
+    private static final String FULL_TEXT_STEP = "VIRTUAL TABLE INDEX";
+    // Таблица считается маленькой, если по статистике в ней меньше строк
+    private static final long SMALL_TABLE_ROWS = 1000;
+    private static final Pattern WHERE_CLAUSE = Pattern.compile(
+            "\\bWHERE\\b(.*?)(?:\\bORDER BY\\b|\\bGROUP BY\\b|\\bLIMIT\\b|$)", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private QueryPlanChecker() {
+    }
+
+    /**
+     * Возвращает строки плана выполнения запроса (колонка detail).
+     * Параметры запроса подставляются как NULL.
+     */
+    public static List<String> explain(Connection conn, String sql) throws SQLException {
+        List<String> plan = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            int params = stmt.getParameterMetaData().getParameterCount();
+            for (int i = 1; i <= params; i++) {
+                stmt.setObject(i, null);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    plan.add(rs.getString("detail"));
+                }
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Находит в плане шаги, считающиеся регрессией.
+     *
+     * @return пустой список, если план в порядке
+     */
+    public static List<String> findRegressions(String sql, List<String> plan) {
+        List<String> regressions = new ArrayList<>();
+        boolean fullTextSearch = plan.stream().anyMatch(step -> step.contains(FULL_TEXT_STEP));
+        for (String step : plan) {
+            if (step.contains("USE TEMP B-TREE") && !fullTextSearch) {
+                regressions.add(step);
+                continue;
+            }
+            Matcher scan = BARE_SCAN.matcher(step.trim());
+            if (scan.matches() && !readsWholeTable(sql)) {
+                regressions.add(step);
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * Проверяет план запроса и пишет ошибку в лог при регрессии.
+     *
+     * @return true, если план в порядке
+     */
+    public static boolean check(Connection conn, String sql) {
+        try {
+            List<String> plan = explain(conn, sql);
+            List<String> regressions = findRegressions(sql, plan);
+            if (regressions.isEmpty()) {
+                LOGGER.debug("План запроса в порядке: {} → {}", sql, plan);
+                return true;
+            }
+            if (onlySmallTables(conn, plan)) {
+                LOGGER.debug("План по маленьким таблицам (по статистике): {} → {}", sql, plan);
+                return true;
+            }
+            LOGGER.error("⚠️ Регрессия плана запроса: {} → {} (полный план: {})", sql, regressions, plan);
+            return false;
+        } catch (SQLException e) {
+            LOGGER.warn("Не удалось получить план запроса {}: {}", sql, e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * Все таблицы плана маленькие по данным sqlite_stat1. Без собранной
+     * статистики возвращает false — план проверяется как обычно.
+     */
+    private static boolean onlySmallTables(Connection conn, List<String> plan) {
+        List<String> tables = new ArrayList<>();
+        for (String step : plan) {
+            Matcher table = PLAN_TABLE.matcher(step.trim());
+            if (table.find()) {
+                tables.add(table.group(1));
+            }
+        }
+        if (tables.isEmpty()) {
+            return false;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT stat FROM sqlite_stat1 WHERE tbl = ?")) {
+            for (String table : tables) {
+                stmt.setString(1, table);
+                long rows = -1;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        String stat = rs.getString(1);
+                        rows = Math.max(rows, Long.parseLong(stat.substring(0, (stat + " ").indexOf(' '))));
+                    }
+                }
+                if (rows < 0 || rows >= SMALL_TABLE_ROWS) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (SQLException | NumberFormatException e) {
+            // Статистика ещё не собиралась (нет таблицы sqlite_stat1) или в неожиданном формате
+            return false;
+        }
+    }
+
+    private static boolean readsWholeTable(String sql) {
+        Matcher where = WHERE_CLAUSE.matcher(sql);
+        if (!where.find()) {
+            return true;
+        }
+        String condition = where.group(1).trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+        return condition.equals("deleted_at = 0");
+    }
+}
@@ -0,0 +1,442 @@
+package com.kipia.management.kipia_management.services;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики времени выполнения запросов к БД.
+ * <p>
+ * Статистика ведётся в двух разрезах:
+ * <ul>
+ *   <li>по тексту SQL — для запросов из кэша подготовленных запросов
+ *   ({@link DatabaseService#prepareCached}); время считается от выполнения
+ *   запроса до закрытия ResultSet, то есть вместе с чтением строк;</li>
+ *   <li>по методу DAO, вызвавшему {@link DatabaseService#executeRead} или
+ *   {@link DatabaseService#executeWrite}, — время операции целиком.</li>
+ * </ul>
+ * Для каждого ключа хранятся количество вызовов, суммарное и максимальное время,
+ * количество строк (прочитанных или изменённых) и гистограмма, по которой
+ * считаются p50 и p95 (с точностью до 25%). Вызовы дольше порога пишутся
+ * в лог медленных запросов.
+ * <p>
+ * Параметры — системные свойства {@code db.stats.enabled} (по умолчанию выключено)
+ * и {@code db.stats.slowMs} (порог медленного запроса, по умолчанию {@value #DEFAULT_SLOW_MS} мс).
+ * Статистика включается только для замеров ({@code -Ddb.stats.enabled=true}):
+ * каждый запрос из кэша и его ResultSet оборачиваются прокси, а для каждой
+ * операции определяется вызвавший метод DAO. Выключенная статистика
+ * не стоит ничего — запросы возвращаются без обёрток, стек не разбирается.
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public final class QueryStats {
+    private static final Logger LOGGER = LogManager.getLogger(QueryStats.class);
+
+    private static final long DEFAULT_SLOW_MS = 250;
+
+    // Корзины гистограммы: по 4 на каждую степень двойки микросекунд (до нескольких часов)
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = 34 * SUB_BUCKETS;
+
+    private final boolean enabled;
+    private final long slowNs;
+    private final Map<String, Metric> statements = new ConcurrentHashMap<>();
+    private final Map<String, Metric> methods = new ConcurrentHashMap<>();
+    private final ThreadLocal<MethodScope> currentMethod = new ThreadLocal<>();
+    private volatile long sinceMillis = System.currentTimeMillis();
+
+    /**
+     * Снимок статистики одного запроса или метода.
+     *
+     * @param key     текст SQL или имя метода DAO
+     * @param count   количество вызовов
+     * @param totalNs суммарное время
+     * @param p50Ns   медиана (приблизительно)
+     * @param p95Ns   95-й процентиль (приблизительно)
+     * @param maxNs   максимальное время
+     * @param rows    строк прочитано или изменено
+     */
+    public record Entry(String key, long count, long totalNs, long p50Ns, long p95Ns, long maxNs, long rows) {
+        public double averageMs() {
+            return count == 0 ? 0.0 : totalNs / 1_000_000.0 / count;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("вызовов %d, всего %.1f мс, среднее %.2f мс, p50 %.2f мс, p95 %.2f мс, макс %.2f мс, строк %d — %s",
+                    count, totalNs / 1_000_000.0, averageMs(), p50Ns / 1_000_000.0, p95Ns / 1_000_000.0,
+                    maxNs / 1_000_000.0, rows, key);
+        }
+    }
+
+    QueryStats(boolean enabled, long slowMs) {
+        this.enabled = enabled;
+        this.slowNs = slowMs * 1_000_000;
+    }
+
+    /**
+     * Создаёт счётчики с параметрами из системных свойств {@code db.stats.*}.
+     */
+    static QueryStats fromSystemProperties() {
+        long slowMs = DEFAULT_SLOW_MS;
+        String value = System.getProperty("db.stats.slowMs");
+        if (value != null) {
+            try {
+                slowMs = Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Некорректное значение db.stats.slowMs={}, используется {}", value, DEFAULT_SLOW_MS);
+            }
+        }
+        return new QueryStats("true".equals(System.getProperty("db.stats.enabled")), slowMs);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getSlowThresholdMs() {
+        return slowNs / 1_000_000;
+    }
+
+    /**
+     * Статистика по запросам, самые затратные (по суммарному времени) первыми.
+     */
+    public List<Entry> getStatementStats() {
+        return snapshot(statements);
+    }
+
+    /**
+     * Статистика по методам DAO, самые затратные (по суммарному времени) первыми.
+     */
+    public List<Entry> getMethodStats() {
+        return snapshot(methods);
+    }
+
+    /**
+     * Обнуляет все счётчики.
+     */
+    public void reset() {
+        statements.clear();
+        methods.clear();
+        sinceMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Записывает статистику в текстовый файл (перезаписывает его).
+     */
+    public void dumpTo(Path file) throws IOException {
+        SimpleDateFormat format = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.printf("Статистика запросов к БД с %s по %s (порог медленного запроса %d мс)%n",
+                    format.format(new Date(sinceMillis)), format.format(new Date()), getSlowThresholdMs());
+            out.println();
+            out.println("== Методы DAO ==");
+            getMethodStats().forEach(out::println);
+            out.println();
+            out.println("== Запросы ==");
+            getStatementStats().forEach(out::println);
+        }
+        LOGGER.info("Статистика запросов записана в {}", file);
+    }
+
+    /**
+     * Оборачивает подготовленный запрос так, что каждое его выполнение учитывается
+     * в статистике по тексту SQL. Если статистика выключена, возвращает запрос как есть.
+     */
+    PreparedStatement instrument(String sql, PreparedStatement stmt) {
+        if (!enabled) {
+            return stmt;
+        }
+        Metric metric = statements.computeIfAbsent(sql, _ -> new Metric());
+        return (PreparedStatement) Proxy.newProxyInstance(QueryStats.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, new StatementHandler(sql, stmt, metric));
+    }
+
+    /**
+     * Выполняет операцию DAO, учитывая её время в статистике метода.
+     * Вложенная операция (тот же поток уже внутри метода) отдельно не учитывается.
+     *
+     * @param method имя вызвавшего метода (см. {@link #callerOf()})
+     */
+    <T> T measure(String method, DatabaseService.SqlWork<T> work, Connection conn) throws SQLException {
+        if (!enabled || currentMethod.get() != null) {
+            return work.execute(conn);
+        }
+        MethodScope scope = new MethodScope();
+        currentMethod.set(scope);
+        long start = System.nanoTime();
+        try {
+            return work.execute(conn);
+        } finally {
+            currentMethod.remove();
+            long elapsed = System.nanoTime() - start;
+            methods.computeIfAbsent(method, _ -> new Metric()).record(elapsed, scope.rows);
+            if (elapsed >= slowNs) {
+                LOGGER.warn("🐢 Медленная операция с БД: {} — {} мс, строк {}", method, elapsed / 1_000_000, scope.rows);
+            }
+        }
+    }
+
+    /**
+     * Имя первого метода в стеке вызовов вне {@link DatabaseService},
+     * например {@code DeviceDAO.getAllDevices}. Если статистика выключена — null.
+     */
+    String callerOf() {
+        if (!enabled) {
+            return null;
+        }
+        return StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE).walk(frames -> frames
+                .filter(frame -> frame.getDeclaringClass() != DatabaseService.class
+                        && frame.getDeclaringClass() != QueryStats.class)
+                .findFirst()
+                .map(frame -> frame.getDeclaringClass().getSimpleName() + "." + frame.getMethodName())
+                .orElse("?"));
+    }
+
+    private void recordStatement(String sql, Metric metric, long elapsed, long rows) {
+        metric.record(elapsed, rows);
+        MethodScope scope = currentMethod.get();
+        if (scope != null) {
+            scope.rows += rows;
+        }
+        if (elapsed >= slowNs) {
+            LOGGER.warn("🐢 Медленный запрос: {} мс, строк {} — {}", elapsed / 1_000_000, rows, sql);
+        }
+    }
+
+    private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static List<Entry> snapshot(Map<String, Metric> metrics) {
+        return metrics.entrySet().stream()
+                .map(e -> e.getValue().snapshot(e.getKey()))
+                .filter(entry -> entry.count() > 0)
+                .sorted(Comparator.comparingLong(Entry::totalNs).reversed())
+                .toList();
+    }
+
+    private static final class MethodScope {
+        long rows;
+    }
+
+    /**
+     * Счётчики одного ключа. Обновляются без блокировок из разных потоков.
+     */
+    private static final class Metric {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNs = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        final LongAccumulator maxNs = new LongAccumulator(Math::max, 0);
+        final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        void record(long elapsedNs, long rowCount) {
+            count.increment();
+            totalNs.add(elapsedNs);
+            rows.add(rowCount);
+            maxNs.accumulate(elapsedNs);
+            histogram.incrementAndGet(bucketOf(elapsedNs / 1000));
+        }
+
+        Entry snapshot(String key) {
+            long[] buckets = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = histogram.get(i);
+                total += buckets[i];
+            }
+            long max = maxNs.get();
+            return new Entry(key, count.sum(), totalNs.sum(),
+                    Math.min(percentile(buckets, total, 0.50), max),
+                    Math.min(percentile(buckets, total, 0.95), max),
+                    max, rows.sum());
+        }
+
+        private static long percentile(long[] buckets, long total, double fraction) {
+            long rank = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0) {
+                    return upperBoundMicros(i) * 1000;
+                }
+            }
+            return 0;
+        }
+
+        // 0..3 мкс — по корзине на значение, дальше по 4 корзины на степень двойки
+        private static int bucketOf(long micros) {
+            if (micros < SUB_BUCKETS) {
+                return (int) Math.max(micros, 0);
+            }
+            int msb = 63 - Long.numberOfLeadingZeros(micros);
+            int index = (msb - 1) * SUB_BUCKETS + (int) ((micros >>> (msb - 2)) & (SUB_BUCKETS - 1));
+            return Math.min(index, BUCKETS - 1);
+        }
+
+        private static long upperBoundMicros(int index) {
+            if (index < SUB_BUCKETS) {
+                return index + 1;
+            }
+            int msb = index / SUB_BUCKETS + 1;
+            long sub = index % SUB_BUCKETS;
+            return ((SUB_BUCKETS + sub + 1) << (msb - 2));
+        }
+    }
+
+    /**
+     * Перехватывает выполнение подготовленного запроса: executeUpdate и executeBatch
+     * учитываются сразу, executeQuery — при исчерпании или закрытии ResultSet.
+     */
+    private final class StatementHandler implements InvocationHandler {
+        private final String sql;
+        private final PreparedStatement target;
+        private final Metric metric;
+
+        StatementHandler(String sql, PreparedStatement target, Metric metric) {
+            this.sql = sql;
+            this.target = target;
+            this.metric = metric;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            boolean noArgs = args == null || args.length == 0;
+            switch (method.getName()) {
+                case "executeQuery" -> {
+                    if (noArgs) {
+                        long start = System.nanoTime();
+                        ResultSet rs = (ResultSet) call(method, args);
+                        return Proxy.newProxyInstance(QueryStats.class.getClassLoader(),
+                                new Class<?>[]{ResultSet.class}, new ResultSetHandler(this, rs, start));
+                    }
+                }
+                case "executeUpdate", "executeLargeUpdate", "executeBatch", "executeLargeBatch", "execute" -> {
+                    if (noArgs) {
+                        long start = System.nanoTime();
+                        long rows = 0;
+                        try {
+                            Object result = call(method, args);
+                            rows = affectedRows(result);
+                            return result;
+                        } finally {
+                            recordStatement(sql, metric, System.nanoTime() - start, rows);
+                        }
+                    }
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                default -> {
+                }
+            }
+            return call(method, args);
+        }
+
+        private Object call(Method method, Object[] args) throws Throwable {
+            return invokeOn(target, method, args);
+        }
+
+        private static long affectedRows(Object result) {
+            return switch (result) {
+                case Integer count -> Math.max(count, 0);
+                case Long count -> Math.max(count, 0);
+                case int[] counts -> {
+                    long sum = 0;
+                    for (int count : counts) {
+                        sum += Math.max(count, 0);
+                    }
+                    yield sum;
+                }
+                case null, default -> 0;
+            };
+        }
+    }
+
+    /**
+     * Считает прочитанные строки и учитывает запрос один раз — когда
+     * {@code next()} вернул false или ResultSet закрыт.
+     */
+    private final class ResultSetHandler implements InvocationHandler {
+        private final StatementHandler statement;
+        private final ResultSet target;
+        private final long start;
+        private long rows;
+        private boolean recorded;
+
+        ResultSetHandler(StatementHandler statement, ResultSet target, long start) {
+            this.statement = statement;
+            this.target = target;
+            this.start = start;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "next" -> {
+                    boolean hasRow = (Boolean) invokeOn(target, method, args);
+                    if (hasRow) {
+                        rows++;
+                    } else {
+                        finish();
+                    }
+                    return hasRow;
+                }
+                case "close" -> {
+                    try {
+                        return invokeOn(target, method, args);
+                    } finally {
+                        finish();
+                    }
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                default -> {
+                    return invokeOn(target, method, args);
+                }
+            }
+        }
+
+        private void finish() {
+            if (!recorded) {
+                recorded = true;
+                recordStatement(statement.sql, statement.metric, System.nanoTime() - start, rows);
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.kipia.management.kipia_management.services;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.sqlite.SQLiteConfig;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Небольшой пул соединений только для чтения.
+ * <p>
+ * Соединения открываются с флагом {@code SQLITE_OPEN_READONLY} и
+ * {@code PRAGMA query_only}, поэтому запись через них невозможна даже по ошибке.
+ * В режиме WAL читатели не ждут писателя и друг друга: фоновые выборки
+ * (отчёты, галерея, оценка экспорта) выполняются параллельно на разных ядрах.
+ * <p>
+ * Соединения открываются лениво, по мере роста нагрузки, но не больше
+ * размера пула. У каждого соединения свой {@link StatementCache}.
+ * Пул ведёт счётчики выдачи соединений и времени ожидания свободного.
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public final class ReaderPool {
+    private static final Logger LOGGER = LogManager.getLogger(ReaderPool.class);
+
+    /**
+     * Соединение пула вместе с кэшем его подготовленных запросов.
+     */
+    record Reader(Connection connection, StatementCache statements) {
+    }
+
+    /**
+     * Снимок счётчиков пула.
+     *
+     * @param size        максимальный размер пула
+     * @param open        открыто соединений
+     * @param inUse       выдано сейчас
+     * @param peakInUse   максимум одновременно выданных
+     * @param checkouts   всего выдач
+     * @param waits       выдач, которым пришлось ждать свободное соединение
+     * @param totalWaitNs суммарное время ожидания
+     * @param maxWaitNs   максимальное время ожидания
+     */
+    public record Stats(int size, int open, int inUse, int peakInUse, long checkouts, long waits,
+                 long totalWaitNs, long maxWaitNs) {
+        public double averageWaitMs() {
+            return waits == 0 ? 0.0 : totalWaitNs / 1_000_000.0 / waits;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("соединений %d/%d, выдано %d (пик %d), выдач %d, ожиданий %d (среднее %.1f мс, макс %.1f мс)",
+                    open, size, inUse, peakInUse, checkouts, waits, averageWaitMs(), maxWaitNs / 1_000_000.0);
+        }
+    }
+
+    private final String databasePath;
+    private final int size;
+    private final int statementCacheSize;
+    private final boolean checkQueryPlans;
+    private final QueryStats queryStats;
+    private final long waitTimeoutMs;
+
+    private final BlockingQueue<Reader> idle;
+    private final List<Reader> all = new ArrayList<>();
+    private volatile boolean closed;
+
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicInteger peakInUse = new AtomicInteger();
+    private final AtomicLong checkouts = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong totalWaitNs = new AtomicLong();
+    private final AtomicLong maxWaitNs = new AtomicLong();
+
+    ReaderPool(String databasePath, int size, int statementCacheSize, boolean checkQueryPlans,
+               QueryStats queryStats, long waitTimeoutMs) {
+        this.databasePath = databasePath;
+        this.size = size;
+        this.statementCacheSize = statementCacheSize;
+        this.checkQueryPlans = checkQueryPlans;
+        this.queryStats = queryStats;
+        this.waitTimeoutMs = waitTimeoutMs;
+        this.idle = new ArrayBlockingQueue<>(size);
+    }
+
+    /**
+     * Выдаёт свободное соединение; если все заняты и пул заполнен — ждёт.
+     *
+     * @throws SQLException если пул закрыт, соединение не открылось
+     *                      или свободное соединение не появилось за время ожидания
+     */
+    Reader checkout() throws SQLException {
+        if (closed) {
+            throw new SQLException("Пул соединений для чтения закрыт");
+        }
+        Reader reader = idle.poll();
+        if (reader == null) {
+            reader = openIfBelowLimit();
+        }
+        if (reader == null) {
+            reader = awaitIdle();
+        }
+        if (reader.connection().isClosed()) {
+            reader = reopen(reader);
+        }
+
+        checkouts.incrementAndGet();
+        peakInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+        return reader;
+    }
+
+    /**
+     * Возвращает соединение в пул. После закрытия пула соединение закрывается.
+     */
+    void release(Reader reader) {
+        inUse.decrementAndGet();
+        if (closed) {
+            closeQuietly(reader);
+            return;
+        }
+        idle.offer(reader);
+    }
+
+    public Stats stats() {
+        int open;
+        synchronized (all) {
+            open = all.size();
+        }
+        return new Stats(size, open, inUse.get(), peakInUse.get(), checkouts.get(), waits.get(),
+                totalWaitNs.get(), maxWaitNs.get());
+    }
+
+    /**
+     * Счётчики кэшей подготовленных запросов всех открытых соединений.
+     */
+    List<StatementCache.Stats> statementCacheStats() {
+        synchronized (all) {
+            return all.stream().map(reader -> reader.statements().stats()).toList();
+        }
+    }
+
+    /**
+     * Закрывает свободные соединения; занятые закрываются при возврате.
+     */
+    void close() {
+        closed = true;
+        Reader reader;
+        while ((reader = idle.poll()) != null) {
+            closeQuietly(reader);
+        }
+    }
+
+    private Reader openIfBelowLimit() throws SQLException {
+        synchronized (all) {
+            if (all.size() >= size) {
+                return null;
+            }
+            Reader reader = open(all.size() + 1);
+            all.add(reader);
+            return reader;
+        }
+    }
+
+    private Reader awaitIdle() throws SQLException {
+        long start = System.nanoTime();
+        Reader reader;
+        try {
+            reader = idle.poll(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Ожидание соединения для чтения прервано", e);
+        }
+        long waited = System.nanoTime() - start;
+        waits.incrementAndGet();
+        totalWaitNs.addAndGet(waited);
+        maxWaitNs.accumulateAndGet(waited, Math::max);
+        if (reader == null) {
+            throw new SQLException("Нет свободного соединения для чтения за " + waitTimeoutMs + " мс");
+        }
+        return reader;
+    }
+
+    private Reader reopen(Reader stale) throws SQLException {
+        stale.statements().invalidate();
+        synchronized (all) {
+            all.remove(stale);
+            Reader reader = open(all.size() + 1);
+            all.add(reader);
+            return reader;
+        }
+    }
+
+    private Reader open(int number) throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setBusyTimeout((int) waitTimeoutMs);
+        Connection conn = DriverManager.getConnection("jdbc:sqlite:" + databasePath, config.toProperties());
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA query_only = 1");
+        }
+        LOGGER.debug("Открыто соединение для чтения #{}", number);
+        return new Reader(conn, new StatementCache("чтение #" + number, statementCacheSize, checkQueryPlans, queryStats));
+    }
+
+    private void closeQuietly(Reader reader) {
+        reader.statements().invalidate();
+        try {
+            reader.connection().close();
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка закрытия соединения для чтения: {}", e.getMessage(), e);
+        }
+    }
+}
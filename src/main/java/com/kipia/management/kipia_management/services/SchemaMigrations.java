@@ -0,0 +1,596 @@
+package com.kipia.management.kipia_management.services;
+
+import com.kipia.management.kipia_management.utils.SchemeDataCodec;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Версионные миграции схемы БД.
+ * <p>
+ * Номер применённой миграции хранится в {@code PRAGMA user_version}. При запуске
+ * читается одно число: если БД уже актуальна, никакие проверки не выполняются.
+ * Иначе по порядку применяются недостающие миграции — каждая в своей транзакции
+ * вместе с записью нового user_version, с замером времени выполнения.
+ * <p>
+ * Новые изменения схемы добавляются только в конец списка {@link #MIGRATIONS}
+ * со следующим номером; уже выпущенные миграции не редактируются.
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public final class SchemaMigrations {
+    private static final Logger LOGGER = LogManager.getLogger(SchemaMigrations.class);
+
+    /**
+     * Шаг миграции, выполняемый на соединении внутри транзакции.
+     */
+    @FunctionalInterface
+    interface Step {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    /**
+     * Миграция схемы с номером версии, до которой она поднимает БД.
+     */
+    record Migration(int version, String description, Step step) {
+    }
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Базовые таблицы, soft delete и two-way merge", SchemaMigrations::createBaseSchema),
+            new Migration(2, "Индексы для выборок DAO", SchemaMigrations::createQueryIndexes),
+            new Migration(3, "Полнотекстовый поиск приборов (FTS5)", SchemaMigrations::createDeviceSearchIndex),
+            new Migration(4, "Таблица фото приборов device_photos", SchemaMigrations::createDevicePhotos),
+            new Migration(5, "Сжатое хранение данных схем", SchemaMigrations::packSchemeData),
+            new Migration(6, "Построчное хранение фигур схем scheme_shapes", SchemaMigrations::createSchemeShapes),
+            new Migration(7, "Журнал изменений change_log на триггерах", SchemaMigrations::createChangeLog),
+            new Migration(8, "Отметки синхронизации с другими устройствами sync_peers", SchemaMigrations::createSyncPeers),
+            new Migration(9, "Индексы для группировки приборов в отчётах", SchemaMigrations::createReportIndexes),
+            new Migration(10, "Счётчики приборов device_stats на триггерах", SchemaMigrations::createDeviceStats),
+            new Migration(11, "Индексы для сортировки таблицы приборов", SchemaMigrations::createSortIndexes)
+    );
+
+    private SchemaMigrations() {
+    }
+
+    /**
+     * Версия схемы, которую знает текущая версия приложения.
+     */
+    public static int latestVersion() {
+        return MIGRATIONS.getLast().version();
+    }
+
+    /**
+     * Приводит схему БД к актуальной версии.
+     *
+     * @param conn соединение с БД (не должно использоваться другими потоками во время миграции)
+     * @throws SQLException если миграция не применилась (её транзакция откатывается)
+     */
+    public static void migrate(Connection conn) throws SQLException {
+        int current = readUserVersion(conn);
+        int latest = latestVersion();
+        if (current == latest) {
+            LOGGER.info("Схема БД актуальна (версия {})", current);
+            return;
+        }
+        if (current > latest) {
+            LOGGER.warn("Версия схемы БД ({}) новее версии приложения ({}), миграции пропущены", current, latest);
+            return;
+        }
+
+        LOGGER.info("Миграция схемы БД: версия {} → {}", current, latest);
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version() > current) {
+                apply(conn, migration);
+            }
+        }
+    }
+
+    private static void apply(Connection conn, Migration migration) throws SQLException {
+        long start = System.nanoTime();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            migration.step().apply(conn);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("PRAGMA user_version = " + migration.version());
+            }
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            LOGGER.error("Миграция {} ({}) не применена: {}", migration.version(), migration.description(), e.getMessage(), e);
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        LOGGER.info("Миграция {} ({}) применена за {} мс",
+                migration.version(), migration.description(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Читает номер версии схемы из заголовка файла БД.
+     */
+    public static int readUserVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    // ─────────────────────────────────────────────
+    // МИГРАЦИИ
+    // ─────────────────────────────────────────────
+
+    /**
+     * Версия 1: таблицы devices, schemes, device_locations.
+     * Для БД, созданных до появления user_version, дополнительно добавляет
+     * поля soft delete и two-way merge, если их ещё нет.
+     */
+    private static void createBaseSchema(Connection conn) throws SQLException {
+        String sqlDevices = """
+                CREATE TABLE IF NOT EXISTS devices (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    type TEXT NOT NULL,
+                    name TEXT,
+                    manufacturer TEXT,
+                    inventory_number TEXT UNIQUE NOT NULL,
+                    year INTEGER,
+                    measurement_limit TEXT,
+                    accuracy_class REAL,
+                    location TEXT NOT NULL,
+                    valve_number TEXT,
+                    status TEXT DEFAULT 'В работе',
+                    additional_info TEXT,
+                    photos TEXT,
+                    updated_at INTEGER DEFAULT (strftime('%%s','now') * 1000),
+                    deleted_at INTEGER DEFAULT 0,
+                    last_synced_at INTEGER DEFAULT 0
+                );""";
+
+        String sqlSchemes = """
+                CREATE TABLE IF NOT EXISTS schemes (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    name TEXT UNIQUE NOT NULL,
+                    description TEXT,
+                    data TEXT,
+                    updated_at INTEGER DEFAULT (strftime('%%s','now') * 1000),
+                    deleted_at INTEGER DEFAULT 0,
+                    last_synced_at INTEGER DEFAULT 0
+                );""";
+
+        String sqlDeviceLocations = """
+                CREATE TABLE IF NOT EXISTS device_locations (
+                    device_id INTEGER NOT NULL,
+                    scheme_id INTEGER NOT NULL,
+                    x REAL NOT NULL,
+                    y REAL NOT NULL,
+                    rotation REAL DEFAULT 0.0,
+                    updated_at INTEGER DEFAULT (strftime('%%s','now') * 1000),
+                    deleted_at INTEGER DEFAULT 0,
+                    last_synced_at INTEGER DEFAULT 0,
+                    PRIMARY KEY (device_id, scheme_id),
+                    FOREIGN KEY (device_id) REFERENCES devices(id) ON DELETE CASCADE,
+                    FOREIGN KEY (scheme_id) REFERENCES schemes(id) ON DELETE CASCADE
+                );""";
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(sqlDevices);
+            stmt.executeUpdate(sqlSchemes);
+            stmt.executeUpdate(sqlDeviceLocations);
+        }
+
+        // Старые БД: поля soft delete и two-way merge
+        addColumnIfNotExists(conn, "devices", "deleted_at", "INTEGER DEFAULT 0");
+        addColumnIfNotExists(conn, "schemes", "deleted_at", "INTEGER DEFAULT 0");
+        addColumnIfNotExists(conn, "device_locations", "deleted_at", "INTEGER DEFAULT 0");
+
+        // SQLite не позволяет добавить колонку с неконстантным дефолтом через ALTER TABLE
+        // Поэтому добавляем с дефолтом 0, затем обновляем существующие записи
+        addColumnIfNotExists(conn, "device_locations", "updated_at", "INTEGER DEFAULT 0");
+        updateColumnIfZero(conn, "device_locations", "updated_at");
+
+        addColumnIfNotExists(conn, "devices", "last_synced_at", "INTEGER DEFAULT 0");
+        addColumnIfNotExists(conn, "schemes", "last_synced_at", "INTEGER DEFAULT 0");
+        addColumnIfNotExists(conn, "device_locations", "last_synced_at", "INTEGER DEFAULT 0");
+    }
+
+    /**
+     * Версия 2: индексы под запросы DAO. Частичные индексы по активным записям
+     * (deleted_at = 0) убирают сортировку во временном B-дереве для списков по имени
+     * и полный просмотр для уникальных локаций; индекс по scheme_id нужен выборке
+     * координат схемы (первичный ключ начинается с device_id и здесь не помогает).
+     */
+    private static void createQueryIndexes(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_devices_active_name ON devices(name) WHERE deleted_at = 0");
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_devices_active_location ON devices(location) WHERE deleted_at = 0");
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_devices_updated_at ON devices(updated_at)");
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_schemes_active_name ON schemes(name) WHERE deleted_at = 0");
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_device_locations_scheme ON device_locations(scheme_id)");
+        }
+    }
+
+    /**
+     * Версия 3: полнотекстовый индекс devices_fts по текстовым колонкам приборов.
+     * <p>
+     * Таблица с внешним содержимым (content='devices'): хранится только индекс,
+     * сами значения читаются из devices. Индекс поддерживается триггерами на
+     * вставку, удаление и изменение индексируемых колонок (обновление служебных
+     * полей синхронизации индекс не трогает). Приборы в корзине (deleted_at != 0)
+     * остаются в индексе и отсекаются условием запроса.
+     * <p>
+     * Токенизатор unicode61 приводит регистр кириллицы; remove_diacritics 0 —
+     * чтобы «й» не совпадала с «и». Префиксные индексы на 2 и 3 символа
+     * ускоряют поиск по началу слова во время набора.
+     */
+    private static void createDeviceSearchIndex(Connection conn) throws SQLException {
+        String columns = "name, type, manufacturer, location, inventory_number, year, "
+                + "measurement_limit, accuracy_class, valve_number, status, additional_info";
+        String newValues = "new.name, new.type, new.manufacturer, new.location, new.inventory_number, new.year, "
+                + "new.measurement_limit, new.accuracy_class, new.valve_number, new.status, new.additional_info";
+        String oldValues = newValues.replace("new.", "old.");
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE VIRTUAL TABLE IF NOT EXISTS devices_fts USING fts5(" + columns
+                    + ", content='devices', content_rowid='id'"
+                    + ", tokenize='unicode61 remove_diacritics 0', prefix='2 3')");
+
+            stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS devices_fts_insert AFTER INSERT ON devices BEGIN "
+                    + "INSERT INTO devices_fts(rowid, " + columns + ") VALUES (new.id, " + newValues + "); END");
+            stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS devices_fts_delete AFTER DELETE ON devices BEGIN "
+                    + "INSERT INTO devices_fts(devices_fts, rowid, " + columns + ") VALUES ('delete', old.id, " + oldValues + "); END");
+            stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS devices_fts_update AFTER UPDATE OF " + columns + " ON devices BEGIN "
+                    + "INSERT INTO devices_fts(devices_fts, rowid, " + columns + ") VALUES ('delete', old.id, " + oldValues + "); "
+                    + "INSERT INTO devices_fts(rowid, " + columns + ") VALUES (new.id, " + newValues + "); END");
+
+            // Индексируем уже существующие приборы
+            stmt.executeUpdate("INSERT INTO devices_fts(devices_fts) VALUES ('rebuild')");
+        }
+    }
+
+    /**
+     * Версия 4: фото приборов в отдельной таблице device_photos (строка на файл)
+     * вместо разбора строки devices.photos, разделённой ';'. Колонка photos
+     * остаётся для совместимости с мобильным приложением.
+     * <p>
+     * Таблица без rowid: первичный ключ (device_id, file_name) и есть порядок
+     * хранения, фото одного прибора лежат рядом. Частичный индекс по активным
+     * фото нужен подсчётам «приборы с фото»; индекс по хэшу — поиску дубликата
+     * файла. Существующие фото переносятся из колонки photos; хэш и размер
+     * для них неизвестны (null), время добавления — updated_at прибора.
+     */
+    private static void createDevicePhotos(Connection conn) throws SQLException {
+        String sqlDevicePhotos = """
+                CREATE TABLE IF NOT EXISTS device_photos (
+                    device_id INTEGER NOT NULL,
+                    file_name TEXT NOT NULL,
+                    sha256 TEXT,
+                    size INTEGER,
+                    added_at INTEGER DEFAULT 0,
+                    deleted_at INTEGER DEFAULT 0,
+                    PRIMARY KEY (device_id, file_name),
+                    FOREIGN KEY (device_id) REFERENCES devices(id) ON DELETE CASCADE
+                ) WITHOUT ROWID;""";
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(sqlDevicePhotos);
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_device_photos_active ON device_photos(device_id) WHERE deleted_at = 0");
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_device_photos_sha256 ON device_photos(sha256) WHERE sha256 IS NOT NULL");
+        }
+
+        String select = "SELECT id, photos, updated_at FROM devices WHERE photos IS NOT NULL AND photos != ''";
+        String insert = "INSERT OR IGNORE INTO device_photos (device_id, file_name, added_at, deleted_at) VALUES (?, ?, ?, 0)";
+        int devices = 0;
+        int photos = 0;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(select);
+             PreparedStatement insertStmt = conn.prepareStatement(insert)) {
+            while (rs.next()) {
+                devices++;
+                for (String fileName : rs.getString("photos").split(";")) {
+                    if (fileName.isBlank()) {
+                        continue;
+                    }
+                    insertStmt.setInt(1, rs.getInt("id"));
+                    insertStmt.setString(2, fileName);
+                    insertStmt.setLong(3, rs.getLong("updated_at"));
+                    insertStmt.addBatch();
+                    photos++;
+                }
+            }
+            insertStmt.executeBatch();
+        }
+        LOGGER.info("Перенесено {} фото {} приборов в device_photos", photos, devices);
+    }
+
+    /**
+     * Миграция 5: данные схем, записанные JSON-текстом, переписываются
+     * в сжатом формате {@link SchemeDataCodec}. Схемы без данных не трогаются.
+     */
+    private static void packSchemeData(Connection conn) throws SQLException {
+        String select = "SELECT id, data FROM schemes WHERE typeof(data) = 'text'";
+        String update = "UPDATE schemes SET data = ? WHERE id = ?";
+        int schemes = 0;
+        long before = 0;
+        long after = 0;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(select);
+             PreparedStatement updateStmt = conn.prepareStatement(update)) {
+            while (rs.next()) {
+                String json = rs.getString("data");
+                byte[] packed = SchemeDataCodec.encode(json);
+                updateStmt.setBytes(1, packed);
+                updateStmt.setInt(2, rs.getInt("id"));
+                updateStmt.addBatch();
+                schemes++;
+                before += json.getBytes(StandardCharsets.UTF_8).length;
+                after += packed.length;
+            }
+            updateStmt.executeBatch();
+        }
+        LOGGER.info("Сжаты данные {} схем: {} → {} байт", schemes, before, after);
+    }
+
+    /**
+     * Миграция 6: таблица фигур схем — одна строка на фигуру, чтобы сохранение
+     * схемы записывало только изменённые фигуры. seq задаёт порядок отрисовки;
+     * частичный индекс по активным фигурам отдаёт их в этом порядке.
+     * Данные существующих схем не переносятся: схема переходит на построчное
+     * хранение при первом сохранении из редактора.
+     */
+    private static void createSchemeShapes(Connection conn) throws SQLException {
+        String sqlSchemeShapes = """
+                CREATE TABLE IF NOT EXISTS scheme_shapes (
+                    scheme_id INTEGER NOT NULL,
+                    shape_uid TEXT NOT NULL,
+                    type TEXT NOT NULL,
+                    payload TEXT NOT NULL,
+                    seq INTEGER NOT NULL DEFAULT 0,
+                    updated_at INTEGER DEFAULT 0,
+                    deleted_at INTEGER DEFAULT 0,
+                    PRIMARY KEY (scheme_id, shape_uid),
+                    FOREIGN KEY (scheme_id) REFERENCES schemes(id) ON DELETE CASCADE
+                ) WITHOUT ROWID;""";
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(sqlSchemeShapes);
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_scheme_shapes_active ON scheme_shapes(scheme_id, seq) WHERE deleted_at = 0");
+        }
+    }
+
+    /**
+     * Миграция 7: журнал изменений change_log, который ведут триггеры на devices,
+     * schemes и device_locations. seq с AUTOINCREMENT не переиспользуется после
+     * очистки журнала, поэтому «изменения после seq N» всегда однозначны.
+     * <p>
+     * Обновление записывается, только если изменились updated_at или deleted_at:
+     * отметка синхронизации (last_synced_at) изменением не считается. Мягкое
+     * удаление записывается как удаление. Существующие строки в журнал не попадают.
+     */
+    private static void createChangeLog(Connection conn) throws SQLException {
+        String sqlChangeLog = """
+                CREATE TABLE IF NOT EXISTS change_log (
+                    seq INTEGER PRIMARY KEY AUTOINCREMENT,
+                    table_name TEXT NOT NULL,
+                    row_key TEXT NOT NULL,
+                    op TEXT NOT NULL,
+                    changed_at INTEGER NOT NULL
+                );""";
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(sqlChangeLog);
+            createChangeLogTriggers(stmt, "devices", "%s.id");
+            createChangeLogTriggers(stmt, "schemes", "%s.id");
+            createChangeLogTriggers(stmt, "device_locations", "%1$s.device_id || ':' || %1$s.scheme_id");
+        }
+    }
+
+    private static void createChangeLogTriggers(Statement stmt, String table, String keyPattern) throws SQLException {
+        String newKey = keyPattern.formatted("new");
+        String oldKey = keyPattern.formatted("old");
+        String insert = "INSERT INTO change_log (table_name, row_key, op, changed_at) VALUES ('" + table + "', ";
+        String now = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+
+        stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS " + table + "_changes_insert AFTER INSERT ON " + table
+                + " BEGIN " + insert + newKey + ", 'I', " + now + "); END");
+        stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS " + table + "_changes_update AFTER UPDATE ON " + table
+                + " WHEN new.updated_at IS NOT old.updated_at OR new.deleted_at IS NOT old.deleted_at"
+                + " BEGIN " + insert + newKey + ", CASE WHEN new.deleted_at > 0 AND old.deleted_at = 0 THEN 'D' ELSE 'U' END, "
+                + now + "); END");
+        stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS " + table + "_changes_delete AFTER DELETE ON " + table
+                + " BEGIN " + insert + oldKey + ", 'D', " + now + "); END");
+    }
+
+    /**
+     * Миграция 8: до какого момента каждое известное устройство (мобильное
+     * приложение) получило данные этой БД. Обслуживание БД удаляет записи
+     * корзины только старше этой отметки — иначе удалённая здесь запись,
+     * ещё живая на другом устройстве, вернулась бы при следующем импорте.
+     */
+    private static void createSyncPeers(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("""
+                    CREATE TABLE IF NOT EXISTS sync_peers (
+                        peer TEXT PRIMARY KEY,
+                        synced_at INTEGER NOT NULL,
+                        recorded_at INTEGER NOT NULL
+                    );""");
+        }
+    }
+
+    /**
+     * Миграция 9: частичные индексы активных приборов по колонкам отчётов.
+     * GROUP BY в {@code DeviceDAO.countBy} читает только индекс — без
+     * просмотра таблицы и временного B-дерева для группировки
+     * (по location индекс уже создан миграцией 2).
+     */
+    private static void createReportIndexes(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_devices_active_type ON devices(type) WHERE deleted_at = 0");
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_devices_active_manufacturer ON devices(manufacturer) WHERE deleted_at = 0");
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_devices_active_status ON devices(status) WHERE deleted_at = 0");
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_devices_active_year ON devices(year) WHERE deleted_at = 0");
+        }
+    }
+
+    /**
+     * Миграция 10: счётчики активных приборов device_stats — всего, по статусам,
+     * по местам установки, приборов с фото и фото. Счётчики поддерживают триггеры
+     * на devices и device_photos в той же транзакции, что и запись, поэтому
+     * сводка читается одним запросом к маленькой таблице без подсчёта по приборам.
+     * Пустой статус или место хранятся как ''.
+     */
+    private static void createDeviceStats(Connection conn) throws SQLException {
+        String sqlDeviceStats = """
+                CREATE TABLE IF NOT EXISTS device_stats (
+                    dimension TEXT NOT NULL,
+                    value TEXT NOT NULL,
+                    count INTEGER NOT NULL,
+                    PRIMARY KEY (dimension, value)
+                ) WITHOUT ROWID;""";
+
+        // Фото прибора и признак «есть фото»; %s — id прибора (new.id / old.id)
+        String photosOf = "(SELECT COUNT(*) FROM device_photos WHERE device_id = %s AND deleted_at = 0)";
+        // Активен ли прибор фото; %s — new / old
+        String deviceActive = "EXISTS (SELECT 1 FROM devices WHERE id = %s.device_id AND deleted_at = 0)";
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(sqlDeviceStats);
+
+            // Приборы: вклад старой версии вычитается, новой — добавляется
+            stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS devices_stats_insert AFTER INSERT ON devices"
+                    + " WHEN new.deleted_at = 0 BEGIN "
+                    + deviceStatsDelta("new", "1", photosOf.formatted("new.id"))
+                    + " END");
+            stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS devices_stats_update AFTER UPDATE OF status, location, deleted_at ON devices"
+                    + " WHEN old.status IS NOT new.status OR old.location IS NOT new.location"
+                    + " OR (old.deleted_at = 0) <> (new.deleted_at = 0) BEGIN "
+                    + deviceStatsDelta("old", "-(old.deleted_at = 0)", "-(old.deleted_at = 0) * " + photosOf.formatted("old.id"))
+                    + deviceStatsDelta("new", "(new.deleted_at = 0)", "(new.deleted_at = 0) * " + photosOf.formatted("new.id"))
+                    + " END");
+            stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS devices_stats_delete AFTER DELETE ON devices"
+                    + " WHEN old.deleted_at = 0 BEGIN "
+                    + deviceStatsDelta("old", "-1", "-" + photosOf.formatted("old.id"))
+                    + " END");
+
+            // Фото активных приборов: «есть фото» меняется, когда фото становится первым или пропадает последнее
+            String photos = photosOf.formatted("new.device_id");
+            stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS device_photos_stats_insert AFTER INSERT ON device_photos"
+                    + " WHEN new.deleted_at = 0 AND " + deviceActive.formatted("new") + " BEGIN "
+                    + statsDelta("'photos'", "''", "1")
+                    + statsDelta("'with_photos'", "''", "(" + photos + " = 1)")
+                    + " END");
+            stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS device_photos_stats_update AFTER UPDATE OF deleted_at ON device_photos"
+                    + " WHEN (old.deleted_at = 0) <> (new.deleted_at = 0) AND " + deviceActive.formatted("new") + " BEGIN "
+                    + statsDelta("'photos'", "''", "CASE WHEN new.deleted_at = 0 THEN 1 ELSE -1 END")
+                    + statsDelta("'with_photos'", "''",
+                            "CASE WHEN new.deleted_at = 0 THEN (" + photos + " = 1) ELSE -(" + photos + " = 0) END")
+                    + " END");
+            stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS device_photos_stats_delete AFTER DELETE ON device_photos"
+                    + " WHEN old.deleted_at = 0 AND " + deviceActive.formatted("old") + " BEGIN "
+                    + statsDelta("'photos'", "''", "-1")
+                    + statsDelta("'with_photos'", "''", "-(" + photosOf.formatted("old.device_id") + " = 0)")
+                    + " END");
+
+            // Начальные значения по текущим данным
+            stmt.executeUpdate("DELETE FROM device_stats");
+            stmt.executeUpdate("INSERT INTO device_stats (dimension, value, count) "
+                    + "SELECT 'total', '', COUNT(*) FROM devices WHERE deleted_at = 0");
+            stmt.executeUpdate("INSERT INTO device_stats (dimension, value, count) "
+                    + "SELECT 'status', COALESCE(status, ''), COUNT(*) FROM devices WHERE deleted_at = 0 GROUP BY 2");
+            stmt.executeUpdate("INSERT INTO device_stats (dimension, value, count) "
+                    + "SELECT 'location', COALESCE(location, ''), COUNT(*) FROM devices WHERE deleted_at = 0 GROUP BY 2");
+            stmt.executeUpdate("INSERT INTO device_stats (dimension, value, count) "
+                    + "SELECT 'photos', '', COUNT(*) FROM device_photos p JOIN devices d ON d.id = p.device_id "
+                    + "WHERE p.deleted_at = 0 AND d.deleted_at = 0");
+            stmt.executeUpdate("INSERT INTO device_stats (dimension, value, count) "
+                    + "SELECT 'with_photos', '', COUNT(DISTINCT p.device_id) FROM device_photos p JOIN devices d ON d.id = p.device_id "
+                    + "WHERE p.deleted_at = 0 AND d.deleted_at = 0");
+        }
+    }
+
+    /**
+     * Изменение всех счётчиков прибора: {@code row} — new или old,
+     * {@code delta} — +1/-1 (выражение), {@code photos} — изменение количества фото.
+     */
+    private static String deviceStatsDelta(String row, String delta, String photos) {
+        return statsDelta("'total'", "''", delta)
+                + statsDelta("'status'", "COALESCE(" + row + ".status, '')", delta)
+                + statsDelta("'location'", "COALESCE(" + row + ".location, '')", delta)
+                + statsDelta("'photos'", "''", photos)
+                + statsDelta("'with_photos'", "''", "(" + photos + " <> 0) * " + delta);
+    }
+
+    private static String statsDelta(String dimension, String value, String delta) {
+        return "INSERT INTO device_stats (dimension, value, count) SELECT " + dimension + ", " + value + ", " + delta
+                + " WHERE true ON CONFLICT (dimension, value) DO UPDATE SET count = count + excluded.count; ";
+    }
+
+    /**
+     * Миграция 11: частичные индексы активных приборов по остальным колонкам,
+     * по которым сортируется таблица приборов. Страница по keyset-курсору
+     * читается по индексу (колонка, id) без временного B-дерева; индекс
+     * по valve_number также нужен группировке в {@code DeviceDAO.countBy}.
+     */
+    private static void createSortIndexes(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_devices_active_measurement_limit ON devices(measurement_limit) WHERE deleted_at = 0");
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_devices_active_accuracy_class ON devices(accuracy_class) WHERE deleted_at = 0");
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_devices_active_valve_number ON devices(valve_number) WHERE deleted_at = 0");
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_devices_active_additional_info ON devices(additional_info) WHERE deleted_at = 0");
+        }
+    }
+
+    // ─────────────────────────────────────────────
+    // ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ
+    // ─────────────────────────────────────────────
+
+    /**
+     * Добавляет колонку в таблицу, если она ещё не существует.
+     * SQLite не поддерживает IF NOT EXISTS для ALTER TABLE, поэтому проверяем вручную.
+     */
+    static void addColumnIfNotExists(Connection conn, String tableName, String columnName,
+                                     String columnDefinition) throws SQLException {
+        if (columnExists(conn, tableName, columnName)) {
+            LOGGER.debug("Колонка {}.{} уже существует", tableName, columnName);
+            return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE " + tableName + " ADD COLUMN " + columnName + " " + columnDefinition);
+            LOGGER.info("Добавлена колонка {}.{}", tableName, columnName);
+        }
+    }
+
+    static boolean columnExists(Connection conn, String tableName, String columnName) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + tableName + ")")) {
+            while (rs.next()) {
+                if (columnName.equals(rs.getString("name"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Обновляет значения колонки, которые равны 0, на текущее время в миллисекундах.
+     * Используется для миграции updated_at после добавления колонки с дефолтом 0.
+     */
+    private static void updateColumnIfZero(Connection conn, String tableName, String columnName) throws SQLException {
+        String updateSql = "UPDATE " + tableName + " SET " + columnName + " = (strftime('%s','now') * 1000) WHERE " + columnName + " = 0";
+        try (Statement stmt = conn.createStatement()) {
+            int rowsUpdated = stmt.executeUpdate(updateSql);
+            if (rowsUpdated > 0) {
+                LOGGER.info("Обновлено {} записей в {}.{}", rowsUpdated, tableName, columnName);
+            }
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package com.kipia.management.kipia_management.services;
 
 import com.kipia.management.kipia_management.models.Scheme;
+import com.kipia.management.kipia_management.utils.SchemeDataCodec;
 import com.kipia.management.kipia_management.utils.TimeValidator;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
@@ -12,17 +15,54 @@ import java.util.List;
 /**
  * Класс SchemeDAO (Data Access Object) предоставляет методы для работы с данными схем в базе данных.
  * Реализует основные CRUD-операции для таблицы schemes.
+ * <p>
+ * Данные схемы хранятся в колонке data в сжатом виде ({@link SchemeDataCodec});
+ * при чтении списка схем они не распаковываются — JSON восстанавливается,
+ * только когда схему открывают ({@link Scheme#getData()}). Схемы, записанные
+ * в старом формате (JSON-текст), читаются как раньше.
+ * <p>
+ * Для списков выбора схем есть {@link #getSchemeHeaders()} — он не читает
+ * данные схем вовсе, тело схемы загружается при открытии
+ * ({@link SchemeShapeDAO#loadSchemeData}).
  *
  * @author vladimir_shi
  * @since 30.09.2025
  */
 
-public class SchemeDAO {
+public class SchemeDAO implements SchemeRepository {
     private final DatabaseService databaseService;
+    private final SchemeShapeDAO shapeDAO;
     private static final Logger LOGGER = LogManager.getLogger(SchemeDAO.class);
 
+    // Без данных (схема хранит фигуры в scheme_shapes) колонка data не меняется;
+    // запись JSON возвращает схему к хранению документом
+    private static final String UPDATE_SQL =
+            "UPDATE schemes SET name=?, description=?, data=COALESCE(?, data), updated_at=?, deleted_at=?, last_synced_at=? WHERE id=?";
+    private static final String SYNCED_SQL =
+            "UPDATE schemes SET last_synced_at=? WHERE id=?";
+
+    // Из сжатых данных читается только заголовок с количеством фигур; у схем
+    // с построчным хранением фигуры считаются по scheme_shapes
+    private static final String HEADERS_SQL =
+            "SELECT s.id, s.name, s.description, s.updated_at, s.deleted_at, s.last_synced_at, " +
+            "s.data IS NOT NULL AS has_data, " +
+            "CASE WHEN typeof(s.data) = 'blob' THEN substr(s.data, 1, " + SchemeDataCodec.HEADER_SIZE + ") ELSE s.data END AS data_head, " +
+            "CASE WHEN s.data IS NULL THEN (SELECT COUNT(*) FROM scheme_shapes sh WHERE sh.scheme_id = s.id AND sh.deleted_at = 0) END AS row_shapes " +
+            "FROM schemes s WHERE s.deleted_at = 0 ORDER BY s.name";
+
+    private record UnpackedData(int id, String json) {
+    }
+
     public SchemeDAO(DatabaseService databaseService) {
         this.databaseService = databaseService;
+        this.shapeDAO = new SchemeShapeDAO(databaseService);
+    }
+
+    /**
+     * DAO построчного хранения фигур схем.
+     */
+    public SchemeShapeDAO getShapeDAO() {
+        return shapeDAO;
     }
 
     /**
@@ -37,6 +77,7 @@ public class SchemeDAO {
      * @param scheme схема для добавления
      * @param updateTimestamp если true - обновляет updated_at, если false - оставляет как есть
      */
+    @Override
     public boolean addScheme(Scheme scheme, boolean updateTimestamp) {
         if (!TimeValidator.getInstance().validateTimeForWrite()) {
             LOGGER.error("Добавление схемы заблокировано: проблема с системным временем");
@@ -48,23 +89,27 @@ public class SchemeDAO {
         }
 
         String sql = "INSERT INTO schemes (name, description, data, updated_at, deleted_at, last_synced_at) VALUES (?, ?, ?, ?, ?, ?)";
-        try (PreparedStatement stmt = databaseService.getConnection().prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setString(1, scheme.getName());
-            stmt.setString(2, scheme.getDescription());
-            stmt.setString(3, scheme.getData());
-            stmt.setLong(4, scheme.getUpdatedAt());
-            stmt.setLong(5, scheme.getDeletedAt());
-            stmt.setLong(6, scheme.getLastSyncedAt());
-
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected > 0) {
-                ResultSet keys = stmt.getGeneratedKeys();
-                if (keys.next()) {
-                    scheme.setId(keys.getInt(1));
+        try {
+            return databaseService.executeWrite(conn -> {
+                PreparedStatement stmt = databaseService.prepareCachedWithKeys(conn, sql);
+                stmt.setString(1, scheme.getName());
+                stmt.setString(2, scheme.getDescription());
+                stmt.setBytes(3, scheme.getPackedData());
+                stmt.setLong(4, scheme.getUpdatedAt());
+                stmt.setLong(5, scheme.getDeletedAt());
+                stmt.setLong(6, scheme.getLastSyncedAt());
+
+                int rowsAffected = stmt.executeUpdate();
+                if (rowsAffected > 0) {
+                    try (ResultSet keys = stmt.getGeneratedKeys()) {
+                        if (keys.next()) {
+                            scheme.setId(keys.getInt(1));
+                        }
+                    }
+                    return true;
                 }
-                return true;
-            }
-            return false;
+                return false;
+            });
         } catch (SQLException e) {
             LOGGER.error("Ошибка добавления схемы: {}", e.getMessage(), e);
             return false;
@@ -83,6 +128,7 @@ public class SchemeDAO {
      * @param scheme схема для обновления
      * @param updateTimestamp если true - обновляет updated_at, если false - оставляет как есть
      */
+    @Override
     public boolean updateScheme(Scheme scheme, boolean updateTimestamp) {
         if (!TimeValidator.getInstance().validateTimeForWrite()) {
             LOGGER.error("Обновление схемы заблокировано: проблема с системным временем");
@@ -98,90 +144,225 @@ public class SchemeDAO {
             scheme.updateTimestamp();
         }
 
-        String sql = "UPDATE schemes SET name=?, description=?, data=?, updated_at=?, deleted_at=?, last_synced_at=? WHERE id=?";
-
         try {
-            Connection conn = databaseService.getConnection();
-            if (conn == null || conn.isClosed()) {
-                LOGGER.error("Не удалось получить активное соединение с БД");
-                return false;
-            }
-
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            boolean updated = databaseService.executeInTransaction(conn -> {
+                PreparedStatement pstmt = databaseService.prepareCached(conn, UPDATE_SQL);
                 pstmt.setString(1, scheme.getName() != null ? scheme.getName() : "");
                 pstmt.setString(2, scheme.getDescription() != null ? scheme.getDescription() : "");
-                pstmt.setString(3, scheme.getData() != null ? scheme.getData() : "{}");
+                pstmt.setBytes(3, documentData(scheme));
                 pstmt.setLong(4, scheme.getUpdatedAt());
                 pstmt.setLong(5, scheme.getDeletedAt());
                 pstmt.setLong(6, scheme.getLastSyncedAt());
                 pstmt.setInt(7, scheme.getId());
 
                 int rows = pstmt.executeUpdate();
+                if (documentData(scheme) != null) {
+                    shapeDAO.deleteShapes(conn, scheme.getId());
+                }
                 LOGGER.info("Схема обновлена: {} (ID: {}), строк затронуто: {}", scheme.getName(), scheme.getId(), rows);
                 return rows > 0;
-            }
+            });
+            shapeDAO.evictSchemeData(scheme.getId());
+            return updated;
         } catch (SQLException e) {
             LOGGER.error("SQLException in updateScheme: {}", e.getMessage(), e);
             return false;
         }
     }
 
+    /**
+     * Пакетное обновление схем одной транзакцией через executeBatch.
+     * Время проверяется один раз на весь пакет.
+     *
+     * @param schemes         схемы для обновления
+     * @param updateTimestamp если true - обновляет updated_at, если false - оставляет как есть
+     * @return результат по каждой записи в порядке списка
+     */
+    @Override
+    public BatchResult updateSchemes(List<Scheme> schemes, boolean updateTimestamp) {
+        if (schemes.isEmpty()) {
+            return new BatchResult(new int[0]);
+        }
+        if (!TimeValidator.getInstance().validateTimeForWrite()) {
+            LOGGER.error("Пакетное обновление схем заблокировано: проблема с системным временем");
+            return BatchResult.failed(schemes.size());
+        }
+
+        if (updateTimestamp) {
+            schemes.forEach(Scheme::updateTimestamp);
+        }
+
+        try {
+            BatchResult result = databaseService.executeInTransaction(conn -> {
+                PreparedStatement pstmt = databaseService.prepareCached(conn, UPDATE_SQL);
+                BatchResult batch = new BatchResult(DatabaseService.executeBatch(pstmt, schemes, (stmt, scheme) -> {
+                    stmt.setString(1, scheme.getName() != null ? scheme.getName() : "");
+                    stmt.setString(2, scheme.getDescription() != null ? scheme.getDescription() : "");
+                    stmt.setBytes(3, documentData(scheme));
+                    stmt.setLong(4, scheme.getUpdatedAt());
+                    stmt.setLong(5, scheme.getDeletedAt());
+                    stmt.setLong(6, scheme.getLastSyncedAt());
+                    stmt.setInt(7, scheme.getId());
+                }));
+                for (Scheme scheme : schemes) {
+                    if (documentData(scheme) != null) {
+                        shapeDAO.deleteShapes(conn, scheme.getId());
+                    }
+                }
+                return batch;
+            });
+            schemes.forEach(scheme -> shapeDAO.evictSchemeData(scheme.getId()));
+            LOGGER.info("Пакетное обновление схем: {}", result);
+            return result;
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка пакетного обновления схем: {}", e.getMessage(), e);
+            return BatchResult.failed(schemes.size());
+        }
+    }
+
+    /**
+     * Пакетная запись времени синхронизации: меняется только last_synced_at,
+     * данные схем, их фигуры и updated_at не трогаются.
+     *
+     * @param schemes схемы с уже выставленным lastSyncedAt
+     * @return результат по каждой записи в порядке списка
+     */
+    @Override
+    public BatchResult markSchemesSynced(List<Scheme> schemes) {
+        if (schemes.isEmpty()) {
+            return new BatchResult(new int[0]);
+        }
+        if (!TimeValidator.getInstance().validateTimeForWrite()) {
+            LOGGER.error("Запись времени синхронизации схем заблокирована: проблема с системным временем");
+            return BatchResult.failed(schemes.size());
+        }
+
+        try {
+            BatchResult result = databaseService.executeInTransaction(conn -> {
+                PreparedStatement pstmt = databaseService.prepareCached(conn, SYNCED_SQL);
+                return new BatchResult(DatabaseService.executeBatch(pstmt, schemes, (stmt, scheme) -> {
+                    stmt.setLong(1, scheme.getLastSyncedAt());
+                    stmt.setInt(2, scheme.getId());
+                }));
+            });
+            LOGGER.info("Время синхронизации схем: {}", result);
+            return result;
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка записи времени синхронизации схем: {}", e.getMessage(), e);
+            return BatchResult.failed(schemes.size());
+        }
+    }
+
+    /**
+     * Все схемы (включая удалённые) для синхронизации. У схем, хранящих фигуры
+     * построчно, JSON собирается из scheme_shapes и помечается
+     * {@link Scheme#setShapesData}: запись такой схемы строки не удаляет.
+     */
+    @Override
     public List<Scheme> getAllSchemesForExport() {
-        List<Scheme> schemes = new ArrayList<>();
         String sql = "SELECT * FROM schemes ORDER BY id";
-        try (Statement stmt = databaseService.getConnection().createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                schemes.add(createSchemeFromResultSet(rs));
-            }
+        try {
+            return databaseService.executeRead(conn -> {
+                List<Scheme> schemes = querySchemes(conn, sql);
+                if (schemes.stream().anyMatch(scheme -> !scheme.hasData()) && SchemeShapeDAO.hasShapeTable(conn)) {
+                    for (Scheme scheme : schemes) {
+                        if (!scheme.hasData()) {
+                            scheme.setShapesData(shapeDAO.readShapesJson(conn, scheme.getId()));
+                        }
+                    }
+                }
+                return schemes;
+            });
         } catch (SQLException e) {
             LOGGER.error("Ошибка получения схем для экспорта: {}", e.getMessage(), e);
+            return new ArrayList<>();
         }
-        return schemes;
     }
 
+    @Override
     public List<Scheme> getAllSchemes() {
-        List<Scheme> schemes = new ArrayList<>();
         String sql = "SELECT * FROM schemes WHERE deleted_at = 0 ORDER BY name";
-        try (Statement stmt = databaseService.getConnection().createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                schemes.add(createSchemeFromResultSet(rs));
-            }
+        try {
+            return databaseService.executeRead(conn -> querySchemes(conn, sql));
         } catch (SQLException e) {
             LOGGER.error("Ошибка получения всех схем: {}", e.getMessage(), e);
+            return new ArrayList<>();
         }
-        return schemes;
     }
 
+    /**
+     * Активные схемы без данных: id, название, описание, отметки времени и
+     * количество фигур. Для списков выбора схем; данные схемы читаются при
+     * открытии через {@link SchemeShapeDAO#loadSchemeData}.
+     */
+    public List<Scheme> getSchemeHeaders() {
+        try {
+            return databaseService.executeRead(conn -> {
+                List<Scheme> schemes = new ArrayList<>();
+                try (ResultSet rs = databaseService.prepareCached(conn, HEADERS_SQL).executeQuery()) {
+                    while (rs.next()) {
+                        schemes.add(createSchemeHeader(rs));
+                    }
+                }
+                return schemes;
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка получения списка схем: {}", e.getMessage(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Есть ли схема с таким названием (в том числе удалённая). Данные схемы не читаются.
+     * При ошибке чтения возвращает true, чтобы не создать дубликат.
+     */
+    public boolean hasScheme(String name) {
+        String sql = "SELECT 1 FROM schemes WHERE name = ? LIMIT 1";
+        try {
+            return databaseService.executeRead(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, sql);
+                stmt.setString(1, name);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next();
+                }
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка проверки схемы {}: {}", name, e.getMessage(), e);
+            return true;
+        }
+    }
+
+    @Override
     public Scheme getSchemeById(int id) {
         String sql = "SELECT * FROM schemes WHERE id = ?";
-        try (PreparedStatement stmt = databaseService.getConnection().prepareStatement(sql)) {
-            stmt.setInt(1, id);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return createSchemeFromResultSet(rs);
-            }
+        try {
+            return databaseService.executeRead(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, sql);
+                stmt.setInt(1, id);
+                return querySingleScheme(stmt);
+            });
         } catch (SQLException e) {
             LOGGER.error("Ошибка получения схемы по ID: {}", e.getMessage(), e);
         }
         return null;
     }
 
+    @Override
     public Scheme findSchemeByName(String name) {
         String sql = "SELECT * FROM schemes WHERE name = ?";
-        try (PreparedStatement stmt = databaseService.getConnection().prepareStatement(sql)) {
-            stmt.setString(1, name);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return createSchemeFromResultSet(rs);
-            }
+        try {
+            return databaseService.executeRead(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, sql);
+                stmt.setString(1, name);
+                return querySingleScheme(stmt);
+            });
         } catch (SQLException e) {
             LOGGER.error("Ошибка поиска схемы: {}", e.getMessage(), e);
         }
         return null;
     }
 
+    @Override
     public boolean deleteScheme(int schemeId) {
         if (!TimeValidator.getInstance().validateTimeForWrite()) {
             LOGGER.error("Удаление схемы заблокировано: проблема с системным временем");
@@ -189,12 +370,16 @@ public class SchemeDAO {
         }
         
         String sql = "UPDATE schemes SET deleted_at = ?, updated_at = ? WHERE id = ?";
-        try (PreparedStatement stmt = databaseService.getConnection().prepareStatement(sql)) {
-            long now = System.currentTimeMillis();
-            stmt.setLong(1, now);
-            stmt.setLong(2, now);
-            stmt.setInt(3, schemeId);
-            int rows = stmt.executeUpdate();
+        try {
+            int rows = databaseService.executeWrite(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, sql);
+                long now = System.currentTimeMillis();
+                stmt.setLong(1, now);
+                stmt.setLong(2, now);
+                stmt.setInt(3, schemeId);
+                return stmt.executeUpdate();
+            });
+            shapeDAO.evictSchemeData(schemeId);
             if (rows > 0) {
                 LOGGER.info("✅ Схема удалена (soft delete): ID={}", schemeId);
                 return true;
@@ -206,12 +391,101 @@ public class SchemeDAO {
         }
     }
 
+    /**
+     * Переписывает данные схем в JSON-текст: сжатые данные распаковываются,
+     * у схем с построчным хранением JSON собирается из scheme_shapes.
+     * Применяется к копии БД перед упаковкой в архив синхронизации:
+     * мобильное приложение читает колонку data как текст.
+     *
+     * @return количество переписанных схем или -1 при ошибке
+     */
+    public int unpackAllSchemeData() {
+        String select = "SELECT id, data FROM schemes WHERE typeof(data) IN ('blob', 'null')";
+        String update = "UPDATE schemes SET data = ? WHERE id = ?";
+        try {
+            return databaseService.executeInTransaction(conn -> {
+                boolean hasShapeTable = SchemeShapeDAO.hasShapeTable(conn);
+                List<UnpackedData> rows = new ArrayList<>();
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery(select)) {
+                    while (rs.next()) {
+                        byte[] data = rs.getBytes("data");
+                        if (SchemeDataCodec.isPacked(data)) {
+                            rows.add(new UnpackedData(rs.getInt("id"), SchemeDataCodec.decode(data)));
+                        } else if (data == null && hasShapeTable) {
+                            rows.add(new UnpackedData(rs.getInt("id"), shapeDAO.readShapesJson(conn, rs.getInt("id"))));
+                        }
+                    }
+                }
+                PreparedStatement pstmt = databaseService.prepareCached(conn, update);
+                DatabaseService.executeBatch(pstmt, rows, (stmt, row) -> {
+                    stmt.setString(1, row.json());
+                    stmt.setInt(2, row.id());
+                });
+                return rows.size();
+            });
+        } catch (SQLException | IllegalArgumentException e) {
+            LOGGER.error("Ошибка распаковки данных схем: {}", e.getMessage(), e);
+            return -1;
+        }
+    }
+
+    // Документ для колонки data; null — данные не меняются (их нет или они собраны из строк фигур)
+    private static byte[] documentData(Scheme scheme) {
+        return scheme.isShapesData() ? null : scheme.getPackedData();
+    }
+
+    private List<Scheme> querySchemes(Connection conn, String sql) throws SQLException {
+        List<Scheme> schemes = new ArrayList<>();
+        try (ResultSet rs = databaseService.prepareCached(conn, sql).executeQuery()) {
+            while (rs.next()) {
+                schemes.add(createSchemeFromResultSet(rs));
+            }
+        }
+        return schemes;
+    }
+
+    private Scheme querySingleScheme(PreparedStatement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? createSchemeFromResultSet(rs) : null;
+        }
+    }
+
+    private Scheme createSchemeHeader(ResultSet rs) throws SQLException {
+        Scheme scheme = new Scheme();
+        scheme.setId(rs.getInt("id"));
+        scheme.setName(rs.getString("name"));
+        scheme.setDescription(rs.getString("description"));
+        boolean hasData = rs.getBoolean("has_data");
+        int shapeCount;
+        if (hasData) {
+            byte[] head = rs.getBytes("data_head");
+            // Схема старого формата (JSON-текст) приходит целиком — фигуры считаются по JSON
+            shapeCount = SchemeDataCodec.isPacked(head)
+                    ? SchemeDataCodec.shapeCount(head)
+                    : SchemeDataCodec.countShapes(new String(head, StandardCharsets.UTF_8));
+        } else {
+            shapeCount = rs.getInt("row_shapes");
+        }
+        scheme.setHeaderOnly(hasData, Math.max(0, shapeCount));
+        scheme.setUpdatedAt(rs.getLong("updated_at"));
+        scheme.setDeletedAt(rs.getLong("deleted_at"));
+        scheme.setLastSyncedAt(rs.getLong("last_synced_at"));
+        return scheme;
+    }
+
     private Scheme createSchemeFromResultSet(ResultSet rs) throws SQLException {
         Scheme scheme = new Scheme();
         scheme.setId(rs.getInt("id"));
         scheme.setName(rs.getString("name"));
         scheme.setDescription(rs.getString("description"));
-        scheme.setData(rs.getString("data"));
+        byte[] data = rs.getBytes("data");
+        if (SchemeDataCodec.isPacked(data)) {
+            scheme.setPackedData(data);
+        } else if (data != null) {
+            // Схема старого формата (JSON-текст) — ещё не перезаписана
+            scheme.setData(new String(data, StandardCharsets.UTF_8));
+        }
         scheme.setUpdatedAt(rs.getLong("updated_at"));
         scheme.setDeletedAt(rs.getLong("deleted_at"));
         scheme.setLastSyncedAt(rs.getLong("last_synced_at"));
@@ -0,0 +1,65 @@
+package com.kipia.management.kipia_management.services;
+
+import com.kipia.management.kipia_management.models.Scheme;
+
+import java.util.List;
+
+/**
+ * Хранилище схем — операции, которыми пользуется синхронизация.
+ * Реализации: {@link SchemeDAO} (SQLite) и {@link InMemorySchemeRepository}.
+ * <p>
+ * Схемы сопоставляются между базами по названию; удаление мягкое.
+ * Данные, собранные из строк фигур ({@link Scheme#isShapesData()}),
+ * при записи схемы не заменяют её фигуры.
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public interface SchemeRepository {
+
+    /**
+     * Добавление схемы. Заполняет id схемы.
+     *
+     * @param updateTimestamp если true - обновляет updated_at, если false - оставляет как есть
+     */
+    boolean addScheme(Scheme scheme, boolean updateTimestamp);
+
+    /**
+     * Обновление схемы по id.
+     *
+     * @param updateTimestamp если true - обновляет updated_at, если false - оставляет как есть
+     */
+    boolean updateScheme(Scheme scheme, boolean updateTimestamp);
+
+    BatchResult updateSchemes(List<Scheme> schemes, boolean updateTimestamp);
+
+    /**
+     * Запись времени синхронизации (lastSyncedAt) без изменения остальных полей.
+     */
+    BatchResult markSchemesSynced(List<Scheme> schemes);
+
+    /**
+     * Удаление схемы (soft delete)
+     */
+    boolean deleteScheme(int schemeId);
+
+    /**
+     * Схема по id (в том числе удалённая) или null.
+     */
+    Scheme getSchemeById(int id);
+
+    /**
+     * Схема по названию (в том числе удалённая) или null.
+     */
+    Scheme findSchemeByName(String name);
+
+    /**
+     * Активные схемы, отсортированные по названию.
+     */
+    List<Scheme> getAllSchemes();
+
+    /**
+     * Все схемы, включая удалённые, в порядке id — с данными фигур.
+     */
+    List<Scheme> getAllSchemesForExport();
+}
@@ -3,32 +3,54 @@ package com.kipia.management.kipia_management.services;
 import com.kipia.management.kipia_management.models.Device;
 import com.kipia.management.kipia_management.models.DeviceLocation;
 import com.kipia.management.kipia_management.models.Scheme;
+import com.kipia.management.kipia_management.models.ShapeData;
 import com.kipia.management.kipia_management.utils.CustomAlertDialog;
 import javafx.scene.Node;
 import javafx.scene.layout.AnchorPane;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
 /**
  * Сервис для сохранения схемы, включая фигуры и позиции устройств.
  * Вынесен из SchemeEditorController.
+ * <p>
+ * Данные схемы и позиции приборов снимаются с панели в потоке JavaFX,
+ * а запись в БД ставится в очередь {@link AsyncDao#writeInOrder} —
+ * методы сохранения возвращают future с результатом записи.
+ * <p>
+ * По умолчанию фигуры хранятся построчно ({@link SchemeShapeDAO}): первое
+ * сохранение схемы записывает все фигуры, следующие — только изменённые
+ * с прошлого сохранения. С {@code -DschemeShapeRows=false} схема, как раньше,
+ * целиком сериализуется в JSON колонки data.
  */
 public class SchemeSaver {
 
     private static final Logger LOGGER = LogManager.getLogger(SchemeSaver.class);
 
+    // Сколько ждать записи схемы при закрытии окна
+    private static final long EXIT_SAVE_TIMEOUT_SECONDS = 10;
+
+    // Построчное хранение фигур (scheme_shapes) вместо JSON в schemes.data
+    private static final boolean SHAPE_ROWS = !"false".equals(System.getProperty("schemeShapeRows"));
+
     private final SchemeDAO schemeDAO;
     private final DeviceDAO deviceDAO;
-    private final DeviceLocationDAO deviceLocationDAO;
+    private final DeviceLocationRepository deviceLocationDAO;
     private final ShapeService shapeService;
     private final AnchorPane schemePane;
 
     // Флаг несохранённых изменений
     private boolean isDirty = false;
+    // Последняя запись не удалась — её изменения фигур потеряны, следующая пишет все фигуры
+    private boolean fullSaveRequired = false;
 
     public SchemeSaver(
             SchemeDAO schemeDAO,
-            DeviceLocationDAO deviceLocationDAO,
+            DeviceLocationRepository deviceLocationDAO,
             ShapeService shapeService,
             AnchorPane schemePane,
             DeviceDAO deviceDAO) {
@@ -59,70 +81,153 @@ public class SchemeSaver {
 
     /**
      * Сохраняет текущую схему: данные фигур и позиции устройств.
+     * Вызывается в потоке JavaFX; запись выполняется в фоне.
+     *
+     * @return future с признаком успешной записи
      */
-    public boolean saveScheme(Scheme scheme) {
+    public CompletableFuture<Boolean> saveScheme(Scheme scheme) {
         if (scheme == null) {
             LOGGER.warn("Попытка сохранить null-схему");
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
         if (!isDirty) {
             LOGGER.debug("Схема '{}' не изменена, сохранение пропущено", scheme.getName());
-            return true;
+            return CompletableFuture.completedFuture(true);
         }
-        try {
-            scheme.updateTimestamp();
-            saveSchemeData(scheme);
-            saveDeviceLocations(scheme);
-            resetDirty();
-            LOGGER.info("Схема сохранена: {}, ID={}", scheme.getName(), scheme.getId());
-            return true;
-        } catch (Exception e) {
+        return writeScheme(scheme).exceptionallyAsync(e -> {
             LOGGER.error("Ошибка при сохранении схемы '{}': {}", scheme.getName(), e.getMessage(), e);
+            markDirty();
             return false;
+        }, AsyncDao.FX);
+    }
+
+    /**
+     * Снимает данные схемы с панели и ставит запись в очередь.
+     * Future завершается с ошибкой, если запись не удалась.
+     */
+    private CompletableFuture<Boolean> writeScheme(Scheme scheme) {
+        // Снимок панели — в потоке JavaFX
+        scheme.updateTimestamp();
+        Callable<Boolean> writeShapes = SHAPE_ROWS ? snapshotShapeRows(scheme) : snapshotShapeJson(scheme);
+        List<DeviceLocation> positions = collectDevicePositions(scheme);
+        // Изменения, сделанные во время записи, снова пометят схему
+        resetDirty();
+
+        CompletableFuture<Boolean> write = AsyncDao.writeInOrder(() -> {
+            if (!writeShapes.call()) {
+                throw new RuntimeException("Не удалось обновить схему в БД (ID=" + scheme.getId() + ")");
+            }
+            writeDevicePositions(scheme.getId(), positions);
+            LOGGER.info("Схема сохранена: {}, ID={}", scheme.getName(), scheme.getId());
+            return true;
+        });
+        if (SHAPE_ROWS) {
+            write.whenCompleteAsync((_, error) -> {
+                if (error != null) {
+                    fullSaveRequired = true;
+                }
+            }, AsyncDao.FX);
         }
+        return write;
+    }
+
+    /**
+     * Снимок для сохранения схемы целиком в JSON колонки data.
+     */
+    private Callable<Boolean> snapshotShapeJson(Scheme scheme) {
+        scheme.setData(shapeService.serializeAllToJson());
+        int shapeCount = shapeService.getShapeCount();
+        shapeService.clearChanges();
+        return () -> {
+            boolean updated = schemeDAO.updateScheme(scheme);
+            if (updated) {
+                LOGGER.info("Сохранено {} фигур в JSON", shapeCount);
+            }
+            return updated;
+        };
+    }
+
+    /**
+     * Снимок для построчного сохранения: все фигуры, если схема ещё хранится
+     * документом (или прошлая запись не удалась), иначе только изменения.
+     */
+    private Callable<Boolean> snapshotShapeRows(Scheme scheme) {
+        SchemeShapeDAO shapeDAO = schemeDAO.getShapeDAO();
+        if (scheme.hasData() || fullSaveRequired) {
+            List<ShapeData> shapes = shapeService.snapshotShapes();
+            shapeService.clearChanges();
+            // Колонка data очищается той же записью
+            scheme.setData(null);
+            fullSaveRequired = false;
+            return () -> {
+                boolean saved = shapeDAO.replaceShapes(scheme, shapes);
+                if (saved) {
+                    LOGGER.info("Схема переведена на построчное хранение: {} фигур", shapes.size());
+                }
+                return saved;
+            };
+        }
+        ShapeService.ShapeChanges changes = shapeService.takeChanges();
+        return () -> {
+            boolean saved = shapeDAO.saveShapeChanges(scheme,
+                    changes.appended(), changes.modified(), changes.removedUids());
+            if (saved) {
+                LOGGER.info("Сохранены изменения фигур: добавлено {}, изменено {}, удалено {}",
+                        changes.appended().size(), changes.modified().size(), changes.removedUids().size());
+            }
+            return saved;
+        };
     }
 
     /**
      * Автосохранение перед сменой схемы.
      */
-    public boolean saveBeforeSchemeChange(Scheme currentScheme) {
+    public CompletableFuture<Boolean> saveBeforeSchemeChange(Scheme currentScheme) {
         if (currentScheme == null || !isDirty) {
             LOGGER.debug("saveBeforeSchemeChange: нечего сохранять");
-            return true;
-        }
-        boolean saved = saveScheme(currentScheme);
-        if (!saved) {
-            LOGGER.warn("Не удалось сохранить схему перед сменой: {}", currentScheme.getName());
+            return CompletableFuture.completedFuture(true);
         }
-        return saved;
+        return saveScheme(currentScheme).thenApply(saved -> {
+            if (!saved) {
+                LOGGER.warn("Не удалось сохранить схему перед сменой: {}", currentScheme.getName());
+            }
+            return saved;
+        });
     }
 
     /**
-     * Сохранение при закрытии приложения.
+     * Сохранение при закрытии приложения. Единственное место, где поток JavaFX
+     * ждёт записи: окно закрывается, и изменения не должны потеряться.
      */
     public void saveOnExit(Scheme currentScheme) {
         if (currentScheme == null || !isDirty) {
             LOGGER.debug("saveOnExit: нечего сохранять");
             return;
         }
-        boolean saved = saveScheme(currentScheme);
-        if (!saved) {
-            LOGGER.error("Не удалось сохранить схему при выходе: {}", currentScheme.getName());
+        try {
+            writeScheme(currentScheme).get(EXIT_SAVE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("Сохранение схемы при выходе прервано: {}", currentScheme.getName());
+        } catch (ExecutionException | TimeoutException e) {
+            LOGGER.error("Не удалось сохранить схему при выходе: {}", currentScheme.getName(), e);
         }
     }
 
     /**
-     * Сохранение перед переходом в другой контроллер.
+     * Сохранение перед переходом в другой контроллер. Запись идёт в фоне;
+     * следующий экран прочитает схему уже после неё.
      */
     public void saveBeforeNavigation(Scheme currentScheme) {
         if (currentScheme == null || !isDirty) {
             LOGGER.debug("saveBeforeNavigation: нечего сохранять");
             return;
         }
-        boolean saved = saveScheme(currentScheme);
-        if (!saved) {
-            LOGGER.warn("Сохранение перед навигацией не удалось: {}", currentScheme.getName());
-        }
+        saveScheme(currentScheme).thenAccept(saved -> {
+            if (!saved) {
+                LOGGER.warn("Сохранение перед навигацией не удалось: {}", currentScheme.getName());
+            }
+        });
     }
 
     /**
@@ -131,34 +236,31 @@ public class SchemeSaver {
     public void selectButtonSaveScheme(Scheme scheme) {
         // Кнопка "Сохранить" работает всегда — принудительно помечаем dirty
         markDirty();
-        saveScheme(scheme);
-        CustomAlertDialog.showSaveNotification("Сохранение", 1.8);
+        AsyncDao.onFx(saveScheme(scheme), saved -> {
+            if (saved) {
+                CustomAlertDialog.showSaveNotification("Сохранение", 1.8);
+            } else {
+                CustomAlertDialog.showError("Ошибка сохранения", "Не удалось сохранить схему");
+            }
+        });
     }
 
     // --- Вспомогательные методы ---
 
-    private void saveSchemeData(Scheme scheme) {
-        // Получаем JSON из ShapeService
-        String schemeData = shapeService.serializeAllToJson();
-        scheme.setData(schemeData);
-
-        boolean updated = schemeDAO.updateScheme(scheme);
-        if (!updated) {
-            throw new RuntimeException("Не удалось обновить схему в БД (ID=" + scheme.getId() + ")");
-        }
-
-        LOGGER.info("Сохранено {} фигур в JSON", shapeService.getShapeCount());
-    }
-
-    private void saveDeviceLocations(Scheme scheme) {
+    /**
+     * Позиции приборов на панели, снятые в потоке JavaFX для записи в фоне.
+     */
+    private List<DeviceLocation> collectDevicePositions(Scheme scheme) {
+        List<DeviceLocation> positions = new ArrayList<>();
         for (Node node : schemePane.getChildren()) {
             if (isDeviceNode(node)) {
                 Device device = extractDeviceFromUserData(node.getUserData());
                 if (device != null) {
-                    saveDeviceLocation(node, device, scheme);
+                    positions.add(positionOf(node, device, scheme));
                 }
             }
         }
+        return positions;
     }
 
     private boolean isDeviceNode(Node node) {
@@ -176,28 +278,41 @@ public class SchemeSaver {
         return null;
     }
 
+    /**
+     * Сохраняет позицию одного прибора (после перемещения мышью). Запись — в фоне.
+     */
     public void saveDeviceLocation(Node node, Device device, Scheme scheme) {
-        double x = node.getLayoutX();
-        double y = node.getLayoutY();
-        double rotation = node.getRotate();
+        List<DeviceLocation> positions = List.of(positionOf(node, device, scheme));
+        AsyncDao.writeInOrder(() -> {
+            writeDevicePositions(scheme.getId(), positions);
+            return null;
+        });
+    }
 
-        DeviceLocation location = new DeviceLocation(
+    private DeviceLocation positionOf(Node node, Device device, Scheme scheme) {
+        return new DeviceLocation(
                 device.getId(),
                 scheme.getId(),
-                x,
-                y,
-                rotation
+                node.getLayoutX(),
+                node.getLayoutY(),
+                node.getRotate()
         );
+    }
 
-        boolean saved = deviceLocationDAO.addDeviceLocation(location);
-
-        if (saved) {
-            device.updateTimestamp();
-            if (deviceDAO != null) {
-                deviceDAO.updateDevice(device);
-            }
-        } else {
-            LOGGER.warn("Не удалось сохранить позицию устройства (ID={}) для схемы ID={}", device.getId(), scheme.getId());
+    /**
+     * Записывает позиции одной транзакцией: только изменившиеся с прошлой записи,
+     * updated_at обновляется лишь у перемещённых приборов.
+     */
+    private void writeDevicePositions(int schemeId, List<DeviceLocation> positions) {
+        long now = System.currentTimeMillis();
+        List<Integer> moved = deviceLocationDAO.savePositions(schemeId, positions, now);
+        if (moved == null) {
+            LOGGER.warn("Не удалось сохранить позиции {} приборов для схемы ID={}", positions.size(), schemeId);
+            return;
+        }
+        if (!moved.isEmpty() && deviceDAO != null) {
+            deviceDAO.devicesTouched(moved, now);
         }
+        LOGGER.info("Позиции приборов на схеме ID={}: изменено {} из {}", schemeId, moved.size(), positions.size());
     }
 }
\ No newline at end of file
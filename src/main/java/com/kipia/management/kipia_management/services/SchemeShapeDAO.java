@@ -0,0 +1,317 @@
+package com.kipia.management.kipia_management.services;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.kipia.management.kipia_management.models.Scheme;
+import com.kipia.management.kipia_management.models.SchemeData;
+import com.kipia.management.kipia_management.models.ShapeData;
+import com.kipia.management.kipia_management.utils.SchemeDataCodec;
+import com.kipia.management.kipia_management.utils.TimeValidator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Класс SchemeShapeDAO предоставляет методы для работы с таблицей scheme_shapes —
+ * построчным хранением фигур схемы (одна строка на фигуру).
+ * <p>
+ * Схема хранит фигуры либо JSON-документом в колонке {@code schemes.data},
+ * либо строками этой таблицы — тогда колонка data пуста (NULL). Редактор
+ * переводит схему на построчное хранение при первом сохранении и дальше
+ * записывает только изменённые, добавленные и удалённые фигуры, поэтому
+ * стоимость сохранения зависит от размера правки, а не от размера схемы.
+ * Удалённые фигуры помечаются deleted_at.
+ * <p>
+ * Запись JSON в колонку data ({@link SchemeDAO#updateScheme}, например когда
+ * синхронизация принимает изменённую на другой стороне схему) возвращает схему
+ * к хранению документом: её строки удаляются в той же транзакции. Для экспорта
+ * и синхронизации JSON схемы собирается из строк ({@link Scheme#setShapesData});
+ * запись такой схемы обратно строки не трогает.
+ * <p>
+ * Открываемые схемы разбираются в {@link SchemeData} через {@link #loadSchemeData}
+ * и держатся в небольшом LRU-кэше: переключение между несколькими схемами
+ * не читает и не разбирает JSON повторно. Запись кэшированной схемы
+ * (и изменение её updated_at) делает запись кэша недействительной.
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public class SchemeShapeDAO {
+    private final DatabaseService databaseService;
+    private static final Logger LOGGER = LogManager.getLogger(SchemeShapeDAO.class);
+    private static final Gson gson = new Gson();
+
+    private static final String ACTIVE_PAYLOADS_SQL =
+            "SELECT payload FROM scheme_shapes WHERE scheme_id = ? AND deleted_at = 0 ORDER BY seq";
+    private static final String MAX_SEQ_SQL =
+            "SELECT MAX(seq) FROM scheme_shapes WHERE scheme_id = ? AND deleted_at = 0";
+    private static final String DELETE_ALL_SQL =
+            "DELETE FROM scheme_shapes WHERE scheme_id = ?";
+    private static final String INSERT_SQL =
+            "INSERT INTO scheme_shapes (scheme_id, shape_uid, type, payload, seq, updated_at, deleted_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, 0)";
+    // Добавленная фигура (в том числе возвращённая отменой удаления) встаёт поверх остальных
+    private static final String UPSERT_APPENDED_SQL = INSERT_SQL +
+            " ON CONFLICT(scheme_id, shape_uid) DO UPDATE SET type = excluded.type, payload = excluded.payload," +
+            " seq = excluded.seq, updated_at = excluded.updated_at, deleted_at = 0";
+    // Изменённая фигура сохраняет своё место в порядке отрисовки
+    private static final String UPSERT_MODIFIED_SQL = INSERT_SQL +
+            " ON CONFLICT(scheme_id, shape_uid) DO UPDATE SET type = excluded.type, payload = excluded.payload," +
+            " seq = CASE WHEN deleted_at > 0 THEN excluded.seq ELSE seq END, updated_at = excluded.updated_at, deleted_at = 0";
+    private static final String MARK_DELETED_SQL =
+            "UPDATE scheme_shapes SET deleted_at = ?, updated_at = ? WHERE scheme_id = ? AND shape_uid = ? AND deleted_at = 0";
+    private static final String DETACH_DATA_SQL =
+            "UPDATE schemes SET data = NULL, updated_at = ? WHERE id = ?";
+    private static final String SCHEME_DATA_SQL =
+            "SELECT data FROM schemes WHERE id = ?";
+
+    // Сколько разобранных схем держать в памяти
+    private static final int DATA_CACHE_SIZE = 8;
+
+    private record CachedData(long updatedAt, SchemeData data) {
+    }
+
+    private final Map<Integer, CachedData> dataCache = new LinkedHashMap<>(DATA_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, CachedData> eldest) {
+            return size() > DATA_CACHE_SIZE;
+        }
+    };
+
+    public SchemeShapeDAO(DatabaseService databaseService) {
+        this.databaseService = databaseService;
+    }
+
+    /**
+     * Разобранные данные схемы для открытия в редакторе. Повторное открытие той же
+     * версии схемы (тот же updated_at) берёт данные из кэша. Возвращённый объект
+     * общий для всех вызовов — изменять его нельзя.
+     * Обращается к БД — вызывать из фонового потока.
+     *
+     * @return данные схемы или null, если данные не в формате JSON (старый pipe-формат,
+     * см. {@link #loadSchemeJson}) или их не удалось прочитать
+     */
+    public SchemeData loadSchemeData(Scheme scheme) {
+        long updatedAt = scheme.getUpdatedAt();
+        synchronized (dataCache) {
+            CachedData cached = dataCache.get(scheme.getId());
+            if (cached != null && cached.updatedAt() == updatedAt) {
+                return cached.data();
+            }
+        }
+        SchemeData data;
+        try {
+            if (!scheme.hasData()) {
+                data = databaseService.executeRead(conn -> readShapesData(conn, scheme.getId()));
+            } else {
+                String json = loadSchemeJson(scheme);
+                if (json == null) {
+                    return null;
+                }
+                data = json.isBlank() ? new SchemeData() : gson.fromJson(json, SchemeData.class);
+            }
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка чтения фигур схемы {}: {}", scheme.getId(), e.getMessage(), e);
+            return null;
+        } catch (JsonParseException e) {
+            LOGGER.warn("Данные схемы {} не в формате JSON: {}", scheme.getId(), e.getMessage());
+            return null;
+        }
+        if (data == null) {
+            return null;
+        }
+        if (data.getShapes() == null) {
+            data.setShapes(new ArrayList<>());
+        }
+        synchronized (dataCache) {
+            dataCache.put(scheme.getId(), new CachedData(updatedAt, data));
+        }
+        return data;
+    }
+
+    /**
+     * JSON схемы: данные колонки data (у схемы, прочитанной заголовком, —
+     * из БД) или, если схема хранится построчно, документ, собранный из её фигур.
+     * Обращается к БД — вызывать из фонового потока.
+     */
+    public String loadSchemeJson(Scheme scheme) {
+        try {
+            if (!scheme.hasData()) {
+                return databaseService.executeRead(conn -> readShapesJson(conn, scheme.getId()));
+            }
+            if (scheme.isHeaderOnly()) {
+                return databaseService.executeRead(conn -> readDataJson(conn, scheme.getId()));
+            }
+            return scheme.getData();
+        } catch (SQLException | IllegalArgumentException e) {
+            LOGGER.error("Ошибка чтения данных схемы {}: {}", scheme.getId(), e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Убирает данные схемы из кэша разобранных схем (после записи схемы).
+     */
+    void evictSchemeData(int schemeId) {
+        synchronized (dataCache) {
+            dataCache.remove(schemeId);
+        }
+    }
+
+    /**
+     * Переводит схему на построчное хранение: все фигуры записываются заново
+     * (в порядке списка), колонка data очищается.
+     *
+     * @param shapes фигуры в порядке отрисовки
+     */
+    public boolean replaceShapes(Scheme scheme, List<ShapeData> shapes) {
+        if (!TimeValidator.getInstance().validateTimeForWrite()) {
+            LOGGER.error("Сохранение фигур схемы заблокировано: проблема с системным временем");
+            return false;
+        }
+        try {
+            boolean saved = databaseService.executeInTransaction(conn -> {
+                deleteShapes(conn, scheme.getId());
+                long now = System.currentTimeMillis();
+                PreparedStatement stmt = databaseService.prepareCached(conn, INSERT_SQL);
+                int[] seq = {0};
+                DatabaseService.executeBatch(stmt, shapes,
+                        (s, shape) -> bindShape(s, scheme.getId(), shape, ++seq[0], now));
+                return detachData(conn, scheme);
+            });
+            evictSchemeData(scheme.getId());
+            return saved;
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка записи фигур схемы {}: {}", scheme.getId(), e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Записывает изменения фигур схемы, уже хранящейся построчно, одной транзакцией.
+     *
+     * @param appended    добавленные фигуры в порядке отрисовки
+     * @param modified    изменённые фигуры
+     * @param removedUids идентификаторы удалённых фигур
+     */
+    public boolean saveShapeChanges(Scheme scheme, List<ShapeData> appended, List<ShapeData> modified,
+                                    Collection<String> removedUids) {
+        if (!TimeValidator.getInstance().validateTimeForWrite()) {
+            LOGGER.error("Сохранение фигур схемы заблокировано: проблема с системным временем");
+            return false;
+        }
+        try {
+            boolean saved = databaseService.executeInTransaction(conn -> {
+                long now = System.currentTimeMillis();
+                int[] seq = {readMaxSeq(conn, scheme.getId())};
+
+                if (!appended.isEmpty()) {
+                    PreparedStatement stmt = databaseService.prepareCached(conn, UPSERT_APPENDED_SQL);
+                    DatabaseService.executeBatch(stmt, appended,
+                            (s, shape) -> bindShape(s, scheme.getId(), shape, ++seq[0], now));
+                }
+                if (!modified.isEmpty()) {
+                    PreparedStatement stmt = databaseService.prepareCached(conn, UPSERT_MODIFIED_SQL);
+                    DatabaseService.executeBatch(stmt, modified,
+                            (s, shape) -> bindShape(s, scheme.getId(), shape, ++seq[0], now));
+                }
+                if (!removedUids.isEmpty()) {
+                    PreparedStatement stmt = databaseService.prepareCached(conn, MARK_DELETED_SQL);
+                    DatabaseService.executeBatch(stmt, new ArrayList<>(removedUids), (s, uid) -> {
+                        s.setLong(1, now);
+                        s.setLong(2, now);
+                        s.setInt(3, scheme.getId());
+                        s.setString(4, uid);
+                    });
+                }
+                return detachData(conn, scheme);
+            });
+            evictSchemeData(scheme.getId());
+            return saved;
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка записи изменений фигур схемы {}: {}", scheme.getId(), e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Собирает JSON схемы из её активных фигур (настройки канваса — по умолчанию,
+     * как при сохранении документом).
+     */
+    String readShapesJson(Connection conn, int schemeId) throws SQLException {
+        return gson.toJson(readShapesData(conn, schemeId));
+    }
+
+    private SchemeData readShapesData(Connection conn, int schemeId) throws SQLException {
+        SchemeData schemeData = new SchemeData();
+        PreparedStatement stmt = databaseService.prepareCached(conn, ACTIVE_PAYLOADS_SQL);
+        stmt.setInt(1, schemeId);
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                schemeData.getShapes().add(gson.fromJson(rs.getString(1), ShapeData.class));
+            }
+        }
+        return schemeData;
+    }
+
+    private String readDataJson(Connection conn, int schemeId) throws SQLException {
+        PreparedStatement stmt = databaseService.prepareCached(conn, SCHEME_DATA_SQL);
+        stmt.setInt(1, schemeId);
+        try (ResultSet rs = stmt.executeQuery()) {
+            byte[] data = rs.next() ? rs.getBytes(1) : null;
+            return data != null ? SchemeDataCodec.decode(data) : null;
+        }
+    }
+
+    /**
+     * Удаляет все строки фигур схемы (схема переходит к хранению документом).
+     */
+    void deleteShapes(Connection conn, int schemeId) throws SQLException {
+        PreparedStatement stmt = databaseService.prepareCached(conn, DELETE_ALL_SQL);
+        stmt.setInt(1, schemeId);
+        stmt.executeUpdate();
+    }
+
+    /**
+     * Есть ли в БД таблица scheme_shapes (её нет в БД мобильного приложения
+     * и в старых архивах синхронизации).
+     */
+    static boolean hasShapeTable(Connection conn) throws SQLException {
+        String sql = "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'scheme_shapes'";
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next();
+        }
+    }
+
+    private int readMaxSeq(Connection conn, int schemeId) throws SQLException {
+        PreparedStatement stmt = databaseService.prepareCached(conn, MAX_SEQ_SQL);
+        stmt.setInt(1, schemeId);
+        try (ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private boolean detachData(Connection conn, Scheme scheme) throws SQLException {
+        PreparedStatement stmt = databaseService.prepareCached(conn, DETACH_DATA_SQL);
+        stmt.setLong(1, scheme.getUpdatedAt());
+        stmt.setInt(2, scheme.getId());
+        return stmt.executeUpdate() > 0;
+    }
+
+    private static void bindShape(PreparedStatement stmt, int schemeId, ShapeData shape, int seq, long now)
+            throws SQLException {
+        stmt.setInt(1, schemeId);
+        stmt.setString(2, shape.getUid());
+        stmt.setString(3, shape.getType().name());
+        stmt.setString(4, gson.toJson(shape));
+        stmt.setInt(5, seq);
+        stmt.setLong(6, now);
+    }
+}
@@ -12,8 +12,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javafx.scene.text.Font;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 import java.util.function.Consumer;
 
 /**
@@ -25,14 +24,29 @@ import java.util.function.Consumer;
  */
 public class ShapeService {
     private static final Logger LOGGER = LogManager.getLogger(ShapeService.class);
+    // Компактный JSON: он хранится в БД и уходит в архив синхронизации
     private static final Gson gson = new GsonBuilder()
-            .setPrettyPrinting()
             .create();
 
     private final Consumer<ShapeHandler> deleteAction;
     private final ShapeFactory factory;
     private final List<ShapeBase> shapes = new ArrayList<>();
 
+    // Изменения с последнего сохранения (для построчного хранения фигур):
+    // добавленные фигуры (true — фигура встаёт поверх остальных) и изменённые (false)
+    private final Map<ShapeBase, Boolean> changedShapes = new IdentityHashMap<>();
+    private final Set<String> removedShapeUids = new LinkedHashSet<>();
+
+    /**
+     * Изменения фигур с последнего сохранения: данные добавленных и изменённых
+     * фигур (в порядке отрисовки) и идентификаторы удалённых.
+     */
+    public record ShapeChanges(List<ShapeData> appended, List<ShapeData> modified, Set<String> removedUids) {
+        public boolean isEmpty() {
+            return appended.isEmpty() && modified.isEmpty() && removedUids.isEmpty();
+        }
+    }
+
     public ShapeService(ShapeFactory factory) {
         this.deleteAction = this::removeShape;
         this.factory = factory;
@@ -43,6 +57,7 @@ public class ShapeService {
             ShapeBase shape = factory.createShape(type, coordinates);
             shape.addToPane();
             shapes.add(shape);
+            trackAdded(shape);
             LOGGER.info("Фигура добавлена в сервис, количество: {}", shapes.size());
             return shape;
         } catch (Exception e) {
@@ -52,7 +67,9 @@ public class ShapeService {
     }
 
     public void removeShape(ShapeBase shape) {
-        shapes.remove(shape);
+        if (shapes.remove(shape)) {
+            trackRemoved(shape);
+        }
         shape.removeFromPane();
     }
 
@@ -67,18 +84,74 @@ public class ShapeService {
     }
 
     /**
-     * Сериализация всех фигур в JSON
+     * Помечает фигуру изменённой (после команды редактора или её отмены).
+     * Фигуры, которых нет на схеме, не учитываются.
      */
-    public String serializeAllToJson() {
-        SchemeData schemeData = new SchemeData();
+    public void markShapeChanged(ShapeBase shape) {
+        if (shape != null && shapes.contains(shape)) {
+            changedShapes.putIfAbsent(shape, false);
+        }
+    }
 
+    /**
+     * Забирает накопленные изменения фигур и начинает учёт заново.
+     */
+    public ShapeChanges takeChanges() {
+        List<ShapeData> appended = new ArrayList<>();
+        List<ShapeData> modified = new ArrayList<>();
+        // Обход в порядке списка: добавленные фигуры сохраняют порядок отрисовки
         for (ShapeBase shape : shapes) {
-            ShapeData shapeData = convertShapeToData(shape);
-            if (shapeData != null) {
-                schemeData.getShapes().add(shapeData);
+            Boolean isAppended = changedShapes.get(shape);
+            if (isAppended != null) {
+                ShapeData data = convertShapeToData(shape);
+                if (data != null) {
+                    (isAppended ? appended : modified).add(data);
+                }
             }
         }
+        ShapeChanges changes = new ShapeChanges(appended, modified, new LinkedHashSet<>(removedShapeUids));
+        clearChanges();
+        return changes;
+    }
+
+    /**
+     * Сбрасывает учёт изменений (после загрузки схемы или полного сохранения).
+     */
+    public void clearChanges() {
+        changedShapes.clear();
+        removedShapeUids.clear();
+    }
+
+    /**
+     * Данные всех фигур в порядке отрисовки.
+     */
+    public List<ShapeData> snapshotShapes() {
+        List<ShapeData> result = new ArrayList<>();
+        for (ShapeBase shape : shapes) {
+            ShapeData data = convertShapeToData(shape);
+            if (data != null) {
+                result.add(data);
+            }
+        }
+        return result;
+    }
+
+    private void trackAdded(ShapeBase shape) {
+        changedShapes.put(shape, true);
+        removedShapeUids.remove(shape.getShapeUid());
+    }
+
+    private void trackRemoved(ShapeBase shape) {
+        changedShapes.remove(shape);
+        removedShapeUids.add(shape.getShapeUid());
+    }
 
+    /**
+     * Сериализация всех фигур в JSON
+     */
+    public String serializeAllToJson() {
+        SchemeData schemeData = new SchemeData();
+        schemeData.getShapes().addAll(snapshotShapes());
         return gson.toJson(schemeData);
     }
 
@@ -121,6 +194,7 @@ public class ShapeService {
 
 
         // Общие свойства
+        data.setUid(shape.getShapeUid());
         data.setX(shape.getLayoutX());
         data.setY(shape.getLayoutY());
         data.setRotation(shape.getRotate());
@@ -175,42 +249,50 @@ public class ShapeService {
         }
 
         try {
-            SchemeData schemeData = gson.fromJson(jsonData, SchemeData.class);
-            if (schemeData == null || schemeData.getShapes() == null) {
-                return;
-            }
+            addAll(gson.fromJson(jsonData, SchemeData.class));
+        } catch (Exception e) {
+            LOGGER.error("Ошибка парсинга JSON: {}", e.getMessage(), e);
+            // Пробуем загрузить в старом формате как fallback
+            tryLoadLegacyFormat(jsonData);
+        }
+    }
 
-            int loaded = 0;
-            int failed = 0;
+    /**
+     * Добавление всех фигур из уже разобранных данных схемы (данные не изменяются)
+     */
+    public void addAll(SchemeData schemeData) {
+        if (schemeData == null || schemeData.getShapes() == null) {
+            return;
+        }
 
-            for (ShapeData shapeData : schemeData.getShapes()) {
-                try {
-                    // Проверяем что тип фигуры не null
-                    if (shapeData.getType() == null) {
-                        failed++;
-                        LOGGER.error("Ошибка создания фигуры типа null: тип фигуры не определен");
-                        continue;
-                    }
+        int loaded = 0;
+        int failed = 0;
 
-                    ShapeBase shape = convertDataToShape(shapeData);
-                    shapes.add(shape);
-                    shape.addToPane();
-                    shape.addContextMenu(shape::handleDelete);
-                    loaded++;
-                } catch (Exception e) {
+        for (ShapeData shapeData : schemeData.getShapes()) {
+            try {
+                // Проверяем что тип фигуры не null
+                if (shapeData.getType() == null) {
                     failed++;
-                    LOGGER.error("Ошибка создания фигуры типа {}: {}",
-                            shapeData.getType() != null ? shapeData.getType() : "null", e.getMessage());
+                    LOGGER.error("Ошибка создания фигуры типа null: тип фигуры не определен");
+                    continue;
                 }
-            }
-
-            LOGGER.info("Загружено фигур: {}, ошибок: {}", loaded, failed);
 
-        } catch (Exception e) {
-            LOGGER.error("Ошибка парсинга JSON: {}", e.getMessage(), e);
-            // Пробуем загрузить в старом формате как fallback
-            tryLoadLegacyFormat(jsonData);
+                ShapeBase shape = convertDataToShape(shapeData);
+                if (shapeData.getUid() != null) {
+                    shape.setShapeUid(shapeData.getUid());
+                }
+                shapes.add(shape);
+                shape.addToPane();
+                shape.addContextMenu(shape::handleDelete);
+                loaded++;
+            } catch (Exception e) {
+                failed++;
+                LOGGER.error("Ошибка создания фигуры типа {}: {}",
+                        shapeData.getType() != null ? shapeData.getType() : "null", e.getMessage());
+            }
         }
+
+        LOGGER.info("Загружено фигур: {}, ошибок: {}", loaded, failed);
     }
 
     /**
@@ -382,17 +464,20 @@ public class ShapeService {
             }
         }
         shapes.clear();
+        clearChanges();
     }
 
     public void addShapeToList(ShapeBase shape) {
         if (shape != null && !shapes.contains(shape)) {
             shapes.add(shape);
+            trackAdded(shape);
         }
     }
 
     public void removeShapeFromList(ShapeBase shape) {
         boolean removed = shapes.remove(shape);
         if (removed) {
+            trackRemoved(shape);
             LOGGER.info("Удалена фигура из списка, количество сейчас: {}", shapes.size());
         }
     }
@@ -0,0 +1,137 @@
+package com.kipia.management.kipia_management.services;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограниченный кэш подготовленных запросов для одного соединения.
+ * Ключ — текст SQL, при переполнении вытесняется давно не использованный запрос.
+ * <p>
+ * Кэш привязан к конкретному объекту {@link Connection}: если соединение
+ * было переоткрыто, все запросы старого соединения закрываются и кэш
+ * заполняется заново. Выданные запросы вызывающий код не закрывает.
+ * <p>
+ * Если включена проверка планов, при промахе план нового запроса
+ * проверяется через {@link QueryPlanChecker}. Новый запрос оборачивается
+ * счётчиками {@link QueryStats}, если они включены.
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public final class StatementCache {
+    private static final Logger LOGGER = LogManager.getLogger(StatementCache.class);
+
+    private final String name;
+    private final int capacity;
+    private final boolean checkQueryPlans;
+    private final QueryStats queryStats;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+    private Connection owner;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Снимок счётчиков кэша.
+     */
+    public record Stats(String name, int size, long hits, long misses, long evictions) {
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: запросов %d, попаданий %d, промахов %d, вытеснено %d (%.0f%%)",
+                    name, size, hits, misses, evictions, hitRate() * 100);
+        }
+    }
+
+    StatementCache(String name, int capacity, boolean checkQueryPlans, QueryStats queryStats) {
+        this.name = name;
+        this.capacity = capacity;
+        this.checkQueryPlans = checkQueryPlans;
+        this.queryStats = queryStats;
+        this.statements = new LinkedHashMap<>(capacity, 0.75f, true);
+    }
+
+    /**
+     * Возвращает подготовленный запрос для соединения, создавая его при промахе.
+     * Параметры и пакет ранее выданного запроса очищаются.
+     *
+     * @param conn                соединение, на котором будет выполнен запрос
+     * @param sql                 текст запроса
+     * @param returnGeneratedKeys нужно ли возвращать сгенерированные ключи
+     */
+    synchronized PreparedStatement prepare(Connection conn, String sql, boolean returnGeneratedKeys) throws SQLException {
+        if (conn != owner) {
+            invalidate();
+            owner = conn;
+        }
+
+        String key = returnGeneratedKeys ? "#keys " + sql : sql;
+        PreparedStatement stmt = statements.get(key);
+        if (stmt != null && !stmt.isClosed()) {
+            hits.incrementAndGet();
+            stmt.clearParameters();
+            stmt.clearBatch();
+            return stmt;
+        }
+
+        misses.incrementAndGet();
+        if (checkQueryPlans) {
+            QueryPlanChecker.check(conn, sql);
+        }
+        stmt = returnGeneratedKeys
+                ? conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                : conn.prepareStatement(sql);
+        stmt = queryStats.instrument(sql, stmt);
+        statements.put(key, stmt);
+        evictOverflow();
+        return stmt;
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, PreparedStatement>> it = statements.entrySet().iterator();
+        while (statements.size() > capacity && it.hasNext()) {
+            closeQuietly(it.next().getValue());
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Закрывает все запросы и отвязывает кэш от соединения.
+     * Вызывается при переподключении и закрытии БД.
+     */
+    synchronized void invalidate() {
+        if (!statements.isEmpty()) {
+            LOGGER.debug("Кэш запросов '{}' сброшен ({} запросов)", name, statements.size());
+        }
+        statements.values().forEach(StatementCache::closeQuietly);
+        statements.clear();
+        owner = null;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(name, statements.size(), hits.get(), misses.get(), evictions.get());
+    }
+
+    private static void closeQuietly(PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            LOGGER.debug("Ошибка закрытия подготовленного запроса: {}", e.getMessage());
+        }
+    }
+}
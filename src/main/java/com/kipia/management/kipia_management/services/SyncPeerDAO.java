@@ -0,0 +1,90 @@
+package com.kipia.management.kipia_management.services;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Класс SyncPeerDAO хранит отметки синхронизации с другими устройствами (таблица sync_peers).
+ * <p>
+ * Отметка устройства — момент, до которого оно получило данные этой БД:
+ * при импорте архива это наибольшее last_synced_at в его БД (последний раз,
+ * когда устройство принимало наш экспорт). Отметка только растёт.
+ * Минимум отметок по всем устройствам — граница, старше которой записи
+ * корзины уже есть везде и их можно удалить физически.
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public class SyncPeerDAO {
+    private final DatabaseService databaseService;
+    private static final Logger LOGGER = LogManager.getLogger(SyncPeerDAO.class);
+
+    /**
+     * Мобильное приложение, с которым идёт обмен ZIP-архивами.
+     */
+    public static final String PEER_MOBILE = "android";
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO sync_peers (peer, synced_at, recorded_at) VALUES (?, ?, ?) " +
+            "ON CONFLICT(peer) DO UPDATE SET synced_at = MAX(synced_at, excluded.synced_at), recorded_at = excluded.recorded_at";
+
+    public SyncPeerDAO(DatabaseService databaseService) {
+        this.databaseService = databaseService;
+    }
+
+    /**
+     * Записывает отметку синхронизации устройства (меньшая отметка прежнюю не заменяет).
+     *
+     * @param syncedAt момент, до которого устройство получило наши данные (мс)
+     */
+    public boolean recordSync(String peer, long syncedAt) {
+        try {
+            return databaseService.executeWrite(conn -> {
+                PreparedStatement stmt = databaseService.prepareCached(conn, UPSERT_SQL);
+                stmt.setString(1, peer);
+                stmt.setLong(2, syncedAt);
+                stmt.setLong(3, System.currentTimeMillis());
+                return stmt.executeUpdate() > 0;
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка записи отметки синхронизации {}: {}", peer, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Отметки всех известных устройств.
+     *
+     * @return карта устройство → момент синхронизации (мс)
+     */
+    public Map<String, Long> getPeers() {
+        String sql = "SELECT peer, synced_at FROM sync_peers ORDER BY peer";
+        try {
+            return databaseService.executeRead(conn -> {
+                Map<String, Long> peers = new LinkedHashMap<>();
+                try (ResultSet rs = databaseService.prepareCached(conn, sql).executeQuery()) {
+                    while (rs.next()) {
+                        peers.put(rs.getString(1), rs.getLong(2));
+                    }
+                }
+                return peers;
+            });
+        } catch (SQLException e) {
+            LOGGER.error("Ошибка чтения отметок синхронизации: {}", e.getMessage(), e);
+            return new LinkedHashMap<>();
+        }
+    }
+
+    /**
+     * Момент, до которого данные получили все известные устройства.
+     *
+     * @return наименьшая отметка или 0, если ни одно устройство ещё не синхронизировалось
+     */
+    public long getWatermark() {
+        return getPeers().values().stream().mapToLong(Long::longValue).min().orElse(0);
+    }
+}
@@ -23,6 +23,7 @@ import org.apache.logging.log4j.Logger;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.function.Consumer;
 
 /**
@@ -95,6 +96,13 @@ public abstract class ShapeBase extends Group implements ShapeHandler {
 
     protected double rotationAngle = 0.0; // Текущий угол поворота в градусах
 
+    // ============================================================
+    // IDENTITY
+    // ============================================================
+
+    // Постоянный идентификатор фигуры: по нему сохраняются изменения отдельных фигур
+    private String shapeUid;
+
     // ============================================================
     // CONSTRUCTOR
     // ============================================================
@@ -1430,6 +1438,23 @@ public abstract class ShapeBase extends Group implements ShapeHandler {
         });
     }
 
+    /**
+     * Постоянный идентификатор фигуры (создаётся при первом обращении)
+     */
+    public String getShapeUid() {
+        if (shapeUid == null) {
+            shapeUid = UUID.randomUUID().toString();
+        }
+        return shapeUid;
+    }
+
+    /**
+     * Установка идентификатора фигуры, прочитанного из данных схемы
+     */
+    public void setShapeUid(String shapeUid) {
+        this.shapeUid = shapeUid;
+    }
+
     /**
      * Получение stored width (exact, для serialize)
      *
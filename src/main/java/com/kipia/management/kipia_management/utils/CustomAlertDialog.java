@@ -4,6 +4,7 @@ import com.kipia.management.kipia_management.Main;
 import javafx.animation.FadeTransition;
 import javafx.animation.PauseTransition;
 import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
@@ -17,7 +18,6 @@ import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TableColumn;
-import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.*;
@@ -31,7 +31,7 @@ import javafx.util.Duration;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import javafx.scene.shape.Rectangle;
-import com.kipia.management.kipia_management.models.Device;
+import com.kipia.management.kipia_management.models.DeviceSummary;
 
 import java.util.List;
 import java.util.Objects;
@@ -767,7 +767,7 @@ public class CustomAlertDialog {
      * @param devices список доступных приборов
      * @return выбранный прибор или null если отменено
      */
-    public static Device showDeviceSelection(List<Device> devices) {
+    public static DeviceSummary showDeviceSelection(List<DeviceSummary> devices) {
         Stage stage = createStage();
         boolean dark = isDark();
 
@@ -775,30 +775,30 @@ public class CustomAlertDialog {
         HBox topBox = createTopBox((SVGPath) null, "Выбор прибора", "Выберите прибор для схемы", "Доступно приборов: " + devices.size(), stage);
 
         // ===== ТАБЛИЦА =====
-        TableView<Device> tableView = new TableView<>();
+        TableView<DeviceSummary> tableView = new TableView<>();
         tableView.getStyleClass().add("device-selection-table");
         tableView.setPrefHeight(320);
         tableView.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_ALL_COLUMNS);
 
-        TableColumn<Device, String> modelCol = new TableColumn<>("Модель");
-        modelCol.setCellValueFactory(new PropertyValueFactory<>("name"));
+        TableColumn<DeviceSummary, String> modelCol = new TableColumn<>("Модель");
+        modelCol.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().name()));
         modelCol.setMinWidth(200);
 
-        TableColumn<Device, String> inventoryCol = new TableColumn<>("Инв. номер");
-        inventoryCol.setCellValueFactory(new PropertyValueFactory<>("inventoryNumber"));
+        TableColumn<DeviceSummary, String> inventoryCol = new TableColumn<>("Инв. номер");
+        inventoryCol.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().inventoryNumber()));
         inventoryCol.setMinWidth(140);
 
-        TableColumn<Device, String> valveCol = new TableColumn<>("Кран");
-        valveCol.setCellValueFactory(new PropertyValueFactory<>("valveNumber"));
+        TableColumn<DeviceSummary, String> valveCol = new TableColumn<>("Кран");
+        valveCol.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().valveNumber()));
         valveCol.setMinWidth(80);
 
-        TableColumn<Device, String> locationCol = new TableColumn<>("Местоположение");
-        locationCol.setCellValueFactory(new PropertyValueFactory<>("location"));
+        TableColumn<DeviceSummary, String> locationCol = new TableColumn<>("Местоположение");
+        locationCol.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().location()));
         locationCol.setMinWidth(160);
 
         tableView.getColumns().addAll(modelCol, inventoryCol, valveCol, locationCol);
 
-        ObservableList<Device> items = FXCollections.observableArrayList(devices);
+        ObservableList<DeviceSummary> items = FXCollections.observableArrayList(devices);
         tableView.setItems(items);
         if (!items.isEmpty()) tableView.getSelectionModel().selectFirst();
 
@@ -862,9 +862,9 @@ public class CustomAlertDialog {
         stage.setScene(scene);
 
         // ===== ДЕЙСТВИЯ КНОПОК =====
-        final Device[] result = {null};
+        final DeviceSummary[] result = {null};
         okBtn.setOnAction(_ -> {
-            Device selected = tableView.getSelectionModel().getSelectedItem();
+            DeviceSummary selected = tableView.getSelectionModel().getSelectedItem();
             if (selected != null) {
                 result[0] = selected;
                 stage.close();
@@ -5,6 +5,7 @@ import com.kipia.management.kipia_management.controllers.HelpController;
 import com.kipia.management.kipia_management.managers.SyncManager;
 import com.kipia.management.kipia_management.models.Device;
 import com.kipia.management.kipia_management.models.DeviceLocation;
+import com.kipia.management.kipia_management.models.DeviceSummary;
 import com.kipia.management.kipia_management.models.Scheme;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.control.Button;
@@ -157,10 +158,10 @@ public class DevTools {
             device1.setInventoryNumber("ТМ-001");
             device1.setLocation("88 км Губкин");
 
-            List<Device> testDevices = getTestDevices(device1);
-            Device selectedDevice = CustomAlertDialog.showDeviceSelection(testDevices);
+            List<DeviceSummary> testDevices = getTestDevices(device1).stream().map(DeviceSummary::of).toList();
+            DeviceSummary selectedDevice = CustomAlertDialog.showDeviceSelection(testDevices);
             if (selectedDevice != null && onStatusUpdate != null) {
-                onStatusUpdate.accept("Выбран прибор: " + selectedDevice.getName() + " (" + selectedDevice.getInventoryNumber() + ")");
+                onStatusUpdate.accept("Выбран прибор: " + selectedDevice.name() + " (" + selectedDevice.inventoryNumber() + ")");
             }
         });
         return btnDeviceSelection;
@@ -1,7 +1,9 @@
 package com.kipia.management.kipia_management.utils;
 
 import com.kipia.management.kipia_management.models.Device;
-import com.kipia.management.kipia_management.services.DeviceDAO;
+import com.kipia.management.kipia_management.services.BatchResult;
+import com.kipia.management.kipia_management.services.DeviceRepository;
+import com.kipia.management.kipia_management.services.InMemoryDeviceRepository;
 
 import com.kipia.management.kipia_management.managers.PhotoManager;
 import javafx.stage.FileChooser;
@@ -17,7 +19,9 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Класс с утилитами для работы с импортом и экспортом таблицы БД.
@@ -119,14 +123,14 @@ public class ExcelImportExportUtil {
      * если индикатор не {@code null}.
      *
      * @param ownerWindow      окно, которое вызвало импорт
-     * @param deviceDAO        сервис работы с БД
+     * @param deviceDAO        хранилище приборов
      * @param onSuccessUpdate  действие после успешного импорта
      * @param onError          действие при ошибке импорта
      * @param loadingIndicator индикатор загрузки (может быть {@code null})
      * @return результат импорта или {@code null} при ошибке / отмене
      */
     public static String importDevicesFromExcel(Window ownerWindow,
-                                                DeviceDAO deviceDAO,
+                                                DeviceRepository deviceDAO,
                                                 Runnable onSuccessUpdate,
                                                 Runnable onError,
                                                 LoadingIndicator loadingIndicator) {
@@ -143,7 +147,7 @@ public class ExcelImportExportUtil {
                 return null;
             }
             List<Device> devices = parseDevicesFromSheet(sheet);
-            int[] counts = processDevices(deviceDAO, devices);
+            int[] counts = processDevices(deviceDAO, devices, true);
             runSafe(onSuccessUpdate);
             String result = "Импорт завершён!\nДобавлено: " + counts[0] + "\nОбновлено: " + counts[1];
             LOGGER.info(result);
@@ -161,7 +165,7 @@ public class ExcelImportExportUtil {
      * Импорт без индикатора загрузки (обратная совместимость).
      */
     public static String importDevicesFromExcel(Window ownerWindow,
-                                                DeviceDAO deviceDAO,
+                                                DeviceRepository deviceDAO,
                                                 Runnable onSuccessUpdate,
                                                 Runnable onError) {
         return importDevicesFromExcel(ownerWindow, deviceDAO, onSuccessUpdate, onError, null);
@@ -373,12 +377,13 @@ public class ExcelImportExportUtil {
      * Сначала валидирует все записи на наличие обязательных полей.
      * Если хотя бы одна запись невалидна - выбрасывает исключение и импорт отменяется.
      *
-     * @param deviceDAO сервис работы с БД
-     * @param devices список приборов для импорта
+     * @param deviceDAO     хранилище приборов
+     * @param devices       список приборов для импорта
+     * @param migratePhotos переносить фото приборов, у которых сменилось место установки
      * @return массив [количество добавленных, количество обновленных]
      * @throws RuntimeException если хотя бы один прибор имеет пустые обязательные поля
      */
-    private static int[] processDevices(DeviceDAO deviceDAO, List<Device> devices) {
+    private static int[] processDevices(DeviceRepository deviceDAO, List<Device> devices, boolean migratePhotos) {
         // Сначала валидация всех записей
         for (Device d : devices) {
             if (isBlank(d.getInventoryNumber()) ||
@@ -393,40 +398,41 @@ public class ExcelImportExportUtil {
             }
         }
 
-        // Если все записи валидны - выполняем импорт
-        int imported = 0, updated = 0;
+        // Если все записи валидны - одним запросом находим существующие приборы
+        Map<String, Device> existingByNumber = deviceDAO.findDevicesByInventoryNumbers(
+                devices.stream().map(Device::getInventoryNumber).toList());
+
+        // Повтор инв.№ внутри файла обновляет запись, добавленную ранее в этом же импорте
+        Map<String, Device> addedByNumber = new LinkedHashMap<>();
+        Map<String, Device> updatedByNumber = new LinkedHashMap<>();
+        int repeated = 0;
         for (Device d : devices) {
-            int[] result = processDevice(deviceDAO, d);
-            imported += result[0];
-            updated  += result[1];
+            String number = d.getInventoryNumber();
+            Device existing = existingByNumber.get(number);
+            Device pending = addedByNumber.get(number);
+            if (existing != null) {
+                updateDevice(existing, d, migratePhotos);
+                if (updatedByNumber.putIfAbsent(number, existing) != null) {
+                    repeated++;
+                }
+            } else if (pending != null) {
+                updateDevice(pending, d, migratePhotos);
+                repeated++;
+            } else {
+                addedByNumber.put(number, d);
+            }
         }
-        return new int[]{imported, updated};
-    }
 
-    /**
-     * Обрабатывает один прибор (добавляет или обновляет).
-     * Поиск существующего прибора выполняется по инвентарному номеру.
-     *
-     * @param deviceDAO сервис работы с БД
-     * @param d прибор для обработки
-     * @return массив [1, 0] если добавлен новый, [0, 1] если обновлен существующий
-     */
-    private static int[] processDevice(DeviceDAO deviceDAO, Device d) {
-        Device existing = deviceDAO.findDeviceByInventoryNumber(d.getInventoryNumber());
-        if (existing != null) {
-            updateDevice(existing, d);
-            deviceDAO.updateDevice(existing);
-            return new int[]{0, 1};
-        } else {
-            deviceDAO.addDevice(d);
-            return new int[]{1, 0};
-        }
+        // Запись выполняется пакетами — по одной транзакции на добавление и обновление
+        BatchResult added = deviceDAO.addDevices(new ArrayList<>(addedByNumber.values()), true);
+        BatchResult changed = deviceDAO.updateDevices(new ArrayList<>(updatedByNumber.values()), true);
+        return new int[]{added.successCount(), changed.successCount() + repeated};
     }
 
     /**
      * Обновляет поля существующего прибора.
      */
-    private static void updateDevice(Device existing, Device d) {
+    private static void updateDevice(Device existing, Device d, boolean migratePhotos) {
         // Сохраняем старую локацию до изменения для миграции фото
         String oldLocation = existing.getLocation();
         existing.setType(d.getType());
@@ -440,7 +446,7 @@ public class ExcelImportExportUtil {
         existing.setStatus(d.getStatus());
         existing.setAdditionalInfo(d.getAdditionalInfo());
         // Миграция фото при изменении локации
-        if (oldLocation != null && !oldLocation.equals(existing.getLocation())) {
+        if (migratePhotos && oldLocation != null && !oldLocation.equals(existing.getLocation())) {
             PhotoManager.getInstance().migratePhotosToNewLocation(existing, oldLocation);
         }
     }
@@ -510,7 +516,7 @@ public class ExcelImportExportUtil {
      * Импорт из уже выбранного файла (без FileChooser) — безопасно вызывать из фонового потока.
      */
     public static String importDevicesFromFile(File file,
-                                               DeviceDAO deviceDAO,
+                                               DeviceRepository deviceDAO,
                                                Runnable onSuccessUpdate,
                                                Runnable onError) {
         try (FileInputStream fis = new FileInputStream(file);
@@ -522,7 +528,7 @@ public class ExcelImportExportUtil {
                 return null;
             }
             List<Device> devices = parseDevicesFromSheet(sheet);
-            int[] counts = processDevices(deviceDAO, devices);
+            int[] counts = processDevices(deviceDAO, devices, true);
             runSafe(onSuccessUpdate);
             String result = "Импорт завершён!\nДобавлено: " + counts[0] + "\nОбновлено: " + counts[1];
             LOGGER.info(result);
@@ -534,6 +540,33 @@ public class ExcelImportExportUtil {
         }
     }
 
+    /**
+     * Пробный импорт: файл применяется к копии приборов в памяти, хранилище
+     * и фото не изменяются. Показывает, сколько приборов будет добавлено и обновлено.
+     *
+     * @param file      файл Excel
+     * @param deviceDAO хранилище приборов, с которым сравнивается файл
+     * @return сводка пробного импорта или {@code null} при ошибке
+     */
+    public static String previewImportFromFile(File file, DeviceRepository deviceDAO) {
+        try (FileInputStream fis = new FileInputStream(file);
+             Workbook wb = new XSSFWorkbook(fis)) {
+            Sheet sheet = wb.getSheet("Devices");
+            if (sheet == null) {
+                LOGGER.error("Лист 'Devices' не найден в файле");
+                return null;
+            }
+            List<Device> devices = parseDevicesFromSheet(sheet);
+            int[] counts = processDevices(InMemoryDeviceRepository.copyOf(deviceDAO), devices, false);
+            String result = "Будет добавлено: " + counts[0] + "\nБудет обновлено: " + counts[1];
+            LOGGER.info("Пробный импорт {}: {}", file.getName(), result.replace('\n', ' '));
+            return result;
+        } catch (Exception e) {
+            LOGGER.error("Ошибка пробного импорта: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
     /**
      * Показывает диалог сохранения.
      */
@@ -208,7 +208,7 @@ public class LoggingConfig {
     /**
      * Получает путь к директории логов
      */
-    private static String getLogDirectoryPath() {
+    public static String getLogDirectoryPath() {
         if (isDevelopmentMode()) {
             // Режим разработки - логи в папке проекта
             String projectDir = System.getProperty("user.dir");
@@ -0,0 +1,152 @@
+package com.kipia.management.kipia_management.utils;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Компактный формат хранения данных схемы (колонка {@code schemes.data}).
+ * <p>
+ * JSON схемы сжимается deflate и хранится как BLOB с заголовком:
+ * <pre>
+ *   0x00 'K' 'S' 'D'   сигнатура (нулевой байт не встречается в начале JSON-текста)
+ *   1 байт             версия формата
+ *   4 байта            количество фигур
+ *   4 байта            длина исходного JSON в байтах UTF-8
+ *   ...                данные deflate
+ * </pre>
+ * Значение без сигнатуры считается JSON-текстом старого формата — такие
+ * схемы читаются как раньше. Количество фигур читается из заголовка без распаковки.
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+public final class SchemeDataCodec {
+    private static final Logger LOGGER = LogManager.getLogger(SchemeDataCodec.class);
+
+    private static final byte[] MAGIC = {0x00, 'K', 'S', 'D'};
+    public static final int FORMAT_VERSION = 1;
+    public static final int HEADER_SIZE = MAGIC.length + 1 + Integer.BYTES + Integer.BYTES;
+
+    private SchemeDataCodec() {
+    }
+
+    /**
+     * Проверяет, записано ли значение в сжатом формате.
+     */
+    public static boolean isPacked(byte[] value) {
+        if (value == null || value.length < HEADER_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (value[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Сжимает JSON схемы.
+     */
+    public static byte[] encode(String json) {
+        byte[] raw = json.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(HEADER_SIZE + raw.length / 4 + 64);
+            out.writeBytes(ByteBuffer.allocate(HEADER_SIZE)
+                    .put(MAGIC)
+                    .put((byte) FORMAT_VERSION)
+                    .putInt(countShapes(json))
+                    .putInt(raw.length)
+                    .array());
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Восстанавливает JSON схемы. Значение старого формата возвращается как текст UTF-8.
+     *
+     * @throws IllegalArgumentException если данные повреждены или формат новее поддерживаемого
+     */
+    public static String decode(byte[] value) {
+        if (value == null) {
+            return null;
+        }
+        if (!isPacked(value)) {
+            return new String(value, StandardCharsets.UTF_8);
+        }
+        ByteBuffer header = ByteBuffer.wrap(value, MAGIC.length, HEADER_SIZE - MAGIC.length);
+        int version = header.get();
+        if (version > FORMAT_VERSION) {
+            throw new IllegalArgumentException("Неизвестная версия формата данных схемы: " + version);
+        }
+        header.getInt(); // количество фигур
+        byte[] raw = new byte[header.getInt()];
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(value, HEADER_SIZE, value.length - HEADER_SIZE);
+            int read = 0;
+            while (read < raw.length && !inflater.finished()) {
+                int n = inflater.inflate(raw, read, raw.length - read);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += n;
+            }
+            if (read != raw.length) {
+                throw new IllegalArgumentException("Данные схемы повреждены: распаковано " + read + " из " + raw.length + " байт");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Данные схемы повреждены: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Количество фигур из заголовка сжатого значения (без распаковки).
+     *
+     * @return количество фигур или -1 для значения старого формата
+     */
+    public static int shapeCount(byte[] value) {
+        if (!isPacked(value)) {
+            return -1;
+        }
+        return ByteBuffer.wrap(value, MAGIC.length + 1, Integer.BYTES).getInt();
+    }
+
+    /**
+     * Количество фигур в JSON схемы (массив shapes). Для некорректного JSON — 0.
+     */
+    public static int countShapes(String json) {
+        try {
+            JsonElement root = JsonParser.parseString(json);
+            if (root.isJsonObject() && root.getAsJsonObject().has("shapes")
+                    && root.getAsJsonObject().get("shapes").isJsonArray()) {
+                return root.getAsJsonObject().getAsJsonArray("shapes").size();
+            }
+        } catch (RuntimeException e) {
+            LOGGER.debug("Данные схемы не являются JSON: {}", e.getMessage());
+        }
+        return 0;
+    }
+}
@@ -13,6 +13,9 @@ import java.nio.file.Paths;
 import java.util.Base64;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Валидатор системного времени для защиты от изменения данных при сбое времени.
@@ -25,6 +28,13 @@ import java.util.Properties;
  *   <li>Блокировка НЕ сохраняется между запусками — каждый запуск начинается с чистой проверки</li>
  *   <li>Файл состояния хранит только lastValidTime и HMAC-подпись (защита от ручного редактирования)</li>
  * </ul>
+ * <p>
+ * Во время работы эталон хранится в памяти: момент привязки по системным часам
+ * и {@link System#nanoTime()} в этот момент. Ожидаемое время — эталон плюс
+ * прошедшее монотонное время, поэтому перевод часов назад обнаруживается
+ * без чтения файла. Файл состояния дописывается в фоне не чаще раза в
+ * {@value #FLUSH_INTERVAL_SECONDS} с и при завершении ({@link #shutdown()}),
+ * а не при каждой записи в БД.
  *
  * @author vladimir_shi
  * @since 19.05.2026
@@ -53,6 +63,10 @@ public class TimeValidator {
     /** Максимальное допустимое отклонение времени вперёд: 1 час (только логирование) */
     private static final long MAX_TIME_DRIFT_FORWARDS  = 60 * 60 * 1000L;
 
+    // ── Отложенная запись файла состояния ────────────────────────────────────
+    /** Период фоновой записи изменившегося lastValidTime, секунды */
+    private static final long FLUSH_INTERVAL_SECONDS = 5;
+
     // ── Дата сборки ───────────────────────────────────────────────────────────
     /**
      * Unix-время (мс) сборки приложения.
@@ -73,6 +87,13 @@ public class TimeValidator {
     private boolean writeBlocked;       // Только для текущей сессии
     private String  blockReason;        // Только для текущей сессии
 
+    private long    anchorTime;         // Системное время в момент привязки эталона
+    private long    anchorNanos;        // System.nanoTime() в тот же момент
+    private boolean dirty;              // lastValidTime изменился, но ещё не записан в файл
+
+    private final Object fileLock = new Object();
+    private ScheduledExecutorService flushScheduler;
+
     // ─────────────────────────────────────────────────────────────────────────
     // Конструктор и синглтон
     // ─────────────────────────────────────────────────────────────────────────
@@ -83,6 +104,7 @@ public class TimeValidator {
         this.writeBlocked         = false;
         this.blockReason          = REASON_NONE;
         loadState();
+        startFlushScheduler();
     }
 
     public static TimeValidator getInstance() {
@@ -187,6 +209,7 @@ public class TimeValidator {
         }
 
         lastValidTime = savedTime;
+        reanchor(savedTime);
 
         // ВАЖНО: при запуске всегда стартуем с разблокированным состоянием
         writeBlocked = false;
@@ -197,25 +220,73 @@ public class TimeValidator {
 
     /**
      * Сохраняет только lastValidTime в файл (без флага блокировки).
+     * Используется для редких событий (запуск, разблокировка); при записях
+     * в БД файл обновляет {@link #flush()}.
      */
     private void saveState() {
-        Properties props = new Properties();
-        props.setProperty(KEY_LAST_VALID_TIME, String.valueOf(lastValidTime));
-        props.setProperty(KEY_SIGNATURE, computeHmac(lastValidTime));
+        long time;
+        synchronized (this) {
+            time = lastValidTime;
+            dirty = false;
+        }
+        writeState(time);
+    }
 
-        try (OutputStream output = Files.newOutputStream(stateFilePath)) {
-            props.store(output, "KIPiA Time Validation State — do not edit manually");
-            LOGGER.debug("Состояние времени сохранено: lastValidTime={}", lastValidTime);
-        } catch (IOException e) {
-            LOGGER.error("Ошибка сохранения состояния времени: {}", e.getMessage(), e);
+    /**
+     * Записывает lastValidTime в файл, если он изменился с прошлой записи.
+     * Вызывается фоновым планировщиком и при завершении приложения.
+     */
+    public void flush() {
+        long time;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            time = lastValidTime;
+            dirty = false;
+        }
+        writeState(time);
+    }
+
+    private void writeState(long time) {
+        Properties props = new Properties();
+        props.setProperty(KEY_LAST_VALID_TIME, String.valueOf(time));
+        props.setProperty(KEY_SIGNATURE, computeHmac(time));
+
+        synchronized (fileLock) {
+            try (OutputStream output = Files.newOutputStream(stateFilePath)) {
+                props.store(output, "KIPiA Time Validation State — do not edit manually");
+                LOGGER.debug("Состояние времени сохранено: lastValidTime={}", time);
+            } catch (IOException e) {
+                LOGGER.error("Ошибка сохранения состояния времени: {}", e.getMessage(), e);
+            }
         }
     }
 
+    private void startFlushScheduler() {
+        flushScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "kipia-time-state");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushScheduler.scheduleWithFixedDelay(this::flush,
+                FLUSH_INTERVAL_SECONDS, FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Останавливает фоновую запись и сохраняет несохранённый эталон.
+     * Вызывается при завершении приложения.
+     */
+    public void shutdown() {
+        flushScheduler.shutdown();
+        flush();
+    }
+
     // ─────────────────────────────────────────────────────────────────────────
     // Первый запуск / проверка даты сборки
     // ─────────────────────────────────────────────────────────────────────────
 
-    private void handleFirstLaunch() {
+    private synchronized void handleFirstLaunch() {
         long currentTime = System.currentTimeMillis();
 
         if (currentTime < BUILD_TIMESTAMP) {
@@ -231,6 +302,7 @@ public class TimeValidator {
             writeBlocked = false;
             blockReason = REASON_NONE;
         }
+        reanchor(lastValidTime);
 
         saveState();
     }
@@ -242,10 +314,11 @@ public class TimeValidator {
     /**
      * Проверяет системное время перед операцией записи.
      * Вызывать перед каждым INSERT / UPDATE / DELETE.
+     * Файл не читается и не пишется: время сравнивается с эталоном в памяти.
      *
      * @return true — операция разрешена; false — заблокирована
      */
-    public boolean validateTimeForWrite() {
+    public synchronized boolean validateTimeForWrite() {
         if (!timeValidationEnabled) {
             return true;
         }
@@ -261,11 +334,13 @@ public class TimeValidator {
         // Защита от нулевого/неинициализированного lastValidTime
         if (lastValidTime <= 0) {
             lastValidTime = currentTime;
-            saveState();
+            reanchor(currentTime);
+            dirty = true;
             return true;
         }
 
-        long timeDiff = currentTime - lastValidTime;
+        // Отклонение от ожидаемого времени: эталон + прошедшее монотонное время
+        long timeDiff = currentTime - expectedCurrentTime();
 
         // Проверка на аномальное отклонение времени НАЗАД
         if (timeDiff < -MAX_TIME_DRIFT_BACKWARDS) {
@@ -280,22 +355,39 @@ public class TimeValidator {
             LOGGER.warn("Обнаружено значительное отклонение времени вперёд: {} ms — возможно ручная коррекция", timeDiff);
         }
 
+        // Часы ушли вперёд относительно монотонного времени — привязываем эталон заново
+        if (timeDiff > 0) {
+            reanchor(currentTime);
+        }
+
         // Всё в порядке — обновляем эталон (только если время движется вперёд)
         if (currentTime > lastValidTime) {
             lastValidTime = currentTime;
-            saveState();
+            dirty = true;
         }
 
         return true;
     }
 
+    /**
+     * Ожидаемое системное время по монотонным часам с момента привязки эталона.
+     */
+    private long expectedCurrentTime() {
+        return anchorTime + (System.nanoTime() - anchorNanos) / 1_000_000;
+    }
+
+    private void reanchor(long time) {
+        anchorTime = time;
+        anchorNanos = System.nanoTime();
+    }
+
     /**
      * Явная проверка при старте приложения.
      * Вызывается из Main.checkSystemTime().
      *
      * @return true — время в порядке; false — обнаружена аномалия (сессия заблокирована)
      */
-    public boolean checkOnStartup() {
+    public synchronized boolean checkOnStartup() {
         // Всегда начинаем с разблокированного состояния при запуске
         this.writeBlocked = false;
         this.blockReason = REASON_NONE;
@@ -321,6 +413,7 @@ public class TimeValidator {
         // Всё хорошо, обновляем lastValidTime до текущего времени
         LOGGER.info("Проверка при запуске: время корректно, lastValidTime обновлён с {} на {}", lastValidTime, currentTime);
         lastValidTime = currentTime;
+        reanchor(currentTime);
         saveState();
 
         return true;
@@ -334,7 +427,7 @@ public class TimeValidator {
      * Блокирует запись в ТЕКУЩЕЙ сессии.
      * Блокировка НЕ сохраняется в файл.
      */
-    private void blockCurrentSession(String reason) {
+    private synchronized void blockCurrentSession(String reason) {
         this.writeBlocked = true;
         this.blockReason = reason;
         // НЕ вызываем saveState() — блокировка только в памяти
@@ -344,10 +437,11 @@ public class TimeValidator {
     /**
      * Ручная разблокировка в текущей сессии (например, по кнопке от администратора).
      */
-    public void unblockWriteOperations() {
+    public synchronized void unblockWriteOperations() {
         if (writeBlocked) {
             long currentTime = System.currentTimeMillis();
             lastValidTime = currentTime;
+            reanchor(currentTime);
             writeBlocked = false;
             blockReason = REASON_NONE;
             saveState();
@@ -0,0 +1,162 @@
+package com.kipia.management.kipia_management.managers;
+
+import com.kipia.management.kipia_management.models.Device;
+import com.kipia.management.kipia_management.models.DeviceLocation;
+import com.kipia.management.kipia_management.models.Scheme;
+import com.kipia.management.kipia_management.services.InMemoryDeviceLocationRepository;
+import com.kipia.management.kipia_management.services.InMemoryDeviceRepository;
+import com.kipia.management.kipia_management.services.InMemorySchemeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Слияние {@link SyncManager#merge} над хранилищами в памяти — без БД и архива.
+ * Локальная и импортируемая стороны заполняются записями с заданными
+ * updated_at / last_synced_at, после слияния проверяются локальные данные,
+ * статистика и список конфликтов.
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+class SyncManagerMergeTest {
+
+    // Время прошлой синхронизации обеих сторон
+    private static final long SYNCED = 2_000;
+    private static final long BEFORE_SYNC = 1_000;
+    private static final long AFTER_SYNC = 3_000;
+
+    @TempDir
+    Path tempDir;
+
+    private InMemoryDeviceRepository localDevices;
+    private InMemorySchemeRepository localSchemes;
+    private InMemoryDeviceLocationRepository localLocations;
+
+    private InMemoryDeviceRepository remoteDevices;
+    private InMemorySchemeRepository remoteSchemes;
+    private InMemoryDeviceLocationRepository remoteLocations;
+
+    @BeforeEach
+    void setUp() {
+        localDevices = new InMemoryDeviceRepository();
+        localSchemes = new InMemorySchemeRepository();
+        localLocations = new InMemoryDeviceLocationRepository();
+        remoteDevices = new InMemoryDeviceRepository();
+        remoteSchemes = new InMemorySchemeRepository();
+        remoteLocations = new InMemoryDeviceLocationRepository();
+
+        // Есть только на импортируемой стороне: активный и удалённый
+        addDevice(remoteDevices, "INV-4", "Клапан", AFTER_SYNC);
+        Device deleted = addDevice(remoteDevices, "INV-5", "Задвижка", AFTER_SYNC);
+        remoteDevices.deleteDevice(deleted.getId());
+        // Не менялся ни на одной стороне
+        addDevice(localDevices, "INV-1", "Манометр", BEFORE_SYNC);
+        addDevice(remoteDevices, "INV-1", "Манометр", BEFORE_SYNC);
+        // Изменён на обеих сторонах по-разному — конфликт
+        addDevice(localDevices, "INV-2", "Термометр (цех)", AFTER_SYNC);
+        addDevice(remoteDevices, "INV-2", "Термометр (склад)", AFTER_SYNC);
+        // Изменён только на импортируемой стороне
+        addDevice(localDevices, "INV-3", "Датчик", BEFORE_SYNC);
+        addDevice(remoteDevices, "INV-3", "Датчик давления", AFTER_SYNC);
+
+        addScheme(remoteSchemes, "Схема Б", "{\"shapes\":[]}", AFTER_SYNC);
+        addScheme(localSchemes, "Схема А", "{\"shapes\":[]}", BEFORE_SYNC);
+        addScheme(remoteSchemes, "Схема А", "{\"shapes\":[]}", BEFORE_SYNC);
+
+        // id приборов и схем у сторон разные: позиции сопоставляются по номеру и названию схемы
+        addLocation(localLocations, localDevices, localSchemes, "INV-1", "Схема А", 10, BEFORE_SYNC);
+        addLocation(remoteLocations, remoteDevices, remoteSchemes, "INV-1", "Схема А", 50, AFTER_SYNC);
+        addLocation(remoteLocations, remoteDevices, remoteSchemes, "INV-4", "Схема Б", 70, AFTER_SYNC);
+    }
+
+    @Test
+    void mergesInMemoryRepositories() {
+        SyncManager syncManager = new SyncManager(null, localDevices, localSchemes, localLocations,
+                tempDir.resolve("device_photos").toString());
+
+        MergeResult result = syncManager.merge(remoteDevices, remoteSchemes, remoteLocations, null, null);
+
+        assertEquals(1, result.getAddedDevices());
+        // Обновление из remote и конфликт
+        assertEquals(2, result.getUpdatedDevices());
+        assertEquals(1, result.getAddedSchemes());
+        assertEquals(0, result.getUpdatedSchemes());
+
+        assertEquals(1, result.conflicts().size());
+        SyncManager.ConflictInfo conflict = result.conflicts().get(0);
+        assertEquals("device", conflict.type);
+        assertEquals("INV-2", conflict.key);
+        assertEquals("Термометр (цех)", localDevices.findDeviceByInventoryNumber("INV-2").getName());
+
+        Device unchanged = localDevices.findDeviceByInventoryNumber("INV-1");
+        assertEquals(BEFORE_SYNC, unchanged.getUpdatedAt());
+        assertTrue(unchanged.getLastSyncedAt() > SYNCED);
+
+        Device updated = localDevices.findDeviceByInventoryNumber("INV-3");
+        assertEquals("Датчик давления", updated.getName());
+        assertEquals(AFTER_SYNC, updated.getUpdatedAt());
+
+        Device added = localDevices.findDeviceByInventoryNumber("INV-4");
+        assertNotNull(added);
+        assertEquals(AFTER_SYNC, added.getUpdatedAt());
+        assertNull(localDevices.findDeviceByInventoryNumber("INV-5"));
+        assertEquals(4, localDevices.size());
+
+        Scheme schemeA = localSchemes.findSchemeByName("Схема А");
+        assertEquals(BEFORE_SYNC, schemeA.getUpdatedAt());
+        assertTrue(schemeA.getLastSyncedAt() > SYNCED);
+        Scheme schemeB = localSchemes.findSchemeByName("Схема Б");
+        assertNotNull(schemeB);
+        assertEquals("{\"shapes\":[]}", schemeB.getData());
+
+        assertEquals(50, locationOf(unchanged, schemeA).getX());
+        DeviceLocation placed = locationOf(added, schemeB);
+        assertEquals(70, placed.getX());
+        assertEquals(AFTER_SYNC, placed.getUpdatedAt());
+        assertEquals(2, localLocations.getAllLocations().size());
+    }
+
+    private DeviceLocation locationOf(Device device, Scheme scheme) {
+        List<DeviceLocation> found = localLocations.getLocationsBySchemeId(scheme.getId()).stream()
+                .filter(location -> location.getDeviceId() == device.getId())
+                .toList();
+        assertEquals(1, found.size(), device.getInventoryNumber() + " на " + scheme.getName());
+        return found.get(0);
+    }
+
+    private static Device addDevice(InMemoryDeviceRepository repository, String inventoryNumber, String name,
+                                    long updatedAt) {
+        Device device = new Device(0, "Прибор", name, null, inventoryNumber, 2020, null, null, "Цех 1", null,
+                "В работе", null);
+        device.setUpdatedAt(updatedAt);
+        device.setLastSyncedAt(SYNCED);
+        assertTrue(repository.addDevice(device, false));
+        return device;
+    }
+
+    private static void addScheme(InMemorySchemeRepository repository, String name, String data, long updatedAt) {
+        Scheme scheme = new Scheme(0, name, "", data);
+        scheme.setUpdatedAt(updatedAt);
+        scheme.setLastSyncedAt(SYNCED);
+        assertTrue(repository.addScheme(scheme, false));
+    }
+
+    private static void addLocation(InMemoryDeviceLocationRepository repository, InMemoryDeviceRepository devices,
+                                    InMemorySchemeRepository schemes, String inventoryNumber, String schemeName,
+                                    double x, long updatedAt) {
+        DeviceLocation location = new DeviceLocation(devices.findDeviceByInventoryNumber(inventoryNumber).getId(),
+                schemes.findSchemeByName(schemeName).getId(), x, 20, 0);
+        location.setUpdatedAt(updatedAt);
+        location.setLastSyncedAt(SYNCED);
+        assertTrue(repository.addDeviceLocation(location, false));
+    }
+}
@@ -0,0 +1,168 @@
+package com.kipia.management.kipia_management.services;
+
+import com.kipia.management.kipia_management.models.Device;
+import com.kipia.management.kipia_management.models.DeviceSummary;
+import com.kipia.management.kipia_management.utils.TimeValidator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Хранилище {@link InMemoryDeviceRepository} ведёт себя так же, как {@link DeviceDAO}
+ * над SQLite: одни и те же операции выполняются в обоих хранилищах, результаты
+ * сравниваются. Проверяются уникальность инвентарного номера (в том числе среди
+ * удалённых приборов), пакетная запись с отказом отдельных строк и
+ * {@code countBy} — отбор, фильтры и порядок значений.
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+class InMemoryDeviceRepositoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private DatabaseService databaseService;
+    private DeviceDAO deviceDAO;
+    private InMemoryDeviceRepository memory;
+
+    @BeforeAll
+    static void disableTimeValidation() {
+        // Результат записи не должен зависеть от системных часов машины, где идут тесты
+        TimeValidator.getInstance().setTimeValidationEnabled(false);
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        databaseService = new DatabaseService(tempDir.resolve("devices.db").toString());
+        SchemaMigrations.migrate(databaseService.getConnection());
+        deviceDAO = new DeviceDAO(databaseService);
+        memory = new InMemoryDeviceRepository();
+    }
+
+    @AfterEach
+    void tearDown() {
+        databaseService.closeConnection();
+    }
+
+    @Test
+    void inventoryNumberUniqueIncludingDeleted() {
+        for (DeviceRepository repository : List.<DeviceRepository>of(deviceDAO, memory)) {
+            String name = repository.getClass().getSimpleName();
+            Device first = device("INV-1", "Манометр", "Цех 1", "В работе", 2020);
+            assertTrue(repository.addDevice(first, true), name);
+            assertTrue(repository.addDevice(device("INV-2", "Термометр", "Цех 1", "В работе", 2021), true), name);
+            assertTrue(repository.deleteDevice(first.getId()), name);
+
+            assertNull(repository.getDeviceById(first.getId()), name);
+            assertNull(repository.findDeviceByInventoryNumber("INV-1"), name);
+            // Номер удалённого прибора остаётся занятым
+            assertFalse(repository.addDevice(device("INV-1", "Манометр", "Цех 2", "В работе", 2022), true), name);
+
+            Device second = repository.findDeviceByInventoryNumber("INV-2");
+            second.setInventoryNumber("INV-1");
+            assertFalse(repository.updateDevice(second, true), name);
+            assertEquals("Термометр", repository.findDeviceByInventoryNumber("INV-2").getName(), name);
+
+            assertFalse(repository.addDevice(device(null, "Без номера", "Цех 1", "В работе", 2020), true), name);
+        }
+        assertEquals(inventoryNumbers(deviceDAO.getAllDevicesForExport()),
+                inventoryNumbers(memory.getAllDevicesForExport()));
+    }
+
+    @Test
+    void batchWritesFailSameRows() {
+        List<BatchResult> results = new ArrayList<>();
+        for (DeviceRepository repository : List.<DeviceRepository>of(deviceDAO, memory)) {
+            repository.addDevice(device("INV-1", "Манометр", "Цех 1", "В работе", 2020), true);
+            results.add(repository.addDevices(new ArrayList<>(List.of(
+                    device("INV-2", "Датчик", "Цех 1", "В работе", 2021),
+                    device("INV-1", "Дубликат", "Цех 1", "В работе", 2021),
+                    device("INV-3", "Клапан", "Цех 2", "В ремонте", 2019))), true));
+
+            List<Device> all = repository.getAllDevices();
+            for (Device device : all) {
+                if (device.getInventoryNumber().equals("INV-3")) {
+                    device.setInventoryNumber("INV-2");
+                }
+                device.setStatus("Списан");
+            }
+            results.add(repository.updateDevices(all, true));
+        }
+        assertEquals(results.get(0).toString(), results.get(2).toString());
+        assertEquals(results.get(1).toString(), results.get(3).toString());
+        assertEquals(1, results.get(0).failedCount());
+        assertEquals(1, results.get(1).failedCount());
+        assertEquals(statuses(deviceDAO.getAllDevices()), statuses(memory.getAllDevices()));
+    }
+
+    @Test
+    void countByMatchesSql() {
+        List<Device> devices = List.of(
+                device("INV-1", "Манометр", "Цех 2", "В работе", 2020),
+                device("INV-2", "Манометр", "Цех 1", "В работе", 2005),
+                device("INV-3", "Термометр", "Цех 1", "В ремонте", 2020),
+                device("INV-4", "Датчик давления", "", "В работе", null),
+                device("INV-5", "датчик", "Цех 10", null, 1999),
+                device("INV-6", "", "Цех 1", "", 2020),
+                device("INV-7", "Клапан", "Цех 2", "Списан", 2021));
+        devices.get(1).setValveNumber("К-12");
+        devices.get(2).setValveNumber("К-2");
+        devices.get(6).setManufacturer("Завод");
+
+        for (DeviceRepository repository : List.<DeviceRepository>of(deviceDAO, memory)) {
+            for (Device device : devices) {
+                assertTrue(repository.addDevice(new Device(device), true));
+            }
+            Device deleted = device("INV-8", "Манометр", "Цех 1", "В работе", 2020);
+            repository.addDevice(deleted, true);
+            repository.deleteDevice(deleted.getId());
+        }
+
+        List<Map<DeviceSummary.Column, ?>> filters = List.of(
+                Map.of(),
+                Map.of(DeviceSummary.Column.LOCATION, "Цех 1"),
+                Map.of(DeviceSummary.Column.STATUS, "В работе", DeviceSummary.Column.YEAR, 2020),
+                Map.of(DeviceSummary.Column.NAME, "Нет такого"));
+        for (DeviceSummary.Column column : DeviceSummary.Column.values()) {
+            if (column == DeviceSummary.Column.PHOTOS) {
+                assertThrows(IllegalArgumentException.class, () -> deviceDAO.countBy(column, Map.of()));
+                assertThrows(IllegalArgumentException.class, () -> memory.countBy(column, Map.of()));
+                continue;
+            }
+            for (Map<DeviceSummary.Column, ?> filter : filters) {
+                // Сравниваются и значения, и порядок
+                assertEquals(new ArrayList<>(deviceDAO.countBy(column, filter).entrySet()),
+                        new ArrayList<>(memory.countBy(column, filter).entrySet()),
+                        column + " " + filter);
+            }
+        }
+        assertEquals(List.of("2005", "2020"), new ArrayList<>(memory.countBy(DeviceSummary.Column.YEAR,
+                Map.of(DeviceSummary.Column.LOCATION, "Цех 1")).keySet()));
+    }
+
+    private static Device device(String inventoryNumber, String name, String location, String status, Integer year) {
+        return new Device(0, "Прибор", name, null, inventoryNumber, year, null, null, location, null, status, null);
+    }
+
+    private static List<String> inventoryNumbers(List<Device> devices) {
+        return devices.stream().map(device -> device.getInventoryNumber() + ":" + device.isDeleted()).toList();
+    }
+
+    private static List<String> statuses(List<Device> devices) {
+        return devices.stream().map(device -> device.getInventoryNumber() + ":" + device.getStatus()).toList();
+    }
+}
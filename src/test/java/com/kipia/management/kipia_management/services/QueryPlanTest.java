@@ -0,0 +1,197 @@
+package com.kipia.management.kipia_management.services;
+
+import com.kipia.management.kipia_management.models.DeviceSummary;
+import com.kipia.management.kipia_management.models.Scheme;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Планы выполнения запросов DAO на свежей БД, приведённой миграциями
+ * к актуальной схеме. Тест вызывает методы чтения DAO (включая запросы,
+ * собираемые динамически: поиск, сортировки, keyset-курсоры, IN (...)),
+ * запоминает текст каждого подготовленного запроса и проверяет его план
+ * через {@link QueryPlanChecker}: запрос с фильтром не должен просматривать
+ * таблицу целиком, а сортировка — строить временное B-дерево.
+ * <p>
+ * Статистика ANALYZE в тестовой БД не собирается, поэтому план зависит
+ * только от индексов схемы.
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+class QueryPlanTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path dbFile;
+    private RecordingDatabaseService databaseService;
+
+    /**
+     * Сервис над внешним файлом БД, запоминающий текст всех запросов,
+     * подготовленных на его соединении.
+     */
+    private static final class RecordingDatabaseService extends DatabaseService {
+        private final Set<String> statements = new LinkedHashSet<>();
+        private Connection recording;
+        private Connection target;
+
+        RecordingDatabaseService(String dbPath) {
+            super(dbPath);
+        }
+
+        @Override
+        public synchronized Connection getConnection() {
+            Connection conn = super.getConnection();
+            if (conn != target) {
+                target = conn;
+                recording = (Connection) Proxy.newProxyInstance(
+                        Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                        (proxy, method, args) -> {
+                            if (method.getName().equals("prepareStatement")) {
+                                record((String) args[0]);
+                            }
+                            try {
+                                return method.invoke(conn, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        });
+            }
+            return recording;
+        }
+
+        private synchronized void record(String sql) {
+            // Проверка планов в режиме разработки тоже готовит запросы на этом соединении
+            if (!sql.startsWith("EXPLAIN")) {
+                statements.add(sql);
+            }
+        }
+
+        synchronized List<String> statements() {
+            return new ArrayList<>(statements);
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        dbFile = tempDir.resolve("plans.db");
+        databaseService = new RecordingDatabaseService(dbFile.toString());
+        SchemaMigrations.migrate(databaseService.getConnection());
+    }
+
+    @AfterEach
+    void tearDown() {
+        databaseService.closeConnection();
+    }
+
+    @Test
+    void daoQueriesUseIndexes() throws SQLException {
+        exerciseDeviceQueries(new DeviceDAO(databaseService));
+        exerciseSchemeQueries(new SchemeDAO(databaseService), new DeviceLocationDAO(databaseService));
+        exerciseSyncQueries(new ChangeLogDAO(databaseService), new SyncPeerDAO(databaseService));
+
+        List<String> statements = databaseService.statements();
+        assertFalse(statements.isEmpty(), "Не записано ни одного запроса");
+
+        List<String> regressions = new ArrayList<>();
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbFile)) {
+            for (String sql : statements) {
+                List<String> plan = QueryPlanChecker.explain(conn, sql);
+                List<String> steps = QueryPlanChecker.findRegressions(sql, plan);
+                if (!steps.isEmpty()) {
+                    regressions.add(sql + "\n    → " + steps + " (план: " + plan + ")");
+                }
+            }
+        }
+        assertTrue(regressions.isEmpty(),
+                "Регрессии планов запросов:\n" + String.join("\n", regressions));
+    }
+
+    private void exerciseDeviceQueries(DeviceDAO deviceDAO) {
+        deviceDAO.getAllDevices();
+        deviceDAO.getAllDevicesForExport();
+        deviceDAO.getDeviceSummaries(EnumSet.allOf(DeviceSummary.Column.class));
+        deviceDAO.getDeviceStats();
+        deviceDAO.getDistinctLocations();
+        deviceDAO.getDeviceById(1);
+        deviceDAO.getPlacedDevices(1);
+        deviceDAO.findDeviceByInventoryNumber("INV-1");
+        deviceDAO.findDeviceByInventoryNumberIncludingDeleted("INV-1");
+        deviceDAO.findDevicesByInventoryNumbers(List.of("INV-1", "INV-2", "INV-3"));
+
+        for (DeviceSummary.Column column : DeviceSummary.Column.values()) {
+            if (column == DeviceSummary.Column.PHOTOS) {
+                continue;
+            }
+            deviceDAO.countBy(column, Map.of());
+        }
+
+        for (String search : List.of("", "манометр цех")) {
+            DeviceQuery base = DeviceQuery.defaults().withSearch(search);
+            deviceDAO.countDevices(base);
+            deviceDAO.countDevicesByStatus(base);
+            for (DeviceQuery.SortColumn sort : DeviceQuery.SortColumn.values()) {
+                for (boolean ascending : new boolean[]{true, false}) {
+                    DeviceQuery query = base.withSort(sort, ascending);
+                    deviceDAO.getDevicePageAt(query, 100, 50);
+                    deviceDAO.getDevicePage(query, null, 50);
+                    if (query.sort().supportsKeyset()) {
+                        deviceDAO.getDevicePage(query, new DeviceQuery.Cursor("key", 10), 50);
+                        deviceDAO.getDevicePage(query, new DeviceQuery.Cursor(null, 10), 50);
+                    }
+                }
+            }
+        }
+
+        DevicePhotoDAO photoDAO = deviceDAO.getPhotoDAO();
+        photoDAO.getPhotos(1);
+        photoDAO.getPhotoNames(IntStream.rangeClosed(1, 5).boxed().collect(Collectors.toList()));
+        photoDAO.findPhotoByHash(1, "hash");
+    }
+
+    private void exerciseSchemeQueries(SchemeDAO schemeDAO, DeviceLocationDAO locationDAO) {
+        schemeDAO.getAllSchemes();
+        schemeDAO.getAllSchemesForExport();
+        schemeDAO.getSchemeHeaders();
+        schemeDAO.hasScheme("Схема");
+        schemeDAO.getSchemeById(1);
+        schemeDAO.findSchemeByName("Схема");
+
+        // Схема без данных хранится построчно: фигуры читаются из scheme_shapes
+        Scheme scheme = new Scheme(1, "Схема", "", null);
+        schemeDAO.getShapeDAO().loadSchemeData(scheme);
+
+        locationDAO.getLocationsBySchemeId(1);
+        locationDAO.getAllLocations();
+    }
+
+    private void exerciseSyncQueries(ChangeLogDAO changeLogDAO, SyncPeerDAO syncPeerDAO) {
+        changeLogDAO.getLastSeq();
+        changeLogDAO.getFirstSeq();
+        changeLogDAO.getChangesSince(0, 100);
+        changeLogDAO.getChangedKeysSince(0, ChangeLogDAO.TABLE_DEVICES);
+        syncPeerDAO.getPeers();
+        syncPeerDAO.getWatermark();
+    }
+}
@@ -0,0 +1,228 @@
+package com.kipia.management.kipia_management.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Хеш-таблица {@link LongObjectMap}: запись, замена и удаление значений,
+ * удаление из середины цепочки пробирования (сдвиг записей назад), расширение
+ * таблицы и поведение на границе заполнения. Результат случайной
+ * последовательности операций сверяется с {@link HashMap}.
+ *
+ * @author vladimir_shi
+ * @since 16.10.2026
+ */
+class LongObjectMapTest {
+
+    @Test
+    void putGetAndOverwrite() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        assertTrue(map.isEmpty());
+
+        assertNull(map.put(1, "a"));
+        assertNull(map.put(-1, "b"));
+        assertNull(map.put(Long.MAX_VALUE, "c"));
+        assertNull(map.put(0, "zero"));
+        assertEquals(4, map.size());
+
+        assertEquals("a", map.put(1, "a2"));
+        assertEquals(4, map.size());
+        assertEquals("a2", map.get(1));
+        assertEquals("b", map.get(-1));
+        assertEquals("c", map.get(Long.MAX_VALUE));
+        assertEquals("zero", map.get(0));
+        assertNull(map.get(2));
+        assertFalse(map.containsKey(2));
+
+        assertThrows(IllegalArgumentException.class, () -> map.put(3, null));
+        assertEquals(4, map.size());
+    }
+
+    @Test
+    void compositeKeysDoNotOverlap() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        map.put(LongObjectMap.key(1, 2), "1|2");
+        map.put(LongObjectMap.key(2, 1), "2|1");
+        map.put(LongObjectMap.key(0, -1), "0|-1");
+        map.put(LongObjectMap.key(-1, 0), "-1|0");
+
+        assertEquals(4, map.size());
+        assertEquals("1|2", map.get(LongObjectMap.key(1, 2)));
+        assertEquals("2|1", map.get(LongObjectMap.key(2, 1)));
+        assertEquals("0|-1", map.get(LongObjectMap.key(0, -1)));
+        assertEquals("-1|0", map.get(LongObjectMap.key(-1, 0)));
+        assertNull(map.get(0xFFFFFFFFL + 1));
+    }
+
+    @Test
+    void removeInsideCollisionChain() {
+        LongObjectMap<Long> map = new LongObjectMap<>();
+        int capacity = capacity(map);
+        List<Long> chain = keysWithSameSlot(capacity, 4);
+
+        for (long key : chain) {
+            map.put(key, key);
+        }
+        // Удаление из середины и из начала цепочки: остальные ключи должны находиться
+        assertEquals(chain.get(1), map.remove(chain.get(1)));
+        assertNull(map.remove(chain.get(1)));
+        for (long key : List.of(chain.get(0), chain.get(2), chain.get(3))) {
+            assertEquals(key, map.get(key));
+        }
+        assertEquals(chain.get(0), map.remove(chain.get(0)));
+        assertEquals(chain.get(2), map.get(chain.get(2)));
+        assertEquals(chain.get(3), map.get(chain.get(3)));
+        assertEquals(2, map.size());
+
+        // Освободившиеся ячейки переиспользуются
+        map.put(chain.get(1), -1L);
+        assertEquals(-1L, map.get(chain.get(1)));
+        assertEquals(3, map.size());
+        assertEquals(capacity, capacity(map));
+    }
+
+    @Test
+    void removeKeepsEntriesWrappingAroundTableEnd() {
+        LongObjectMap<Long> map = new LongObjectMap<>();
+        int capacity = capacity(map);
+        // Цепочка из последней ячейки таблицы продолжается с нулевой
+        List<Long> chain = keysInSlot(capacity, capacity - 1, 3);
+        List<Long> head = keysInSlot(capacity, 0, 1);
+
+        for (long key : chain) {
+            map.put(key, key);
+        }
+        map.put(head.get(0), head.get(0));
+
+        map.remove(chain.get(0));
+        assertEquals(chain.get(1), map.get(chain.get(1)));
+        assertEquals(chain.get(2), map.get(chain.get(2)));
+        assertEquals(head.get(0), map.get(head.get(0)));
+        map.remove(chain.get(1));
+        assertEquals(chain.get(2), map.get(chain.get(2)));
+        assertEquals(head.get(0), map.get(head.get(0)));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    void expectedSizeFitsWithoutResize() {
+        for (int expected : new int[]{0, 1, 5, 16, 100, 1000}) {
+            LongObjectMap<Integer> map = new LongObjectMap<>(expected);
+            int capacity = capacity(map);
+            for (int i = 0; i < expected; i++) {
+                map.put(i * 31L, i);
+            }
+            assertEquals(capacity, capacity(map), "расширение до " + expected + " записей");
+            for (int i = 0; i < expected; i++) {
+                assertEquals(i, map.get(i * 31L));
+            }
+        }
+    }
+
+    @Test
+    void resizeAtLoadFactorKeepsEntries() {
+        LongObjectMap<Integer> map = new LongObjectMap<>(16);
+        int capacity = capacity(map);
+        int threshold = capacity / 2;
+        for (int i = 0; i < threshold; i++) {
+            map.put(i, i);
+        }
+        assertEquals(capacity, capacity(map));
+
+        map.put(threshold, threshold);
+        assertEquals(capacity * 2, capacity(map));
+        for (int i = 0; i <= threshold; i++) {
+            assertEquals(i, map.get(i));
+        }
+
+        for (int i = threshold + 1; i < 10_000; i++) {
+            map.put(i, i);
+        }
+        assertEquals(10_000, map.size());
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i, map.get(i));
+        }
+    }
+
+    @Test
+    void clearAndValues() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        map.put(1, "a");
+        map.put(2, "b");
+        assertEquals(List.of("a", "b"), map.values().stream().sorted().toList());
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(1));
+        assertTrue(map.values().isEmpty());
+        map.put(1, "c");
+        assertEquals("c", map.get(1));
+    }
+
+    @Test
+    void matchesHashMapUnderRandomOperations() {
+        Random random = new Random(42);
+        LongObjectMap<Long> map = new LongObjectMap<>(4);
+        Map<Long, Long> expected = new HashMap<>();
+
+        // Небольшой набор ключей: много совпадений, удалений и повторных вставок
+        for (int step = 0; step < 200_000; step++) {
+            long key = random.nextInt(512) - 256;
+            switch (random.nextInt(3)) {
+                case 0, 1 -> assertEquals(expected.put(key, (long) step), map.put(key, (long) step));
+                default -> assertEquals(expected.remove(key), map.remove(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (long key = -256; key < 256; key++) {
+            assertEquals(expected.get(key), map.get(key), "ключ " + key);
+        }
+        List<Long> values = new ArrayList<>(map.values());
+        values.sort(null);
+        List<Long> expectedValues = new ArrayList<>(expected.values());
+        expectedValues.sort(null);
+        assertEquals(expectedValues, values);
+    }
+
+    // Ключи, попадающие в одну ячейку таблицы (по той же функции, что LongObjectMap#slot)
+    private static List<Long> keysWithSameSlot(int capacity, int count) {
+        return keysInSlot(capacity, slot(1, capacity - 1), count);
+    }
+
+    private static List<Long> keysInSlot(int capacity, int slot, int count) {
+        List<Long> keys = new ArrayList<>();
+        for (long key = 1; keys.size() < count; key++) {
+            if (slot(key, capacity - 1) == slot) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private static int slot(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static int capacity(LongObjectMap<?> map) {
+        try {
+            Field keys = LongObjectMap.class.getDeclaredField("keys");
+            keys.setAccessible(true);
+            return ((long[]) keys.get(map)).length;
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+}